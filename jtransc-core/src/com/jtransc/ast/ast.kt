@@ -27,6 +27,7 @@ import com.jtransc.vfs.UserData
 import jtransc.annotation.*
 import java.io.File
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 data class AstBuildSettings(
 	var jtranscVersion: String,
@@ -45,7 +46,12 @@ data class AstBuildSettings(
 	var borderless: Boolean = false,
 	var fullscreen: Boolean = false,
 	var icon: String? = null,
-	var orientation: AstBuildSettings.Orientation = AstBuildSettings.Orientation.AUTO
+	var orientation: AstBuildSettings.Orientation = AstBuildSettings.Orientation.AUTO,
+	var threads: Int = 1,
+	var dce: Boolean = true,
+	var astCache: Boolean = false,
+	var astCacheSize: Long = 256L * 1024 * 1024,
+	var frontend: AstBuildSettings.Frontend = AstBuildSettings.Frontend.SOOT
 ) {
 	val release: Boolean get() = !debug
 
@@ -74,30 +80,56 @@ data class AstBuildSettings(
 			}
 		}
 	}
+
+	// Reads the class files with Soot (SootToAst) or directly with ASM (AsmToAst)
+	enum class Frontend {
+		SOOT, ASM;
+
+		companion object {
+			fun fromString(str: String): Frontend = when (str.toLowerCase()) {
+				"soot" -> SOOT
+				"asm" -> ASM
+				else -> SOOT
+			}
+		}
+	}
 }
 
 interface AstClassGenerator {
 	fun generateClass(program: AstProgram, fqname: FqName): AstClass
 }
 
+// Generators that can split the work of a class in two steps: prepareClass runs on the build thread and does
+// everything that isn't thread-safe, the returned function builds the class and may run on any thread.
+// The class returned by that function is not added to the program, the caller does it.
+interface AstParallelClassGenerator : AstClassGenerator {
+	fun prepareClass(program: AstProgram, fqname: FqName): () -> AstClass
+}
+
 class AstProgram(
 	val entrypoint: FqName,
 	val resourcesVfs: SyncVfsFile,
 	val generator: AstClassGenerator
 ) : IUserData by UserData() {
 	private val _classes = arrayListOf<AstClass>()
-	private val _classesByFqname = hashMapOf<String, AstClass>()
+	private val _classesByFqname = ConcurrentHashMap<String, AstClass>()
 
 	val classes: List<AstClass> get() = _classes
 
 	private val classesToGenerate = LinkedList<AstClassRef>()
 	private val referencedClasses = hashSetOf<AstClassRef>()
 
-	fun hasClassToGenerate() = classesToGenerate.isNotEmpty()
+	@Synchronized fun hasClassToGenerate() = classesToGenerate.isNotEmpty()
+
+	@Synchronized fun readClassToGenerate():AstClassRef = classesToGenerate.remove()
 
-	fun readClassToGenerate():AstClassRef = classesToGenerate.remove()
+	@Synchronized fun readClassesToGenerate(): List<AstClassRef> {
+		val out = classesToGenerate.toList()
+		classesToGenerate.clear()
+		return out
+	}
 
-	fun addReference(clazz: AstClassRef) {
+	@Synchronized fun addReference(clazz: AstClassRef) {
 		if (clazz !in referencedClasses) {
 			classesToGenerate += clazz
 			referencedClasses += clazz
@@ -123,7 +155,7 @@ class AstProgram(
 
 	private var finished = false
 
-	fun add(clazz: AstClass) {
+	@Synchronized fun add(clazz: AstClass) {
 		if (finished) invalidOp("Can't add more classes to a finished program")
 		_classes.add(clazz)
 		_classesByFqname[clazz.fqname] = clazz
@@ -240,6 +272,41 @@ class AstClass(
 		methodsByNameDesc[methodDesc] = method
 	}
 
+	fun remove(field: AstField) {
+		fields.remove(field)
+		fieldsByName.remove(field.name)
+	}
+
+	fun remove(method: AstMethod) {
+		methods.remove(method)
+		methodsByName[method.name]?.remove(method)
+		resetMethodCaches()
+	}
+
+	// Removes many members at once without resetting the method caches, the caller resets them when it is done
+	fun removeAll(methods: Collection<AstMethod>, fields: Collection<AstField>) {
+		if (methods.isNotEmpty()) {
+			val removed = methods.toHashSet()
+			this.methods.removeAll(removed)
+			for (name in removed.map { it.name }.distinct()) methodsByName[name]?.removeAll(removed)
+		}
+		if (fields.isNotEmpty()) {
+			this.fields.removeAll(fields.toHashSet())
+			for (field in fields) fieldsByName.remove(field.name)
+		}
+	}
+
+	// Lookups cache methods found in ancestors too, so every class must reset after a removal anywhere in the program.
+	fun resetMethodCaches() {
+		methodsByNameDesc.clear()
+		methodsByNameDescInterfaces.clear()
+		for (method in methods) {
+			val methodDesc = AstMethodWithoutClassRef(method.name, method.methodType)
+			methodsByNameDesc[methodDesc] = method
+			methodsByNameDescInterfaces[methodDesc] = method
+		}
+	}
+
 	private var finished = false
 
 	fun finish() {
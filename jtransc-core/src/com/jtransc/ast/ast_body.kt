@@ -47,7 +47,8 @@ interface AstStm : AstElement {
 	data class NOP(val dummy: Any? = null) : AstStm
 	data class STM_EXPR(val expr: AstExpr) : AstStm
 	data class SET(val local: AstLocal, val expr: AstExpr) : AstStm
-	data class SET_ARRAY(val local: AstLocal, val index: AstExpr, val expr: AstExpr) : AstStm
+	// checked is false when the index is known to be inside the array (BoundsCheckFeature)
+	data class SET_ARRAY(val local: AstLocal, val index: AstExpr, val expr: AstExpr, val checked: Boolean = true) : AstStm
 	data class SET_FIELD_STATIC(val clazz: AstType.REF, val field: AstFieldRef, val expr: AstExpr, val isInterface: Boolean) : AstStm
 	data class SET_FIELD_INSTANCE(val left: AstExpr, val field: AstFieldRef, val expr: AstExpr) : AstStm
 	data class SET_NEW_WITH_CONSTRUCTOR(val local: AstLocal, val target: AstType.REF, val method: AstMethodRef, val args: List<AstExpr>) : AstStm
@@ -148,7 +149,7 @@ interface AstExpr : AstElement {
 		override val type = AstType.INT
 	}
 
-	data class ARRAY_ACCESS(val array: AstExpr, val index: AstExpr) : LValueExpr {
+	data class ARRAY_ACCESS(val array: AstExpr, val index: AstExpr, val checked: Boolean = true) : LValueExpr {
 		override val type = array.type.elementType
 	}
 
@@ -191,6 +192,8 @@ interface AstExpr : AstElement {
 	infix fun instanceof(that: AstType) = AstExpr.INSTANCE_OF(this, that)
 }
 
+// Rebuilds bodies node by node. By default every node is rebuilt with its children transformed, so subclasses only
+// override the transforms of the nodes they want to change.
 open class AstTransformer {
 	open fun visit(type: AstType) {
 	}
@@ -199,24 +202,72 @@ open class AstTransformer {
 		for (local in body.locals) visit(local.type)
 		return AstBody(
 			stm = transform(body.stm),
-			locals = body.locals,
-			traps = body.traps
+			locals = body.locals.map { transform(it) },
+			traps = body.traps.map { transform(it) }
 		)
 	}
 
+	open fun transform(local: AstLocal): AstLocal = local
+
+	open fun transform(label: AstLabel): AstLabel = label
+
+	open fun transform(trap: AstTrap): AstTrap = AstTrap(transform(trap.start), transform(trap.end), transform(trap.handler), trap.exception)
+
 	open fun transform(stm: AstStm): AstStm = when (stm) {
-		is AstStm.STMS -> transform(stm)
-		else -> throw NotImplementedError("Unhandled statement $stm")
+		is AstStm.STMS -> AstStm.STMS(stm.stms.map { transform(it) })
+		is AstStm.STM_EXPR -> AstStm.STM_EXPR(transform(stm.expr))
+		is AstStm.SET -> AstStm.SET(transform(stm.local), transform(stm.expr))
+		is AstStm.SET_ARRAY -> AstStm.SET_ARRAY(transform(stm.local), transform(stm.index), transform(stm.expr), stm.checked)
+		is AstStm.SET_FIELD_STATIC -> AstStm.SET_FIELD_STATIC(stm.clazz, stm.field, transform(stm.expr), stm.isInterface)
+		is AstStm.SET_FIELD_INSTANCE -> AstStm.SET_FIELD_INSTANCE(transform(stm.left), stm.field, transform(stm.expr))
+		is AstStm.SET_NEW_WITH_CONSTRUCTOR -> AstStm.SET_NEW_WITH_CONSTRUCTOR(transform(stm.local), stm.target, stm.method, stm.args.map { transform(it) })
+		is AstStm.IF -> AstStm.IF(transform(stm.cond), transform(stm.strue), if (stm.sfalse != null) transform(stm.sfalse) else null)
+		is AstStm.WHILE -> AstStm.WHILE(transform(stm.cond), transform(stm.iter))
+		is AstStm.RETURN -> AstStm.RETURN(if (stm.retval != null) transform(stm.retval) else null)
+		is AstStm.THROW -> AstStm.THROW(transform(stm.value))
+		is AstStm.TRY_CATCH -> AstStm.TRY_CATCH(transform(stm.trystm), transform(stm.catch))
+		is AstStm.SWITCH -> AstStm.SWITCH(transform(stm.subject), transform(stm.default), stm.cases.map { Pair(it.first, transform(it.second)) })
+		is AstStm.STM_LABEL -> AstStm.STM_LABEL(transform(stm.label))
+		is AstStm.IF_GOTO -> AstStm.IF_GOTO(transform(stm.cond), transform(stm.label))
+		is AstStm.SWITCH_GOTO -> AstStm.SWITCH_GOTO(transform(stm.subject), transform(stm.default), stm.cases.map { Pair(it.first, transform(it.second)) })
+		is AstStm.GOTO -> AstStm.GOTO(transform(stm.label))
+		is AstStm.MONITOR_ENTER -> AstStm.MONITOR_ENTER(transform(stm.expr))
+		is AstStm.MONITOR_EXIT -> AstStm.MONITOR_EXIT(transform(stm.expr))
+		// NOP, RETHROW, BREAK and CONTINUE
+		else -> stm
 	}
 
-	open fun transform(stm: AstStm.STMS): AstStm = AstStm.STMS(stm.stms.map { transform(stm) })
-
 	open fun transform(expr: AstExpr): AstExpr = when (expr) {
-	//else -> expr
-		else -> throw NotImplementedError("Unhandled expression $expr")
+		is AstExpr.LOCAL -> AstExpr.LOCAL(transform(expr.local))
+		is AstExpr.BINOP -> AstExpr.BINOP(expr.type, transform(expr.left), expr.op, transform(expr.right))
+		is AstExpr.UNOP -> AstExpr.UNOP(expr.op, transform(expr.right))
+		is AstExpr.CALL_INSTANCE -> AstExpr.CALL_INSTANCE(transform(expr.obj), expr.method, expr.args.map { transform(it) }, expr.isSpecial)
+		is AstExpr.CALL_SUPER -> AstExpr.CALL_SUPER(transform(expr.obj), expr.target, expr.method, expr.args.map { transform(it) }, expr.isSpecial)
+		is AstExpr.CALL_STATIC -> AstExpr.CALL_STATIC(expr.clazz, expr.method, expr.args.map { transform(it) }, expr.isSpecial)
+		is AstExpr.ARRAY_LENGTH -> AstExpr.ARRAY_LENGTH(transform(expr.array))
+		is AstExpr.ARRAY_ACCESS -> AstExpr.ARRAY_ACCESS(transform(expr.array), transform(expr.index), expr.checked)
+		is AstExpr.INSTANCE_FIELD_ACCESS -> AstExpr.INSTANCE_FIELD_ACCESS(transform(expr.expr), expr.field, expr.type)
+		is AstExpr.INSTANCE_OF -> AstExpr.INSTANCE_OF(transform(expr.expr), expr.checkType)
+		is AstExpr.CAST -> AstExpr.CAST(transform(expr.expr), expr.to)
+		is AstExpr.NEW_WITH_CONSTRUCTOR -> AstExpr.NEW_WITH_CONSTRUCTOR(expr.target, expr.method, expr.args.map { transform(it) })
+		is AstExpr.NEW_ARRAY -> AstExpr.NEW_ARRAY(expr.element, expr.counts.map { transform(it) })
+		// THIS, PARAM, LITERAL, CLASS_CONSTANT, CAUGHT_EXCEPTION, STATIC_FIELD_ACCESS, NEW and METHOD_CLASS
+		else -> expr
 	}
 }
 
 val AstLocal.expr: AstExpr.LOCAL get() = AstExpr.LOCAL(this)
 val Iterable<AstStm>.stms: AstStm get() = AstStm.STMS(this.toList())
 val Any?.lit: AstExpr get() = AstExpr.LITERAL(this)
+
+// Statements of a flat body (labels and gotos) without nested STMS and NOPs, or null if it has structured statements
+fun AstStm.flattenOrNull(): List<AstStm>? {
+	val out = arrayListOf<AstStm>()
+	fun add(stm: AstStm): Boolean = when (stm) {
+		is AstStm.STMS -> stm.stms.all { add(it) }
+		is AstStm.IF, is AstStm.WHILE, is AstStm.SWITCH, is AstStm.TRY_CATCH, is AstStm.BREAK, is AstStm.CONTINUE -> false
+		is AstStm.NOP -> true
+		else -> out.add(stm)
+	}
+	return if (add(this)) out else null
+}
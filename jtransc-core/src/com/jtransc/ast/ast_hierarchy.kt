@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jtransc.ast
+
+import java.util.*
+
+// Subtypes of the classes of the program, assuming a closed world: only the classes in the program can be
+// instantiated. Classes for which the target creates instances by other means (native classes, generated lambdas)
+// must be reported with hasExternalInstances, and calls through them are never resolved.
+class AstClassHierarchy(val program: AstProgram, val hasExternalInstances: (AstClass) -> Boolean = { it.isNative }) {
+	private val subtypes = HashMap<AstClass, ArrayList<AstClass>>()
+	private val targets = HashMap<AstMethodRef, AstMethod?>()
+
+	init {
+		for (clazz in program.classes) {
+			// allInterfaces only has the interfaces of the class itself
+			for (ancestor in clazz.thisAndAncestors.flatMap { listOf(it) + it.allInterfaces }.toSet()) {
+				subtypes.getOrPut(ancestor) { arrayListOf() } += clazz
+			}
+		}
+	}
+
+	// The class and all the classes extending or implementing it
+	fun getSubtypes(clazz: AstClass): List<AstClass> = subtypes[clazz] ?: listOf(clazz)
+
+	// The only implementation a virtual or interface call can reach, or null when there are several or they can't
+	// be known
+	fun getSingleTarget(ref: AstMethodRef): AstMethod? {
+		if (ref !in targets) targets[ref] = findSingleTarget(ref)
+		return targets[ref]
+	}
+
+	private fun findSingleTarget(ref: AstMethodRef): AstMethod? {
+		if (ref.containingClass !in program) return null
+		val subtypes = getSubtypes(program[ref.containingClass])
+		if (subtypes.any { hasExternalInstances(it) }) return null
+		val implementations = hashSetOf<AstMethod>()
+		for (clazz in subtypes.filter { it.classType == AstClassType.CLASS }) {
+			implementations += findImplementation(clazz, ref) ?: return null
+		}
+		return implementations.singleOrNull()
+	}
+
+	private fun findImplementation(clazz: AstClass, ref: AstMethodRef): AstMethod? {
+		for (current in clazz.thisAndAncestors) {
+			val method = current.getMethod(ref.name, ref.desc)
+			if (method != null && !method.isStatic) return if (method.body != null || method.isNative) method else null
+		}
+		return null
+	}
+}
@@ -8,6 +8,7 @@ import java.io.Reader
 import java.io.Serializable
 import java.io.StringReader
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 interface AstType {
 	open class Primitive(underlyingClassStr: String, val ch: Char) : AstType {
@@ -242,13 +243,14 @@ fun AstType.Companion.demangleMethod(text: String): AstType.METHOD_TYPE {
 	return AstType.demangle(text) as AstType.METHOD_TYPE
 }
 
-val AstTypeDemangleCache = hashMapOf<String, AstType>()
+// Members are created from several threads when generating classes in parallel
+val AstTypeDemangleCache = ConcurrentHashMap<String, AstType>()
 
 fun AstType.Companion.demangle(desc: String): AstType {
-	if (desc !in AstTypeDemangleCache) {
-		AstTypeDemangleCache[desc] = this.readOne(StrReader(desc))
-	}
-	return AstTypeDemangleCache[desc]!!
+	val cached = AstTypeDemangleCache[desc]
+	if (cached != null) return cached
+	val type = this.readOne(StrReader(desc))
+	return AstTypeDemangleCache.putIfAbsent(desc, type) ?: type
 }
 
 val REF_DELIMITER = setOf(';', '<')
@@ -17,21 +17,281 @@
 package com.jtransc.ast.dce
 
 import com.jtransc.ast.*
+import jtransc.annotation.JTranscKeep
+import jtransc.annotation.haxe.HaxeAddFiles
+import java.util.*
 
 // Dead Code Elimination
-fun SimpleDCE(program: AstProgram): AstProgram {
-	val mainClass = program.get(program.entrypoint)
-	val mainMethod = mainClass.getMethodSure("main", "([Ljava/lang/String;)V")
+//
+// Method level reachability starting at main, @JTranscKeep members, static initializers, the classes in keepClasses
+// and reflection roots. Calls are followed through AstMethod.dependencies; a virtual call keeps, for every subtype of
+// the receiver, the method it would dispatch to. Classes are never removed, only their unreachable methods and fields.
+fun SimpleDCE(program: AstProgram, keepClasses: Collection<String> = listOf()): DceReport {
+	return DeadCodeEliminator(program, keepClasses.toSet()).eliminate()
+}
 
-	var classesToAnalyze = arrayListOf<AstClass>()
-	var methodsToAnalyze = arrayListOf<AstMethod>()
-	var fieldsToAnalyze = arrayListOf<AstField>()
+class DceReport(
+	val removedMethods: List<AstMethod>,
+	val removedFields: List<AstField>,
+	val keptMethods: Int,
+	val keptFields: Int
+) {
+	val summary: String get() = "removed ${removedMethods.size} methods and ${removedFields.size} fields, kept $keptMethods methods and $keptFields fields"
 
-	classesToAnalyze.add(mainClass)
-	methodsToAnalyze.add(mainMethod)
-	//fieldsToAnalyze
+	val details: String get() {
+		return (removedMethods.map { "method ${it.containingClass.fqname}:${it.name}:${it.desc}" } +
+			removedFields.map { "field ${it.containingClass.fqname}:${it.name}:${it.descriptor}" }).joinToString("\n")
+	}
 
-	println(mainMethod.dependencies)
+	override fun toString() = "DceReport($summary)"
+}
 
-	return program
-}
\ No newline at end of file
+private class DeadCodeEliminator(val program: AstProgram, val keepClasses: Set<String>) {
+	private val ACC_ANNOTATION = 0x2000
+
+	// Class methods that make members reachable by name.
+	private val REFLECTION_METHODS = setOf(
+		"forName", "newInstance", "getEnumConstants",
+		"getField", "getFields", "getDeclaredField", "getDeclaredFields",
+		"getMethod", "getMethods", "getDeclaredMethod", "getDeclaredMethods",
+		"getConstructor", "getConstructors", "getDeclaredConstructor", "getDeclaredConstructors"
+	)
+
+	private val keptMethods = linkedSetOf<AstMethod>()
+	private val keptFields = hashSetOf<AstField>()
+	private val queue = LinkedList<AstMethod>()
+	private val dispatched = hashMapOf<AstMethodWithoutClassRef, MutableSet<AstClass>>()
+	private val supertypes = hashMapOf<AstClass, Set<AstClass>>()
+	private val subtypes by lazy {
+		val out = hashMapOf<AstClass, ArrayList<AstClass>>()
+		for (clazz in program.classes) {
+			for (supertype in supertypesOf(clazz)) out.getOrPut(supertype) { arrayListOf() }.add(clazz)
+		}
+		out
+	}
+
+	// Native snippets (@HaxeMethodBody, @HaxeAddMembers, ...) and added native files call members by their
+	// identifier-safe name, so any identifier found there keeps the members it names.
+	private val nativeIdentifiers by lazy {
+		val out = hashSetOf<String>()
+		val identifier = Regex("[A-Za-z0-9_]+")
+		fun scan(value: Any?) {
+			when (value) {
+				is String -> for (match in identifier.findAll(value)) out.add(match.value)
+				is AstAnnotation -> for (element in value.elements.values) scan(element)
+				is Array<*> -> for (item in value) scan(item)
+				is List<*> -> for (item in value) scan(item)
+				is Pair<*, *> -> scan(value.second)
+			}
+		}
+		for (clazz in program.classes) {
+			for (annotation in clazz.classAndFieldAndMethodAnnotations) scan(annotation)
+			for (file in clazz.annotations[HaxeAddFiles::value]?.toList() ?: listOf()) {
+				val vfsFile = program.resourcesVfs[file]
+				if (vfsFile.exists) scan(vfsFile.readString())
+			}
+		}
+		out
+	}
+
+	private val annotationTypes = hashSetOf<AstClass>()
+	private val classesByName by lazy { program.classes.associateBy { it.fqname } }
+	private var reflectionUsed = false
+	private val classLiterals = linkedSetOf<AstClass>()
+	private val reflectedClasses = hashSetOf<AstClass>()
+
+	fun eliminate(): DceReport {
+		val mainClass = program[program.entrypoint]
+		keep(mainClass.getMethodSure("main", "([Ljava/lang/String;)V"))
+
+		for (clazz in program.classes) {
+			val keepAll = clazz.fqname in keepClasses || clazz.annotations.contains<JTranscKeep>() || (clazz.modifiers and ACC_ANNOTATION) != 0
+			if (keepAll) keepAllMembers(clazz)
+			keep(clazz.staticInitMethod)
+			if (clazz.extending?.fqname == "java.lang.Enum") keep(clazz.getMethod("values", "()[L${clazz.name.internalFqname};"))
+			for (method in clazz.methods) {
+				if (method.annotations.contains<JTranscKeep>() || isNativelyReferenced(method)) keep(method)
+			}
+			for (field in clazz.fields) {
+				if (field.annotations.contains<JTranscKeep>() || isNativelyReferenced(field)) keep(field)
+			}
+			for (annotation in clazz.classAndFieldAndMethodAnnotations) keepAnnotationValues(annotation)
+		}
+
+		while (queue.isNotEmpty()) process(queue.remove())
+
+		val removedMethods = arrayListOf<AstMethod>()
+		val removedFields = arrayListOf<AstField>()
+		for (clazz in program.classes) {
+			val methods = clazz.methods.filter { it !in keptMethods }
+			val fields = clazz.fields.filter { it !in keptFields }
+			clazz.removeAll(methods, fields)
+			removedMethods += methods
+			removedFields += fields
+		}
+		// Once, after every removal
+		for (clazz in program.classes) clazz.resetMethodCaches()
+
+		return DceReport(removedMethods, removedFields, keptMethods.size, keptFields.size)
+	}
+
+	private fun keep(method: AstMethod?) {
+		if (method != null && keptMethods.add(method)) queue += method
+	}
+
+	private fun keep(field: AstField?) {
+		if (field != null) keptFields += field
+	}
+
+	private fun keepAllMembers(clazz: AstClass) {
+		for (method in clazz.methods) keep(method)
+		for (field in clazz.fields) keep(field)
+	}
+
+	private fun process(method: AstMethod) {
+		val clazz = method.containingClass
+		val dependencies = method.dependencies
+
+		for (ref in dependencies.methods) keepCall(ref, from = clazz)
+		for (ref in dependencies.fields) keep(resolveField(ref))
+		for (annotation in method.annotations) keepAnnotationValues(annotation)
+
+		if (!method.isStatic) {
+			// Keep the declarations this one overrides, so the generated override still has a parent.
+			if (method.name != "<init>") {
+				for (ancestor in clazz.ancestors) keep(ancestor.getMethod(method.name, method.desc))
+			}
+			// Every implementor of a kept interface method must keep its implementation.
+			if (clazz.isInterface) dispatch(clazz, method.ref.withoutClass)
+		}
+
+		val body = method.body
+		if (body != null) {
+			val literals = LiteralsVisitor()
+			literals.visit(body.stm)
+			for (type in literals.classTypes) {
+				if (type is AstType.REF && type.name in program) addClassLiteral(program[type.name])
+			}
+			for (str in literals.strings) {
+				val named = classesByName[str]
+				if (named != null) addClassLiteral(named)
+			}
+		}
+	}
+
+	private fun keepCall(ref: AstMethodRef, from: AstClass) {
+		if (ref.containingClass !in program) return
+		val clazz = program[ref.containingClass]
+		val target = clazz.getMethodInAncestorsAndInterfaces(ref.nameDesc)
+		keep(target)
+
+		if (clazz.fqname == "java.lang.Class" && ref.name in REFLECTION_METHODS && !isReflectionRuntime(from)) {
+			enableReflection()
+		}
+
+		if (ref.name == "<init>" || ref.name == "<clinit>" || target == null || target.isStatic) return
+		dispatch(clazz, ref.nameDesc)
+	}
+
+	private fun dispatch(receiver: AstClass, nameDesc: AstMethodWithoutClassRef) {
+		if (!dispatched.getOrPut(nameDesc) { hashSetOf() }.add(receiver)) return
+		for (subtype in subtypes[receiver] ?: listOf<AstClass>()) {
+			keep(subtype.getMethodInAncestorsAndInterfaces(nameDesc))
+		}
+	}
+
+	private fun resolveField(ref: AstFieldRef): AstField? {
+		if (ref.containingClass !in program) return null
+		for (clazz in supertypesOf(program[ref.containingClass])) {
+			val field = clazz.fieldsByName[ref.name]
+			if (field != null) return field
+		}
+		return null
+	}
+
+	private fun supertypesOf(clazz: AstClass): Set<AstClass> {
+		val cached = supertypes[clazz]
+		if (cached != null) return cached
+		val out = linkedSetOf(clazz)
+		val parent = clazz.parentClass
+		if (parent != null) out.addAll(supertypesOf(parent))
+		for (i in clazz.directInterfaces) out.addAll(supertypesOf(i))
+		supertypes[clazz] = out
+		return out
+	}
+
+	private fun keepAnnotationValues(annotation: AstAnnotation) {
+		if (annotation.type.name in program) {
+			// Annotation proxies implement every method of the annotation type.
+			val annotationClass = program[annotation.type.name]
+			if (annotationTypes.add(annotationClass)) {
+				keepAllMembers(annotationClass)
+				for (method in annotationClass.methods) keepAnnotationValue(method.defaultTag)
+			}
+		}
+		for (value in annotation.elements.values) keepAnnotationValue(value)
+	}
+
+	private fun keepAnnotationValue(value: Any?) {
+		when (value) {
+			is AstFieldRef -> keep(resolveField(value))
+			is AstAnnotation -> keepAnnotationValues(value)
+			is Pair<*, *> -> keepAnnotationValue(value.second)
+			is List<*> -> for (item in value) keepAnnotationValue(item)
+		}
+	}
+
+	private fun isReflectionRuntime(clazz: AstClass): Boolean {
+		return clazz.fqname == "java.lang.Class" || clazz.fqname.startsWith("java.lang.reflect.")
+	}
+
+	// Once user code reflects, classes used as class literals (or named by string constants, for forName) keep
+	// all their members since we can't know which ones will be looked up.
+	private fun enableReflection() {
+		if (reflectionUsed) return
+		reflectionUsed = true
+		for (clazz in classLiterals.toList()) reflect(clazz)
+	}
+
+	private fun addClassLiteral(clazz: AstClass) {
+		if (classLiterals.add(clazz) && reflectionUsed) reflect(clazz)
+	}
+
+	private fun reflect(clazz: AstClass) {
+		if (!reflectedClasses.add(clazz)) return
+		for (method in clazz.methods) {
+			keep(method)
+			if (!method.isStatic && method.name != "<init>") dispatch(clazz, method.ref.withoutClass)
+		}
+		for (field in clazz.fields) keep(field)
+	}
+
+	private fun isNativelyReferenced(method: AstMethod): Boolean {
+		val nativeName = method.nativeMethod
+		if (nativeName != null && nativeName in nativeIdentifiers) return true
+		return identifierSafe(method.name + method.desc) in nativeIdentifiers
+	}
+
+	private fun isNativelyReferenced(field: AstField): Boolean {
+		val name = identifierSafe(field.name)
+		return name in nativeIdentifiers || (name + "_") in nativeIdentifiers
+	}
+
+	private fun identifierSafe(str: String): String = str.map { if (it.isLetterOrDigit()) it else '_' }.joinToString("")
+
+	private class LiteralsVisitor : AstVisitor() {
+		val classTypes = arrayListOf<AstType>()
+		val strings = arrayListOf<String>()
+
+		override fun visit(expr: AstExpr.CLASS_CONSTANT) {
+			super.visit(expr)
+			classTypes += expr.classType
+		}
+
+		override fun visit(expr: AstExpr.LITERAL) {
+			super.visit(expr)
+			val value = expr.value
+			if (value is String) strings += value
+		}
+	}
+}
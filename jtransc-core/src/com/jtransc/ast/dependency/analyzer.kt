@@ -88,9 +88,17 @@ object AstDependencyAnalyzer {
 				is AstExpr.PARAM -> {
 					ana(expr.type)
 				}
+				is AstExpr.NEW_WITH_CONSTRUCTOR -> {
+					ana(expr.target)
+					ana(expr.method.type)
+					for (arg in expr.args) ana(arg)
+					methods.add(expr.method)
+				}
 				is AstExpr.METHOD_CLASS -> {
 					ana(expr.type)
 					ana(expr.methodToConvertRef.allClassRefs.map { it.type })
+					methods.add(expr.methodInInterfaceRef)
+					methods.add(expr.methodToConvertRef)
 				}
 				else -> noImpl("Not implemented $expr")
 			}
@@ -153,6 +161,7 @@ object AstDependencyAnalyzer {
 					for (arg in stm.args) {
 						ana(arg)
 					}
+					methods.add(stm.method)
 				}
 				else -> throw NotImplementedError("Not implemented STM $stm")
 			}
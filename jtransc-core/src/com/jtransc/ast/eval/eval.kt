@@ -1,9 +1,311 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
 package com.jtransc.ast.eval
 
-import com.jtransc.ast.AstExpr
+import com.jtransc.ast.*
+import java.util.*
+
+class AstEvalException(message: String) : RuntimeException(message)
+
+// Array values created while evaluating. Integral elements are stored as Int, except longs.
+class AstEvalArray(val type: AstType.ARRAY, val data: Array<Any?>)
+
+// Static field values computed at compile time for a class. Only classes whose <clinit> runs without side effects
+// outside the class are evaluated, and every array reachable from a field belongs to that field only.
+class AstStaticInit(val values: Map<String, Any?>)
+
+// Interprets the static initializer of a class over the raw bodies (the ones with gotos). Anything that could be
+// observed from outside the class (calls to other classes, objects, exceptions, monitors) stops the evaluation.
+// canEval lets targets reject methods they replace with native code.
+class AstEval(
+	val clazz: AstClass,
+	val canEval: (AstMethod) -> Boolean = { true },
+	val maxSteps: Int = 2000000,
+	val maxArrayElements: Int = 65536
+) {
+	private val program = clazz.program
+	private val statics = LinkedHashMap<String, Any?>()
+	private var steps = 0
+	private var arrayElements = 0
+
+	private class Frame(val args: List<Any?>) {
+		val locals = HashMap<AstLocal, Any?>()
+	}
+
+	fun evalStaticInit(): AstStaticInit? {
+		val clinit = clazz.staticInitMethod ?: return null
+		for (field in clazz.fields.filter { it.isStatic }) {
+			statics[field.name] = if (field.hasConstantValue) normalize(field.constantValue) else default(field.type)
+		}
+		try {
+			call(clinit, listOf())
+		} catch (e: AstEvalException) {
+			return null
+		} catch (e: ArithmeticException) {
+			return null
+		} catch (e: IndexOutOfBoundsException) {
+			return null
+		} catch (e: ClassCastException) {
+			return null
+		}
+		val seen = Collections.newSetFromMap(IdentityHashMap<AstEvalArray, Boolean>())
+		fun unique(value: Any?): Boolean = when (value) {
+			is AstEvalArray -> seen.add(value) && value.data.all { unique(it) }
+			else -> true
+		}
+		if (!statics.values.all { unique(it) }) return null
+		return AstStaticInit(statics)
+	}
+
+	private fun fail(message: String): Nothing = throw AstEvalException(message)
+
+	private fun default(type: AstType): Any? = when (type) {
+		AstType.BOOL -> false
+		AstType.BYTE, AstType.CHAR, AstType.SHORT, AstType.INT -> 0
+		AstType.LONG -> 0L
+		AstType.FLOAT -> 0f
+		AstType.DOUBLE -> 0.0
+		else -> null
+	}
+
+	private fun normalize(value: Any?): Any? = when (value) {
+		is Byte -> value.toInt()
+		is Short -> value.toInt()
+		is Char -> value.toInt()
+		else -> value
+	}
+
+	private fun call(method: AstMethod, args: List<Any?>): Any? {
+		if (method.containingClass != clazz || !method.isStatic || !canEval(method)) fail("Call to $method")
+		val body = method.body ?: fail("Method without body $method")
+		val frame = Frame(args)
+		val stms = ArrayList<AstStm>()
+		fun flatten(stm: AstStm) {
+			if (stm is AstStm.STMS) stm.stms.forEach { flatten(it) } else stms.add(stm)
+		}
+		flatten(body.stm)
+		val labels = stms.withIndex().filter { it.value is AstStm.STM_LABEL }.map { Pair((it.value as AstStm.STM_LABEL).label, it.index) }.toMap()
+
+		var pc = 0
+		while (pc < stms.size) {
+			if (++steps > maxSteps) fail("Too many steps")
+			val stm = stms[pc++]
+			when (stm) {
+				is AstStm.NOP, is AstStm.STM_LABEL -> Unit
+				is AstStm.SET -> frame.locals[stm.local] = cast(eval(frame, stm.expr), stm.local.type)
+				is AstStm.SET_ARRAY -> {
+					val array = frame.locals[stm.local] as? AstEvalArray ?: fail("Null array")
+					val index = eval(frame, stm.index) as Int
+					array.data[checkIndex(array, index)] = cast(eval(frame, stm.expr), array.type.element)
+				}
+				is AstStm.SET_FIELD_STATIC -> {
+					if (stm.field.containingClass != clazz.name || stm.field.name !in statics) fail("Set to ${stm.field}")
+					statics[stm.field.name] = cast(eval(frame, stm.expr), stm.field.type)
+				}
+				is AstStm.STM_EXPR -> eval(frame, stm.expr)
+				is AstStm.GOTO -> pc = labels[stm.label]!!
+				is AstStm.IF_GOTO -> if (eval(frame, stm.cond) as Boolean) pc = labels[stm.label]!!
+				is AstStm.SWITCH_GOTO -> {
+					val subject = eval(frame, stm.subject) as Int
+					pc = labels[stm.cases.firstOrNull { it.first == subject }?.second ?: stm.default]!!
+				}
+				is AstStm.RETURN -> return if (stm.retval != null) eval(frame, stm.retval!!) else null
+				else -> fail("Statement $stm")
+			}
+		}
+		return null
+	}
+
+	private fun checkIndex(array: AstEvalArray, index: Int): Int {
+		if (index < 0 || index >= array.data.size) throw IndexOutOfBoundsException("$index")
+		return index
+	}
 
-class AstEval {
-	fun eval(expr: AstExpr) {
+	private fun eval(frame: Frame, e: AstExpr): Any? = when (e) {
+		is AstExpr.LITERAL -> normalize(e.value)
+		is AstExpr.LOCAL -> frame.locals[e.local]
+		is AstExpr.PARAM -> frame.args[e.argument.index]
+		is AstExpr.CAST -> cast(eval(frame, e.expr), e.to)
+		is AstExpr.UNOP -> unop(e.op, eval(frame, e.right))
+		is AstExpr.BINOP -> when (e.op) {
+			AstBinop.BAND -> (eval(frame, e.left) as Boolean) && (eval(frame, e.right) as Boolean)
+			AstBinop.BOR -> (eval(frame, e.left) as Boolean) || (eval(frame, e.right) as Boolean)
+			else -> binop(e.op, eval(frame, e.left), eval(frame, e.right))
+		}
+		is AstExpr.STATIC_FIELD_ACCESS -> {
+			if (e.field.containingClass == clazz.name && e.field.name in statics) {
+				statics[e.field.name]
+			} else {
+				// Constants of other classes don't trigger their initialization
+				if (e.field.containingClass !in program) fail("Access to ${e.field}")
+				val field = program[e.field]
+				if (field.isStatic && field.isFinal && field.hasConstantValue) normalize(field.constantValue) else fail("Access to ${e.field}")
+			}
+		}
+		is AstExpr.NEW_ARRAY -> {
+			if (e.counts.size != 1) fail("Multidimensional array")
+			val count = eval(frame, e.counts[0]) as Int
+			if (count < 0) fail("Negative array size")
+			arrayElements += count
+			if (arrayElements > maxArrayElements) fail("Too many array elements")
+			val type = e.type as AstType.ARRAY
+			AstEvalArray(type, Array<Any?>(count) { default(type.element) })
+		}
+		is AstExpr.ARRAY_ACCESS -> {
+			val array = eval(frame, e.array) as? AstEvalArray ?: fail("Null array")
+			array.data[checkIndex(array, eval(frame, e.index) as Int)]
+		}
+		is AstExpr.ARRAY_LENGTH -> (eval(frame, e.array) as? AstEvalArray ?: fail("Null array")).data.size
+		is AstExpr.CALL_STATIC -> {
+			if (e.method.containingClass != clazz.name) fail("Call to ${e.method}")
+			val method = program[e.method] ?: fail("Can't find ${e.method}")
+			val args = e.args.map { eval(frame, it) }
+			call(method, args)
+		}
+		is AstExpr.CALL_INSTANCE -> callInstance(eval(frame, e.obj), e.method, e.args.map { eval(frame, it) })
+		else -> fail("Expression $e")
+	}
+
+	// Only String methods that don't allocate objects apart from arrays
+	private fun callInstance(obj: Any?, method: AstMethodRef, args: List<Any?>): Any? {
+		if (obj is String) {
+			return when ("${method.name}${method.desc}") {
+				"length()I" -> obj.length
+				"charAt(I)C" -> obj[args[0] as Int].toInt()
+				"toCharArray()[C" -> {
+					arrayElements += obj.length
+					if (arrayElements > maxArrayElements) fail("Too many array elements")
+					AstEvalArray(AstType.ARRAY(AstType.CHAR), Array<Any?>(obj.length) { obj[it].toInt() })
+				}
+				else -> fail("Call to $method")
+			}
+		}
+		fail("Call to $method")
+	}
+
+	private fun cast(value: Any?, to: AstType): Any? {
+		if (value == null || to !is AstType.Primitive) return value
+		if (value is Boolean) return if (to == AstType.BOOL) value else cast(if (value) 1 else 0, to)
+		val number = value as? Number ?: fail("Cast of $value")
+		return when (to) {
+			AstType.BOOL -> number.toInt() != 0
+			AstType.BYTE -> number.toByte().toInt()
+			AstType.SHORT -> number.toShort().toInt()
+			AstType.CHAR -> number.toInt() and 0xFFFF
+			AstType.INT -> number.toInt()
+			AstType.LONG -> number.toLong()
+			AstType.FLOAT -> number.toFloat()
+			AstType.DOUBLE -> number.toDouble()
+			else -> fail("Cast of $value to $to")
+		}
+	}
+
+	private fun unop(op: AstUnop, value: Any?): Any? = when (value) {
+		is Boolean -> if (op == AstUnop.NOT) !value else fail("Unop $op")
+		is Int -> if (op == AstUnop.NEG) -value else if (op == AstUnop.INV) value.inv() else fail("Unop $op")
+		is Long -> if (op == AstUnop.NEG) -value else if (op == AstUnop.INV) value.inv() else fail("Unop $op")
+		is Float -> if (op == AstUnop.NEG) -value else fail("Unop $op")
+		is Double -> if (op == AstUnop.NEG) -value else fail("Unop $op")
+		else -> fail("Unop $op $value")
+	}
+
+	private fun compare(op: AstBinop, c: Int): Boolean = when (op) {
+		AstBinop.EQ -> c == 0
+		AstBinop.NE -> c != 0
+		AstBinop.LT -> c < 0
+		AstBinop.LE -> c <= 0
+		AstBinop.GT -> c > 0
+		AstBinop.GE -> c >= 0
+		else -> fail("Compare $op")
+	}
+
+	private fun binop(op: AstBinop, l0: Any?, r0: Any?): Any? {
+		// Booleans mixed with ints are ints in the JVM
+		val l = if (l0 is Boolean && r0 is Number) (if (l0) 1 else 0) else l0
+		val r = if (r0 is Boolean && l0 is Number) (if (r0) 1 else 0) else r0
+		if (op == AstBinop.EQ || op == AstBinop.NE) {
+			if (l !is Number || r !is Number) return (l === r || (l is Boolean && l == r)) == (op == AstBinop.EQ)
+		}
+		return when {
+			l is Boolean && r is Boolean -> when (op) {
+				AstBinop.AND -> l and r
+				AstBinop.OR -> l or r
+				AstBinop.XOR -> l xor r
+				else -> fail("Binop $op")
+			}
+			l is Long -> when (op) {
+				AstBinop.SHL -> l shl (r as Int)
+				AstBinop.SHR -> l shr (r as Int)
+				AstBinop.USHR -> l ushr (r as Int)
+				else -> longBinop(op, l, (r as Number).toLong())
+			}
+			l is Double || r is Double -> doubleBinop(op, (l as Number).toDouble(), (r as Number).toDouble())
+			l is Float || r is Float -> {
+				val result = doubleBinop(op, (l as Number).toFloat().toDouble(), (r as Number).toFloat().toDouble())
+				if (result is Double) result.toFloat() else result
+			}
+			l is Int && r is Int -> intBinop(op, l, r)
+			else -> fail("Binop $l $op $r")
+		}
+	}
+
+	private fun intBinop(op: AstBinop, l: Int, r: Int): Any = when (op) {
+		AstBinop.ADD -> l + r
+		AstBinop.SUB -> l - r
+		AstBinop.MUL -> l * r
+		AstBinop.DIV -> l / r
+		AstBinop.REM -> l % r
+		AstBinop.AND -> l and r
+		AstBinop.OR -> l or r
+		AstBinop.XOR -> l xor r
+		AstBinop.SHL -> l shl r
+		AstBinop.SHR -> l shr r
+		AstBinop.USHR -> l ushr r
+		else -> compare(op, l.compareTo(r))
+	}
+
+	private fun longBinop(op: AstBinop, l: Long, r: Long): Any = when (op) {
+		AstBinop.ADD -> l + r
+		AstBinop.SUB -> l - r
+		AstBinop.MUL -> l * r
+		AstBinop.DIV -> l / r
+		AstBinop.REM -> l % r
+		AstBinop.AND -> l and r
+		AstBinop.OR -> l or r
+		AstBinop.XOR -> l xor r
+		AstBinop.LCMP, AstBinop.CMP -> l.compareTo(r)
+		else -> compare(op, l.compareTo(r))
+	}
 
+	// Comparisons follow the JVM, where any comparison with NaN is false and CMPL/CMPG give -1/1
+	private fun doubleBinop(op: AstBinop, l: Double, r: Double): Any = when (op) {
+		AstBinop.ADD -> l + r
+		AstBinop.SUB -> l - r
+		AstBinop.MUL -> l * r
+		AstBinop.DIV -> l / r
+		AstBinop.REM -> l % r
+		AstBinop.CMPL, AstBinop.CMP -> if (l.isNaN() || r.isNaN()) -1 else if (l < r) -1 else if (l > r) 1 else 0
+		AstBinop.CMPG -> if (l.isNaN() || r.isNaN()) 1 else if (l < r) -1 else if (l > r) 1 else 0
+		AstBinop.EQ -> l == r
+		AstBinop.NE -> l != r
+		AstBinop.LT -> l < r
+		AstBinop.LE -> l <= r
+		AstBinop.GT -> l > r
+		AstBinop.GE -> l >= r
+		else -> fail("Binop $op")
 	}
-}
\ No newline at end of file
+}
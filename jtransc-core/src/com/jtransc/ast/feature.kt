@@ -16,24 +16,24 @@
 
 package com.jtransc.ast
 
+import com.jtransc.ast.feature.BoundsCheckFeature
 import com.jtransc.ast.feature.GotosFeature
 import com.jtransc.ast.feature.OptimizeFeature
 import com.jtransc.ast.feature.SimdFeature
 import com.jtransc.ast.feature.SwitchesFeature
 import com.jtransc.ast.transform.CombineNewInitTransform
-import com.jtransc.ast.transform.RemoveTransitiveLocalsTransform
 
 class AstFeatures {
 	internal val AVAILABLE_FEATUES = arrayListOf<AstFeature>(
 		OptimizeFeature,
+		BoundsCheckFeature,
 		GotosFeature,
 		SwitchesFeature,
 		SimdFeature
 	)
 
 	internal val TRANSFORMS = arrayListOf<AstTransform>(
-		CombineNewInitTransform,
-		RemoveTransitiveLocalsTransform
+		CombineNewInitTransform
 	)
 
 	fun registerLast(feature: AstFeature): AstFeatures {
@@ -48,10 +48,16 @@ class AstFeatures {
 		return this
 	}
 
-	fun apply(body: AstBody, supportedFeatures: Set<AstFeature>): AstBody {
+	// Transforms registered by the targets run before the default ones
+	fun registerFirst(transform: AstTransform): AstFeatures {
+		if (transform !in TRANSFORMS) TRANSFORMS.add(0, transform)
+		return this
+	}
+
+	fun apply(body: AstBody, supportedFeatures: Set<AstFeature>, method: AstMethod? = null): AstBody {
 		var out = body
 		for (transform in TRANSFORMS) {
-			out = transform(out)
+			out = if (method != null) transform(method, out) else transform(out)
 		}
 		for (feature in AVAILABLE_FEATUES) {
 			val included = (feature in supportedFeatures)
@@ -72,5 +78,7 @@ open class AstFeature {
 
 open class AstTransform {
 	operator open fun invoke(body: AstBody): AstBody = body
+	// For transforms that need the method the body belongs to
+	operator open fun invoke(method: AstMethod, body: AstBody): AstBody = invoke(body)
 	operator open fun invoke(body: AstProgram): AstProgram = body
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jtransc.ast.feature
+
+import com.jtransc.ast.*
+import java.util.*
+
+// Marks the array accesses whose index is proven to be inside the array, so targets can skip the bounds check there.
+// Without this feature every access stays checked.
+object BoundsCheckFeature : AstFeature() {
+	override fun add(body: AstBody): AstBody = AstBoundsChecks(body).optimize()
+}
+
+// Finds the facts that hold in every path reaching each statement of a flat body (labels and gotos): locals that are
+// not negative, locals below the length of an array and locals holding the length of an array. The conditions of
+// gotos add facts to the edge they take, so the canonical loops are covered:
+//
+//     for (i = 0; i < a.length; i++) a[i]       for (i = a.length - 1; i >= 0; i--) a[i]
+//
+// Only arrays in locals and parameters are tracked, since fields can change in any call.
+internal class AstBoundsChecks(private val body: AstBody) {
+	companion object {
+		private const val MAX_STATEMENTS = 4000
+	}
+
+	private interface Fact {
+		val local: AstLocal
+	}
+
+	// local >= 0
+	private data class NonNegative(override val local: AstLocal) : Fact
+
+	// local < array.length
+	private data class Below(override val local: AstLocal, val array: AstExpr) : Fact
+
+	// local == array.length
+	private data class Length(override val local: AstLocal, val array: AstExpr) : Fact
+
+	fun optimize(): AstBody {
+		val stms = body.stm.flattenOrNull() ?: return body
+		if (stms.size > MAX_STATEMENTS || !hasArrayAccesses(stms)) return body
+		val size = stms.size
+
+		val labels = hashMapOf<AstLabel, Int>()
+		for ((index, stm) in stms.withIndex()) if (stm is AstStm.STM_LABEL) labels[stm.label] = index
+		val handlers = Array(size) { arrayListOf<Int>() }
+		for (trap in body.traps) {
+			val start = labels[trap.start] ?: continue
+			val end = labels[trap.end] ?: size
+			val handler = labels[trap.handler] ?: continue
+			for (index in start until end) handlers[index].add(handler)
+		}
+
+		// null until reached
+		val factsIn = arrayOfNulls<Set<Fact>>(size)
+		val queue = LinkedList<Int>()
+		val queued = BitSet()
+		fun flow(target: Int?, facts: Set<Fact>) {
+			if (target == null || target >= size) return
+			val old = factsIn[target]
+			val merged = if (old == null) facts else old.intersect(facts)
+			if (old == null || merged.size != old.size) {
+				factsIn[target] = merged
+				if (!queued[target]) {
+					queued.set(target)
+					queue.add(target)
+				}
+			}
+		}
+
+		flow(0, setOf())
+		while (queue.isNotEmpty()) {
+			val index = queue.removeFirst()
+			queued.clear(index)
+			val facts = factsIn[index]!!
+			val stm = stms[index]
+			// The handler can be reached before the statement completes
+			for (handler in handlers[index]) flow(handler, facts)
+			when (stm) {
+				is AstStm.GOTO -> flow(labels[stm.label], facts)
+				is AstStm.IF_GOTO -> {
+					flow(labels[stm.label], facts + implied(stm.cond, true, facts))
+					flow(index + 1, facts + implied(stm.cond, false, facts))
+				}
+				is AstStm.SWITCH_GOTO -> {
+					flow(labels[stm.default], facts)
+					for (case in stm.cases) flow(labels[case.second], facts)
+				}
+				is AstStm.RETURN, is AstStm.THROW, is AstStm.RETHROW -> Unit
+				else -> flow(index + 1, transfer(stm, facts))
+			}
+		}
+
+		var changed = false
+		val out = stms.withIndex().map {
+			val facts = factsIn[it.index]
+			val stm = if (facts != null) Marker(facts).transform(it.value) else it.value
+			if (stm != it.value) changed = true
+			stm
+		}
+		return if (changed) AstBody(AstStm.STMS(out), body.locals, body.traps) else body
+	}
+
+	private fun hasArrayAccesses(stms: List<AstStm>): Boolean {
+		var found = false
+		val visitor = object : AstVisitor() {
+			override fun visit(stm: AstStm.SET_ARRAY) {
+				found = true
+			}
+
+			override fun visit(expr: AstExpr.ARRAY_ACCESS) {
+				found = true
+			}
+		}
+		for (stm in stms) {
+			visitor.visit(stm)
+			if (found) return true
+		}
+		return false
+	}
+
+	private class Marker(val facts: Set<Fact>) : AstTransformer() {
+		override fun transform(stm: AstStm): AstStm {
+			val out = super.transform(stm)
+			return if (out is AstStm.SET_ARRAY && out.checked && isSafe(AstExpr.LOCAL(out.local), out.index)) out.copy(checked = false) else out
+		}
+
+		override fun transform(expr: AstExpr): AstExpr {
+			val out = super.transform(expr)
+			return if (out is AstExpr.ARRAY_ACCESS && out.checked && isSafe(out.array, out.index)) out.copy(checked = false) else out
+		}
+
+		private fun isSafe(array: AstExpr, index: AstExpr): Boolean {
+			val key = arrayKey(array) ?: return false
+			val local = (index as? AstExpr.LOCAL)?.local ?: return false
+			return NonNegative(local) in facts && Below(local, key) in facts
+		}
+	}
+
+	private fun mentions(fact: Fact, local: AstLocal): Boolean {
+		if (fact.local == local) return true
+		val array = when (fact) {
+			is Below -> fact.array
+			is Length -> fact.array
+			else -> null
+		}
+		return array is AstExpr.LOCAL && array.local == local
+	}
+
+	// Facts after the statement, from the facts before it
+	private fun transfer(stm: AstStm, facts: Set<Fact>): Set<Fact> {
+		val local = when (stm) {
+			is AstStm.SET -> stm.local
+			is AstStm.SET_NEW_WITH_CONSTRUCTOR -> stm.local
+			else -> return facts
+		}
+		val out = facts.filterTo(hashSetOf()) { !mentions(it, local) }
+		if (stm is AstStm.SET) out.addAll(defined(local, stm.expr, facts))
+		return out
+	}
+
+	// Facts about local after local = expr
+	private fun defined(local: AstLocal, expr: AstExpr, facts: Set<Fact>): List<Fact> {
+		val out = arrayListOf<Fact>()
+		when (expr) {
+			is AstExpr.LITERAL -> if (expr.value is Int && expr.value >= 0) out.add(NonNegative(local))
+			is AstExpr.LOCAL -> if (expr.local != local) {
+				for (fact in facts) when {
+					fact is NonNegative && fact.local == expr.local -> out.add(NonNegative(local))
+					fact is Below && fact.local == expr.local -> out.add(Below(local, fact.array))
+					fact is Length && fact.local == expr.local -> out.add(Length(local, fact.array))
+				}
+			}
+			is AstExpr.ARRAY_LENGTH -> {
+				out.add(NonNegative(local))
+				val key = arrayKey(expr.array)
+				if (key != null && key != AstExpr.LOCAL(local)) out.add(Length(local, key))
+			}
+			is AstExpr.BINOP -> {
+				val left = expr.left
+				val right = (expr.right as? AstExpr.LITERAL)?.value as? Int
+				if (expr.type == AstType.INT && right != null) {
+					// i + 1 can't overflow when i is below the length of an array
+					if (expr.op == AstBinop.ADD && left is AstExpr.LOCAL && right in 0..1) {
+						val source = left.local
+						if (NonNegative(source) in facts && (right == 0 || facts.any { it is Below && it.local == source })) out.add(NonNegative(local))
+					}
+					// i - 1 can't underflow when i is not negative
+					if (expr.op == AstBinop.SUB && left is AstExpr.LOCAL && right >= 0 && NonNegative(left.local) in facts) {
+						for (fact in facts) if (fact is Below && fact.local == left.local) out.add(Below(local, fact.array))
+					}
+					if (expr.op == AstBinop.SUB && right >= 1) {
+						val array = lengthOf(left, facts)
+						if (array != null) out.add(Below(local, array))
+					}
+				}
+			}
+		}
+		// The array can't be the local being written
+		return out.filter { !(it is Below && it.array == AstExpr.LOCAL(local)) && !(it is Length && it.array == AstExpr.LOCAL(local)) }
+	}
+
+	// Facts that hold when the condition is (or isn't) true
+	private fun implied(cond: AstExpr, value: Boolean, facts: Set<Fact>): List<Fact> {
+		if (cond is AstExpr.UNOP && cond.op == AstUnop.NOT) return implied(cond.right, !value, facts)
+		if (cond !is AstExpr.BINOP) return listOf()
+		val op = if (value) cond.op else when (cond.op) {
+			AstBinop.LT -> AstBinop.GE
+			AstBinop.GE -> AstBinop.LT
+			AstBinop.LE -> AstBinop.GT
+			AstBinop.GT -> AstBinop.LE
+			else -> return listOf()
+		}
+		// Written as local op right
+		val left: AstExpr
+		val right: AstExpr
+		val relation: AstBinop
+		if (cond.left is AstExpr.LOCAL) {
+			left = cond.left
+			right = cond.right
+			relation = op
+		} else {
+			left = cond.right
+			right = cond.left
+			relation = when (op) {
+				AstBinop.LT -> AstBinop.GT
+				AstBinop.GT -> AstBinop.LT
+				AstBinop.LE -> AstBinop.GE
+				AstBinop.GE -> AstBinop.LE
+				else -> return listOf()
+			}
+		}
+		val local = (left as? AstExpr.LOCAL)?.local ?: return listOf()
+
+		val out = arrayListOf<Fact>()
+		val array = lengthOf(right, facts)
+		if (relation == AstBinop.LT && array != null) out.add(Below(local, array))
+		val constant = (right as? AstExpr.LITERAL)?.value as? Int
+		if (constant != null && (relation == AstBinop.GE && constant >= 0 || relation == AstBinop.GT && constant >= -1)) out.add(NonNegative(local))
+		return out
+	}
+
+	// The array whose length is the expression
+	private fun lengthOf(expr: AstExpr, facts: Set<Fact>): AstExpr? = when (expr) {
+		is AstExpr.ARRAY_LENGTH -> arrayKey(expr.array)
+		is AstExpr.LOCAL -> facts.firstOrNull { it is Length && it.local == expr.local }?.let { (it as Length).array }
+		else -> null
+	}
+}
+
+// Arrays that can't change while the body runs, unless the local is written
+private fun arrayKey(expr: AstExpr): AstExpr? = when (expr) {
+	is AstExpr.CAST -> arrayKey(expr.expr)
+	is AstExpr.LOCAL, is AstExpr.PARAM -> expr
+	else -> null
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jtransc.ast.feature
+
+import com.jtransc.ast.*
+import java.util.*
+
+// Def-use information of the locals of a flat body (labels and gotos), per statement: the locals it reads and writes,
+// the locals live around it and the copies (a = b) that still hold when it runs.
+//
+// A statement inside a trap range can jump to the handler before completing, so the handler gets what holds before
+// the statement and the statement gets what is live in the handler, but its own definition plays no part.
+internal class AstLocalFlow(val stms: List<AstStm>, traps: List<AstTrap>) {
+	val size = stms.size
+	val defs = arrayOfNulls<AstLocal>(size)
+	val uses = Array(size) { setOf<AstLocal>() }
+	val liveIn = Array(size) { hashSetOf<AstLocal>() }
+	// Only through the statements that can follow this one normally
+	val liveOut = Array(size) { hashSetOf<AstLocal>() }
+	// Indices of the copies that hold in every path reaching each statement
+	val copiesIn = Array(size) { BitSet() }
+	val copies = arrayListOf<Int>()
+
+	private val successors = Array(size) { arrayListOf<Int>() }
+	private val handlers = Array(size) { arrayListOf<Int>() }
+	private val predecessors = Array(size) { arrayListOf<Int>() }
+	private val handlerPredecessors = Array(size) { arrayListOf<Int>() }
+
+	// Locals read by a statement. The local of SET and SET_NEW_WITH_CONSTRUCTOR is written, not read.
+	private class UsesVisitor : AstVisitor() {
+		val uses = hashSetOf<AstLocal>()
+
+		override fun visit(local: AstLocal) {
+			uses.add(local)
+		}
+
+		override fun visit(stm: AstStm.SET) {
+			visit(stm.expr)
+		}
+
+		override fun visit(stm: AstStm.SET_NEW_WITH_CONSTRUCTOR) {
+			visitExprs(stm.args)
+		}
+	}
+
+	init {
+		val labels = hashMapOf<AstLabel, Int>()
+		for ((index, stm) in stms.withIndex()) if (stm is AstStm.STM_LABEL) labels[stm.label] = index
+		fun add(list: ArrayList<Int>, index: Int?) {
+			if (index != null && index < size) list.add(index)
+		}
+
+		for ((index, stm) in stms.withIndex()) {
+			val next = successors[index]
+			when (stm) {
+				is AstStm.GOTO -> add(next, labels[stm.label])
+				is AstStm.IF_GOTO -> {
+					add(next, labels[stm.label])
+					add(next, index + 1)
+				}
+				is AstStm.SWITCH_GOTO -> {
+					add(next, labels[stm.default])
+					for (case in stm.cases) add(next, labels[case.second])
+				}
+				is AstStm.RETURN, is AstStm.THROW, is AstStm.RETHROW -> Unit
+				else -> add(next, index + 1)
+			}
+			for (trap in traps) {
+				val start = labels[trap.start] ?: continue
+				val end = labels[trap.end] ?: size
+				if (index >= start && index < end) add(handlers[index], labels[trap.handler])
+			}
+
+			val visitor = UsesVisitor()
+			visitor.visit(stm)
+			uses[index] = visitor.uses
+			val def = when (stm) {
+				is AstStm.SET -> stm.local
+				is AstStm.SET_NEW_WITH_CONSTRUCTOR -> stm.local
+				else -> null
+			}
+			defs[index] = def
+			if (stm is AstStm.SET && stm.expr is AstExpr.LOCAL && stm.expr.local != stm.local) copies.add(index)
+		}
+		for (index in 0 until size) {
+			for (next in successors[index]) predecessors[next].add(index)
+			for (handler in handlers[index]) handlerPredecessors[handler].add(index)
+		}
+
+		computeLiveness()
+		computeCopies()
+	}
+
+	// The copy a = b of the statement
+	fun getCopy(index: Int): Pair<AstLocal, AstLocal> {
+		val stm = stms[index] as AstStm.SET
+		return Pair(stm.local, (stm.expr as AstExpr.LOCAL).local)
+	}
+
+	// A copy holds after it runs until its target or its source are written again
+	private fun computeCopies() {
+		val kills = hashMapOf<AstLocal, BitSet>()
+		for ((n, index) in copies.withIndex()) {
+			val (target, source) = getCopy(index)
+			kills.getOrPut(target) { BitSet() }.set(n)
+			kills.getOrPut(source) { BitSet() }.set(n)
+		}
+		val copyNumbers = copies.withIndex().map { Pair(it.value, it.index) }.toMap()
+		fun getOut(index: Int): BitSet {
+			val out = copiesIn[index].clone() as BitSet
+			val def = defs[index]
+			if (def != null) out.andNot(kills[def] ?: BitSet())
+			val number = copyNumbers[index]
+			if (number != null) out.set(number)
+			return out
+		}
+
+		// Everything holds until proven otherwise, except at the start
+		for (index in 1 until size) copiesIn[index].set(0, copies.size)
+		var changed = true
+		while (changed) {
+			changed = false
+			for (index in 1 until size) {
+				val current = copiesIn[index]
+				val next = BitSet()
+				next.set(0, copies.size)
+				for (previous in predecessors[index]) next.and(getOut(previous))
+				for (previous in handlerPredecessors[index]) next.and(copiesIn[previous])
+				if (next != current) {
+					copiesIn[index] = next
+					changed = true
+				}
+			}
+		}
+	}
+
+	private fun computeLiveness() {
+		var changed = true
+		while (changed) {
+			changed = false
+			for (index in size - 1 downTo 0) {
+				val out = liveOut[index]
+				for (next in successors[index]) out.addAll(liveIn[next])
+				val live = liveIn[index]
+				val before = live.size
+				live.addAll(uses[index])
+				for (local in out) if (local != defs[index]) live.add(local)
+				for (handler in handlers[index]) live.addAll(liveIn[handler])
+				if (live.size != before) changed = true
+			}
+		}
+	}
+}
+
+// Global copy propagation, dead store elimination and coalescing of locals over the def-use information of
+// AstLocalFlow, so fewer locals and moves reach the output.
+//
+// Reads of a are replaced by b where the copy a = b holds in every path reaching them. Assignments to locals that
+// are not read later are removed when their value has no side effects (calls are kept as statements). Then locals of
+// the same type that are never live at the same time share one local.
+internal class AstLocalOptimizer(private val body: AstBody) {
+	companion object {
+		// The analysis is quadratic, very large bodies (like initializers of big tables) are left as they are
+		private const val MAX_STATEMENTS = 4000
+		private const val MAX_PASSES = 4
+	}
+
+	fun optimize(): AstBody {
+		val flat = body.stm.flattenOrNull() ?: return body
+		if (flat.isEmpty() || flat.size > MAX_STATEMENTS) return body
+
+		var stms = flat
+		for (n in 0 until MAX_PASSES) {
+			val propagated = propagateCopies(stms, AstLocalFlow(stms, body.traps))
+			val live = removeDeadStores(propagated, AstLocalFlow(propagated, body.traps))
+			if (live == stms) break
+			stms = live
+		}
+		stms = coalesce(stms, AstLocalFlow(stms, body.traps))
+		if (stms == flat) return body
+
+		val used = hashSetOf<AstLocal>()
+		val collector = object : AstVisitor() {
+			override fun visit(local: AstLocal) {
+				used.add(local)
+			}
+		}
+		for (stm in stms) collector.visit(stm)
+		return AstBody(AstStm.STMS(stms), body.locals.filter { it in used }, body.traps)
+	}
+
+	// Renames the locals read, keeping the ones written
+	private class Renamer(val renames: Map<AstLocal, AstLocal>) : AstTransformer() {
+		override fun transform(local: AstLocal): AstLocal = renames[local] ?: local
+
+		override fun transform(stm: AstStm): AstStm = when (stm) {
+			is AstStm.SET -> AstStm.SET(stm.local, transform(stm.expr))
+			is AstStm.SET_NEW_WITH_CONSTRUCTOR -> AstStm.SET_NEW_WITH_CONSTRUCTOR(stm.local, stm.target, stm.method, stm.args.map { transform(it) })
+			else -> super.transform(stm)
+		}
+	}
+
+	private fun propagateCopies(stms: List<AstStm>, flow: AstLocalFlow): List<AstStm> {
+		val out = ArrayList(stms)
+		for ((index, stm) in stms.withIndex()) {
+			val renames = hashMapOf<AstLocal, AstLocal>()
+			val holding = flow.copiesIn[index]
+			var n = holding.nextSetBit(0)
+			while (n >= 0) {
+				val (target, source) = flow.getCopy(flow.copies[n])
+				if (target in flow.uses[index] && target.type == source.type) renames[target] = source
+				n = holding.nextSetBit(n + 1)
+			}
+			if (renames.isNotEmpty()) out[index] = Renamer(renames).transform(stm)
+		}
+		return out
+	}
+
+	private fun removeDeadStores(stms: List<AstStm>, flow: AstLocalFlow): List<AstStm> {
+		val out = arrayListOf<AstStm>()
+		for ((index, stm) in stms.withIndex()) {
+			if (stm is AstStm.SET && stm.local !in flow.liveOut[index]) {
+				if (stm.expr is AstExpr.CALL_BASE) out.add(AstStm.STM_EXPR(stm.expr))
+				else if (!isPure(stm.expr)) out.add(stm)
+			} else {
+				out.add(stm)
+			}
+		}
+		return out
+	}
+
+	// Expressions that can't throw or change anything
+	private fun isPure(expr: AstExpr): Boolean = when (expr) {
+		is AstExpr.LITERAL, is AstExpr.LOCAL, is AstExpr.PARAM, is AstExpr.THIS, is AstExpr.CLASS_CONSTANT, is AstExpr.CAUGHT_EXCEPTION -> true
+		// Integer division by zero throws
+		is AstExpr.BINOP -> {
+			val throws = (expr.op == AstBinop.DIV || expr.op == AstBinop.REM) && expr.type != AstType.FLOAT && expr.type != AstType.DOUBLE
+			!throws && isPure(expr.left) && isPure(expr.right)
+		}
+		is AstExpr.UNOP -> isPure(expr.right)
+		is AstExpr.CAST -> expr.to is AstType.Primitive && expr.from is AstType.Primitive && isPure(expr.expr)
+		is AstExpr.INSTANCE_OF -> isPure(expr.expr)
+		else -> false
+	}
+
+	private fun coalesce(stms: List<AstStm>, flow: AstLocalFlow): List<AstStm> {
+		val interferences = hashMapOf<AstLocal, HashSet<AstLocal>>()
+		for ((index, stm) in stms.withIndex()) {
+			val def = flow.defs[index] ?: continue
+			// a = b doesn't make a and b different
+			val copied = ((stm as? AstStm.SET)?.expr as? AstExpr.LOCAL)?.local
+			for (live in flow.liveOut[index]) {
+				if (live == def || live == copied) continue
+				interferences.getOrPut(def) { hashSetOf() }.add(live)
+				interferences.getOrPut(live) { hashSetOf() }.add(def)
+			}
+		}
+
+		// Locals read before being written rely on their default value, so they keep their own
+		val initial = flow.liveIn[0]
+		val groups = arrayListOf<ArrayList<AstLocal>>()
+		val renames = hashMapOf<AstLocal, AstLocal>()
+		for (local in body.locals) {
+			if (local in initial) continue
+			val others = interferences[local] ?: hashSetOf<AstLocal>()
+			val group = groups.firstOrNull { it[0].type == local.type && it.none { member -> member in others } }
+			if (group != null) {
+				group.add(local)
+				renames[local] = group[0]
+			} else {
+				groups.add(arrayListOf(local))
+			}
+		}
+		if (renames.isEmpty()) return stms
+
+		val renamer = object : AstTransformer() {
+			override fun transform(local: AstLocal): AstLocal = renames[local] ?: local
+		}
+		return stms.map { renamer.transform(it) }.filter { !(it is AstStm.SET && it.expr is AstExpr.LOCAL && it.expr.local == it.local) }
+	}
+}
@@ -16,7 +16,385 @@
 
 package com.jtransc.ast.feature
 
-import com.jtransc.ast.AstFeature
+import com.jtransc.ast.*
+import java.util.*
 
 object OptimizeFeature : AstFeature() {
-}
\ No newline at end of file
+	override fun add(body: AstBody): AstBody = AstLocalOptimizer(AstOptimizer(body).optimize()).optimize()
+}
+
+// Constant folding and propagation over the flat bodies of the frontends (labels and gotos).
+//
+// Locals with a single definition are replaced by their value when it is a constant, a parameter, this, or another
+// local with a single definition. Bytecode is verified to assign locals before reading them, so that definition
+// runs before every read and nothing can change the value in between. Then conditional gotos with constant
+// conditions become gotos, code that can't be reached is removed, and so are the labels nothing jumps to.
+// Bodies with structured statements just get their expressions folded.
+internal class AstOptimizer(private val body: AstBody) {
+	companion object {
+		private const val MAX_PASSES = 8
+	}
+
+	fun optimize(): AstBody {
+		val flat = body.stm.flattenOrNull() ?: return AstBody(Folder(mapOf()).transform(body.stm), body.locals, body.traps)
+		var stms = flat
+		var traps = body.traps
+		for (n in 0 until MAX_PASSES) {
+			val propagated = propagate(stms)
+			val simplified = simplifyBranches(propagated)
+			val reachable = removeUnreachable(simplified, traps)
+			if (reachable.first == stms && reachable.second == traps) break
+			stms = reachable.first
+			traps = reachable.second
+		}
+		if (stms == flat && traps == body.traps) return body
+
+		val used = hashSetOf<AstLocal>()
+		val collector = object : AstTransformer() {
+			override fun transform(local: AstLocal): AstLocal {
+				used.add(local)
+				return local
+			}
+		}
+		for (stm in stms) collector.transform(stm)
+		return AstBody(AstStm.STMS(stms), body.locals.filter { it in used }, traps)
+	}
+
+	private fun propagate(stms: List<AstStm>): List<AstStm> {
+		val definitions = hashMapOf<AstLocal, Int>()
+		val arrayTargets = hashSetOf<AstLocal>()
+		val values = hashMapOf<AstLocal, AstExpr>()
+		for (stm in stms) {
+			when (stm) {
+				is AstStm.SET -> definitions[stm.local] = (definitions[stm.local] ?: 0) + 1
+				is AstStm.SET_NEW_WITH_CONSTRUCTOR -> definitions[stm.local] = (definitions[stm.local] ?: 0) + 1
+				is AstStm.SET_ARRAY -> arrayTargets.add(stm.local)
+			}
+		}
+		for (stm in stms) {
+			if (stm !is AstStm.SET || definitions[stm.local] != 1 || stm.expr.type != stm.local.type) continue
+			val expr = stm.expr
+			val propagable = when (expr) {
+				is AstExpr.LITERAL -> expr.value != null
+				is AstExpr.PARAM, is AstExpr.THIS -> true
+				is AstExpr.LOCAL -> expr.local != stm.local && definitions[expr.local] == 1
+				else -> false
+			}
+			// SET_ARRAY needs a local, so only copies of other locals can replace it there
+			if (propagable && (stm.local !in arrayTargets || expr is AstExpr.LOCAL)) values[stm.local] = expr
+		}
+
+		// Copies of copies end up with the original value
+		fun resolve(local: AstLocal, depth: Int): AstExpr? {
+			val value = values[local] ?: return null
+			if (value is AstExpr.LOCAL && value.local in values && depth < values.size) return resolve(value.local, depth + 1) ?: value
+			return value
+		}
+		val resolved = values.keys.map { Pair(it, resolve(it, 0)!!) }.toMap()
+		// Array targets must keep being locals after resolving the copies
+		val replacements = resolved.filter { it.key !in arrayTargets || it.value is AstExpr.LOCAL }
+
+		val folder = Folder(replacements)
+		return stms.filter { !(it is AstStm.SET && it.local in replacements) }.map { folder.transform(it) }
+	}
+
+	private fun simplifyBranches(stms: List<AstStm>): List<AstStm> {
+		val out = arrayListOf<AstStm>()
+		for (stm in stms) {
+			when {
+				stm is AstStm.IF_GOTO && stm.cond is AstExpr.LITERAL && stm.cond.value is Boolean -> if (stm.cond.value == true) out.add(AstStm.GOTO(stm.label))
+				stm is AstStm.SWITCH_GOTO && stm.subject is AstExpr.LITERAL && stm.subject.value is Int -> {
+					val value = stm.subject.value
+					out.add(AstStm.GOTO(stm.cases.firstOrNull { it.first == value }?.second ?: stm.default))
+				}
+				else -> out.add(stm)
+			}
+		}
+		// Gotos to the labels right after them
+		return out.filterIndexed { index, stm ->
+			if (stm is AstStm.GOTO) {
+				var next = index + 1
+				while (next < out.size && out[next] is AstStm.STM_LABEL && (out[next] as AstStm.STM_LABEL).label != stm.label) next++
+				!(next < out.size && out[next] == AstStm.STM_LABEL(stm.label))
+			} else {
+				true
+			}
+		}
+	}
+
+	private fun removeUnreachable(stms: List<AstStm>, traps: List<AstTrap>): Pair<List<AstStm>, List<AstTrap>> {
+		val labels = hashMapOf<AstLabel, Int>()
+		for ((index, stm) in stms.withIndex()) if (stm is AstStm.STM_LABEL) labels[stm.label] = index
+		fun isInside(trap: AstTrap, index: Int): Boolean {
+			val start = labels[trap.start] ?: return false
+			val end = labels[trap.end] ?: stms.size
+			return index >= start && index < end
+		}
+
+		val reachable = BooleanArray(stms.size)
+		val queue = LinkedList<Int>()
+		fun reach(index: Int?) {
+			if (index != null && index < stms.size && !reachable[index]) {
+				reachable[index] = true
+				queue.add(index)
+			}
+		}
+		reach(0)
+		while (queue.isNotEmpty()) {
+			val index = queue.removeFirst()
+			val stm = stms[index]
+			when (stm) {
+				is AstStm.GOTO -> reach(labels[stm.label])
+				is AstStm.IF_GOTO -> {
+					reach(labels[stm.label])
+					reach(index + 1)
+				}
+				is AstStm.SWITCH_GOTO -> {
+					reach(labels[stm.default])
+					for (case in stm.cases) reach(labels[case.second])
+				}
+				is AstStm.RETURN, is AstStm.THROW, is AstStm.RETHROW -> Unit
+				else -> reach(index + 1)
+			}
+			for (trap in traps) if (isInside(trap, index)) reach(labels[trap.handler])
+		}
+
+		// Labels are kept in place while something refers to them, so trap ranges stay the same
+		val kept = stms.filterIndexed { index, stm -> stm is AstStm.STM_LABEL || reachable[index] }
+		val keptTraps = traps.filter { trap -> stms.indices.any { reachable[it] && stms[it] !is AstStm.STM_LABEL && isInside(trap, it) } }
+		val targets = hashSetOf<AstLabel>()
+		for (stm in kept) {
+			when (stm) {
+				is AstStm.GOTO -> targets.add(stm.label)
+				is AstStm.IF_GOTO -> targets.add(stm.label)
+				is AstStm.SWITCH_GOTO -> {
+					targets.add(stm.default)
+					for (case in stm.cases) targets.add(case.second)
+				}
+			}
+		}
+		for (trap in keptTraps) targets.addAll(listOf(trap.start, trap.end, trap.handler))
+		return Pair(kept.filter { it !is AstStm.STM_LABEL || it.label in targets }, keptTraps)
+	}
+
+	// Replaces the propagated locals and folds the constant expressions, with the semantics of the JVM
+	private class Folder(val values: Map<AstLocal, AstExpr>) : AstTransformer() {
+		override fun transform(local: AstLocal): AstLocal = (values[local] as? AstExpr.LOCAL)?.local ?: local
+
+		override fun transform(expr: AstExpr): AstExpr {
+			if (expr is AstExpr.LOCAL) return values[expr.local] ?: expr
+			val out = super.transform(expr)
+			val folded = when (out) {
+				is AstExpr.BINOP -> fold(out)
+				is AstExpr.UNOP -> fold(out)
+				is AstExpr.CAST -> fold(out)
+				else -> null
+			}
+			return folded ?: out
+		}
+
+		override fun transform(stm: AstStm): AstStm {
+			val out = super.transform(stm)
+			if (out is AstStm.IF && out.cond is AstExpr.LITERAL && out.cond.value is Boolean) {
+				return if (out.cond.value == true) out.strue else out.sfalse ?: AstStm.NOP()
+			}
+			return out
+		}
+
+		private fun literal(value: Any?, type: AstType): AstExpr? = when (type) {
+			AstType.BOOL -> if (value is Boolean) AstExpr.LITERAL(value) else null
+			AstType.INT -> if (value is Int) AstExpr.LITERAL(value) else null
+			AstType.LONG -> if (value is Long) AstExpr.LITERAL(value) else null
+			AstType.FLOAT -> if (value is Float) AstExpr.LITERAL(value) else null
+			AstType.DOUBLE -> if (value is Double) AstExpr.LITERAL(value) else null
+			else -> null
+		}
+
+		private fun Any?.toIntValue(): Int? = when (this) {
+			is Int -> this
+			is Short -> this.toInt()
+			is Byte -> this.toInt()
+			is Char -> this.toInt()
+			is Boolean -> if (this) 1 else 0
+			else -> null
+		}
+
+		private fun Any?.toLongValue(): Long? = if (this is Long) this else this.toIntValue()?.toLong()
+
+		private fun Any?.toFloatValue(): Float? = when (this) {
+			is Float -> this
+			is Long -> this.toFloat()
+			else -> this.toIntValue()?.toFloat()
+		}
+
+		private fun Any?.toDoubleValue(): Double? = when (this) {
+			is Double -> this
+			is Float -> this.toDouble()
+			is Long -> this.toDouble()
+			else -> this.toIntValue()?.toDouble()
+		}
+
+		// -1, 0 or 1, or null when a value is NaN
+		private fun compare(a: Double, b: Double): Int? = if (a.isNaN() || b.isNaN()) null else if (a < b) -1 else if (a > b) 1 else 0
+
+		private fun compare(a: Long, b: Long): Int = if (a < b) -1 else if (a > b) 1 else 0
+
+		private fun isFloating(type: AstType) = type == AstType.FLOAT || type == AstType.DOUBLE
+
+		private fun fold(e: AstExpr.BINOP): AstExpr? {
+			val left = (e.left as? AstExpr.LITERAL)?.value ?: return null
+			val right = (e.right as? AstExpr.LITERAL)?.value ?: return null
+			val value: Any? = when (e.op) {
+				AstBinop.EQ, AstBinop.NE, AstBinop.LT, AstBinop.LE, AstBinop.GT, AstBinop.GE -> {
+					val leftType = e.left.type
+					val rightType = e.right.type
+					val result = if (isFloating(leftType) || isFloating(rightType)) {
+						compare(left.toDoubleValue() ?: return null, right.toDoubleValue() ?: return null)
+					} else if (leftType == AstType.LONG || rightType == AstType.LONG) {
+						compare(left.toLongValue() ?: return null, right.toLongValue() ?: return null)
+					} else {
+						compare((left.toIntValue() ?: return null).toLong(), (right.toIntValue() ?: return null).toLong())
+					}
+					// Comparisons with NaN are false, except !=
+					if (result == null) {
+						e.op == AstBinop.NE
+					} else when (e.op) {
+						AstBinop.EQ -> result == 0
+						AstBinop.NE -> result != 0
+						AstBinop.LT -> result < 0
+						AstBinop.LE -> result <= 0
+						AstBinop.GT -> result > 0
+						else -> result >= 0
+					}
+				}
+				AstBinop.LCMP -> compare(left.toLongValue() ?: return null, right.toLongValue() ?: return null)
+				AstBinop.CMPL, AstBinop.CMPG -> {
+					compare(left.toDoubleValue() ?: return null, right.toDoubleValue() ?: return null) ?: if (e.op == AstBinop.CMPL) -1 else 1
+				}
+				AstBinop.BAND -> if (left is Boolean && right is Boolean) left && right else null
+				AstBinop.BOR -> if (left is Boolean && right is Boolean) left || right else null
+				else -> when (e.type) {
+					AstType.BOOL -> {
+						if (left !is Boolean || right !is Boolean) return null
+						when (e.op) {
+							AstBinop.AND -> left and right
+							AstBinop.OR -> left or right
+							AstBinop.XOR -> left xor right
+							else -> null
+						}
+					}
+					AstType.INT -> {
+						val a = left.toIntValue() ?: return null
+						val b = right.toIntValue() ?: return null
+						when (e.op) {
+							AstBinop.ADD -> a + b
+							AstBinop.SUB -> a - b
+							AstBinop.MUL -> a * b
+							// Division by zero throws at runtime
+							AstBinop.DIV -> if (b != 0) a / b else null
+							AstBinop.REM -> if (b != 0) a % b else null
+							AstBinop.AND -> a and b
+							AstBinop.OR -> a or b
+							AstBinop.XOR -> a xor b
+							AstBinop.SHL -> a shl b
+							AstBinop.SHR -> a shr b
+							AstBinop.USHR -> a ushr b
+							else -> null
+						}
+					}
+					AstType.LONG -> {
+						val a = left.toLongValue() ?: return null
+						when (e.op) {
+							AstBinop.SHL -> a shl (right.toIntValue() ?: return null)
+							AstBinop.SHR -> a shr (right.toIntValue() ?: return null)
+							AstBinop.USHR -> a ushr (right.toIntValue() ?: return null)
+							else -> {
+								val b = right.toLongValue() ?: return null
+								when (e.op) {
+									AstBinop.ADD -> a + b
+									AstBinop.SUB -> a - b
+									AstBinop.MUL -> a * b
+									AstBinop.DIV -> if (b != 0L) a / b else null
+									AstBinop.REM -> if (b != 0L) a % b else null
+									AstBinop.AND -> a and b
+									AstBinop.OR -> a or b
+									AstBinop.XOR -> a xor b
+									else -> null
+								}
+							}
+						}
+					}
+					AstType.FLOAT -> {
+						val a = left.toFloatValue() ?: return null
+						val b = right.toFloatValue() ?: return null
+						when (e.op) {
+							AstBinop.ADD -> a + b
+							AstBinop.SUB -> a - b
+							AstBinop.MUL -> a * b
+							AstBinop.DIV -> a / b
+							AstBinop.REM -> a % b
+							else -> null
+						}
+					}
+					AstType.DOUBLE -> {
+						val a = left.toDoubleValue() ?: return null
+						val b = right.toDoubleValue() ?: return null
+						when (e.op) {
+							AstBinop.ADD -> a + b
+							AstBinop.SUB -> a - b
+							AstBinop.MUL -> a * b
+							AstBinop.DIV -> a / b
+							AstBinop.REM -> a % b
+							else -> null
+						}
+					}
+					else -> null
+				}
+			}
+			return literal(value, e.type)
+		}
+
+		private fun fold(e: AstExpr.UNOP): AstExpr? {
+			val value = (e.right as? AstExpr.LITERAL)?.value ?: return null
+			val result: Any? = when (e.op) {
+				AstUnop.NEG -> when (value) {
+					is Int -> -value
+					is Long -> -value
+					is Float -> -value
+					is Double -> -value
+					else -> null
+				}
+				AstUnop.NOT -> if (value is Boolean) !value else null
+				AstUnop.INV -> when (value) {
+					is Int -> value.inv()
+					is Long -> value.inv()
+					else -> null
+				}
+			}
+			return literal(result, e.type)
+		}
+
+		private fun fold(e: AstExpr.CAST): AstExpr? {
+			val value = (e.expr as? AstExpr.LITERAL)?.value ?: return null
+			if (value is Boolean || value is String) return null
+			// Same conversions as i2l, d2i, l2f... (NaN to 0, saturating float to integer conversions)
+			val result: Any? = when (e.to) {
+				AstType.INT -> when (value) {
+					is Long -> value.toInt()
+					is Float -> value.toInt()
+					is Double -> value.toInt()
+					else -> value.toIntValue()
+				}
+				AstType.LONG -> when (value) {
+					is Float -> value.toLong()
+					is Double -> value.toLong()
+					else -> value.toLongValue()
+				}
+				AstType.FLOAT -> if (value is Double) value.toFloat() else value.toFloatValue()
+				AstType.DOUBLE -> value.toDoubleValue()
+				else -> null
+			}
+			return literal(result, e.to)
+		}
+	}
+}
@@ -0,0 +1,530 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jtransc.ast.feature
+
+import com.jtransc.ast.*
+import com.jtransc.error.invalidOp
+import java.util.*
+
+// Rebuilds structured control flow (while, if, break, continue) from a flat body with labels and gotos.
+//
+// Based on the Relooper algorithm from the Emscripten paper (Alon Zakai, 2011): blocks are grouped in simple,
+// loop and multiple shapes. Reducible flow ends up as plain loops and ifs, irreducible regions become loops that
+// dispatch on the label local. Haxe has no labelled break/continue, so a jump that leaves several loops stores its
+// target in the label local, breaks the innermost one and is dispatched again after every loop it leaves.
+internal class Relooper(private val body: AstBody) {
+	private val label = AstLocal(-1, "G", AstType.INT)
+	private val blocks = arrayListOf<Block>()
+	private val blocksByLabel = hashMapOf<AstLabel, Block>()
+
+	private val wrapped = hashSetOf<MultipleShape>()
+	private val labeled = hashSetOf<Shape>()
+	private val needsWrapper = hashSetOf<MultipleShape>()
+	private val escaped = hashSetOf<Shape>()
+	private val escapes = hashMapOf<Shape, ArrayList<Escape>>()
+	private var usesLabel = false
+
+	private class Block(val index: Int) {
+		val stms = arrayListOf<AstStm>()
+		// IF_GOTO, GOTO or SWITCH_GOTO
+		var exit: AstStm? = null
+		var fallthrough: Block? = null
+		val traps = arrayListOf<AstTrap>()
+		val successors = arrayListOf<Block>()
+		val branchesOut = linkedSetOf<Block>()
+		val branchesIn = linkedSetOf<Block>()
+		val exits = hashMapOf<Block, Exit>()
+	}
+
+	private abstract class Shape {
+		var next: Shape? = null
+	}
+
+	private class SimpleShape(val block: Block) : Shape()
+
+	private class LoopShape : Shape() {
+		var inner: Shape? = null
+	}
+
+	private class MultipleShape : Shape() {
+		val handled = linkedMapOf<Block, Shape>()
+	}
+
+	private enum class ExitKind { DIRECT, BREAK, CONTINUE }
+
+	// DIRECT exits go from a simple shape to its next shape, BREAK exits leave a loop or a multiple and
+	// CONTINUE exits go back to the entries of a loop.
+	private data class Exit(val kind: ExitKind, val shape: Shape)
+
+	private data class Escape(val target: Block, val exit: Exit)
+
+	// breakables: loops and wrapped multiples around the current point, innermost last.
+	// tails: exits reached just by falling off the end of the current code, with the breakables depth they belong to.
+	private class Context(val breakables: List<Shape>, val tails: Map<Exit, Int>)
+
+	init {
+		val stms = arrayListOf<AstStm>()
+		flatten(body.stm, stms)
+		split(stms)
+		for (trap in body.traps) {
+			val start = blocksByLabel[trap.start]?.index ?: continue
+			val end = blocksByLabel[trap.end]?.index ?: blocks.size
+			for (n in start until end) blocks[n].traps.add(trap)
+		}
+		for (block in blocks) computeSuccessors(block)
+	}
+
+	fun reloop(): AstBody {
+		val entry = blocks[0]
+		val reachable = linkedSetOf(entry)
+		val queue = LinkedList<Block>()
+		queue.add(entry)
+		while (queue.isNotEmpty()) {
+			for (target in queue.removeFirst().successors) if (reachable.add(target)) queue.add(target)
+		}
+		for (block in reachable) {
+			for (target in block.successors) {
+				block.branchesOut.add(target)
+				target.branchesIn.add(block)
+			}
+		}
+
+		val root = calculate(HashSet(reachable), listOf(entry))
+
+		// Which multiples need a wrapping loop and which breakables must always set the label is only known
+		// after rendering, so render again until nothing new is found.
+		while (true) {
+			needsWrapper.clear()
+			escaped.clear()
+			escapes.clear()
+			usesLabel = false
+			val out = render(root, Context(listOf(), mapOf()))
+			if (wrapped.containsAll(needsWrapper) && labeled.containsAll(escaped)) {
+				return AstBody(out.stms, if (usesLabel) body.locals + label else body.locals, body.traps)
+			}
+			wrapped.addAll(needsWrapper)
+			labeled.addAll(escaped)
+		}
+	}
+
+	private fun flatten(stm: AstStm, out: ArrayList<AstStm>) {
+		if (stm is AstStm.STMS) {
+			for (s in stm.stms) flatten(s, out)
+		} else {
+			out.add(stm)
+		}
+	}
+
+	private fun newBlock(): Block {
+		val block = Block(blocks.size)
+		blocks.add(block)
+		return block
+	}
+
+	private fun split(stms: List<AstStm>) {
+		var current = newBlock()
+		var ended = false
+		for (stm in stms) {
+			if (stm is AstStm.STM_LABEL) {
+				if (ended || current.stms.isNotEmpty()) {
+					val block = newBlock()
+					if (!ended) current.fallthrough = block
+					current = block
+					ended = false
+				}
+				blocksByLabel[stm.label] = current
+				continue
+			}
+			if (ended) {
+				// Unreachable code after a jump
+				current = newBlock()
+				ended = false
+			}
+			when (stm) {
+				is AstStm.IF_GOTO -> {
+					current.exit = stm
+					val block = newBlock()
+					current.fallthrough = block
+					current = block
+				}
+				is AstStm.GOTO, is AstStm.SWITCH_GOTO -> {
+					current.exit = stm
+					ended = true
+				}
+				is AstStm.RETURN, is AstStm.THROW, is AstStm.RETHROW -> {
+					current.stms.add(stm)
+					ended = true
+				}
+				else -> current.stms.add(stm)
+			}
+		}
+	}
+
+	private fun target(label: AstLabel): Block = blocksByLabel[label] ?: invalidOp("Unknown label $label")
+
+	private fun computeSuccessors(block: Block) {
+		fun add(target: Block?) {
+			if (target != null && target !in block.successors) block.successors.add(target)
+		}
+
+		val exit = block.exit
+		when (exit) {
+			is AstStm.IF_GOTO -> {
+				add(target(exit.label))
+				add(block.fallthrough)
+			}
+			is AstStm.GOTO -> add(target(exit.label))
+			is AstStm.SWITCH_GOTO -> {
+				add(target(exit.default))
+				for (case in exit.cases) add(target(case.second))
+			}
+			else -> add(block.fallthrough)
+		}
+		for (trap in block.traps) add(target(trap.handler))
+	}
+
+	//-----------------------------------------------------------------
+	// Shapes
+
+	private fun calculate(blocks: MutableSet<Block>, initialEntries: List<Block>): Shape? {
+		var first: Shape? = null
+		var last: Shape? = null
+		var entries = initialEntries
+		while (entries.isNotEmpty()) {
+			val shape: Shape
+			val entry = entries[0]
+			if (entries.size == 1 && entry.branchesIn.none { it in blocks }) {
+				val simple = SimpleShape(entry)
+				entries = makeSimple(blocks, simple)
+				shape = simple
+			} else {
+				val groups = if (entries.size > 1) independentGroups(blocks, entries) else listOf<Pair<Block, Set<Block>>>()
+				if (groups.isNotEmpty()) {
+					val multiple = MultipleShape()
+					entries = makeMultiple(blocks, entries, groups, multiple)
+					shape = multiple
+				} else {
+					val loop = LoopShape()
+					entries = makeLoop(blocks, entries, loop)
+					shape = loop
+				}
+			}
+			if (last == null) first = shape else last.next = shape
+			last = shape
+		}
+		return first
+	}
+
+	private fun process(from: Block, to: Block, exit: Exit) {
+		from.branchesOut.remove(to)
+		to.branchesIn.remove(from)
+		from.exits[to] = exit
+	}
+
+	private fun makeSimple(blocks: MutableSet<Block>, shape: SimpleShape): List<Block> {
+		val block = shape.block
+		blocks.remove(block)
+		val next = block.branchesOut.toList()
+		for (target in next) process(block, target, Exit(ExitKind.DIRECT, shape))
+		return next
+	}
+
+	private fun makeLoop(blocks: MutableSet<Block>, entries: List<Block>, shape: LoopShape): List<Block> {
+		// Everything that can go back to an entry is part of the loop
+		val inner = hashSetOf<Block>()
+		val queue = LinkedList<Block>(entries)
+		while (queue.isNotEmpty()) {
+			val block = queue.removeFirst()
+			if (inner.add(block)) {
+				for (prev in block.branchesIn) if (prev in blocks) queue.add(prev)
+			}
+		}
+		blocks.removeAll(inner)
+
+		val next = arrayListOf<Block>()
+		for (block in inner.sortedBy { it.index }) {
+			for (target in block.branchesOut.toList()) {
+				if (target in entries) {
+					process(block, target, Exit(ExitKind.CONTINUE, shape))
+				} else if (target !in inner) {
+					if (target !in next) next.add(target)
+					process(block, target, Exit(ExitKind.BREAK, shape))
+				}
+			}
+		}
+		shape.inner = calculate(inner, entries)
+		return next.sortedBy { it.index }
+	}
+
+	private fun reachableFrom(entry: Block, blocks: Set<Block>): Set<Block> {
+		val out = hashSetOf(entry)
+		val queue = LinkedList<Block>()
+		queue.add(entry)
+		while (queue.isNotEmpty()) {
+			for (target in queue.removeFirst().branchesOut) {
+				if (target in blocks && out.add(target)) queue.add(target)
+			}
+		}
+		return out
+	}
+
+	// For every entry, the blocks that can only be reached through it
+	private fun independentGroups(blocks: Set<Block>, entries: List<Block>): List<Pair<Block, Set<Block>>> {
+		// null marks blocks reachable from several entries
+		val owners = hashMapOf<Block, Block?>()
+		for (entry in entries) {
+			for (block in reachableFrom(entry, blocks)) owners[block] = if (block in owners) null else entry
+		}
+		return entries.filter { owners[it] == it }.map { entry -> Pair(entry, owners.filter { it.value == entry }.keys) }
+	}
+
+	private fun makeMultiple(blocks: MutableSet<Block>, entries: List<Block>, groups: List<Pair<Block, Set<Block>>>, shape: MultipleShape): List<Block> {
+		val next = arrayListOf<Block>()
+		for (entry in entries) if (groups.none { it.first == entry }) next.add(entry)
+		for (group in groups) blocks.removeAll(group.second)
+		for (group in groups) {
+			for (block in group.second.sortedBy { it.index }) {
+				for (target in block.branchesOut.toList()) {
+					if (target !in group.second) {
+						if (target !in next) next.add(target)
+						process(block, target, Exit(ExitKind.BREAK, shape))
+					}
+				}
+			}
+		}
+		for ((entry, group) in groups) shape.handled[entry] = calculate(HashSet(group), listOf(entry))!!
+		return next.sortedBy { it.index }
+	}
+
+	//-----------------------------------------------------------------
+	// Rendering
+
+	private fun render(shape: Shape?, ctx: Context): List<AstStm> {
+		val out = arrayListOf<AstStm>()
+		render(shape, ctx, out)
+		return out
+	}
+
+	private fun render(first: Shape?, ctx: Context, out: ArrayList<AstStm>) {
+		var shape = first
+		while (shape != null) {
+			val current: Shape = shape
+			var following = current.next
+			val here = if (following == null) ctx else Context(ctx.breakables, mapOf())
+			when (current) {
+				is SimpleShape -> {
+					val next = current.next
+					if (next is MultipleShape && canFuse(current.block)) {
+						renderFused(current.block, next, ctx, out)
+						following = next.next
+					} else {
+						renderBlock(current.block, here, out)
+					}
+				}
+				is LoopShape -> {
+					val tails = mapOf(Exit(ExitKind.CONTINUE, current) to ctx.breakables.size + 1)
+					val body = render(current.inner, Context(ctx.breakables + current, tails))
+					out.add(AstStm.WHILE(true.lit, body.stms))
+					afterBreakable(current, here, out)
+				}
+				is MultipleShape -> {
+					val groupCtx = groupContext(current, ctx)
+					val rendered = current.handled.map { Pair(it.key, render(it.value, groupCtx).stms) }
+					var code: AstStm? = null
+					for ((entry, stm) in rendered.reversed()) {
+						code = if (code == null && current.next == null) stm else AstStm.IF(labelIs(entry), stm, code)
+					}
+					wrap(current, listOf(code!!), ctx, out)
+				}
+			}
+			shape = following
+		}
+	}
+
+	private fun groupContext(shape: MultipleShape, ctx: Context): Context {
+		val tails = if (shape.next == null) HashMap(ctx.tails) else hashMapOf<Exit, Int>()
+		tails[Exit(ExitKind.BREAK, shape)] = ctx.breakables.size
+		return Context(if (shape in wrapped) ctx.breakables + shape else ctx.breakables, tails)
+	}
+
+	// A multiple left from the middle of one of its groups is wrapped in a loop that runs once
+	private fun wrap(shape: MultipleShape, code: List<AstStm>, ctx: Context, out: ArrayList<AstStm>) {
+		if (shape in wrapped) {
+			out.add(AstStm.WHILE(true.lit, (code + AstStm.BREAK()).stms))
+			afterBreakable(shape, if (shape.next == null) ctx else Context(ctx.breakables, mapOf()), out)
+		} else {
+			out.addAll(code)
+		}
+	}
+
+	// Dispatches the jumps that left several breakables at once
+	private fun afterBreakable(shape: Shape, ctx: Context, out: ArrayList<AstStm>) {
+		val list = escapes.remove(shape) ?: return
+		for (escape in list) {
+			val stms = jump(escape.target, escape.exit, ctx, labelSet = true)
+			if (stms.isNotEmpty()) out.add(AstStm.IF(labelIs(escape.target), stms.stms))
+		}
+	}
+
+	// A simple block ending in a two way branch followed by a multiple becomes a plain if/else
+	private fun canFuse(block: Block): Boolean {
+		return block.traps.isEmpty() && block.exit is AstStm.IF_GOTO && block.successors.size == 2
+	}
+
+	private fun renderFused(block: Block, next: MultipleShape, ctx: Context, out: ArrayList<AstStm>) {
+		val exit = block.exit as AstStm.IF_GOTO
+		val groupCtx = groupContext(next, ctx)
+
+		fun branch(target: Block): List<AstStm> {
+			val handled = next.handled[target]
+			if (handled != null) return render(handled, groupCtx)
+			val blockExit = block.exits[target]!!
+			// Targets not handled by the multiple are reached by falling out of it
+			return jump(target, if (blockExit.kind == ExitKind.DIRECT) Exit(ExitKind.BREAK, next) else blockExit, groupCtx, labelSet = false)
+		}
+
+		out.addAll(block.stms)
+		val strue = branch(target(exit.label))
+		val sfalse = branch(block.fallthrough!!)
+		wrap(next, conditional(exit.cond, strue, sfalse), ctx, out)
+	}
+
+	private fun renderBlock(block: Block, ctx: Context, out: ArrayList<AstStm>) {
+		if (block.traps.isEmpty()) {
+			out.addAll(block.stms)
+			out.addAll(terminator(block, ctx))
+			return
+		}
+
+		// Only this block is protected, so the jumps are decided inside the try and done once it has been left
+		var handler: AstStm = AstStm.RETHROW
+		for (trap in block.traps.reversed()) {
+			handler = AstStm.IF(AstExpr.CAUGHT_EXCEPTION() instanceof trap.exception, setLabel(target(trap.handler)), handler)
+		}
+		out.add(AstStm.TRY_CATCH((block.stms + labelTerminator(block)).stms, handler))
+		out.addAll(dispatch(block, ctx))
+	}
+
+	private fun terminator(block: Block, ctx: Context): List<AstStm> {
+		val exit = block.exit
+		return when (exit) {
+			is AstStm.IF_GOTO -> {
+				val strue = target(exit.label)
+				val sfalse = block.fallthrough!!
+				if (strue == sfalse) jump(block, strue, ctx) else conditional(exit.cond, jump(block, strue, ctx), jump(block, sfalse, ctx))
+			}
+			is AstStm.GOTO -> jump(block, target(exit.label), ctx)
+			is AstStm.SWITCH_GOTO -> listOf(switchToLabel(exit)) + dispatch(block, ctx)
+			else -> {
+				val fallthrough = block.fallthrough
+				if (fallthrough != null) jump(block, fallthrough, ctx) else listOf<AstStm>()
+			}
+		}
+	}
+
+	private fun labelTerminator(block: Block): List<AstStm> {
+		val exit = block.exit
+		return when (exit) {
+			is AstStm.IF_GOTO -> conditional(exit.cond, listOf(setLabel(target(exit.label))), listOf(setLabel(block.fallthrough!!)))
+			is AstStm.GOTO -> listOf(setLabel(target(exit.label)))
+			is AstStm.SWITCH_GOTO -> listOf(switchToLabel(exit))
+			else -> {
+				val fallthrough = block.fallthrough
+				if (fallthrough != null) listOf(setLabel(fallthrough)) else listOf<AstStm>()
+			}
+		}
+	}
+
+	// Switch cases only set the label: a break inside a Haxe switch wouldn't leave the enclosing loop everywhere
+	private fun switchToLabel(exit: AstStm.SWITCH_GOTO): AstStm {
+		return AstStm.SWITCH(exit.subject, setLabel(target(exit.default)), exit.cases.map { Pair(it.first, setLabel(target(it.second))) })
+	}
+
+	private fun dispatch(block: Block, ctx: Context): List<AstStm> {
+		val out = arrayListOf<AstStm>()
+		for (target in block.successors) {
+			val stms = jump(target, block.exits[target]!!, ctx, labelSet = true)
+			if (stms.isNotEmpty()) out.add(AstStm.IF(labelIs(target), stms.stms))
+		}
+		return out
+	}
+
+	// Frontends keep IF_GOTO conditions side effect free (the ASM one stores the others in a local first), so an if
+	// without branches can be dropped
+	private fun conditional(cond: AstExpr, strue: List<AstStm>, sfalse: List<AstStm>): List<AstStm> = when {
+		strue.isEmpty() && sfalse.isEmpty() -> listOf<AstStm>()
+		strue.isEmpty() -> listOf(AstStm.IF(AstExpr.UNOP(AstUnop.NOT, cond), sfalse.stms))
+		sfalse.isEmpty() -> listOf(AstStm.IF(cond, strue.stms))
+		else -> listOf(AstStm.IF(cond, strue.stms, sfalse.stms))
+	}
+
+	private fun jump(block: Block, target: Block, ctx: Context): List<AstStm> {
+		return jump(target, block.exits[target]!!, ctx, labelSet = false)
+	}
+
+	private fun jump(target: Block, exit: Exit, ctx: Context, labelSet: Boolean): List<AstStm> {
+		val shape = exit.shape
+		var needsLabel = readsLabel(if (exit.kind == ExitKind.CONTINUE) (shape as LoopShape).inner else shape.next)
+		var control: AstStm? = null
+		val tailDepth = ctx.tails[exit]
+
+		if (exit.kind == ExitKind.DIRECT) {
+			// Falls into the next shape
+		} else if (tailDepth != null) {
+			// Falls out of the wrappers opened since the destination, which may be followed by dispatches
+			if (ctx.breakables.drop(tailDepth).any { it in labeled }) needsLabel = true
+		} else {
+			if (exit.kind == ExitKind.BREAK && shape is MultipleShape && shape !in wrapped) needsWrapper.add(shape)
+			val innermost = ctx.breakables.lastOrNull()
+			if (innermost == shape) {
+				if (exit.kind == ExitKind.BREAK && shape in labeled) needsLabel = true
+				control = if (exit.kind == ExitKind.BREAK) AstStm.BREAK() else AstStm.CONTINUE()
+			} else if (innermost == null) {
+				// Only before the wrappers are known, the next pass wraps the multiple
+				control = AstStm.BREAK()
+			} else {
+				needsLabel = true
+				escaped.add(innermost)
+				val list = escapes.getOrPut(innermost) { arrayListOf() }
+				val escape = Escape(target, exit)
+				if (escape !in list) list.add(escape)
+				control = AstStm.BREAK()
+			}
+		}
+
+		val out = arrayListOf<AstStm>()
+		if (needsLabel && !labelSet) out.add(setLabel(target))
+		if (control != null) out.add(control)
+		return out
+	}
+
+	private fun readsLabel(shape: Shape?): Boolean = when (shape) {
+		is LoopShape -> readsLabel(shape.inner)
+		is MultipleShape -> true
+		else -> false
+	}
+
+	private fun setLabel(target: Block): AstStm {
+		usesLabel = true
+		return AstStm.SET(label, target.index.lit)
+	}
+
+	private fun labelIs(target: Block): AstExpr {
+		usesLabel = true
+		return AstExpr.BINOP(AstType.BOOL, label.expr, AstBinop.EQ, target.index.lit)
+	}
+}
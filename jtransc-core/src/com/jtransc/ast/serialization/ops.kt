@@ -17,7 +17,35 @@ object AstExprOp {
 	const val LIT_INT_BYTE = 13
 	const val LIT_INT_SHORT = 14
 	const val LIT_INT_INT = 15
+	const val LIT_LONG = 16
+	const val LIT_FLOAT = 17
+	const val LIT_DOUBLE = 18
+	const val LIT_STRING = 19
+	const val LIT_CHAR = 20
 
+	const val CLASS_CONSTANT = 30
+	const val LOCAL = 31
+	const val PARAM = 32
+	const val CAUGHT_EXCEPTION = 33
+	const val CALL_INSTANCE = 34
+	const val CALL_SUPER = 35
+	const val CALL_STATIC = 36
+	const val ARRAY_LENGTH = 37
+	const val ARRAY_ACCESS = 38
+	const val INSTANCE_FIELD_ACCESS = 39
+	const val STATIC_FIELD_ACCESS = 40
+	const val INSTANCE_OF = 41
+	const val CAST = 42
+	const val NEW = 43
+	const val NEW_WITH_CONSTRUCTOR = 44
+	const val NEW_ARRAY = 45
+	const val METHOD_CLASS = 46
+
+	const val UN_NEG = 90
+	const val UN_NOT = 91
+	const val UN_INV = 92
+
+	// BIN_* and UN_* follow the order of AstBinop and AstUnop
 	const val BIN_ADD = 100
 	const val BIN_SUB = 101
 	const val BIN_MUL = 102
@@ -27,8 +55,95 @@ object AstExprOp {
 	const val BIN_AND = 105
 	const val BIN_OR = 106
 	const val BIN_XOR = 107
+
+	const val BIN_SHL = 108
+	const val BIN_SHR = 109
+	const val BIN_USHR = 110
+
+	const val BIN_BAND = 111
+	const val BIN_BOR = 112
+
+	const val BIN_EQ = 113
+	const val BIN_NE = 114
+	const val BIN_GE = 115
+	const val BIN_LE = 116
+	const val BIN_LT = 117
+	const val BIN_GT = 118
+
+	const val BIN_LCMP = 119
+	const val BIN_CMP = 120
+	const val BIN_CMPL = 121
+	const val BIN_CMPG = 122
 }
 
 object AstStmOp {
 	const val EXPR = 0
+	const val STMS = 1
+	const val NOP = 2
+	const val SET = 3
+	const val SET_ARRAY = 4
+	const val SET_FIELD_STATIC = 5
+	const val SET_FIELD_INSTANCE = 6
+	const val SET_NEW_WITH_CONSTRUCTOR = 7
+	const val IF = 8
+	const val IF_ELSE = 9
+	const val WHILE = 10
+	const val RETURN = 11
+	const val RETURN_VOID = 12
+	const val THROW = 13
+	const val RETHROW = 14
+	const val TRY_CATCH = 15
+	const val BREAK = 16
+	const val CONTINUE = 17
+	const val SWITCH = 18
+	const val STM_LABEL = 19
+	const val IF_GOTO = 20
+	const val SWITCH_GOTO = 21
+	const val GOTO = 22
+	const val MONITOR_ENTER = 23
+	const val MONITOR_EXIT = 24
+}
+
+object AstTypeOp {
+	const val VOID = 0
+	const val BOOL = 1
+	const val BYTE = 2
+	const val CHAR = 3
+	const val SHORT = 4
+	const val INT = 5
+	const val LONG = 6
+	const val FLOAT = 7
+	const val DOUBLE = 8
+	const val NULL = 9
+	const val UNKNOWN = 10
+	const val REF = 11
+	const val ARRAY = 12
+	const val METHOD = 13
+	// Generic types, stored as their signature
+	const val SIGNATURE = 14
+}
+
+// Annotation elements, default values and field constants
+object AstValueOp {
+	const val NULL = 0
+	const val BOOL = 1
+	const val BYTE = 2
+	const val CHAR = 3
+	const val SHORT = 4
+	const val INT = 5
+	const val LONG = 6
+	const val FLOAT = 7
+	const val DOUBLE = 8
+	const val STRING = 9
+	const val LIST = 10
+	const val PAIR = 11
+	const val FIELD_REF = 12
+	const val ANNOTATION = 13
+}
+
+object AstFormat {
+	// "JTAS"
+	const val MAGIC = 0x4A544153
+	// Increment when the format changes, older data is rejected
+	const val VERSION = 1
 }
@@ -16,39 +16,263 @@
 
 package com.jtransc.ast.serialization
 
-import com.jtransc.ast.AstBinop
-import com.jtransc.ast.AstExpr
-import com.jtransc.ast.AstStm
-import com.jtransc.ast.FqName
+import com.jtransc.ast.*
 import com.jtransc.error.invalidOp
-import com.jtransc.error.noImpl
-import com.jtransc.io.i8
-import java.io.InputStream
+import com.jtransc.io.svarint
+import com.jtransc.io.svarlong
+import com.jtransc.io.uvarint
+import com.jtransc.vfs.SyncVfsFile
+import java.io.ByteArrayInputStream
+import java.io.DataInputStream
+import java.util.*
 
-class AstRead {
-	val current = FqName("java.lang.Object")
+// Reads what AstWriter writes. readClass doesn't add the class to the program.
+class AstRead(data: ByteArray) {
+	private val s = DataInputStream(ByteArrayInputStream(data))
+	private var locals = listOf<AstLocal>()
+	private val strings: Array<String>
+	private val types: Array<AstType?>
 
-	fun readBinop(s: InputStream, op:AstBinop): AstExpr {
-		val l = readExpr(s)
-		val r = readExpr(s)
-		return AstExpr.BINOP(l.type, l, AstBinop.ADD, r)
+	init {
+		if (s.readInt() != AstFormat.MAGIC) invalidOp("Not serialized AST data")
+		val version = s.uvarint()
+		if (version != AstFormat.VERSION) invalidOp("Unsupported AST format version $version, expected ${AstFormat.VERSION}")
+		strings = Array(s.uvarint()) {
+			val bytes = ByteArray(s.uvarint())
+			s.readFully(bytes)
+			String(bytes, Charsets.UTF_8)
+		}
+		types = arrayOfNulls<AstType>(s.uvarint())
+		for (n in types.indices) types[n] = readPoolType()
+	}
+
+	fun readProgram(resourcesVfs: SyncVfsFile, generator: AstClassGenerator): AstProgram {
+		val program = AstProgram(FqName(readString()), resourcesVfs, generator)
+		for (clazz in readList { readClass(program) }) program.add(clazz)
+		return program
+	}
+
+	fun readClass(program: AstProgram): AstClass {
+		val clazz = AstClass(
+			program = program,
+			name = FqName(readString()),
+			modifiers = s.svarint(),
+			classType = AstClassType.values()[s.readByte().toInt()],
+			visibility = AstVisibility.values()[s.readByte().toInt()],
+			extending = readNullableString()?.let { FqName(it) },
+			implementing = readList { FqName(readString()) },
+			annotations = readAnnotations()
+		)
+		for (method in readList { readMethod(clazz) }) clazz.add(method)
+		for (field in readList { readField(clazz) }) clazz.add(field)
+		return clazz
+	}
+
+	private fun readMethod(containingClass: AstClass) = AstMethod(
+		containingClass = containingClass,
+		name = readString(),
+		type = readType() as AstType.METHOD_TYPE,
+		annotations = readAnnotations(),
+		signature = readString(),
+		genericSignature = readNullableString(),
+		defaultTag = readValue(),
+		modifiers = s.svarint(),
+		isStatic = s.readBoolean(),
+		visibility = AstVisibility.values()[s.readByte().toInt()],
+		isNative = s.readBoolean(),
+		body = if (s.readBoolean()) readBody() else null
+	)
+
+	private fun readField(containingClass: AstClass) = AstField(
+		containingClass = containingClass,
+		name = readString(),
+		type = readType(),
+		modifiers = s.svarint(),
+		descriptor = readString(),
+		annotations = readAnnotations(),
+		genericSignature = readNullableString(),
+		isStatic = s.readBoolean(),
+		isFinal = s.readBoolean(),
+		visibility = AstVisibility.values()[s.readByte().toInt()],
+		constantValue = readValue()
+	)
+
+	fun readBody(): AstBody {
+		locals = readList { AstLocal(s.uvarint(), readString(), readType()) }
+		val bodyLocals = locals
+		val traps = readList { AstTrap(readLabel(), readLabel(), readLabel(), readType() as AstType.REF) }
+		return AstBody(readStm(), bodyLocals, traps)
 	}
 
-	fun readStm(s: InputStream): AstStm {
-		return when (s.i8()) {
-			AstStmOp.EXPR -> AstStm.STM_EXPR(readExpr(s))
-			else -> noImpl
+	fun readStm(): AstStm {
+		val op = s.readUnsignedByte()
+		return when (op) {
+			AstStmOp.EXPR -> AstStm.STM_EXPR(readExpr())
+			AstStmOp.STMS -> AstStm.STMS(readList { readStm() })
+			AstStmOp.NOP -> AstStm.NOP()
+			AstStmOp.SET -> AstStm.SET(readLocal(), readExpr())
+			AstStmOp.SET_ARRAY -> AstStm.SET_ARRAY(readLocal(), readExpr(), readExpr())
+			AstStmOp.SET_FIELD_STATIC -> AstStm.SET_FIELD_STATIC(readType() as AstType.REF, readFieldRef(), readExpr(), s.readBoolean())
+			AstStmOp.SET_FIELD_INSTANCE -> AstStm.SET_FIELD_INSTANCE(readExpr(), readFieldRef(), readExpr())
+			AstStmOp.SET_NEW_WITH_CONSTRUCTOR -> AstStm.SET_NEW_WITH_CONSTRUCTOR(readLocal(), readType() as AstType.REF, readMethodRef(), readList { readExpr() })
+			AstStmOp.IF -> AstStm.IF(readExpr(), readStm())
+			AstStmOp.IF_ELSE -> AstStm.IF(readExpr(), readStm(), readStm())
+			AstStmOp.WHILE -> AstStm.WHILE(readExpr(), readStm())
+			AstStmOp.RETURN -> AstStm.RETURN(readExpr())
+			AstStmOp.RETURN_VOID -> AstStm.RETURN(null)
+			AstStmOp.THROW -> AstStm.THROW(readExpr())
+			AstStmOp.RETHROW -> AstStm.RETHROW
+			AstStmOp.TRY_CATCH -> AstStm.TRY_CATCH(readStm(), readStm())
+			AstStmOp.BREAK -> AstStm.BREAK()
+			AstStmOp.CONTINUE -> AstStm.CONTINUE()
+			AstStmOp.SWITCH -> AstStm.SWITCH(readExpr(), readStm(), readList { Pair(s.svarint(), readStm()) })
+			AstStmOp.STM_LABEL -> AstStm.STM_LABEL(readLabel())
+			AstStmOp.IF_GOTO -> AstStm.IF_GOTO(readExpr(), readLabel())
+			AstStmOp.SWITCH_GOTO -> AstStm.SWITCH_GOTO(readExpr(), readLabel(), readList { Pair(s.svarint(), readLabel()) })
+			AstStmOp.GOTO -> AstStm.GOTO(readLabel())
+			AstStmOp.MONITOR_ENTER -> AstStm.MONITOR_ENTER(readExpr())
+			AstStmOp.MONITOR_EXIT -> AstStm.MONITOR_EXIT(readExpr())
+			else -> invalidOp("Invalid statement op $op")
 		}
 	}
 
-	fun readExpr(s: InputStream): AstExpr {
-		return when (s.i8()) {
-			AstExprOp.THIS -> AstExpr.THIS(current)
-			AstExprOp.LIT_BOOL_FALSE -> AstExpr.LITERAL(false)
+	fun readExpr(): AstExpr {
+		val op = s.readUnsignedByte()
+		return when (op) {
+			AstExprOp.THIS -> AstExpr.THIS(FqName(readString()))
+			AstExprOp.LIT_REF_NULL -> AstExpr.LITERAL(null)
 			AstExprOp.LIT_BOOL_TRUE -> AstExpr.LITERAL(true)
-			AstExprOp.BIN_ADD -> readBinop(s, AstBinop.ADD)
-			AstExprOp.BIN_SUB -> readBinop(s, AstBinop.SUB)
-			else -> noImpl
+			AstExprOp.LIT_BOOL_FALSE -> AstExpr.LITERAL(false)
+			AstExprOp.LIT_BYTE -> AstExpr.LITERAL(s.readByte())
+			AstExprOp.LIT_SHORT -> AstExpr.LITERAL(s.readShort())
+			AstExprOp.LIT_CHAR -> AstExpr.LITERAL(s.uvarint().toChar())
+			AstExprOp.LIT_INT_M1 -> AstExpr.LITERAL(-1)
+			AstExprOp.LIT_INT_0 -> AstExpr.LITERAL(0)
+			AstExprOp.LIT_INT_1 -> AstExpr.LITERAL(1)
+			AstExprOp.LIT_INT_2 -> AstExpr.LITERAL(2)
+			AstExprOp.LIT_INT_3 -> AstExpr.LITERAL(3)
+			AstExprOp.LIT_INT_4 -> AstExpr.LITERAL(4)
+			AstExprOp.LIT_INT_5 -> AstExpr.LITERAL(5)
+			AstExprOp.LIT_INT_BYTE -> AstExpr.LITERAL(s.readByte().toInt())
+			AstExprOp.LIT_INT_SHORT -> AstExpr.LITERAL(s.readShort().toInt())
+			AstExprOp.LIT_INT_INT -> AstExpr.LITERAL(s.svarint())
+			AstExprOp.LIT_LONG -> AstExpr.LITERAL(s.svarlong())
+			AstExprOp.LIT_FLOAT -> AstExpr.LITERAL(s.readFloat())
+			AstExprOp.LIT_DOUBLE -> AstExpr.LITERAL(s.readDouble())
+			AstExprOp.LIT_STRING -> AstExpr.LITERAL(readString())
+			AstExprOp.CLASS_CONSTANT -> AstExpr.CLASS_CONSTANT(readType())
+			AstExprOp.LOCAL -> AstExpr.LOCAL(readLocal())
+			AstExprOp.PARAM -> AstExpr.PARAM(readArgument())
+			AstExprOp.CAUGHT_EXCEPTION -> AstExpr.CAUGHT_EXCEPTION(readType())
+			AstExprOp.CALL_INSTANCE -> AstExpr.CALL_INSTANCE(readExpr(), readMethodRef(), readList { readExpr() }, s.readBoolean())
+			AstExprOp.CALL_SUPER -> AstExpr.CALL_SUPER(readExpr(), FqName(readString()), readMethodRef(), readList { readExpr() }, s.readBoolean())
+			AstExprOp.CALL_STATIC -> AstExpr.CALL_STATIC(readType() as AstType.REF, readMethodRef(), readList { readExpr() }, s.readBoolean())
+			AstExprOp.ARRAY_LENGTH -> AstExpr.ARRAY_LENGTH(readExpr())
+			AstExprOp.ARRAY_ACCESS -> AstExpr.ARRAY_ACCESS(readExpr(), readExpr())
+			AstExprOp.INSTANCE_FIELD_ACCESS -> AstExpr.INSTANCE_FIELD_ACCESS(readExpr(), readFieldRef(), readType())
+			AstExprOp.STATIC_FIELD_ACCESS -> AstExpr.STATIC_FIELD_ACCESS(readType() as AstType.REF, readFieldRef(), readType(), s.readBoolean())
+			AstExprOp.INSTANCE_OF -> AstExpr.INSTANCE_OF(readExpr(), readType())
+			AstExprOp.CAST -> AstExpr.CAST(readExpr(), readType())
+			AstExprOp.NEW -> AstExpr.NEW(readType() as AstType.REF)
+			AstExprOp.NEW_WITH_CONSTRUCTOR -> AstExpr.NEW_WITH_CONSTRUCTOR(readType() as AstType.REF, readMethodRef(), readList { readExpr() })
+			AstExprOp.NEW_ARRAY -> AstExpr.NEW_ARRAY(readType(), readList { readExpr() })
+			AstExprOp.METHOD_CLASS -> AstExpr.METHOD_CLASS(readMethodRef(), readMethodRef())
+			in AstExprOp.UN_NEG..AstExprOp.UN_INV -> AstExpr.UNOP(AstUnop.values()[op - AstExprOp.UN_NEG], readExpr())
+			in AstExprOp.BIN_ADD..AstExprOp.BIN_CMPG -> readBinop(AstBinop.values()[op - AstExprOp.BIN_ADD])
+			else -> invalidOp("Invalid expression op $op")
 		}
 	}
-}
\ No newline at end of file
+
+	fun readBinop(op: AstBinop): AstExpr {
+		val type = readType()
+		val l = readExpr()
+		val r = readExpr()
+		return AstExpr.BINOP(type, l, op, r)
+	}
+
+	fun readType(): AstType = types[s.uvarint()]!!
+
+	private fun readPoolType(): AstType {
+		val op = s.readUnsignedByte()
+		return when (op) {
+			AstTypeOp.VOID -> AstType.VOID
+			AstTypeOp.BOOL -> AstType.BOOL
+			AstTypeOp.BYTE -> AstType.BYTE
+			AstTypeOp.CHAR -> AstType.CHAR
+			AstTypeOp.SHORT -> AstType.SHORT
+			AstTypeOp.INT -> AstType.INT
+			AstTypeOp.LONG -> AstType.LONG
+			AstTypeOp.FLOAT -> AstType.FLOAT
+			AstTypeOp.DOUBLE -> AstType.DOUBLE
+			AstTypeOp.NULL -> AstType.NULL
+			AstTypeOp.UNKNOWN -> AstType.UNKNOWN
+			AstTypeOp.REF -> AstType.REF(readString())
+			AstTypeOp.ARRAY -> AstType.ARRAY(readType())
+			AstTypeOp.METHOD -> {
+				val ret = readType()
+				AstType.METHOD_TYPE(readList { readArgument() }, ret)
+			}
+			AstTypeOp.SIGNATURE -> AstType.demangle(readString())
+			else -> invalidOp("Invalid type op $op")
+		}
+	}
+
+	private fun readString(): String = strings[s.uvarint()]
+
+	private fun readArgument() = AstArgument(s.uvarint(), readType(), readString(), s.readBoolean())
+
+	private fun readLocal(): AstLocal = locals[s.uvarint()]
+
+	private fun readLabel() = AstLabel(readString())
+
+	private fun readFieldRef() = AstFieldRef(FqName(readString()), readString(), readType(), readNullableBoolean())
+
+	private fun readMethodRef() = AstMethodRef(FqName(readString()), readString(), readType() as AstType.METHOD_TYPE, readNullableBoolean())
+
+	private fun readAnnotations(): List<AstAnnotation> = readList { readAnnotation() }
+
+	private fun readAnnotation(): AstAnnotation {
+		val type = readType() as AstType.REF
+		val runtimeVisible = s.readBoolean()
+		val elements = readList { Pair(readString(), readValue()) }.toMap()
+		return AstAnnotation(type, elements, runtimeVisible)
+	}
+
+	private fun readValue(): Any? {
+		val op = s.readUnsignedByte()
+		return when (op) {
+			AstValueOp.NULL -> null
+			AstValueOp.BOOL -> s.readBoolean()
+			AstValueOp.BYTE -> s.readByte()
+			AstValueOp.CHAR -> s.uvarint().toChar()
+			AstValueOp.SHORT -> s.readShort()
+			AstValueOp.INT -> s.svarint()
+			AstValueOp.LONG -> s.svarlong()
+			AstValueOp.FLOAT -> s.readFloat()
+			AstValueOp.DOUBLE -> s.readDouble()
+			AstValueOp.STRING -> readString()
+			AstValueOp.LIST -> readList { readValue() }
+			AstValueOp.PAIR -> Pair(readValue(), readValue())
+			AstValueOp.FIELD_REF -> readFieldRef()
+			AstValueOp.ANNOTATION -> readAnnotation()
+			else -> invalidOp("Invalid value op $op")
+		}
+	}
+
+	private fun readNullableString(): String? {
+		val index = s.uvarint()
+		return if (index == 0) null else strings[index - 1]
+	}
+
+	private fun readNullableBoolean(): Boolean? {
+		val value = s.readByte().toInt()
+		return if (value == 0) null else value == 2
+	}
+
+	private inline fun <T> readList(read: () -> T): List<T> {
+		val count = s.uvarint()
+		val out = ArrayList<T>(count)
+		for (n in 0 until count) out.add(read())
+		return out
+	}
+}
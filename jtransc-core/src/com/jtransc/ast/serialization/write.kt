@@ -16,78 +16,573 @@
 
 package com.jtransc.ast.serialization
 
-import com.jtransc.ast.AstBinop
-import com.jtransc.ast.AstExpr
-import com.jtransc.ast.AstStm
+import com.jtransc.ast.*
 import com.jtransc.error.noImpl
-import com.jtransc.io.i16
-import com.jtransc.io.i32
-import com.jtransc.io.i8
-import java.io.OutputStream
+import com.jtransc.io.svarint
+import com.jtransc.io.svarlong
+import com.jtransc.io.uvarint
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
 
+// Writes classes in a compact binary format: a header with the format version, a constant pool with the strings and
+// types in use and then the nodes, with counts, indices and integers encoded as varints.
 class AstWriter {
-	fun writeStm(stm: AstStm, s: OutputStream) {
+	private val payload = ByteArrayOutputStream()
+	private val s = DataOutputStream(payload)
+	private var locals = mapOf<AstLocal, Int>()
+
+	private val strings = hashMapOf<String, Int>()
+	private val stringList = arrayListOf<String>()
+	private val types = hashMapOf<Any, Int>()
+	private val typesData = ByteArrayOutputStream()
+	private var typeCount = 0
+
+	fun toByteArray(): ByteArray {
+		s.flush()
+		val out = ByteArrayOutputStream()
+		val header = DataOutputStream(out)
+		header.writeInt(AstFormat.MAGIC)
+		header.uvarint(AstFormat.VERSION)
+		header.uvarint(stringList.size)
+		for (str in stringList) {
+			val bytes = str.toByteArray(Charsets.UTF_8)
+			header.uvarint(bytes.size)
+			header.write(bytes)
+		}
+		header.uvarint(typeCount)
+		typesData.writeTo(header)
+		payload.writeTo(header)
+		header.flush()
+		return out.toByteArray()
+	}
+
+	fun writeProgram(program: AstProgram) {
+		writeString(program.entrypoint.fqname)
+		writeList(program.classes) { writeClass(it) }
+	}
+
+	fun writeClass(clazz: AstClass) {
+		writeString(clazz.fqname)
+		s.svarint(clazz.modifiers)
+		s.writeByte(clazz.classType.ordinal)
+		s.writeByte(clazz.visibility.ordinal)
+		writeNullableString(clazz.extending?.fqname)
+		writeList(clazz.implementing) { writeString(it.fqname) }
+		writeAnnotations(clazz.annotations)
+		writeList(clazz.methods) { writeMethod(it) }
+		writeList(clazz.fields) { writeField(it) }
+	}
+
+	private fun writeMethod(method: AstMethod) {
+		writeString(method.name)
+		writeType(method.methodType)
+		writeAnnotations(method.annotations)
+		writeString(method.signature)
+		writeNullableString(method.genericSignature)
+		writeValue(method.defaultTag)
+		s.svarint(method.modifiers)
+		s.writeBoolean(method.isStatic)
+		s.writeByte(method.visibility.ordinal)
+		s.writeBoolean(method.isNative)
+		val body = method.body
+		s.writeBoolean(body != null)
+		if (body != null) writeBody(body)
+	}
+
+	private fun writeField(field: AstField) {
+		writeString(field.name)
+		writeType(field.type)
+		s.svarint(field.modifiers)
+		writeString(field.descriptor)
+		writeAnnotations(field.annotations)
+		writeNullableString(field.genericSignature)
+		s.writeBoolean(field.isStatic)
+		s.writeBoolean(field.isFinal)
+		s.writeByte(field.visibility.ordinal)
+		writeValue(field.constantValue)
+	}
+
+	fun writeBody(body: AstBody) {
+		locals = body.locals.withIndex().map { Pair(it.value, it.index) }.toMap()
+		writeList(body.locals) {
+			s.uvarint(it.index)
+			writeString(it.name)
+			writeType(it.type)
+		}
+		writeList(body.traps) {
+			writeLabel(it.start)
+			writeLabel(it.end)
+			writeLabel(it.handler)
+			writeType(it.exception)
+		}
+		writeStm(body.stm)
+	}
+
+	fun writeStm(stm: AstStm) {
 		when (stm) {
 			is AstStm.STM_EXPR -> {
-				s.i8(AstStmOp.EXPR)
-				writeExpr(stm.expr, s)
+				s.writeByte(AstStmOp.EXPR)
+				writeExpr(stm.expr)
+			}
+			is AstStm.STMS -> {
+				s.writeByte(AstStmOp.STMS)
+				writeList(stm.stms) { writeStm(it) }
+			}
+			is AstStm.NOP -> s.writeByte(AstStmOp.NOP)
+			is AstStm.SET -> {
+				s.writeByte(AstStmOp.SET)
+				writeLocal(stm.local)
+				writeExpr(stm.expr)
+			}
+			is AstStm.SET_ARRAY -> {
+				s.writeByte(AstStmOp.SET_ARRAY)
+				writeLocal(stm.local)
+				writeExpr(stm.index)
+				writeExpr(stm.expr)
+			}
+			is AstStm.SET_FIELD_STATIC -> {
+				s.writeByte(AstStmOp.SET_FIELD_STATIC)
+				writeType(stm.clazz)
+				writeFieldRef(stm.field)
+				writeExpr(stm.expr)
+				s.writeBoolean(stm.isInterface)
+			}
+			is AstStm.SET_FIELD_INSTANCE -> {
+				s.writeByte(AstStmOp.SET_FIELD_INSTANCE)
+				writeExpr(stm.left)
+				writeFieldRef(stm.field)
+				writeExpr(stm.expr)
+			}
+			is AstStm.SET_NEW_WITH_CONSTRUCTOR -> {
+				s.writeByte(AstStmOp.SET_NEW_WITH_CONSTRUCTOR)
+				writeLocal(stm.local)
+				writeType(stm.target)
+				writeMethodRef(stm.method)
+				writeList(stm.args) { writeExpr(it) }
 			}
-			else -> noImpl
+			is AstStm.IF -> {
+				val sfalse = stm.sfalse
+				s.writeByte(if (sfalse != null) AstStmOp.IF_ELSE else AstStmOp.IF)
+				writeExpr(stm.cond)
+				writeStm(stm.strue)
+				if (sfalse != null) writeStm(sfalse)
+			}
+			is AstStm.WHILE -> {
+				s.writeByte(AstStmOp.WHILE)
+				writeExpr(stm.cond)
+				writeStm(stm.iter)
+			}
+			is AstStm.RETURN -> {
+				val retval = stm.retval
+				if (retval != null) {
+					s.writeByte(AstStmOp.RETURN)
+					writeExpr(retval)
+				} else {
+					s.writeByte(AstStmOp.RETURN_VOID)
+				}
+			}
+			is AstStm.THROW -> {
+				s.writeByte(AstStmOp.THROW)
+				writeExpr(stm.value)
+			}
+			is AstStm.RETHROW -> s.writeByte(AstStmOp.RETHROW)
+			is AstStm.TRY_CATCH -> {
+				s.writeByte(AstStmOp.TRY_CATCH)
+				writeStm(stm.trystm)
+				writeStm(stm.catch)
+			}
+			is AstStm.BREAK -> s.writeByte(AstStmOp.BREAK)
+			is AstStm.CONTINUE -> s.writeByte(AstStmOp.CONTINUE)
+			is AstStm.SWITCH -> {
+				s.writeByte(AstStmOp.SWITCH)
+				writeExpr(stm.subject)
+				writeStm(stm.default)
+				writeList(stm.cases) {
+					s.svarint(it.first)
+					writeStm(it.second)
+				}
+			}
+			is AstStm.STM_LABEL -> {
+				s.writeByte(AstStmOp.STM_LABEL)
+				writeLabel(stm.label)
+			}
+			is AstStm.IF_GOTO -> {
+				s.writeByte(AstStmOp.IF_GOTO)
+				writeExpr(stm.cond)
+				writeLabel(stm.label)
+			}
+			is AstStm.SWITCH_GOTO -> {
+				s.writeByte(AstStmOp.SWITCH_GOTO)
+				writeExpr(stm.subject)
+				writeLabel(stm.default)
+				writeList(stm.cases) {
+					s.svarint(it.first)
+					writeLabel(it.second)
+				}
+			}
+			is AstStm.GOTO -> {
+				s.writeByte(AstStmOp.GOTO)
+				writeLabel(stm.label)
+			}
+			is AstStm.MONITOR_ENTER -> {
+				s.writeByte(AstStmOp.MONITOR_ENTER)
+				writeExpr(stm.expr)
+			}
+			is AstStm.MONITOR_EXIT -> {
+				s.writeByte(AstStmOp.MONITOR_EXIT)
+				writeExpr(stm.expr)
+			}
+			else -> noImpl("Can't serialize $stm")
 		}
 	}
 
-	fun writeExpr(expr: AstExpr, s: OutputStream) {
+	fun writeExpr(expr: AstExpr) {
 		when (expr) {
-			is AstExpr.THIS -> s.i8(AstExprOp.THIS)
-			is AstExpr.LITERAL -> {
-				val value = expr.value
+			is AstExpr.THIS -> {
+				s.writeByte(AstExprOp.THIS)
+				writeString(expr.ref.fqname)
+			}
+			is AstExpr.LITERAL -> writeLiteral(expr.value)
+			is AstExpr.CLASS_CONSTANT -> {
+				s.writeByte(AstExprOp.CLASS_CONSTANT)
+				writeType(expr.classType)
+			}
+			is AstExpr.LOCAL -> {
+				s.writeByte(AstExprOp.LOCAL)
+				writeLocal(expr.local)
+			}
+			is AstExpr.PARAM -> {
+				s.writeByte(AstExprOp.PARAM)
+				writeArgument(expr.argument)
+			}
+			is AstExpr.CAUGHT_EXCEPTION -> {
+				s.writeByte(AstExprOp.CAUGHT_EXCEPTION)
+				writeType(expr.type)
+			}
+			is AstExpr.BINOP -> {
+				s.writeByte(AstExprOp.BIN_ADD + expr.op.ordinal)
+				writeType(expr.type)
+				writeExpr(expr.left)
+				writeExpr(expr.right)
+			}
+			is AstExpr.UNOP -> {
+				s.writeByte(AstExprOp.UN_NEG + expr.op.ordinal)
+				writeExpr(expr.right)
+			}
+			is AstExpr.CALL_INSTANCE -> {
+				s.writeByte(AstExprOp.CALL_INSTANCE)
+				writeExpr(expr.obj)
+				writeMethodRef(expr.method)
+				writeList(expr.args) { writeExpr(it) }
+				s.writeBoolean(expr.isSpecial)
+			}
+			is AstExpr.CALL_SUPER -> {
+				s.writeByte(AstExprOp.CALL_SUPER)
+				writeExpr(expr.obj)
+				writeString(expr.target.fqname)
+				writeMethodRef(expr.method)
+				writeList(expr.args) { writeExpr(it) }
+				s.writeBoolean(expr.isSpecial)
+			}
+			is AstExpr.CALL_STATIC -> {
+				s.writeByte(AstExprOp.CALL_STATIC)
+				writeType(expr.clazz)
+				writeMethodRef(expr.method)
+				writeList(expr.args) { writeExpr(it) }
+				s.writeBoolean(expr.isSpecial)
+			}
+			is AstExpr.ARRAY_LENGTH -> {
+				s.writeByte(AstExprOp.ARRAY_LENGTH)
+				writeExpr(expr.array)
+			}
+			is AstExpr.ARRAY_ACCESS -> {
+				s.writeByte(AstExprOp.ARRAY_ACCESS)
+				writeExpr(expr.array)
+				writeExpr(expr.index)
+			}
+			is AstExpr.INSTANCE_FIELD_ACCESS -> {
+				s.writeByte(AstExprOp.INSTANCE_FIELD_ACCESS)
+				writeExpr(expr.expr)
+				writeFieldRef(expr.field)
+				writeType(expr.type)
+			}
+			is AstExpr.STATIC_FIELD_ACCESS -> {
+				s.writeByte(AstExprOp.STATIC_FIELD_ACCESS)
+				writeType(expr.clazzName)
+				writeFieldRef(expr.field)
+				writeType(expr.type)
+				s.writeBoolean(expr.isInterface)
+			}
+			is AstExpr.INSTANCE_OF -> {
+				s.writeByte(AstExprOp.INSTANCE_OF)
+				writeExpr(expr.expr)
+				writeType(expr.checkType)
+			}
+			is AstExpr.CAST -> {
+				s.writeByte(AstExprOp.CAST)
+				writeExpr(expr.expr)
+				writeType(expr.to)
+			}
+			is AstExpr.NEW -> {
+				s.writeByte(AstExprOp.NEW)
+				writeType(expr.target)
+			}
+			is AstExpr.NEW_WITH_CONSTRUCTOR -> {
+				s.writeByte(AstExprOp.NEW_WITH_CONSTRUCTOR)
+				writeType(expr.target)
+				writeMethodRef(expr.method)
+				writeList(expr.args) { writeExpr(it) }
+			}
+			is AstExpr.NEW_ARRAY -> {
+				s.writeByte(AstExprOp.NEW_ARRAY)
+				writeType(expr.element)
+				writeList(expr.counts) { writeExpr(it) }
+			}
+			is AstExpr.METHOD_CLASS -> {
+				s.writeByte(AstExprOp.METHOD_CLASS)
+				writeMethodRef(expr.methodInInterfaceRef)
+				writeMethodRef(expr.methodToConvertRef)
+			}
+			else -> noImpl("Can't serialize $expr")
+		}
+	}
+
+	private fun writeLiteral(value: Any?) {
+		when (value) {
+			null -> s.writeByte(AstExprOp.LIT_REF_NULL)
+			is Boolean -> s.writeByte(if (value) AstExprOp.LIT_BOOL_TRUE else AstExprOp.LIT_BOOL_FALSE)
+			is Byte -> {
+				s.writeByte(AstExprOp.LIT_BYTE)
+				s.writeByte(value.toInt())
+			}
+			is Short -> {
+				s.writeByte(AstExprOp.LIT_SHORT)
+				s.writeShort(value.toInt())
+			}
+			is Char -> {
+				s.writeByte(AstExprOp.LIT_CHAR)
+				s.uvarint(value.toInt())
+			}
+			is Int -> {
 				when (value) {
-					null -> s.i8(AstExprOp.LIT_REF_NULL)
-					is Boolean -> s.i8(if (value) AstExprOp.LIT_BOOL_TRUE else AstExprOp.LIT_BOOL_FALSE)
-					is Byte -> {
-						s.i8(AstExprOp.LIT_BYTE)
-						s.i8(value.toInt())
-					}
-					is Short -> {
-						s.i8(AstExprOp.LIT_SHORT)
-						s.i16(value.toInt())
-					}
-					is Int -> {
-						when (value) {
-							-1 -> s.i8(AstExprOp.LIT_INT_M1)
-							0 -> s.i8(AstExprOp.LIT_INT_0)
-							1 -> s.i8(AstExprOp.LIT_INT_1)
-							2 -> s.i8(AstExprOp.LIT_INT_2)
-							3 -> s.i8(AstExprOp.LIT_INT_3)
-							4 -> s.i8(AstExprOp.LIT_INT_4)
-							5 -> s.i8(AstExprOp.LIT_INT_5)
-							else -> {
-								if (value.toByte().toInt() == value) {
-									s.i8(AstExprOp.LIT_INT_BYTE)
-									s.i8(value)
-								} else if (value.toShort().toInt() == value) {
-									s.i8(AstExprOp.LIT_INT_SHORT)
-									s.i16(value)
-								} else {
-									s.i8(AstExprOp.LIT_INT_INT)
-									s.i32(value)
-								}
-							}
+					-1 -> s.writeByte(AstExprOp.LIT_INT_M1)
+					0 -> s.writeByte(AstExprOp.LIT_INT_0)
+					1 -> s.writeByte(AstExprOp.LIT_INT_1)
+					2 -> s.writeByte(AstExprOp.LIT_INT_2)
+					3 -> s.writeByte(AstExprOp.LIT_INT_3)
+					4 -> s.writeByte(AstExprOp.LIT_INT_4)
+					5 -> s.writeByte(AstExprOp.LIT_INT_5)
+					else -> {
+						if (value.toByte().toInt() == value) {
+							s.writeByte(AstExprOp.LIT_INT_BYTE)
+							s.writeByte(value)
+						} else if (value.toShort().toInt() == value) {
+							s.writeByte(AstExprOp.LIT_INT_SHORT)
+							s.writeShort(value)
+						} else {
+							s.writeByte(AstExprOp.LIT_INT_INT)
+							s.svarint(value)
 						}
 					}
-					else -> noImpl
 				}
 			}
-			is AstExpr.BINOP -> {
-				when (expr.op) {
-					AstBinop.ADD -> s.i8(AstExprOp.BIN_ADD)
-					AstBinop.SUB -> s.i8(AstExprOp.BIN_SUB)
-					else -> noImpl
+			is Long -> {
+				s.writeByte(AstExprOp.LIT_LONG)
+				s.svarlong(value)
+			}
+			is Float -> {
+				s.writeByte(AstExprOp.LIT_FLOAT)
+				s.writeFloat(value)
+			}
+			is Double -> {
+				s.writeByte(AstExprOp.LIT_DOUBLE)
+				s.writeDouble(value)
+			}
+			is String -> {
+				s.writeByte(AstExprOp.LIT_STRING)
+				writeString(value)
+			}
+			else -> noImpl("Can't serialize literal $value")
+		}
+	}
+
+	fun writeType(type: AstType) = s.uvarint(typeIndex(type))
+
+	// Types are added to the pool after the types they reference, so the reader can build them in order.
+	// Method types compare by descriptor, so argument names are part of their key.
+	private fun typeIndex(type: AstType): Int {
+		val key: Any = if (type is AstType.METHOD_TYPE) Pair(type, type.args) else type
+		val index = types[key]
+		if (index != null) return index
+		val data = ByteArrayOutputStream()
+		val t = DataOutputStream(data)
+		when (type) {
+			is AstType.VOID -> t.writeByte(AstTypeOp.VOID)
+			is AstType.BOOL -> t.writeByte(AstTypeOp.BOOL)
+			is AstType.BYTE -> t.writeByte(AstTypeOp.BYTE)
+			is AstType.CHAR -> t.writeByte(AstTypeOp.CHAR)
+			is AstType.SHORT -> t.writeByte(AstTypeOp.SHORT)
+			is AstType.INT -> t.writeByte(AstTypeOp.INT)
+			is AstType.LONG -> t.writeByte(AstTypeOp.LONG)
+			is AstType.FLOAT -> t.writeByte(AstTypeOp.FLOAT)
+			is AstType.DOUBLE -> t.writeByte(AstTypeOp.DOUBLE)
+			is AstType.NULL -> t.writeByte(AstTypeOp.NULL)
+			is AstType.UNKNOWN -> t.writeByte(AstTypeOp.UNKNOWN)
+			is AstType.REF -> {
+				t.writeByte(AstTypeOp.REF)
+				t.uvarint(stringIndex(type.fqname))
+			}
+			is AstType.ARRAY -> {
+				t.writeByte(AstTypeOp.ARRAY)
+				t.uvarint(typeIndex(type.element))
+			}
+			is AstType.METHOD_TYPE -> {
+				if (type.paramTypes.isNotEmpty()) {
+					t.writeByte(AstTypeOp.SIGNATURE)
+					t.uvarint(stringIndex(type.mangle()))
+				} else {
+					t.writeByte(AstTypeOp.METHOD)
+					t.uvarint(typeIndex(type.ret))
+					t.uvarint(type.args.size)
+					for (arg in type.args) {
+						t.uvarint(arg.index)
+						t.uvarint(typeIndex(arg.type))
+						t.uvarint(stringIndex(arg.name))
+						t.writeBoolean(arg.optional)
+					}
 				}
-				writeExpr(expr.left, s)
-				writeExpr(expr.right, s)
 			}
-			else -> noImpl
+			else -> {
+				t.writeByte(AstTypeOp.SIGNATURE)
+				t.uvarint(stringIndex(type.mangle()))
+			}
 		}
+		t.flush()
+		data.writeTo(typesData)
+		val newIndex = typeCount++
+		types[key] = newIndex
+		return newIndex
+	}
+
+	private fun stringIndex(str: String): Int {
+		val index = strings[str]
+		if (index != null) return index
+		val newIndex = stringList.size
+		stringList.add(str)
+		strings[str] = newIndex
+		return newIndex
+	}
+
+	private fun writeString(str: String) = s.uvarint(stringIndex(str))
+
+	private fun writeArgument(argument: AstArgument) {
+		s.uvarint(argument.index)
+		writeType(argument.type)
+		writeString(argument.name)
+		s.writeBoolean(argument.optional)
+	}
+
+	private fun writeLocal(local: AstLocal) {
+		s.uvarint(locals[local] ?: noImpl("Local $local not declared in body"))
+	}
+
+	private fun writeLabel(label: AstLabel) = writeString(label.name)
+
+	private fun writeFieldRef(ref: AstFieldRef) {
+		writeString(ref.containingClass.fqname)
+		writeString(ref.name)
+		writeType(ref.type)
+		writeNullableBoolean(ref.isStatic)
+	}
+
+	private fun writeMethodRef(ref: AstMethodRef) {
+		writeString(ref.containingClass.fqname)
+		writeString(ref.name)
+		writeType(ref.type)
+		writeNullableBoolean(ref.isStatic)
+	}
+
+	private fun writeAnnotations(annotations: List<AstAnnotation>) {
+		writeList(annotations) { writeAnnotation(it) }
+	}
+
+	private fun writeAnnotation(annotation: AstAnnotation) {
+		writeType(annotation.type)
+		s.writeBoolean(annotation.runtimeVisible)
+		writeList(annotation.elements.entries.toList()) {
+			writeString(it.key)
+			writeValue(it.value)
+		}
+	}
+
+	private fun writeValue(value: Any?) {
+		when (value) {
+			null -> s.writeByte(AstValueOp.NULL)
+			is Boolean -> {
+				s.writeByte(AstValueOp.BOOL)
+				s.writeBoolean(value)
+			}
+			is Byte -> {
+				s.writeByte(AstValueOp.BYTE)
+				s.writeByte(value.toInt())
+			}
+			is Char -> {
+				s.writeByte(AstValueOp.CHAR)
+				s.uvarint(value.toInt())
+			}
+			is Short -> {
+				s.writeByte(AstValueOp.SHORT)
+				s.writeShort(value.toInt())
+			}
+			is Int -> {
+				s.writeByte(AstValueOp.INT)
+				s.svarint(value)
+			}
+			is Long -> {
+				s.writeByte(AstValueOp.LONG)
+				s.svarlong(value)
+			}
+			is Float -> {
+				s.writeByte(AstValueOp.FLOAT)
+				s.writeFloat(value)
+			}
+			is Double -> {
+				s.writeByte(AstValueOp.DOUBLE)
+				s.writeDouble(value)
+			}
+			is String -> {
+				s.writeByte(AstValueOp.STRING)
+				writeString(value)
+			}
+			is List<*> -> {
+				s.writeByte(AstValueOp.LIST)
+				writeList(value) { writeValue(it) }
+			}
+			is Pair<*, *> -> {
+				s.writeByte(AstValueOp.PAIR)
+				writeValue(value.first)
+				writeValue(value.second)
+			}
+			is AstFieldRef -> {
+				s.writeByte(AstValueOp.FIELD_REF)
+				writeFieldRef(value)
+			}
+			is AstAnnotation -> {
+				s.writeByte(AstValueOp.ANNOTATION)
+				writeAnnotation(value)
+			}
+			else -> noImpl("Can't serialize value $value")
+		}
+	}
+
+	private fun writeNullableString(str: String?) = s.uvarint(if (str != null) stringIndex(str) + 1 else 0)
+
+	private fun writeNullableBoolean(value: Boolean?) {
+		s.writeByte(if (value == null) 0 else if (value) 2 else 1)
+	}
+
+	private inline fun <T> writeList(list: List<T>, write: (T) -> Unit) {
+		s.uvarint(list.size)
+		for (item in list) write(item)
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jtransc.ast.transform
+
+import com.jtransc.ast.*
+import java.util.*
+
+// Replaces calls with the body of the called method. Methods annotated with @JTranscInline are inlined up to
+// MAX_INLINE_SIZE statements and any other method (getters, setters, small static helpers) up to MAX_TRIVIAL_SIZE.
+//
+// Works on the flat bodies of the frontends (labels and gotos), before any other transform. Only calls that are a whole
+// statement (x = call(...) or call(...)) are inlined: the arguments and the receiver are stored in locals of the
+// inlined body, its locals and labels are renamed, and its returns become assignments followed by a goto to its end.
+// Its traps go before the traps of the caller, so they are checked first; the ranges of the caller still cover the
+// inlined code since they are labels around the call.
+//
+// A method being inlined is never inlined again inside itself, so recursive methods are inlined at most once.
+//
+// An inlined instance call throws a NullPointerException when its receiver is null, as the call would. When that
+// exception can't be created (its constructor isn't in the program), only receivers that can't be null are inlined.
+class InlineTransform(
+	val hierarchy: AstClassHierarchy,
+	// Whether the target generates the body in the AST, and not a native body of its own
+	val hasBody: (AstMethod) -> Boolean = { true },
+	val needsStaticInit: (AstClass) -> Boolean = { it.hasStaticInit }
+) : AstTransform() {
+	companion object {
+		const val MAX_TRIVIAL_SIZE = 8
+		const val MAX_INLINE_SIZE = 64
+		const val MAX_CALLER_SIZE = 2000
+		const val MAX_DEPTH = 4
+		private const val ACC_SYNCHRONIZED = 0x20
+		private val NULL_POINTER_EXCEPTION = AstType.REF(FqName("java.lang.NullPointerException"))
+	}
+
+	private val program = hierarchy.program
+	private val bodies = hashMapOf<AstMethod, List<AstStm>?>()
+	private val inlined = LinkedHashMap<AstMethodRef, Int>()
+	private val rejected = LinkedHashMap<AstMethodRef, String>()
+	private var sites = 0
+	private val nullPointerInit: AstMethodRef? by lazy {
+		val ref = AstMethodRef(NULL_POINTER_EXCEPTION.name, "<init>", AstType.METHOD_TYPE(AstType.VOID, listOf()))
+		if (ref.containingClass in program && program[ref.containingClass].getMethod(ref.name, ref.desc) != null) ref else null
+	}
+
+	override fun invoke(method: AstMethod, body: AstBody): AstBody {
+		val stms = body.stm.flattenOrNull() ?: return body
+		if (stms.none { it is AstStm.SET && it.expr is AstExpr.CALL_BASE || it is AstStm.STM_EXPR && it.expr is AstExpr.CALL_BASE }) return body
+
+		val out = arrayListOf<AstStm>()
+		val locals = body.locals.toCollection(arrayListOf<AstLocal>())
+		val traps = arrayListOf<AstTrap>()
+		// Statements still to process, with the methods they come from (the caller first)
+		val queue = LinkedList<Pair<AstStm, List<AstMethod>>>()
+		for (stm in stms) queue.add(Pair(stm, listOf(method)))
+		var size = stms.size
+		var count = 0
+
+		while (queue.isNotEmpty()) {
+			val (stm, path) = queue.removeFirst()
+			val call = when (stm) {
+				is AstStm.SET -> stm.expr as? AstExpr.CALL_BASE
+				is AstStm.STM_EXPR -> stm.expr as? AstExpr.CALL_BASE
+				else -> null
+			}
+			val callee = if (call != null) resolve(call, path.last()) else null
+			val calleeStms = if (callee != null) bodies[callee] else null
+			if (call == null || callee == null || calleeStms == null || callee in path || path.size > MAX_DEPTH || size + calleeStms.size > MAX_CALLER_SIZE) {
+				out.add(stm)
+				continue
+			}
+
+			val result = if (stm is AstStm.SET) stm.local else null
+			val expanded = expand(callee, calleeStms, call, result, "i${count++}_")
+			locals.addAll(expanded.locals)
+			traps.addAll(0, expanded.traps)
+			queue.addAll(0, expanded.stms.map { Pair(it, path + callee) })
+			size += expanded.stms.size
+			inlined[callee.ref] = (inlined[callee.ref] ?: 0) + 1
+			sites++
+		}
+
+		if (count == 0) return body
+		return AstBody(AstStm.STMS(out), locals, traps + body.traps)
+	}
+
+	// Summary of the methods inlined since the transform was created
+	fun report(): String {
+		val lines = arrayListOf("Inlined $sites calls to ${inlined.size} methods")
+		for ((ref, count) in inlined.entries.sortedByDescending { it.value }) lines.add("$count\t$ref")
+		if (rejected.isNotEmpty()) {
+			lines.add("")
+			lines.add("@JTranscInline methods not inlined:")
+			for ((ref, reason) in rejected) lines.add("$ref: $reason")
+		}
+		return lines.joinToString("\n") + "\n"
+	}
+
+	private fun resolve(call: AstExpr.CALL_BASE, caller: AstMethod): AstMethod? {
+		val ref = call.method
+		if (ref.containingClass !in program) return null
+		val callee = when (call) {
+			is AstExpr.CALL_STATIC -> program[ref]
+			is AstExpr.CALL_INSTANCE -> if (call.isSpecial) program[ref] else hierarchy.getSingleTarget(ref)
+			else -> null
+		} ?: return null
+		if (callee.isStatic != (call is AstExpr.CALL_STATIC)) return null
+		if (call is AstExpr.CALL_INSTANCE && nullPointerInit == null && !isNonNull(call.obj)) return null
+		// Calling a static method initializes its class, so it is only inlined when that won't be missed
+		if (callee.isStatic && callee.containingClass !in caller.containingClass.thisAndAncestors && callee.containingClass.thisAndAncestors.any { needsStaticInit(it) }) {
+			if (callee.isInline) rejected[callee.ref] = "its class has a static initializer"
+			return null
+		}
+		if (callee !in bodies) {
+			val reason = getRejection(callee)
+			if (reason != null && callee.isInline) rejected[callee.ref] = reason
+			bodies[callee] = if (reason == null) callee.body!!.stm.flattenOrNull() else null
+		}
+		return callee
+	}
+
+	private fun getRejection(callee: AstMethod): String? {
+		val body = callee.body
+		val stms = if (body != null) body.stm.flattenOrNull() else null
+		return when {
+			body == null || callee.isNative -> "no body"
+			callee.name == "<init>" || callee.name == "<clinit>" -> "initializer"
+			(callee.modifiers and ACC_SYNCHRONIZED) != 0 -> "synchronized"
+			callee.getterField != null || callee.setterField != null || callee.nativeMethod != null -> "replaced by the target"
+			!hasBody(callee) -> "the target has its own body"
+			stms == null -> "structured body"
+			stms.size > (if (callee.isInline) MAX_INLINE_SIZE else MAX_TRIVIAL_SIZE) -> "${stms.size} statements"
+			else -> null
+		}
+	}
+
+	private fun isNonNull(expr: AstExpr): Boolean = when (expr) {
+		is AstExpr.THIS, is AstExpr.NEW, is AstExpr.NEW_WITH_CONSTRUCTOR -> true
+		is AstExpr.LITERAL -> expr.value != null
+		is AstExpr.CAST -> isNonNull(expr.expr)
+		else -> false
+	}
+
+	private class Expanded(val stms: List<AstStm>, val locals: List<AstLocal>, val traps: List<AstTrap>)
+
+	private fun expand(callee: AstMethod, calleeStms: List<AstStm>, call: AstExpr.CALL_BASE, result: AstLocal?, prefix: String): Expanded {
+		val stms = arrayListOf<AstStm>()
+		val locals = arrayListOf<AstLocal>()
+
+		val receiver = if (call is AstExpr.CALL_INSTANCE) {
+			val local = AstLocal(-1, "${prefix}this", callee.containingClass.astType)
+			val obj = if (call.obj.type != local.type) AstExpr.CAST(call.obj, local.type) else call.obj
+			locals.add(local)
+			stms.add(AstStm.SET(local, obj))
+			local
+		} else {
+			null
+		}
+		val params = hashMapOf<Int, AstLocal>()
+		for ((n, arg) in callee.methodType.args.withIndex()) {
+			val local = AstLocal(-1, "${prefix}arg${arg.index}", arg.type)
+			locals.add(local)
+			params[arg.index] = local
+			stms.add(AstStm.SET(local, call.args[n]))
+		}
+		// The arguments are evaluated before the call throws, like in the JVM
+		if (receiver != null && !isNonNull((call as AstExpr.CALL_INSTANCE).obj)) {
+			// if (this != null) goto nonnull; throw new NullPointerException(); nonnull:
+			val npe = AstLocal(-1, "${prefix}npe", NULL_POINTER_EXCEPTION)
+			val nonNull = AstLabel("${prefix}nonnull")
+			locals.add(npe)
+			stms.add(AstStm.IF_GOTO(AstExpr.BINOP(AstType.BOOL, AstExpr.LOCAL(receiver), AstBinop.NE, AstExpr.LITERAL(null)), nonNull))
+			stms.add(AstStm.SET_NEW_WITH_CONSTRUCTOR(npe, NULL_POINTER_EXCEPTION, nullPointerInit!!, listOf()))
+			stms.add(AstStm.THROW(AstExpr.LOCAL(npe)))
+			stms.add(AstStm.STM_LABEL(nonNull))
+		}
+		val retType = callee.methodType.ret
+		val target = if (result == null && retType != AstType.VOID) AstLocal(-1, "${prefix}result", retType) else result
+		if (target != null && target != result) locals.add(target)
+
+		val renamer = object : AstTransformer() {
+			override fun transform(local: AstLocal): AstLocal = AstLocal(local.index, prefix + local.name, local.type)
+			override fun transform(label: AstLabel): AstLabel = AstLabel(prefix + label.name)
+			override fun transform(expr: AstExpr): AstExpr = when (expr) {
+				is AstExpr.THIS -> AstExpr.LOCAL(receiver!!)
+				is AstExpr.PARAM -> AstExpr.LOCAL(params[expr.argument.index]!!)
+				else -> super.transform(expr)
+			}
+		}
+
+		val end = AstLabel("${prefix}end")
+		var usesEnd = false
+		for ((n, stm) in calleeStms.withIndex()) {
+			val renamed = renamer.transform(stm)
+			if (renamed is AstStm.RETURN) {
+				if (renamed.retval != null && target != null) stms.add(AstStm.SET(target, renamed.retval))
+				if (n != calleeStms.size - 1) {
+					stms.add(AstStm.GOTO(end))
+					usesEnd = true
+				}
+			} else {
+				stms.add(renamed)
+			}
+		}
+		if (usesEnd) stms.add(AstStm.STM_LABEL(end))
+
+		val body = callee.body!!
+		locals.addAll(body.locals.map { renamer.transform(it) })
+		return Expanded(stms, locals, body.traps.map { renamer.transform(it) })
+	}
+}
@@ -17,18 +17,25 @@
 package com.jtransc
 
 import com.jtransc.ast.*
+import com.jtransc.ast.dce.SimpleDCE
 import com.jtransc.gen.GenTargetDescriptor
 import com.jtransc.gen.build
+import com.jtransc.input.AsmToAst
 import com.jtransc.input.BaseProjectContext
+import com.jtransc.input.CachedClassGenerator
 import com.jtransc.input.SootToAst
 import com.jtransc.input.SootUtils
 import com.jtransc.io.ProcessResult2
 import com.jtransc.maven.MavenLocalRepository
 import com.jtransc.time.measureProcess
 import com.jtransc.time.measureTime
+import com.jtransc.util.PersistentBinaryCache
 import com.jtransc.vfs.LocalVfs
 import com.jtransc.vfs.MergedLocalAndJars
 import com.jtransc.vfs.SyncVfsFile
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
 
 fun Iterable<GenTargetDescriptor>.locateTargetByName(target: String) = this.firstOrNull { it.name == target } ?: throw Exception("Unknown target $target")
 fun Iterable<GenTargetDescriptor>.locateTargetByOutExt(ext: String) = this.firstOrNull { it.outputExtension == ext } ?: throw Exception("Can't find target by extension $ext")
@@ -98,20 +105,41 @@ class AllBuild(
 			entryPoint.fqname.fqname
 		)
 
+		val frontend = when (settings.frontend) {
+			AstBuildSettings.Frontend.SOOT -> SootToAst()
+			AstBuildSettings.Frontend.ASM -> AsmToAst()
+		}
+		val useSoot = settings.frontend == AstBuildSettings.Frontend.SOOT
+		val generator = if (settings.astCache) {
+			// Soot is only loaded if some class isn't cached
+			CachedClassGenerator(frontend, PersistentBinaryCache(LocalVfs(tempdir)["jtransc-ast-cache"], settings.astCacheSize), jtranscVersion) {
+				if (useSoot) SootUtils.init(classPaths2)
+			}
+		} else {
+			frontend
+		}
+
 		var program = measureProcess("Generating AST") {
 			createProgramAst(
-				SootToAst(),
+				generator,
 				initialClasses, entryPoint, classPaths2,
-				LocalVfs("$tempdir/out_ast")
+				LocalVfs("$tempdir/out_ast"),
+				threads = settings.threads,
+				initSoot = useSoot && generator !is CachedClassGenerator
 			)
 		}
-		//val programDced = measureProcess("Simplifying AST") { SimpleDCE(program, programDependencies) }
+		if (generator is CachedClassGenerator) println("AST cache: ${generator.hits} hits, ${generator.misses} misses")
+		if (settings.dce) {
+			val dceReport = measureProcess("Removing dead code") { SimpleDCE(program, initialClasses) }
+			println("DCE: ${dceReport.summary}")
+			LocalVfs("$tempdir/out_ast")["dce.txt"] = dceReport.details
+		}
 		return gen.build(program, outputFile = output, settings = settings, captureRunOutput = captureRunOutput, run = run, subtarget = subtarget, targetDirectory = targetDirectory)
 	}
 
-	fun createProgramAst(generator: AstClassGenerator, classNames: List<String>, mainClass: String, classPaths: List<String>, outputPath: SyncVfsFile): AstProgram {
-		SootUtils.init(classPaths)
-		return generateProgram(BaseProjectContext(classNames, mainClass, classPaths, outputPath, generator))
+	fun createProgramAst(generator: AstClassGenerator, classNames: List<String>, mainClass: String, classPaths: List<String>, outputPath: SyncVfsFile, threads: Int = 1, initSoot: Boolean = true): AstProgram {
+		if (initSoot) SootUtils.init(classPaths)
+		return generateProgram(BaseProjectContext(classNames, mainClass, classPaths, outputPath, generator, threads))
 	}
 
 	fun generateProgram(projectContext: BaseProjectContext): AstProgram {
@@ -130,23 +158,10 @@ class AllBuild(
 		print("Processing classes...")
 
 		val (elapsed) = measureTime {
-			while (program.hasClassToGenerate()) {
-				val className = program.readClassToGenerate()
-				//val clazz = projectContext.getSootClass(className.name)
-				//val nativeClassTag = clazz.clazz.getTag("libcore.NativeClass", "")
-
-				//print("Processing class: " + clazz.clazz.name + "...")
-
-				print("  CLASS: $className...");
-				val time = measureTime {
-					val generatedClass = generator.generateClass(program, className.name)
-
-					for (ref in References.get(generatedClass)) {
-						program.addReference(ref)
-					}
-				}
-
-				println("Ok(${time.time})");
+			if (projectContext.threads > 1 && generator is AstParallelClassGenerator) {
+				generateClassesInParallel(program, generator, projectContext.threads)
+			} else {
+				generateClasses(program, generator)
 			}
 
 			// Add synthetic methods to abstracts to simulate in haxe
@@ -168,6 +183,60 @@ class AllBuild(
 		return program
 	}
 
+	private fun generateClasses(program: AstProgram, generator: AstClassGenerator) {
+		while (program.hasClassToGenerate()) {
+			val className = program.readClassToGenerate()
+			//val clazz = projectContext.getSootClass(className.name)
+			//val nativeClassTag = clazz.clazz.getTag("libcore.NativeClass", "")
+
+			//print("Processing class: " + clazz.clazz.name + "...")
+
+			print("  CLASS: $className...");
+			val time = measureTime {
+				val generatedClass = generator.generateClass(program, className.name)
+
+				for (ref in References.get(generatedClass)) {
+					program.addReference(ref)
+				}
+			}
+
+			println("Ok(${time.time})");
+		}
+	}
+
+	// Works in rounds: every class queued so far is prepared on this thread and then built on the pool. Results are
+	// added to the program in queue order, so classes and references end in the same order as with generateClasses
+	// no matter how the threads are scheduled.
+	private fun generateClassesInParallel(program: AstProgram, generator: AstParallelClassGenerator, threads: Int) {
+		val executor = Executors.newFixedThreadPool(threads)
+		try {
+			while (program.hasClassToGenerate()) {
+				val classNames = program.readClassesToGenerate()
+				// Preparing may load classes into the frontend, so no task of the round runs until all are prepared
+				val tasks = classNames.map { generator.prepareClass(program, it.name) }
+				val futures = tasks.map { task ->
+					executor.submit(Callable<Pair<AstClass, List<AstClassRef>>> {
+						val generatedClass = task()
+						Pair(generatedClass, References.get(generatedClass))
+					})
+				}
+
+				for ((className, future) in classNames.zip(futures)) {
+					val (generatedClass, refs) = try {
+						future.get()
+					} catch (e: ExecutionException) {
+						throw e.cause ?: e
+					}
+					println("  CLASS: $className...Ok")
+					program.add(generatedClass)
+					for (ref in refs) program.addReference(ref)
+				}
+			}
+		} finally {
+			executor.shutdown()
+		}
+	}
+
 	fun generateDummyMethod(containingClass: AstClass, name: String, methodType: AstType.METHOD_TYPE, isStatic: Boolean, visibility: AstVisibility) = AstMethod(
 		containingClass = containingClass,
 		annotations = listOf(),
@@ -1,130 +1,186 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
 package com.jtransc.input
 
 import com.jtransc.ast.*
 import com.jtransc.ds.cast
 import com.jtransc.ds.createPairs
-import com.jtransc.error.noImpl
-import com.jtransc.io.readBytes
-import com.jtransc.types.*
-import com.jtransc.vfs.*
+import com.jtransc.types.AsmClassResolver
+import com.jtransc.types.Asm2Baf
+import com.jtransc.types.Baf2Expr
+import com.jtransc.types.isInterface
+import com.jtransc.vfs.SyncVfsFile
 import org.objectweb.asm.ClassReader
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Type
 import org.objectweb.asm.tree.AnnotationNode
 import org.objectweb.asm.tree.ClassNode
+import org.objectweb.asm.tree.FieldNode
 import org.objectweb.asm.tree.MethodNode
-import java.io.File
-import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
 
-/*
-object AsmToAst {
-	fun createProgramAst(dependencies: List<String>, entryPoint: String, classPaths2: List<String>, localVfs: SyncVfsFile, refs: Set<AstRef>): AstProgram {
-		return createProgramAst2(
-			AstType.REF(entryPoint),
-			MergedLocalAndJars(classPaths2),
-			(refs + dependencies.map { AstClassRef(it) }).toSet()
-		)
+// Reads the class files directly with ASM and rebuilds the expressions from the operand stack (Asm2Baf + Baf2Expr).
+// Produces the same AST shape as SootToAst without the Soot Scene, so classes can be converted in parallel.
+class AsmToAst : AstParallelClassGenerator {
+	private val resolvers = ConcurrentHashMap<SyncVfsFile, VfsAsmClassResolver>()
+
+	override fun generateClass(program: AstProgram, fqname: FqName): AstClass {
+		val astClass = createClass(program, fqname)
+		program.add(astClass)
+		return astClass
 	}
 
-	fun createProgramAst2(entryPoint: AstType.REF, classPaths: SyncVfsFile, references: Set<AstRef>): AstProgram {
-		val resolver = VfsClassResolver(classPaths)
-		val programBuilder = AstProgramBuilder(resolver)
-		val clazz = programBuilder[entryPoint.name]
-		return AstProgram(entryPoint.name, programBuilder.classes, classPaths)
+	// ASM has no shared state, so all the work happens in the returned function
+	override fun prepareClass(program: AstProgram, fqname: FqName): () -> AstClass {
+		return { createClass(program, fqname) }
 	}
-}
 
-class AstProgramBuilder(private val resolver: ClassResolver) {
-	private val classesMap = hashMapOf<FqName, AstClassBuilder>()
+	private fun resolver(program: AstProgram) = resolvers.getOrPut(program.resourcesVfs) { VfsAsmClassResolver(program.resourcesVfs) }
+
+	private fun createClass(program: AstProgram, fqname: FqName): AstClass {
+		val resolver = resolver(program)
+		val classNode = ClassNode()
+		ClassReader(resolver.readBytes(fqname.internalFqname)).accept(classNode, ClassReader.EXPAND_FRAMES)
+
+		val astClass = AstClass(
+			program = program,
+			name = fqname,
+			modifiers = classNode.access and 0xFFFF and Opcodes.ACC_SUPER.inv(),
+			annotations = getAnnotations(classNode.visibleAnnotations, classNode.invisibleAnnotations),
+			classType = if (classNode.isInterface) AstClassType.INTERFACE else if ((classNode.access and Opcodes.ACC_ABSTRACT) != 0) AstClassType.ABSTRACT else AstClassType.CLASS,
+			visibility = AstVisibility.PUBLIC,
+			extending = if (classNode.superName != null && !classNode.isInterface) FqName.fromInternal(classNode.superName) else null,
+			implementing = classNode.interfaces.cast<String>().map { FqName.fromInternal(it) }
+		)
 
-	operator fun get(clazz: FqName): AstClassBuilder {
-		if (clazz !in classesMap) {
-			classesMap[clazz] = AstClassBuilder(this, resolver.get(clazz))
+		for (method in classNode.methods.cast<MethodNode>()) {
+			astClass.add(generateMethod(astClass, classNode, method, resolver))
 		}
-		return classesMap[clazz]!!
-	}
 
-	val classes: List<AstClass> get() = classesMap.values.map { it.clazz }
-}
+		for (field in classNode.fields.cast<FieldNode>()) {
+			astClass.add(generateField(astClass, field))
+		}
 
-class AstClassBuilder(val program: AstProgramBuilder, val bytes: ByteArray) {
-	val classNode = ClassNode().apply {
-		ClassReader(bytes).accept(this, ClassReader.EXPAND_FRAMES)
+		return astClass
 	}
 
-	val clazz = AstClass(
-		name = FqName(classNode.name),
-		implCode = null,
-		modifiers = classNode.access,
-		annotations = classNode.visibleAnnotations.filterIsInstance<AnnotationNode>().map { AstAnnotationBuilder(it) },
-		//methods = classNode.methods.filterIsInstance<MethodNode>().map { AstMethodBuilder(it).method }
-		methods = noImpl
-	)
-}
+	private fun generateMethod(containingClass: AstClass, classNode: ClassNode, method: MethodNode, resolver: AsmClassResolver): AstMethod {
+		val type = AstType.demangleMethod(method.desc)
+		val hasBody = (method.access and (Opcodes.ACC_ABSTRACT or Opcodes.ACC_NATIVE)) == 0
+		return AstMethod(
+			containingClass = containingClass,
+			annotations = getAnnotations(method.visibleAnnotations, method.invisibleAnnotations),
+			name = method.name,
+			type = type,
+			signature = type.mangle(),
+			genericSignature = method.signature,
+			defaultTag = if (method.annotationDefault != null) Pair("default", getValue(method.annotationDefault)) else null,
+			modifiers = method.access and 0xFFFF,
+			isStatic = (method.access and Opcodes.ACC_STATIC) != 0,
+			visibility = getVisibility(method.access),
+			isNative = (method.access and Opcodes.ACC_NATIVE) != 0,
+			body = if (hasBody) generateBody(classNode, method, resolver) else null
+		)
+	}
 
-fun AstAnnotationBuilder(node: AnnotationNode): AstAnnotation {
-	noImpl
-}
+	private fun generateBody(classNode: ClassNode, method: MethodNode, resolver: AsmClassResolver): AstBody? {
+		try {
+			return Baf2Expr(Asm2Baf(classNode, method, resolver))
+		} catch (e: Throwable) {
+			println("WARNING: Couldn't generate method ${classNode.name}.${method.name}${method.desc}: ${e.message}")
+			return null
+		}
+	}
 
-object AstMethodBuilderTestExample {
-	@JvmStatic fun add(a: Int, b: Int) = a + b
-	@JvmStatic fun max(a: Int, b: Int) = if (a > b) a else b
-	@JvmStatic fun max2(a: Int, b: Int) = (if (a > b) a * 2 else b * 3) * 4
-	@JvmStatic fun max3(a: Long, b: Long) = (if (a > b) a * 2 else b * 3) * 4
-	//@JvmStatic fun test() = Array<Array<IntArray>>(0) { Array<IntArray>(0) { IntArray(0) } }
-}
+	private fun generateField(containingClass: AstClass, field: FieldNode): AstField {
+		val type = AstType.demangle(field.desc)
+		return AstField(
+			containingClass = containingClass,
+			name = field.name,
+			annotations = getAnnotations(field.visibleAnnotations, field.invisibleAnnotations),
+			type = type,
+			descriptor = type.mangle(),
+			genericSignature = field.signature,
+			modifiers = field.access and 0xFFFF,
+			isStatic = (field.access and Opcodes.ACC_STATIC) != 0,
+			isFinal = (field.access and Opcodes.ACC_FINAL) != 0,
+			constantValue = field.value,
+			visibility = getVisibility(field.access)
+		)
+	}
 
-fun <T> Class<T>.readClassNode(): ClassNode {
-	val bytes = this.readBytes()
-	return ClassNode().apply {
-		ClassReader(bytes).accept(this, ClassReader.EXPAND_FRAMES)
+	private fun getVisibility(access: Int) = if ((access and Opcodes.ACC_PUBLIC) != 0) {
+		AstVisibility.PUBLIC
+	} else if ((access and Opcodes.ACC_PROTECTED) != 0) {
+		AstVisibility.PROTECTED
+	} else {
+		AstVisibility.PRIVATE
 	}
-}
 
-object AstMethodBuilderTest {
-	@JvmStatic fun main(args: Array<String>) {
-		val clazz = AstMethodBuilderTestExample::class.java.readClassNode()
-		for (method in clazz.methods.cast<MethodNode>()) {
-			println("::${method.name}")
-			//val jimple = Baf2Jimple(Asm2Baf(clazz, method))
-			println(dump(Asm2Baf(clazz, method).toExpr()))
-			//println(jimple)
-		}
-		//println(Asm2Baf(clazz, method).toExpr())
-		//val builder = AstMethodBuilder(node.methods[0] as MethodNode)
+	private fun getAnnotations(visible: List<*>?, invisible: List<*>?): List<AstAnnotation> {
+		return (visible.orEmpty().cast<AnnotationNode>().map { it.toAst(runtimeVisible = true) } +
+			invisible.orEmpty().cast<AnnotationNode>().map { it.toAst(runtimeVisible = false) })
+			.filter { it.type !in ANNOTATIONS_BLACKLIST }
 	}
 }
 
-class AstMethodBuilder(val clazz: AstClassBuilder, val node: MethodNode) {
-	val method: AstMethod get() {
+// Reads the headers of the classes in the classpath to resolve the classes declaring referenced fields and methods
+class VfsAsmClassResolver(val classPaths: SyncVfsFile) : AsmClassResolver {
+	private val headers = ConcurrentHashMap<String, ClassNode>()
+	private val missing = ConcurrentHashMap.newKeySet<String>()
 
-		//return AstMethod(
-		//	name = node.name,
-		//	annotations = listOf(),
-		//	isExtraAdded = false,
-		//	modifiers = node.access,
-		//	body = node.toBaf().toExpr()
-		//)
+	fun readBytes(internalName: String): ByteArray {
+		val file = classPaths["$internalName.class"]
+		if (!file.exists) throw RuntimeException("AsmToAst. Can't find class '${internalName.replace('/', '.')}'")
+		return file.readBytes()
+	}
 
-		noImpl
+	override fun get(internalName: String): ClassNode? {
+		val cached = headers[internalName]
+		if (cached != null || internalName in missing) return cached
+		val file = classPaths["$internalName.class"]
+		if (!file.exists) {
+			missing += internalName
+			return null
+		}
+		val node = ClassNode()
+		ClassReader(file.readBytes()).accept(node, ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES)
+		headers[internalName] = node
+		return node
 	}
 }
 
-interface ClassResolver {
-	operator fun get(clazz: FqName): ByteArray
+fun AnnotationNode.toAst(runtimeVisible: Boolean = true): AstAnnotation {
+	val ref = AstType.demangle(this.desc) as AstType.REF
+	return AstAnnotation(ref, this.values.createPairs().map { Pair(it.first as String, getValue(it.second)) }.toMap(), runtimeVisible)
 }
 
-class VfsClassResolver(val classPaths: SyncVfsFile) : ClassResolver {
-	override operator fun get(clazz: FqName): ByteArray {
-		val path = clazz.internalFqname + ".class"
-		try {
-			return classPaths[path].readBytes()
-		} catch (e: IOException) {
-		}
-		throw ClassNotFoundException(clazz.fqname)
+// Same values as AnnotationElem.getValue
+private fun getValue(value: Any?): Any? = when (value) {
+	null -> null
+	is Byte -> value.toInt()
+	is Short -> value.toInt()
+	is Char -> value.toInt()
+	is Type -> null
+	is AnnotationNode -> null
+	is Array<*> -> {
+		val type = AstType.demangle(value[0] as String) as AstType.REF
+		AstFieldRef(type.name, value[1] as String, type)
 	}
+	is List<*> -> value.map { getValue(it) }
+	else -> value
 }
-	*/
-
-fun AnnotationNode.toAst():AstAnnotation {
-	val ref = AstType.demangle(this.desc) as AstType.REF
-	return AstAnnotation(ref, this.values.createPairs().map { Pair(it.first as String, it.second as String) }.toMap(), true)
-}
\ No newline at end of file
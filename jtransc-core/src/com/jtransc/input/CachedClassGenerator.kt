@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jtransc.input
+
+import com.jtransc.ast.AstClass
+import com.jtransc.ast.AstParallelClassGenerator
+import com.jtransc.ast.AstProgram
+import com.jtransc.ast.FqName
+import com.jtransc.ast.serialization.AstFormat
+import com.jtransc.ast.serialization.AstRead
+import com.jtransc.ast.serialization.AstWriter
+import com.jtransc.crypto.SHA1
+import com.jtransc.crypto.digestHex
+import com.jtransc.util.PersistentBinaryCache
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.Type
+import org.objectweb.asm.tree.ClassNode
+import org.objectweb.asm.tree.FieldNode
+import org.objectweb.asm.tree.MethodNode
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+// Keeps the classes built by generator in a PersistentBinaryCache so a rebuild only converts the classes whose
+// class file changed. Entries hold the class as generated, before features or dead code elimination run.
+// Converting resolves fields, methods and types through other classes, so the key covers the class file, the classes
+// it references and the supertypes of all of them.
+// prepare runs once before the first class that isn't cached is generated (initializing the frontend).
+class CachedClassGenerator(
+	val generator: AstParallelClassGenerator,
+	val cache: PersistentBinaryCache,
+	val version: String,
+	prepare: () -> Unit = {}
+) : AstParallelClassGenerator {
+	private val _hits = AtomicInteger()
+	private val _misses = AtomicInteger()
+	val hits: Int get() = _hits.get()
+	val misses: Int get() = _misses.get()
+
+	private val prepared = lazy { prepare() }
+
+	// Hash, supertypes and referenced classes of each class file, by internal name
+	private class ClassFileInfo(val hash: String, val supertypes: List<String>, val references: List<String>)
+
+	private val infos = ConcurrentHashMap<String, Optional<ClassFileInfo>>()
+
+	override fun generateClass(program: AstProgram, fqname: FqName): AstClass {
+		val key = key(program, fqname)
+		val cached = read(program, key)
+		if (cached != null) {
+			program.add(cached)
+			return cached
+		}
+		prepared.value
+		val clazz = generator.generateClass(program, fqname)
+		write(key, clazz)
+		return clazz
+	}
+
+	override fun prepareClass(program: AstProgram, fqname: FqName): () -> AstClass {
+		val key = key(program, fqname)
+		val cached = read(program, key)
+		if (cached != null) return { cached }
+		prepared.value
+		val task = generator.prepareClass(program, fqname)
+		return {
+			val clazz = task()
+			write(key, clazz)
+			clazz
+		}
+	}
+
+	private fun key(program: AstProgram, fqname: FqName): String? {
+		val info = info(program, fqname.internalFqname) ?: return null
+		val dependencies = TreeSet<String>()
+		for (name in info.supertypes + info.references) addHierarchy(program, name, dependencies)
+		val key = StringBuilder()
+		key.append(version).append(':').append(AstFormat.VERSION).append(':').append(generator.javaClass.name).append(':').append(info.hash)
+		for (name in dependencies) key.append(':').append(name).append('=').append(info(program, name)?.hash ?: "missing")
+		return SHA1.digestHex(key.toString().toByteArray())
+	}
+
+	private fun addHierarchy(program: AstProgram, internalName: String, out: MutableSet<String>) {
+		if (!out.add(internalName)) return
+		for (supertype in info(program, internalName)?.supertypes ?: listOf()) addHierarchy(program, supertype, out)
+	}
+
+	private fun info(program: AstProgram, internalName: String): ClassFileInfo? {
+		return infos.getOrPut(internalName) {
+			val file = program.resourcesVfs["$internalName.class"]
+			Optional.ofNullable(if (file.exists) readInfo(file.readBytes()) else null)
+		}.orElse(null)
+	}
+
+	private fun readInfo(bytes: ByteArray): ClassFileInfo {
+		val reader = ClassReader(bytes)
+		val references = hashSetOf<String>()
+		val buffer = CharArray(reader.maxStringLength)
+		// Classes and member descriptors used by the code are in the constant pool
+		for (item in 1 until reader.itemCount) {
+			val offset = reader.getItem(item)
+			if (offset == 0) continue
+			when (reader.b[offset - 1].toInt()) {
+				CONSTANT_CLASS -> {
+					val name = reader.readUTF8(offset, buffer)
+					if (name.startsWith("[")) addTypes(Type.getType(name), references) else references += name
+				}
+				CONSTANT_NAME_AND_TYPE -> addDescriptor(reader.readUTF8(offset + 2, buffer), references)
+			}
+		}
+		val node = ClassNode()
+		reader.accept(node, ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES)
+		for (field in node.fields.filterIsInstance<FieldNode>()) addDescriptor(field.desc, references)
+		for (method in node.methods.filterIsInstance<MethodNode>()) addDescriptor(method.desc, references)
+		val supertypes = listOf(node.superName).filterNotNull() + node.interfaces.filterIsInstance<String>()
+		return ClassFileInfo(SHA1.digestHex(bytes), supertypes, references.toList())
+	}
+
+	private fun addDescriptor(descriptor: String, out: MutableSet<String>) {
+		if (descriptor.startsWith("(")) {
+			for (type in Type.getArgumentTypes(descriptor)) addTypes(type, out)
+			addTypes(Type.getReturnType(descriptor), out)
+		} else {
+			addTypes(Type.getType(descriptor), out)
+		}
+	}
+
+	private fun addTypes(type: Type, out: MutableSet<String>) {
+		val element = if (type.sort == Type.ARRAY) type.elementType else type
+		if (element.sort == Type.OBJECT) out += element.internalName
+	}
+
+	companion object {
+		private const val CONSTANT_CLASS = 7
+		private const val CONSTANT_NAME_AND_TYPE = 12
+	}
+
+	private fun read(program: AstProgram, key: String?): AstClass? {
+		if (key == null) return null
+		val data = cache[key]
+		if (data == null) {
+			_misses.incrementAndGet()
+			return null
+		}
+		try {
+			val clazz = AstRead(data).readClass(program)
+			_hits.incrementAndGet()
+			return clazz
+		} catch (e: Throwable) {
+			println("WARNING: Invalid AST cache entry $key: ${e.message}")
+			_misses.incrementAndGet()
+			return null
+		}
+	}
+
+	private fun write(key: String?, clazz: AstClass) {
+		if (key == null) return
+		try {
+			val writer = AstWriter()
+			writer.writeClass(clazz)
+			cache[key] = writer.toByteArray()
+		} catch (e: Throwable) {
+			println("WARNING: Can't cache class ${clazz.fqname}: ${e.message}")
+		}
+	}
+}
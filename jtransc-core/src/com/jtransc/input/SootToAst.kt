@@ -12,7 +12,7 @@ import soot.options.Options
 import soot.tagkit.*
 import java.io.File
 
-class SootToAst : AstClassGenerator {
+class SootToAst : AstParallelClassGenerator {
 	fun getSootClass(fqname: FqName) = Scene.v().loadClassAndSupport(fqname.fqname)
 
 	override fun generateClass(program: AstProgram, fqname: FqName): AstClass {
@@ -20,6 +20,32 @@ class SootToAst : AstClassGenerator {
 	}
 
 	fun generateClass(program: AstProgram, sootClass: SootClass): AstClass {
+		val astClass = createClass(program, sootClass, retrieveBodies = true)
+		program.add(astClass)
+		return astClass
+	}
+
+	// Soot isn't thread-safe, so loading the class, building the bodies and resolving the references happen here.
+	// The returned function only reads what was built and can run on a worker thread.
+	override fun prepareClass(program: AstProgram, fqname: FqName): () -> AstClass {
+		val sootClass = getSootClass(fqname)
+		for (method in sootClass.methods) {
+			if (method.isConcrete) prepareBody(method)
+		}
+		return { createClass(program, sootClass, retrieveBodies = false) }
+	}
+
+	private fun prepareBody(method: SootMethod) {
+		for (box in method.retrieveActiveBody().useAndDefBoxes) {
+			val value = (box as ValueBox).value
+			// Types of new arrays and references are created and cached lazily
+			value.type
+			if (value is FieldRef) value.field
+			if (value is InvokeExpr) value.method
+		}
+	}
+
+	private fun createClass(program: AstProgram, sootClass: SootClass, retrieveBodies: Boolean): AstClass {
 		val astClass = AstClass(
 			program = program,
 			name = sootClass.name.fqname,
@@ -30,9 +56,8 @@ class SootToAst : AstClassGenerator {
 			extending = if (sootClass.hasSuperclass() && !sootClass.isInterface) FqName(sootClass.superclass.name) else null,
 			implementing = sootClass.interfaces.map { FqName(it.name) }
 		)
-		program.add(astClass)
 
-		for (method in sootClass.methods.map { generateMethod(astClass, it) }) {
+		for (method in sootClass.methods.map { generateMethod(astClass, it, retrieveBodies) }) {
 			astClass.add(method)
 		}
 
@@ -45,7 +70,7 @@ class SootToAst : AstClassGenerator {
 		return astClass
 	}
 
-	fun generateMethod(containingClass: AstClass, method: SootMethod) = AstMethod(
+	fun generateMethod(containingClass: AstClass, method: SootMethod, retrieveBody: Boolean = true) = AstMethod(
 		containingClass = containingClass,
 		annotations = method.tags.toAstAnnotations(),
 		name = method.name,
@@ -57,7 +82,7 @@ class SootToAst : AstClassGenerator {
 		isStatic = method.isStatic,
 		visibility = method.astVisibility,
 		isNative = method.isNative,
-		body = if (method.isConcrete) AstMethodProcessor.processBody(method, containingClass) else null
+		body = if (method.isConcrete) AstMethodProcessor.processBody(method, containingClass, retrieveBody) else null
 	)
 
 	fun generateField(containingClass: AstClass, field: SootField) = AstField(
@@ -81,19 +106,21 @@ open class BaseProjectContext(
 	val mainClass: String,
 	val classPaths: List<String>,
 	val output: SyncVfsFile,
-	val generator: AstClassGenerator
+	val generator: AstClassGenerator,
+	val threads: Int = 1
 )
 
 open class AstMethodProcessor private constructor(
 	private val method: SootMethod,
-	private val containingClass: AstClass
+	private val containingClass: AstClass,
+	retrieveBody: Boolean
 ) {
 	private val program = containingClass.program
 
 	companion object {
-		fun processBody(method: SootMethod, containingClass: AstClass): AstBody? {
+		fun processBody(method: SootMethod, containingClass: AstClass, retrieveBody: Boolean = true): AstBody? {
 			try {
-				return AstMethodProcessor(method, containingClass).handle()
+				return AstMethodProcessor(method, containingClass, retrieveBody).handle()
 			} catch (e: Throwable) {
 				println("WARNING: Couldn't generate method ${containingClass.name}::${method.name}, because: " + e.message)
 				return null
@@ -101,7 +128,8 @@ open class AstMethodProcessor private constructor(
 		}
 	}
 
-	private val activeBody = method.retrieveActiveBody()
+	// Without retrieveBody the body must have been built already, since building it isn't thread-safe
+	private val activeBody = if (retrieveBody) method.retrieveActiveBody() else method.activeBody
 	private val units = activeBody.units.toList()
 	private val traps = activeBody.traps.toList()
 
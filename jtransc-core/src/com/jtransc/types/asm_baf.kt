@@ -14,33 +14,75 @@ fun AstMethodRef(clazz: ClassNode, method: MethodNode): AstMethodRef {
 	return AstMethodRef(clazz.name.replace('/', '.').fqname, method.name, AstType.demangleMethod(method.desc), isStatic)
 }
 
-//fun MethodNode.toBaf(): BAF.Body = Asm2Baf(this)
+// Gives access to the classes of the classpath, so references can be resolved to the class declaring the member
+interface AsmClassResolver {
+	// Returns null when the class can't be found
+	operator fun get(internalName: String): ClassNode?
+}
+
+val ClassNode.isInterface: Boolean get() = (this.access and Opcodes.ACC_INTERFACE) != 0
 
-fun Asm2Baf(clazz: ClassNode, method: MethodNode): BAF.Body {
-	return Asm2Baf(AstMethodRef(clazz, method), method.instructions)
+// Fields are searched in the class, then in its interfaces and then in its superclass
+fun AsmClassResolver.findFieldClass(owner: String, name: String, desc: String): ClassNode? {
+	val clazz = this[owner] ?: return null
+	if (clazz.fields.any { it.name == name && it.desc == desc }) return clazz
+	for (iface in clazz.interfaces) {
+		val result = findFieldClass(iface, name, desc)
+		if (result != null) return result
+	}
+	return if (clazz.superName != null) findFieldClass(clazz.superName, name, desc) else null
+}
+
+// Methods are searched in the class and its superclasses and then in its interfaces
+fun AsmClassResolver.findMethodClass(owner: String, name: String, desc: String): ClassNode? {
+	var clazz = this[owner]
+	while (clazz != null) {
+		if (clazz.methods.any { it.name == name && it.desc == desc }) return clazz
+		clazz = if (clazz.superName != null) this[clazz.superName] else null
+	}
+	for (iface in this[owner]?.interfaces ?: listOf<String>()) {
+		val result = findMethodClass(iface, name, desc)
+		if (result != null) return result
+	}
+	return null
 }
 
-fun Asm2Baf(methodRef: AstMethodRef, list: InsnList): BAF.Body {
+fun Asm2Baf(clazz: ClassNode, method: MethodNode, resolver: AsmClassResolver? = null): BAF.Body {
+	val methodRef = AstMethodRef(clazz, method)
+	val list = method.instructions
 	val out = ArrayList<BAF>()
 	var i = list.first
 
-	fun getType(value:Any?):AstType {
+	// Uninitialized values in frames are identified by the label preceding their NEW instruction
+	fun getNewType(label: LabelNode): AstType {
+		var node = label.next
+		while (node != null && node.opcode < 0) node = node.next
+		return AstType.REF_INT2((node as TypeInsnNode).desc)
+	}
+
+	fun getType(value: Any?): AstType? {
 		return when (value) {
-			is Int -> AstType.INT
-			is String -> AstType.STRING // Or custom type?
-			//else -> AstType.UNKNOWN
-			else -> {
-				throw InvalidOperationException("$value")
-			}
+			Opcodes.TOP -> null
+			Opcodes.INTEGER -> AstType.INT
+			Opcodes.FLOAT -> AstType.FLOAT
+			Opcodes.DOUBLE -> AstType.DOUBLE
+			Opcodes.LONG -> AstType.LONG
+			Opcodes.NULL -> AstType.NULL
+			Opcodes.UNINITIALIZED_THIS -> AstType.REF_INT2(clazz.name)
+			is String -> AstType.REF_INT(value)
+			is LabelNode -> getNewType(value)
+			else -> throw InvalidOperationException("$value")
 		}
 	}
 
 	fun handleField(i:FieldInsnNode) {
 		val isStatic = (i.opcode == Opcodes.GETSTATIC) || (i.opcode == Opcodes.PUTSTATIC)
-		val ref = AstFieldRef(AstType.REF_INT2(i.owner).fqname.fqname, i.name, AstType.demangle(i.desc), isStatic)
+		val declaringClass = resolver?.findFieldClass(i.owner, i.name, i.desc)
+		val ref = AstFieldRef(AstType.REF_INT2(declaringClass?.name ?: i.owner).name, i.name, AstType.demangle(i.desc), isStatic)
+		val isInterface = declaringClass?.isInterface ?: false
 		out.add(when (i.opcode) {
-			Opcodes.GETSTATIC -> BAF.GETFIELD(ref)
-			Opcodes.PUTSTATIC -> BAF.PUTFIELD(ref)
+			Opcodes.GETSTATIC -> BAF.GETFIELD(ref, isInterface)
+			Opcodes.PUTSTATIC -> BAF.PUTFIELD(ref, isInterface)
 			Opcodes.GETFIELD -> BAF.GETFIELD(ref)
 			Opcodes.PUTFIELD -> BAF.PUTFIELD(ref)
 			else -> invalidOp
@@ -58,8 +100,8 @@ fun Asm2Baf(methodRef: AstMethodRef, list: InsnList): BAF.Body {
 			Opcodes.ICONST_3 -> BAF.CONST(3)
 			Opcodes.ICONST_4 -> BAF.CONST(4)
 			Opcodes.ICONST_5 -> BAF.CONST(5)
-			Opcodes.LCONST_0 -> BAF.CONST(0)
-			Opcodes.LCONST_1 -> BAF.CONST(1)
+			Opcodes.LCONST_0 -> BAF.CONST(0L)
+			Opcodes.LCONST_1 -> BAF.CONST(1L)
 			Opcodes.FCONST_0 -> BAF.CONST(0f)
 			Opcodes.FCONST_1 -> BAF.CONST(1f)
 			Opcodes.FCONST_2 -> BAF.CONST(2f)
@@ -141,7 +183,7 @@ fun Asm2Baf(methodRef: AstMethodRef, list: InsnList): BAF.Body {
 			Opcodes.I2B -> BAF.CONV(AstType.INT, AstType.BYTE)
 			Opcodes.I2C -> BAF.CONV(AstType.INT, AstType.CHAR)
 			Opcodes.I2S -> BAF.CONV(AstType.INT, AstType.SHORT)
-			Opcodes.LCMP -> BAF.BINOP(AstType.LONG, AstBinop.CMP)
+			Opcodes.LCMP -> BAF.BINOP(AstType.LONG, AstBinop.LCMP)
 			Opcodes.FCMPL -> BAF.BINOP(AstType.FLOAT, AstBinop.CMPL)
 			Opcodes.FCMPG -> BAF.BINOP(AstType.FLOAT, AstBinop.CMPG)
 			Opcodes.DCMPL -> BAF.BINOP(AstType.DOUBLE, AstBinop.CMPL)
@@ -182,7 +224,7 @@ fun Asm2Baf(methodRef: AstMethodRef, list: InsnList): BAF.Body {
 			Opcodes.FSTORE -> BAF.PUTLOCAL(AstType.FLOAT, i.`var`)
 			Opcodes.DSTORE -> BAF.PUTLOCAL(AstType.DOUBLE, i.`var`)
 			Opcodes.ASTORE -> BAF.PUTLOCAL(AstType.OBJECT, i.`var`)
-			Opcodes.RET -> invalidOp
+			Opcodes.RET -> invalidOp("RET is not supported")
 			else -> invalidOp
 		})
 	}
@@ -204,7 +246,7 @@ fun Asm2Baf(methodRef: AstMethodRef, list: InsnList): BAF.Body {
 			Opcodes.IF_ACMPEQ -> BAF.GOTOIF_A(AstBinop.EQ, i.label.label)
 			Opcodes.IF_ACMPNE -> BAF.GOTOIF_A(AstBinop.NE, i.label.label)
 			Opcodes.GOTO -> BAF.GOTO(i.label.label)
-			Opcodes.JSR -> invalidOp
+			Opcodes.JSR -> invalidOp("JSR is not supported")
 			Opcodes.IFNULL -> BAF.GOTOIFNULL(AstBinop.EQ, i.label.label)
 			Opcodes.IFNONNULL -> BAF.GOTOIFNULL(AstBinop.NE, i.label.label)
 			else -> invalidOp
@@ -228,8 +270,8 @@ fun Asm2Baf(methodRef: AstMethodRef, list: InsnList): BAF.Body {
 
 	fun handleInt(i:IntInsnNode) {
 		out.add(when (i.opcode) {
-			Opcodes.BIPUSH -> BAF.CONST(i.operand.toByte())
-			Opcodes.SIPUSH -> BAF.CONST(i.operand.toShort())
+			Opcodes.BIPUSH -> BAF.CONST(i.operand)
+			Opcodes.SIPUSH -> BAF.CONST(i.operand)
 			Opcodes.NEWARRAY -> {
 				val type = when (i.operand) {
 					Opcodes.T_BOOLEAN -> AstType.BOOL
@@ -249,14 +291,23 @@ fun Asm2Baf(methodRef: AstMethodRef, list: InsnList): BAF.Body {
 	}
 
 	fun handleMethod(i:MethodInsnNode) {
-		val methodRef = com.jtransc.ast.AstMethodRef(AstType.REF_INT2(i.owner).fqname.fqname, i.name, AstType.demangleMethod(i.desc))
+		// Methods called on arrays (clone) are the ones from java/lang/Object
+		val owner = if (i.owner.startsWith("[")) "java/lang/Object" else i.owner
+		val methodRef = com.jtransc.ast.AstMethodRef(AstType.REF_INT2(owner).name, i.name, AstType.demangleMethod(i.desc))
+		val declaringClass = resolver?.findMethodClass(owner, i.name, i.desc)
 		out.add(BAF.INVOKE(methodRef, i.itf, when (i.opcode) {
 			Opcodes.INVOKEVIRTUAL -> BAF.InvokeType.VIRTUAL
 			Opcodes.INVOKESPECIAL -> BAF.InvokeType.SPECIAL
 			Opcodes.INVOKESTATIC -> BAF.InvokeType.STATIC
 			Opcodes.INVOKEINTERFACE -> BAF.InvokeType.INTERFACE
 			else -> invalidOp
-		}))
+		}, if (declaringClass != null) AstType.REF_INT2(declaringClass.name).name else methodRef.containingClass))
+	}
+
+	fun handleMultiANewArray(i:MultiANewArrayInsnNode) {
+		var type = AstType.demangle(i.desc)
+		for (n in 0 until i.dims) type = (type as AstType.ARRAY).element
+		out.add(BAF.NEWARRAY(type, i.dims))
 	}
 
 	fun handleLookupSwitch(i:LookupSwitchInsnNode) {
@@ -284,7 +335,13 @@ fun Asm2Baf(methodRef: AstMethodRef, list: InsnList): BAF.Body {
 	}
 
 	fun handleFrame(i:FrameNode) {
-		out.add(BAF.FRAME(i.type, i.local.map { getType(it) }, i.stack.map { getType(it) }))
+		val locals = arrayListOf<AstType?>()
+		for (local in i.local ?: listOf<Any>()) {
+			val type = getType(local)
+			locals.add(type)
+			if (type == AstType.LONG || type == AstType.DOUBLE) locals.add(null)
+		}
+		out.add(BAF.FRAME(i.type, locals, (i.stack ?: listOf<Any>()).map { getType(it) ?: AstType.OBJECT }))
 	}
 
 	while (i != null) {
@@ -300,6 +357,7 @@ fun Asm2Baf(methodRef: AstMethodRef, list: InsnList): BAF.Body {
 			is LookupSwitchInsnNode -> handleLookupSwitch(i)
 			is TableSwitchInsnNode -> handleTableSwitch(i)
 			is InvokeDynamicInsnNode -> handleInvokeDynamic(i)
+			is MultiANewArrayInsnNode -> handleMultiANewArray(i)
 			is LabelNode -> handleLabel(i)
 			is IincInsnNode -> handleIinc(i)
 			is LineNumberNode -> handleLineNumber(i)
@@ -309,5 +367,7 @@ fun Asm2Baf(methodRef: AstMethodRef, list: InsnList): BAF.Body {
 		i = i.next
 	}
 
-	return BAF.Body(methodRef, out)
+	val traps = method.tryCatchBlocks.map { BAF.tryCatchBlock(it.start.label, it.end.label, it.handler.label, it.type) }
+
+	return BAF.Body(methodRef, out, traps)
 }
\ No newline at end of file
@@ -9,7 +9,7 @@ import org.objectweb.asm.Label
  * Abstracts from ASM. Simplifies instructions. Stack based.
  */
 interface BAF {
-	data class Body(val methodRef: AstMethodRef, val items: List<BAF>)
+	data class Body(val methodRef: AstMethodRef, val items: List<BAF>, val traps: List<tryCatchBlock> = listOf())
 
 	data class INVOKEDYNAMIC(val name: String?, val desc: String?, val handle: Handle, val args: List<Any?>) : BAF
 
@@ -34,7 +34,8 @@ interface BAF {
 	object THROW : BAF
 
 	data class MONITOR(val enter: Boolean) : BAF
-	data class INVOKE(val method: AstMethodRef, val itf: Boolean, val type: InvokeType) : BAF {
+	// declaringClass is the class that declares the method, it can be an ancestor of method.containingClass
+	data class INVOKE(val method: AstMethodRef, val itf: Boolean, val type: InvokeType, val declaringClass: FqName = method.containingClass) : BAF {
 		val methodType by lazy { method.type }
 	}
 	data class SWITCH(val dflt: Label?, val pairs: List<Pair<Int, Label?>>) : BAF
@@ -44,7 +45,8 @@ interface BAF {
 
 	data class GETLOCAL(val type: AstType, val index: Int) : BAF
 	data class PUTLOCAL(val type: AstType, val index: Int) : BAF
-	data class FRAME(val type: Int, val localTypes: List<AstType>, val stackTypes: List<AstType>) : BAF
+	// One entry per local slot, null for slots without a value and the second slot of longs and doubles
+	data class FRAME(val type: Int, val localTypes: List<AstType?>, val stackTypes: List<AstType>) : BAF
 
 	data class NEWARRAY(val type: AstType, val dims: Int) : BAF
 	data class ANEW(val type: AstType.REF) : BAF
@@ -84,8 +86,9 @@ interface BAF {
 
 	object END : BAF
 
-	data class GETFIELD(val ref: AstFieldRef) : BAF
-	data class PUTFIELD(val ref: AstFieldRef) : BAF
+	// ref points to the class that declares the field
+	data class GETFIELD(val ref: AstFieldRef, val isInterface: Boolean = false) : BAF
+	data class PUTFIELD(val ref: AstFieldRef, val isInterface: Boolean = false) : BAF
 	data class LOCALVARIABLE(val name: String?, val desc: String?, val signature: String?, val start: Label?, val end: Label?, val index: Int) : BAF
 	data class ATTR(val attr: Attribute?) : BAF
 	data class PARAM(val name: String?, val access: Int) : BAF
@@ -1,208 +1,481 @@
 package com.jtransc.types
 
 import com.jtransc.ast.*
-import com.jtransc.error.InvalidOperationException
+import com.jtransc.error.noImpl
+import com.jtransc.input.getCommonType
+import org.objectweb.asm.Handle
 import org.objectweb.asm.Label
+import org.objectweb.asm.Type
 import java.util.*
 
 fun BAF.Body.toExpr() = Baf2Expr(this)
 
+// Locals are created per slot and kind (int, long, float, double or reference). The body is converted once to find
+// the slots that only hold one type, and converted again giving those locals that type, so only the slots reused for
+// different types need casts when read.
 fun Baf2Expr(body: BAF.Body): AstBody {
-	val stms = ArrayList<AstStm>()
-	val usedLabels = mutableSetOf<AstLabel>()
-	val stack = Stack<AstExpr>()
-	val methodRef = body.methodRef
-	val isStatic = methodRef.isStatic != false
-	val containingClass = methodRef.containingClass
-	val locals = LinkedHashMap<Pair<AstType, Int>, AstLocal>()
+	val first = Baf2ExprConverter(body, mapOf())
+	val result = first.convert()
+	val slotTypes = first.getSingleTypeSlots()
+	return if (slotTypes.isEmpty()) result else Baf2ExprConverter(body, slotTypes).convert()
+}
 
-	//methodRef.allClassRefs
+// Rebuilds expressions from the operand stack. Values that a statement could change before they are used are moved to
+// temporal locals first, and values left in the stack when jumping are passed through one local per stack position.
+private class Baf2ExprConverter(val body: BAF.Body, val slotTypes: Map<Pair<Int, AstType>, AstType>) {
+	private data class State(val locals: List<AstType?>, val stack: List<AstType>)
 
-	var localId = 0
-	fun local(type: AstType, index: Int): AstLocal {
-		val pair = Pair(type, index)
-		if (pair !in locals) {
-			locals[pair] = AstLocal(index, "v" + localId++, type)
+	private val methodRef = body.methodRef
+	private val isStatic = methodRef.isStatic != false
+	private val stms = ArrayList<AstStm>()
+	private val stack = Stack<AstExpr>()
+	private val locals = LinkedHashMap<String, AstLocal>()
+	private val storedTypes = HashMap<Pair<Int, AstType>, HashSet<AstType>>()
+	private val localTypes = ArrayList<AstType?>()
+	private val labels = HashMap<Label?, AstLabel>()
+	private val labelFrames = HashMap<Label?, BAF.FRAME>()
+	private val labelStates = HashMap<Label?, State>()
+	private val handlers = HashMap<Label?, AstType.REF>()
+	private var tempId = 0
+	private var reachable = true
+
+	fun convert(): AstBody {
+		prepare()
+
+		if (!isStatic) store(0, AstType.OBJECT, AstExpr.THIS(methodRef.containingClass))
+		var slot = if (isStatic) 0 else 1
+		for (arg in methodRef.type.args) {
+			store(slot, arg.type, AstExpr.PARAM(arg))
+			slot += if (arg.type == AstType.LONG || arg.type == AstType.DOUBLE) 2 else 1
+		}
+
+		for (i in body.items) {
+			if (i is BAF.LABEL && i.label in labels) {
+				handleLabel(i.label)
+			} else if (reachable) {
+				handle(i)
+			}
 		}
-		return locals[pair]!!
+
+		return AstBody(
+			AstStm.STMS(stms),
+			locals.values.toList(),
+			body.traps.map { AstTrap(labels[it.start]!!, labels[it.end]!!, labels[it.handler]!!, exceptionType(it.type)) }
+		)
 	}
 
-	fun label(label: Label?): AstLabel {
-		return AstLabel("label_$label")
+	fun getSingleTypeSlots(): Map<Pair<Int, AstType>, AstType> {
+		return storedTypes.filter { it.value.size == 1 && it.value.first() != it.key.second }.mapValues { it.value.first() }
 	}
 
-	fun ensureEmptyStack() {
-		if (stack.isNotEmpty()) {
-			println(stack)
-			throw InvalidOperationException("Stack is not empty!")
+	private fun prepare() {
+		val used = HashSet<Label?>()
+		for (i in body.items) {
+			when (i) {
+				is BAF.GOTO -> used += i.label
+				is BAF.GOTOIF0 -> used += i.label
+				is BAF.GOTOIF_I -> used += i.label
+				is BAF.GOTOIF_A -> used += i.label
+				is BAF.GOTOIFNULL -> used += i.label
+				is BAF.SWITCH -> {
+					used += i.dflt
+					used += i.pairs.map { it.second }
+				}
+			}
+		}
+		for (trap in body.traps) {
+			used += listOf(trap.start, trap.end, trap.handler)
+			if (trap.handler !in handlers) handlers[trap.handler] = exceptionType(trap.type)
+		}
+		val items = body.items
+		for ((index, i) in items.withIndex()) {
+			if (i !is BAF.LABEL || i.label !in used) continue
+			labels[i.label] = AstLabel("label_${labels.size + 1}")
+			// Frames follow the labels they describe
+			var next = index + 1
+			while (next < items.size && (items[next] is BAF.LABEL || items[next] is BAF.LINE)) next++
+			val frame = items.getOrNull(next)
+			if (frame is BAF.FRAME) labelFrames[i.label] = frame
 		}
 	}
 
-	fun saveStack(): List<AstType> {
-		//if (stack.size > 1) throw InvalidOperationException("@TODO: check when stack.size > 1 :: ${stack.size}")
-		var index = 1000 // @TODO: hack
-		val types = ArrayList<AstType>()
-		while (stack.isNotEmpty()) {
-			val s = stack.pop()
-			stms.add(AstStm.SET(local(s.type, index), s))
-			types.add(s.type)
-			index++
-		}
-		return types
+	private fun exceptionType(internalName: String?) = AstType.REF_INT2(internalName ?: "java/lang/Throwable")
+
+	private fun kindOf(type: AstType): AstType = when (type) {
+		AstType.BOOL, AstType.BYTE, AstType.CHAR, AstType.SHORT, AstType.INT -> AstType.INT
+		AstType.LONG, AstType.FLOAT, AstType.DOUBLE -> type
+		else -> AstType.OBJECT
 	}
 
-	fun restoreStack(types: List<AstType>) {
-		//if (types.size > 1) throw InvalidOperationException("@TODO: check when stack.size > 1 :: ${stack.size}")
-		var index = 1000 // @TODO: hack
-		for (type in types) {
-			stack.push(AstExpr.LOCAL(local(type, index)))
-			index++
+	private fun localTypeOf(type: AstType): AstType = when (type) {
+		is AstType.GENERIC -> type.type
+		AstType.NULL -> AstType.OBJECT
+		else -> type
+	}
+
+	private fun cast(e: AstExpr, to: AstType): AstExpr = if (e.type != to) AstExpr.CAST(e, to) else e
+
+	private fun local(name: String, index: Int, type: AstType): AstLocal {
+		return locals.getOrPut(name) { AstLocal(index, name, type) }
+	}
+
+	private fun prefixOf(kind: AstType) = when (kind) {
+		AstType.INT -> "i"
+		AstType.LONG -> "l"
+		AstType.FLOAT -> "f"
+		AstType.DOUBLE -> "d"
+		else -> "r"
+	}
+
+	private fun slotLocal(slot: Int, kind: AstType): AstLocal {
+		return local("${prefixOf(kind)}$slot", slot, slotTypes[Pair(slot, kind)] ?: kind)
+	}
+
+	private fun stackLocal(depth: Int, kind: AstType): AstLocal {
+		return local("s$depth${prefixOf(kind)}", 10000 + depth, kind)
+	}
+
+	private fun temp(type: AstType): AstLocal {
+		val id = tempId++
+		return local("t$id", 20000 + id, localTypeOf(type))
+	}
+
+	private fun setLocalType(slot: Int, type: AstType?) {
+		while (localTypes.size <= slot + 1) localTypes.add(null)
+		localTypes[slot] = if (type == null || type == AstType.NULL) null else localTypeOf(type)
+	}
+
+	private fun load(slot: Int, type: AstType): AstExpr {
+		val kind = kindOf(type)
+		val local = slotLocal(slot, kind)
+		val current = localTypes.getOrNull(slot)
+		return if (local.type == AstType.OBJECT && current != null && kindOf(current) == AstType.OBJECT) {
+			cast(AstExpr.LOCAL(local), current)
+		} else {
+			AstExpr.LOCAL(local)
 		}
 	}
 
-	fun addStm(stm: AstStm) {
-		val savedStack = saveStack()
+	private fun store(slot: Int, type: AstType, value: AstExpr) {
+		val kind = kindOf(type)
+		val local = slotLocal(slot, kind)
+		if (value.type != AstType.NULL) storedTypes.getOrPut(Pair(slot, kind)) { HashSet() } += localTypeOf(value.type)
+		addStm(AstStm.SET(local, cast(value, local.type)))
+		setLocalType(slot, value.type)
+		if (kind == AstType.LONG || kind == AstType.DOUBLE) setLocalType(slot + 1, null)
+	}
+
+	// Expressions without side effects that only change when a local they read is assigned
+	private fun isPure(e: AstExpr): Boolean = when (e) {
+		is AstExpr.LITERAL, is AstExpr.CLASS_CONSTANT, is AstExpr.THIS, is AstExpr.PARAM, is AstExpr.LOCAL -> true
+		is AstExpr.CAST -> isPure(e.expr)
+		is AstExpr.UNOP -> isPure(e.right)
+		is AstExpr.BINOP -> e.op != AstBinop.DIV && e.op != AstBinop.REM && isPure(e.left) && isPure(e.right)
+		else -> false
+	}
+
+	private fun reads(e: AstExpr, local: AstLocal): Boolean = when (e) {
+		is AstExpr.LOCAL -> e.local == local
+		is AstExpr.CAST -> reads(e.expr, local)
+		is AstExpr.UNOP -> reads(e.right, local)
+		is AstExpr.BINOP -> reads(e.left, local) || reads(e.right, local)
+		else -> false
+	}
+
+	private fun spill(index: Int) {
+		val e = stack[index]
+		val local = temp(e.type)
+		stms.add(AstStm.SET(local, e))
+		stack[index] = AstExpr.LOCAL(local)
+	}
+
+	private fun makeStackPure() {
+		for (n in stack.indices) if (!isPure(stack[n])) spill(n)
+	}
+
+	// Values in the stack are evaluated before the statement, as they were pushed before
+	private fun addStm(stm: AstStm) {
+		val written = (stm as? AstStm.SET)?.local
+		for (n in stack.indices) {
+			if (!isPure(stack[n]) || (written != null && reads(stack[n], written))) spill(n)
+		}
 		stms.add(stm)
-		restoreStack(savedStack)
 	}
 
-	for (i in body.items) {
-		println(i)
+	private fun pure(e: AstExpr): AstExpr {
+		if (isPure(e)) return e
+		val local = temp(e.type)
+		addStm(AstStm.SET(local, e))
+		return AstExpr.LOCAL(local)
 	}
 
-	println("-----------------")
+	private fun currentState() = State(localTypes.toList(), stack.map { it.type })
 
-	for (i in body.items) {
-		when (i) {
-			is BAF.LABEL -> {
-				addStm(AstStm.STM_LABEL(label(i.label)))
+	private fun targetState(label: Label?): State {
+		val frame = labelFrames[label]
+		if (frame != null) return State(frame.localTypes.map { if (it == AstType.NULL) null else it }, frame.stackTypes)
+		return labelStates.getOrPut(label) { currentState() }
+	}
+
+	private fun saveStack(label: Label?) {
+		val types = targetState(label).stack
+		if (stack.isEmpty()) return
+		makeStackPure()
+		for ((depth, e) in stack.withIndex()) {
+			val local = stackLocal(depth, kindOf(types.getOrNull(depth) ?: e.type))
+			stms.add(AstStm.SET(local, cast(e, local.type)))
+		}
+	}
+
+	private fun handleLabel(label: Label?) {
+		if (reachable) saveStack(label)
+		val state = if (reachable || label in labelFrames || label in labelStates) targetState(label) else State(listOf(), listOf())
+		stms.add(AstStm.STM_LABEL(labels[label]!!))
+		localTypes.clear()
+		for ((slot, type) in state.locals.withIndex()) setLocalType(slot, type)
+		stack.clear()
+		val handlerType = handlers[label]
+		if (handlerType != null) {
+			val local = temp(handlerType)
+			stms.add(AstStm.SET(local, AstExpr.CAUGHT_EXCEPTION(handlerType)))
+			stack.push(AstExpr.LOCAL(local))
+		} else {
+			for ((depth, type) in state.stack.withIndex()) {
+				val local = temp(type)
+				stms.add(AstStm.SET(local, cast(AstExpr.LOCAL(stackLocal(depth, kindOf(type))), local.type)))
+				stack.push(AstExpr.LOCAL(local))
 			}
-			is BAF.FRAME -> {
-				println("FRAME:" + i.localTypes + "," + i.stackTypes)
-				stack.clear()
-				restoreStack(i.stackTypes)
+		}
+		reachable = true
+	}
+
+	// Conditions with calls or that can throw are stored first, so an IF_GOTO can be dropped when both branches are the same
+	private fun jump(label: Label?, cond: AstExpr?) {
+		val check = if (cond != null) pure(cond) else null
+		saveStack(label)
+		stms.add(if (check != null) AstStm.IF_GOTO(check, labels[label]!!) else AstStm.GOTO(labels[label]!!))
+		if (cond == null) {
+			stack.clear()
+			reachable = false
+		}
+	}
+
+	private fun compare(op: AstBinop, l: AstExpr, r: AstExpr): AstExpr {
+		val commonType = getCommonType(l.type, r.type)
+		return if (commonType != null) {
+			AstExpr.BINOP(AstType.BOOL, cast(l, commonType), op, cast(r, commonType))
+		} else {
+			AstExpr.BINOP(AstType.BOOL, l, op, r)
+		}
+	}
+
+	private fun binop(type: AstType, op: AstBinop, l: AstExpr, r: AstExpr): AstExpr {
+		if (l.type == AstType.BOOL && r.type == AstType.BOOL) {
+			when (op) {
+				AstBinop.XOR -> return AstExpr.BINOP(AstType.BOOL, l, AstBinop.NE, r)
+				AstBinop.AND -> return AstExpr.BINOP(AstType.BOOL, l, AstBinop.BAND, r)
+				AstBinop.OR -> return AstExpr.BINOP(AstType.BOOL, l, AstBinop.BOR, r)
 			}
-			is BAF.LINE -> {
+		}
+		return when (op) {
+			AstBinop.SHL, AstBinop.SHR, AstBinop.USHR -> AstExpr.BINOP(type, cast(l, type), op, cast(r, AstType.INT))
+			AstBinop.LCMP, AstBinop.CMP, AstBinop.CMPL, AstBinop.CMPG -> AstExpr.BINOP(AstType.INT, cast(l, type), op, cast(r, type))
+			else -> {
+				val commonType = getCommonType(l.type, r.type)
+				if (commonType != null) {
+					AstExpr.BINOP(type, cast(l, commonType), op, cast(r, commonType))
+				} else {
+					AstExpr.BINOP(type, l, op, r)
+				}
 			}
-			is BAF.CONST -> {
-				stack.push(AstExpr.LITERAL(i.value))
+		}
+	}
+
+	private fun isCategory2(e: AstExpr) = e.type == AstType.LONG || e.type == AstType.DOUBLE
+
+	private fun pop(count: Int): List<AstExpr> = (0 until count).map { stack.pop() }.reversed()
+
+	private fun push(values: List<AstExpr>) {
+		for (value in values) stack.push(value)
+	}
+
+	// Values are referred by their position from the top of the stack, 1 being the top
+	private fun dup(vararg order: Int) {
+		makeStackPure()
+		val count = order.max()!!
+		val values = pop(count)
+		push(order.map { values[count - it] })
+	}
+
+	private fun asArray(e: AstExpr, elementType: AstType): AstExpr {
+		return if (e.type is AstType.ARRAY) e else AstExpr.CAST(e, AstType.ARRAY(elementType))
+	}
+
+	private fun constant(value: Any?): AstExpr = when (value) {
+		is Type -> when (value.sort) {
+			Type.OBJECT, Type.ARRAY -> AstExpr.CLASS_CONSTANT(AstType.REF_INT(value.internalName))
+			else -> noImpl("Constant type $value")
+		}
+		is Handle -> noImpl("Constant method handle $value")
+		else -> AstExpr.LITERAL(value)
+	}
+
+	private fun invoke(i: BAF.INVOKE) {
+		val method = i.method
+		val args = pop(i.methodType.argCount).zip(i.methodType.argTypes).map { cast(it.first, it.second) }
+		val expr = if (i.type == BAF.InvokeType.STATIC) {
+			AstExpr.CALL_STATIC(AstType.REF(i.declaringClass), method, args)
+		} else {
+			val obj = stack.pop()
+			val objType = obj.type
+			val isSpecial = i.type == BAF.InvokeType.SPECIAL
+			if (isSpecial && objType is AstType.REF && objType.name != method.containingClass) {
+				AstExpr.CALL_SUPER(obj, method.containingClass, method, args, isSpecial)
+			} else {
+				AstExpr.CALL_INSTANCE(AstExpr.CAST(obj, method.classRef.type), method, args, isSpecial)
 			}
-			is BAF.GETLOCAL -> {
-				stack.push(AstExpr.LOCAL(local(i.type, i.index)))
+		}
+		if (i.methodType.retVoid) addStm(AstStm.STM_EXPR(expr)) else stack.push(expr)
+	}
+
+	// Only lambdas created with LambdaMetafactory are supported, the captured arguments are ignored as SootToAst does
+	private fun invokeDynamic(i: BAF.INVOKEDYNAMIC) {
+		val handle = i.handle
+		if (handle.owner != "java/lang/invoke/LambdaMetafactory" || handle.name != "metafactory") {
+			noImpl("Not supported DynamicInvoke yet! $i")
+		}
+		val generatedType = AstType.demangleMethod(i.desc!!)
+		val interfaceMethodType = AstType.demangleMethod((i.args[0] as Type).descriptor)
+		val methodHandle = i.args[1] as Handle
+		val interfaceToGenerate = generatedType.ret as AstType.REF
+		pop(generatedType.argCount)
+		stack.push(AstExpr.METHOD_CLASS(
+			AstMethodRef(interfaceToGenerate.name, i.name!!, interfaceMethodType),
+			AstMethodRef(AstType.REF_INT2(methodHandle.owner).name, methodHandle.name, AstType.demangleMethod(methodHandle.desc))
+		))
+	}
+
+	private fun handle(i: BAF) {
+		when (i) {
+			is BAF.LABEL, is BAF.FRAME, is BAF.LINE, is BAF.NOP -> Unit
+			is BAF.CONST -> stack.push(constant(i.value))
+			is BAF.GETLOCAL -> stack.push(load(i.index, i.type))
+			is BAF.PUTLOCAL -> store(i.index, i.type, stack.pop())
+			is BAF.IINC -> {
+				val local = slotLocal(i.index, AstType.INT)
+				store(i.index, AstType.INT, AstExpr.BINOP(AstType.INT, cast(AstExpr.LOCAL(local), AstType.INT), AstBinop.ADD, AstExpr.LITERAL(i.increment)))
 			}
-			is BAF.PUTLOCAL -> {
-				val expr = stack.pop()
-				addStm(AstStm.SET(local(i.type, i.index), expr))
+			is BAF.GETFIELD -> {
+				val ref = i.ref
+				val field = AstFieldRef(ref.containingClass, ref.name, ref.type)
+				stack.push(if (ref.isStatic == true) {
+					AstExpr.STATIC_FIELD_ACCESS(ref.containingTypeRef, field, ref.type, i.isInterface)
+				} else {
+					AstExpr.INSTANCE_FIELD_ACCESS(stack.pop(), field, ref.type)
+				})
 			}
 			is BAF.PUTFIELD -> {
-				val expr = stack.pop()
-				val field = i.ref
-				if (field.isStatic != false) {
-					//ensureEmptyStack()
-					addStm(AstStm.SET_FIELD_STATIC(field.containingTypeRef, field, expr, false))
+				val ref = i.ref
+				val field = AstFieldRef(ref.containingClass, ref.name, ref.type)
+				val value = cast(stack.pop(), ref.type)
+				addStm(if (ref.isStatic == true) {
+					AstStm.SET_FIELD_STATIC(ref.containingTypeRef, field, value, i.isInterface)
 				} else {
-					val obj = stack.pop()
-					//ensureEmptyStack()
-					addStm(AstStm.SET_FIELD_INSTANCE(obj, field, expr))
-				}
+					AstStm.SET_FIELD_INSTANCE(stack.pop(), field, value)
+				})
 			}
 			is BAF.BINOP -> {
-				val r = stack.pop()
-				val l = stack.pop()
-				stack.push(AstExpr.BINOP(i.type, l, i.operator, r))
+				val (l, r) = pop(2)
+				stack.push(binop(i.type, i.operator, l, r))
 			}
-			is BAF.UNOP -> {
-				val r = stack.pop()
-				stack.push(AstExpr.UNOP(i.operator, r))
+			is BAF.UNOP -> stack.push(AstExpr.UNOP(i.operator, cast(stack.pop(), i.type)))
+			is BAF.CONV -> stack.push(AstExpr.CAST(stack.pop(), i.dst))
+			is BAF.CHECKCAST -> stack.push(AstExpr.CAST(stack.pop(), i.type))
+			is BAF.AINSTANCEOF -> stack.push(AstExpr.INSTANCE_OF(stack.pop(), i.type))
+			is BAF.ANEW -> stack.push(AstExpr.NEW(i.type))
+			is BAF.NEWARRAY -> {
+				val counts = pop(i.dims).map { cast(it, AstType.INT) }
+				stack.push(AstExpr.NEW_ARRAY(i.type, counts))
 			}
-			is BAF.RET -> {
-				val r = stack.pop()
-				ensureEmptyStack()
-				stms.add(AstStm.RETURN(r))
+			is BAF.ARRAYLENGTH -> stack.push(AstExpr.ARRAY_LENGTH(stack.pop()))
+			is BAF.ARRAYGET -> {
+				val (array, index) = pop(2)
+				stack.push(AstExpr.ARRAY_ACCESS(asArray(array, i.type), cast(index, AstType.INT)))
 			}
-			is BAF.RETVOID -> {
-				ensureEmptyStack()
-				stms.add(AstStm.RETURN(null))
+			is BAF.ARRAYSET -> {
+				val (index, value) = pop(2)
+				val array = asArray(stack.pop(), i.type)
+				val local = if (array is AstExpr.LOCAL) array.local else temp(array.type)
+				if (array !is AstExpr.LOCAL) addStm(AstStm.SET(local, array))
+				addStm(AstStm.SET_ARRAY(local, cast(index, AstType.INT), cast(value, local.type.elementType)))
 			}
-			is BAF.GOTOIF_I -> {
-				val r = stack.pop()
-				val l = stack.pop()
-				val cond = AstExpr.BINOP(AstType.BOOL, l, i.operator, r)
-				saveStack()
-				stms.add(AstStm.IF_GOTO(cond, label(i.label)))
-				usedLabels.add(label(i.label))
-				stack.clear()
+			is BAF.INVOKE -> invoke(i)
+			is BAF.INVOKEDYNAMIC -> invokeDynamic(i)
+			is BAF.POP -> {
+				val value = stack.pop()
+				// Field and array reads and integer divisions are kept too, since they can throw
+				if (value is AstExpr.CALL_BASE) addStm(AstStm.STM_EXPR(value)) else pure(value)
 			}
-			is BAF.GOTOIF0 -> {
-				val l = stack.pop()
-				val cond = AstExpr.BINOP(AstType.BOOL, l, i.operator, AstExpr.LITERAL(0))
-				saveStack()
-				stms.add(AstStm.IF_GOTO(cond, label(i.label)))
-				usedLabels.add(label(i.label))
-				stack.clear()
+			is BAF.POP2 -> {
+				val top = stack.peek()
+				handle(BAF.POP)
+				if (!isCategory2(top)) handle(BAF.POP)
 			}
-			is BAF.GOTO -> {
-				saveStack()
-				stms.add(AstStm.GOTO(label(i.label)))
-				usedLabels.add(label(i.label))
-				stack.clear()
+			is BAF.DUP -> {
+				val value = pure(stack.pop())
+				push(listOf(value, value))
 			}
-			is BAF.CHECKCAST -> {
-				stack.push(AstExpr.CAST(stack.pop(), i.type))
-			}
-			is BAF.CONV -> {
-				val r = stack.pop()
-				assert(r.type == i.src)
-				stack.push(AstExpr.CAST(r, i.dst))
-			}
-			is BAF.ANEW -> {
-				stack.push(AstExpr.NEW(i.type))
-			}
-			is BAF.INVOKE -> {
-				val methodType = i.methodType
-				val method = i.method
-				val targetClass = method.containingClass.ref()
-				val isCallStatic = i.type == BAF.InvokeType.STATIC
-				val obj = if (!isCallStatic) stack.pop() else null
-				val args = (0 until methodType.argCount).map { stack.pop() }
-
-				val expr = when (i.type) {
-					BAF.InvokeType.STATIC -> AstExpr.CALL_STATIC(targetClass, method, args)
-					BAF.InvokeType.VIRTUAL, BAF.InvokeType.INTERFACE -> AstExpr.CALL_INSTANCE(obj!!, method, args)
-					BAF.InvokeType.SPECIAL -> AstExpr.CALL_SUPER(obj!!, targetClass.name, method, args)
-				}
-
-				if (methodType.retVoid) {
-					addStm(AstStm.STM_EXPR(expr))
+			is BAF.DUPX1 -> dup(1, 2, 1)
+			is BAF.DUPX2 -> if (isCategory2(stack[stack.size - 2])) dup(1, 2, 1) else dup(1, 3, 2, 1)
+			is BAF.DUP2 -> if (isCategory2(stack.peek())) dup(1, 1) else dup(2, 1, 2, 1)
+			is BAF.DUP2_X1 -> if (isCategory2(stack.peek())) dup(1, 2, 1) else dup(2, 1, 3, 2, 1)
+			is BAF.DUP2_X2 -> {
+				val top1 = isCategory2(stack.peek())
+				if (top1) {
+					if (isCategory2(stack[stack.size - 2])) dup(1, 2, 1) else dup(1, 3, 2, 1)
 				} else {
-					stack.push(expr)
+					if (isCategory2(stack[stack.size - 3])) dup(2, 1, 3, 2, 1) else dup(2, 1, 4, 3, 2, 1)
 				}
 			}
-			is BAF.NOP -> {
+			is BAF.SWAP -> dup(1, 2)
+			is BAF.GOTO -> jump(i.label, null)
+			is BAF.GOTOIF0 -> {
+				val value = stack.pop()
+				jump(i.label, compare(i.operator, value, AstExpr.LITERAL(if (value.type == AstType.BOOL) false else 0)))
 			}
-			is BAF.NEWARRAY -> {
-				val count = stack.pop()
-				stack.push(AstExpr.LITERAL("ARRAY!"))
+			is BAF.GOTOIF_I -> {
+				val (l, r) = pop(2)
+				jump(i.label, compare(i.operator, l, r))
 			}
-			else -> {
-				throw NotImplementedError("Not implemented: $i")
+			is BAF.GOTOIF_A -> {
+				val (l, r) = pop(2)
+				jump(i.label, AstExpr.BINOP(AstType.BOOL, l, i.operator, r))
 			}
+			is BAF.GOTOIFNULL -> jump(i.label, AstExpr.BINOP(AstType.BOOL, stack.pop(), i.operator, AstExpr.LITERAL(null)))
+			is BAF.SWITCH -> {
+				val subject = cast(stack.pop(), AstType.INT)
+				for (label in listOf(i.dflt) + i.pairs.map { it.second }) saveStack(label)
+				stms.add(AstStm.SWITCH_GOTO(subject, labels[i.dflt]!!, i.pairs.map { Pair(it.first, labels[it.second]!!) }))
+				stack.clear()
+				reachable = false
+			}
+			is BAF.RET -> {
+				addStm(AstStm.RETURN(cast(stack.pop(), methodRef.type.ret)))
+				reachable = false
+			}
+			is BAF.RETVOID -> {
+				addStm(AstStm.RETURN(null))
+				reachable = false
+			}
+			is BAF.THROW -> {
+				addStm(AstStm.THROW(stack.pop()))
+				reachable = false
+			}
+			is BAF.MONITOR -> {
+				val value = stack.pop()
+				addStm(if (i.enter) AstStm.MONITOR_ENTER(value) else AstStm.MONITOR_EXIT(value))
+			}
+			else -> throw NotImplementedError("Not implemented: $i")
 		}
 	}
-
-	val stms2 = stms.filter {
-		if (it is AstStm.STM_LABEL) {
-			it.label in usedLabels
-		} else {
-			true
-		}
-	}
-
-	val stms3 = if (stms2.lastOrNull() == AstStm.RETURN(null)) {
-		stms2.dropLast(1)
-	} else {
-		stms2
-	}
-
-	return AstBody(AstStm.STMS(stms3), locals.values.toList(), listOf())
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.jtransc.ast.*
+import com.jtransc.ast.feature.BoundsCheckFeature
+import org.junit.Assert
+import org.junit.Test
+
+class BoundsCheckFeatureTest {
+	private val arrayType = AstType.ARRAY(AstType.INT)
+	private val a = AstLocal(0, "a", arrayType)
+	private val i = AstLocal(1, "i", AstType.INT)
+	private val sum = AstLocal(2, "sum", AstType.INT)
+	private val loop = AstLabel("label_1")
+	private val end = AstLabel("label_2")
+
+	private fun local(local: AstLocal) = AstExpr.LOCAL(local)
+
+	private fun cond(op: AstBinop, right: AstExpr) = AstExpr.BINOP(AstType.BOOL, local(i), op, right)
+
+	private fun step(op: AstBinop) = AstStm.SET(i, AstExpr.BINOP(AstType.INT, local(i), op, AstExpr.LITERAL(1)))
+
+	// Whether each array access is checked, in order
+	private fun checks(vararg stms: AstStm): List<Boolean> {
+		val body = BoundsCheckFeature.add(AstBody(AstStm.STMS(stms.toList()), listOf(a, i, sum), listOf()))
+		val out = arrayListOf<Boolean>()
+		object : AstVisitor() {
+			override fun visit(stm: AstStm.SET_ARRAY) {
+				super.visit(stm)
+				out.add(stm.checked)
+			}
+
+			override fun visit(expr: AstExpr.ARRAY_ACCESS) {
+				super.visit(expr)
+				out.add(expr.checked)
+			}
+		}.visit(body)
+		return out
+	}
+
+	@Test fun testForwardLoop() {
+		// for (i = 0; i < a.length; i++) sum += a[i]; return sum + a[i];
+		val result = checks(
+			AstStm.SET(a, AstExpr.PARAM(AstArgument(0, arrayType))),
+			AstStm.SET(sum, AstExpr.LITERAL(0)),
+			AstStm.SET(i, AstExpr.LITERAL(0)),
+			AstStm.STM_LABEL(loop),
+			AstStm.IF_GOTO(cond(AstBinop.GE, AstExpr.ARRAY_LENGTH(local(a))), end),
+			AstStm.SET(sum, AstExpr.BINOP(AstType.INT, local(sum), AstBinop.ADD, AstExpr.ARRAY_ACCESS(local(a), local(i)))),
+			step(AstBinop.ADD),
+			AstStm.GOTO(loop),
+			AstStm.STM_LABEL(end),
+			AstStm.RETURN(AstExpr.BINOP(AstType.INT, local(sum), AstBinop.ADD, AstExpr.ARRAY_ACCESS(local(a), local(i))))
+		)
+		Assert.assertEquals(listOf(false, true), result)
+	}
+
+	@Test fun testBackwardLoop() {
+		// for (i = a.length - 1; i >= 0; i--) a[i] = 0; a[i + 1] = 0;
+		val result = checks(
+			AstStm.SET(a, AstExpr.PARAM(AstArgument(0, arrayType))),
+			AstStm.SET(i, AstExpr.BINOP(AstType.INT, AstExpr.ARRAY_LENGTH(local(a)), AstBinop.SUB, AstExpr.LITERAL(1))),
+			AstStm.STM_LABEL(loop),
+			AstStm.IF_GOTO(cond(AstBinop.LT, AstExpr.LITERAL(0)), end),
+			AstStm.SET_ARRAY(a, local(i), AstExpr.LITERAL(0)),
+			step(AstBinop.SUB),
+			AstStm.GOTO(loop),
+			AstStm.STM_LABEL(end),
+			step(AstBinop.ADD),
+			AstStm.SET_ARRAY(a, local(i), AstExpr.LITERAL(0)),
+			AstStm.RETURN(null)
+		)
+		Assert.assertEquals(listOf(false, true), result)
+	}
+}
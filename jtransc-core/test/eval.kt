@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.jtransc.ast.*
+import com.jtransc.ast.eval.AstEval
+import com.jtransc.ast.eval.AstEvalArray
+import com.jtransc.error.noImpl
+import com.jtransc.vfs.MemoryVfs
+import org.junit.Assert
+import org.junit.Test
+
+class AstEvalTest {
+	private val generator = object : AstClassGenerator {
+		override fun generateClass(program: AstProgram, fqname: FqName): AstClass = noImpl
+	}
+
+	private val type = AstType.REF("test.Table")
+	private val table = AstFieldRef(type.name, "TABLE", AstType.ARRAY(AstType.INT), isStatic = true)
+	private val count = AstFieldRef(type.name, "COUNT", AstType.INT, isStatic = true)
+
+	private fun createClass(vararg extra: AstStm): AstClass {
+		val program = AstProgram(type.name, MemoryVfs(), generator)
+		val clazz = AstClass(program, type.name, modifiers = 1, extending = FqName("java.lang.Object"))
+		program.add(clazz)
+
+		// TABLE = new int[8]; for (n = 0; n < 8; n++) TABLE[n] = n * n; COUNT = 8
+		val n = AstLocal(0, "n", AstType.INT)
+		val array = AstLocal(1, "array", AstType.ARRAY(AstType.INT))
+		val loop = AstLabel("label_1")
+		val end = AstLabel("label_2")
+		val body = AstBody(
+			AstStm.STMS(listOf(
+				AstStm.SET(array, AstExpr.NEW_ARRAY(AstType.INT, listOf(AstExpr.LITERAL(8)))),
+				AstStm.SET(n, AstExpr.LITERAL(0)),
+				AstStm.STM_LABEL(loop),
+				AstStm.IF_GOTO(AstExpr.BINOP(AstType.BOOL, AstExpr.LOCAL(n), AstBinop.GE, AstExpr.LITERAL(8)), end),
+				AstStm.SET_ARRAY(array, AstExpr.LOCAL(n), AstExpr.BINOP(AstType.INT, AstExpr.LOCAL(n), AstBinop.MUL, AstExpr.LOCAL(n))),
+				AstStm.SET(n, AstExpr.BINOP(AstType.INT, AstExpr.LOCAL(n), AstBinop.ADD, AstExpr.LITERAL(1))),
+				AstStm.GOTO(loop),
+				AstStm.STM_LABEL(end),
+				AstStm.SET_FIELD_STATIC(type, table, AstExpr.LOCAL(array), false),
+				AstStm.SET_FIELD_STATIC(type, count, AstExpr.ARRAY_LENGTH(AstExpr.LOCAL(array)), false)
+			) + extra + listOf(AstStm.RETURN(null))),
+			listOf(n, array),
+			listOf()
+		)
+		val clinitType = AstType.METHOD_TYPE(AstType.VOID, listOf<AstType>())
+		clazz.add(AstMethod(clazz, "<clinit>", clinitType, listOf(), clinitType.mangle(), null, null, modifiers = 8, body = body, isStatic = true))
+		clazz.add(AstField(clazz, table.name, table.type, 8, table.type.mangle(), listOf(), null, isStatic = true))
+		clazz.add(AstField(clazz, count.name, count.type, 8, count.type.mangle(), listOf(), null, isStatic = true))
+		return clazz
+	}
+
+	@Test fun testEvalStaticInit() {
+		val result = AstEval(createClass()).evalStaticInit()!!
+		Assert.assertEquals(8, result.values["COUNT"])
+		Assert.assertEquals(listOf(0, 1, 4, 9, 16, 25, 36, 49), (result.values["TABLE"] as AstEvalArray).data.toList())
+	}
+
+	@Test fun testExternalEffectsAreNotEvaluated() {
+		val system = AstType.REF("java.lang.System")
+		val gc = AstStm.STM_EXPR(AstExpr.CALL_STATIC(system, AstMethodRef(system.name, "gc", AstType.METHOD_TYPE(AstType.VOID, listOf<AstType>())), listOf()))
+		Assert.assertNull(AstEval(createClass(gc)).evalStaticInit())
+	}
+
+	@Test fun testExceptionsAreNotEvaluated() {
+		val array = AstLocal(1, "array", AstType.ARRAY(AstType.INT))
+		val outOfBounds = AstStm.SET_ARRAY(array, AstExpr.LITERAL(8), AstExpr.LITERAL(0))
+		Assert.assertNull(AstEval(createClass(outOfBounds)).evalStaticInit())
+	}
+}
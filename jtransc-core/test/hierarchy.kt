@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.jtransc.ast.*
+import com.jtransc.error.noImpl
+import com.jtransc.vfs.MemoryVfs
+import org.junit.Assert
+import org.junit.Test
+
+class AstClassHierarchyTest {
+	private val generator = object : AstClassGenerator {
+		override fun generateClass(program: AstProgram, fqname: FqName): AstClass = noImpl
+	}
+
+	private val runType = AstType.METHOD_TYPE(AstType.VOID, listOf<AstType>())
+	private val emptyBody = AstBody(AstStm.RETURN(null), listOf(), listOf())
+
+	private fun AstProgram.addClass(name: String, classType: AstClassType = AstClassType.CLASS, extending: String? = null, implementing: List<String> = listOf(), hasRun: Boolean = false): AstClass {
+		val clazz = AstClass(this, FqName(name), modifiers = 1, classType = classType, extending = extending?.let { FqName(it) }, implementing = implementing.map { FqName(it) })
+		add(clazz)
+		if (hasRun) {
+			val body = if (classType == AstClassType.INTERFACE) null else emptyBody
+			clazz.add(AstMethod(clazz, "run", runType, listOf(), runType.mangle(), null, null, modifiers = 1, body = body))
+		}
+		return clazz
+	}
+
+	private fun createProgram(): AstProgram {
+		val program = AstProgram(FqName("test.Main"), MemoryVfs(), generator)
+		program.addClass("java.lang.Object")
+		program.addClass("test.Task", AstClassType.INTERFACE, hasRun = true)
+		program.addClass("test.Base", AstClassType.ABSTRACT, "java.lang.Object", listOf("test.Task"), hasRun = true)
+		program.addClass("test.Impl1", extending = "test.Base")
+		program.addClass("test.Impl2", extending = "test.Base")
+		return program
+	}
+
+	@Test fun testSingleImplementation() {
+		val hierarchy = AstClassHierarchy(createProgram())
+		val target = hierarchy.getSingleTarget(AstMethodRef(FqName("test.Task"), "run", runType))
+		Assert.assertEquals(FqName("test.Base"), target?.containingClass?.name)
+	}
+
+	@Test fun testSeveralImplementations() {
+		val program = createProgram()
+		program.addClass("test.Impl3", extending = "test.Base", hasRun = true)
+		val hierarchy = AstClassHierarchy(program)
+		Assert.assertNull(hierarchy.getSingleTarget(AstMethodRef(FqName("test.Task"), "run", runType)))
+		Assert.assertEquals(FqName("test.Impl3"), hierarchy.getSingleTarget(AstMethodRef(FqName("test.Impl3"), "run", runType))?.containingClass?.name)
+	}
+
+	@Test fun testExternalInstances() {
+		val hierarchy = AstClassHierarchy(createProgram()) { it.isInterface }
+		Assert.assertNull(hierarchy.getSingleTarget(AstMethodRef(FqName("test.Task"), "run", runType)))
+	}
+}
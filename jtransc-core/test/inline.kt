@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.jtransc.ast.*
+import com.jtransc.ast.transform.InlineTransform
+import com.jtransc.error.noImpl
+import com.jtransc.vfs.MemoryVfs
+import org.junit.Assert
+import org.junit.Test
+
+class InlineTransformTest {
+	private val generator = object : AstClassGenerator {
+		override fun generateClass(program: AstProgram, fqname: FqName): AstClass = noImpl
+	}
+
+	private val type = AstType.REF("test.Main")
+	private val twiceType = AstType.METHOD_TYPE(AstType.INT, listOf(AstType.INT))
+	private val twice = AstMethodRef(type.name, "twice", twiceType)
+	private val loop = AstMethodRef(type.name, "loop", twiceType)
+	private val one = AstMethodRef(type.name, "one", AstType.METHOD_TYPE(AstType.INT, listOf()))
+	private val same = AstMethodRef(type.name, "same", twiceType)
+
+	private fun createClass(): AstClass {
+		val program = AstProgram(type.name, MemoryVfs(), generator)
+		val clazz = AstClass(program, type.name, modifiers = 1)
+		program.add(clazz)
+
+		// static int twice(int a) { return a * 2; }
+		val a = AstLocal(0, "i0", AstType.INT)
+		clazz.add(createMethod(clazz, twice, AstBody(AstStm.STMS(
+			AstStm.SET(a, AstExpr.PARAM(AstArgument(0, AstType.INT))),
+			AstStm.RETURN(AstExpr.BINOP(AstType.INT, AstExpr.LOCAL(a), AstBinop.MUL, AstExpr.LITERAL(2)))
+		), listOf(a), listOf())))
+
+		// static int loop(int a) { return loop(a); }
+		val r = AstLocal(1, "i1", AstType.INT)
+		clazz.add(createMethod(clazz, loop, AstBody(AstStm.STMS(
+			AstStm.SET(r, AstExpr.CALL_STATIC(type, loop, listOf(AstExpr.PARAM(AstArgument(0, AstType.INT))))),
+			AstStm.RETURN(AstExpr.LOCAL(r))
+		), listOf(r), listOf())))
+
+		// int one() { return 1; }
+		clazz.add(AstMethod(clazz, one.name, one.type, listOf(), one.type.mangle(), null, null, modifiers = 1, body = AstBody(AstStm.STMS(
+			AstStm.RETURN(AstExpr.LITERAL(1))
+		), listOf(), listOf())))
+
+		// int same(int a) { return a; }
+		clazz.add(AstMethod(clazz, same.name, same.type, listOf(), same.type.mangle(), null, null, modifiers = 1, body = AstBody(AstStm.STMS(
+			AstStm.RETURN(AstExpr.PARAM(AstArgument(0, AstType.INT)))
+		), listOf(), listOf())))
+		return clazz
+	}
+
+	private fun addNullPointerException(program: AstProgram) {
+		val npe = AstClass(program, FqName("java.lang.NullPointerException"), modifiers = 1)
+		npe.add(AstMethod(npe, "<init>", AstType.METHOD_TYPE(AstType.VOID, listOf()), listOf(), "()V", null, null, modifiers = 1))
+		program.add(npe)
+	}
+
+	private fun callOne(clazz: AstClass, receiver: AstExpr): AstBody = callInstance(clazz, AstExpr.CALL_INSTANCE(receiver, one, listOf(), isSpecial = true))
+
+	private fun callInstance(clazz: AstClass, call: AstExpr.CALL_INSTANCE): AstBody {
+		val x = AstLocal(0, "x", AstType.INT)
+		val body = AstBody(AstStm.STMS(
+			AstStm.SET(x, call),
+			AstStm.RETURN(AstExpr.LOCAL(x))
+		), listOf(x), listOf())
+		return InlineTransform(AstClassHierarchy(clazz.program))(clazz.getMethodSure("loop", twiceType.desc), body)
+	}
+
+	private fun createMethod(clazz: AstClass, ref: AstMethodRef, body: AstBody): AstMethod {
+		return AstMethod(clazz, ref.name, ref.type, listOf(), ref.type.mangle(), null, null, modifiers = 9, body = body, isStatic = true)
+	}
+
+	private fun countCalls(body: AstBody): Int {
+		var count = 0
+		object : AstVisitor() {
+			override fun visit(expr: AstExpr.CALL_BASE) {
+				count++
+				super.visit(expr)
+			}
+		}.visit(body)
+		return count
+	}
+
+	@Test fun testInlineStaticCall() {
+		val clazz = createClass()
+		val x = AstLocal(0, "x", AstType.INT)
+		val body = AstBody(AstStm.STMS(
+			AstStm.SET(x, AstExpr.CALL_STATIC(type, twice, listOf(AstExpr.LITERAL(3)))),
+			AstStm.RETURN(AstExpr.LOCAL(x))
+		), listOf(x), listOf())
+		val transform = InlineTransform(AstClassHierarchy(clazz.program))
+		val result = transform(clazz.getMethodSure("loop", twiceType.desc), body)
+
+		Assert.assertEquals(0, countCalls(result))
+		Assert.assertEquals(
+			AstStm.STMS(
+				AstStm.SET(AstLocal(-1, "i0_arg0", AstType.INT), AstExpr.LITERAL(3)),
+				AstStm.SET(AstLocal(0, "i0_i0", AstType.INT), AstExpr.LOCAL(AstLocal(-1, "i0_arg0", AstType.INT))),
+				AstStm.SET(x, AstExpr.BINOP(AstType.INT, AstExpr.LOCAL(AstLocal(0, "i0_i0", AstType.INT)), AstBinop.MUL, AstExpr.LITERAL(2))),
+				AstStm.RETURN(AstExpr.LOCAL(x))
+			),
+			result.stm
+		)
+		Assert.assertTrue(transform.report().startsWith("Inlined 1 calls to 1 methods"))
+	}
+
+	@Test fun testRecursiveCallsAreInlinedOnce() {
+		val clazz = createClass()
+		val method = clazz.getMethodSure("twice", twiceType.desc)
+		val x = AstLocal(0, "x", AstType.INT)
+		val body = AstBody(AstStm.STMS(
+			AstStm.SET(x, AstExpr.CALL_STATIC(type, loop, listOf(AstExpr.LITERAL(3)))),
+			AstStm.RETURN(AstExpr.LOCAL(x))
+		), listOf(x), listOf())
+		Assert.assertEquals(1, countCalls(InlineTransform(AstClassHierarchy(clazz.program))(method, body)))
+	}
+
+	@Test fun testInstanceCallChecksReceiver() {
+		val clazz = createClass()
+		val receiver = AstExpr.PARAM(AstArgument(0, type))
+		// Without a NullPointerException to throw, only receivers that can't be null are inlined
+		Assert.assertEquals(1, countCalls(callOne(clazz, receiver)))
+		Assert.assertEquals(0, countCalls(callOne(clazz, AstExpr.THIS(type.name))))
+
+		addNullPointerException(clazz.program)
+		val stms = callOne(clazz, receiver).stm.flattenOrNull()!!
+		Assert.assertEquals(0, stms.count { it is AstStm.SET && it.expr is AstExpr.CALL_BASE })
+		Assert.assertTrue(stms[1] is AstStm.IF_GOTO)
+		Assert.assertTrue(stms[3] is AstStm.THROW)
+		Assert.assertEquals(0, callOne(clazz, AstExpr.THIS(type.name)).stm.flattenOrNull()!!.count { it is AstStm.THROW })
+	}
+
+	@Test fun testArgumentsAreEvaluatedBeforeTheNullCheck() {
+		val clazz = createClass()
+		addNullPointerException(clazz.program)
+		val call = AstExpr.CALL_INSTANCE(AstExpr.PARAM(AstArgument(0, type)), same, listOf(AstExpr.PARAM(AstArgument(1, AstType.INT))), isSpecial = true)
+		val stms = callInstance(clazz, call).stm.flattenOrNull()!!
+		val argument = stms.indexOfFirst { it is AstStm.SET && it.local.name == "i0_arg0" }
+		val check = stms.indexOfFirst { it is AstStm.IF_GOTO }
+		Assert.assertTrue(argument >= 0 && argument < check)
+		Assert.assertTrue(stms[check + 2] is AstStm.THROW)
+	}
+
+	@Test fun testMonomorphicInterfaceCallIsInlined() {
+		val clazz = createClass()
+		val program = clazz.program
+		addNullPointerException(program)
+		val shapeType = AstType.REF("test.Shape")
+		val area = AstMethodRef(shapeType.name, "area", AstType.METHOD_TYPE(AstType.INT, listOf()))
+		val shape = AstClass(program, shapeType.name, modifiers = 1, classType = AstClassType.INTERFACE)
+		shape.add(AstMethod(shape, area.name, area.type, listOf(), area.type.mangle(), null, null, modifiers = 1))
+		program.add(shape)
+		fun addImplementation(name: String, value: Int) {
+			// int area() { return value; }
+			val square = AstClass(program, FqName(name), modifiers = 1, implementing = listOf(shapeType.name))
+			square.add(AstMethod(square, area.name, area.type, listOf(), area.type.mangle(), null, null, modifiers = 1, body = AstBody(AstStm.STMS(
+				AstStm.RETURN(AstExpr.LITERAL(value))
+			), listOf(), listOf())))
+			program.add(square)
+		}
+		val call = AstExpr.CALL_INSTANCE(AstExpr.PARAM(AstArgument(0, shapeType)), area, listOf())
+
+		// With a single implementation the interface call becomes its body, on the receiver cast to the implementing class
+		addImplementation("test.Square", 4)
+		val stms = callInstance(clazz, call).stm.flattenOrNull()!!
+		Assert.assertEquals(0, stms.count { it is AstStm.SET && it.expr is AstExpr.CALL_BASE })
+		Assert.assertTrue(stms.any { it is AstStm.SET && it.expr == AstExpr.CAST(call.obj, AstType.REF("test.Square")) })
+
+		addImplementation("test.Circle", 3)
+		Assert.assertEquals(1, countCalls(callInstance(clazz, call)))
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.jtransc.ast.*
+import com.jtransc.ast.feature.OptimizeFeature
+import org.junit.Assert
+import org.junit.Test
+
+class LocalOptimizerTest {
+	private val p0 = AstExpr.PARAM(AstArgument(0, AstType.INT))
+
+	private fun local(name: String) = AstLocal(0, name, AstType.INT)
+
+	private fun binop(left: AstExpr, op: AstBinop, right: Any) = AstExpr.BINOP(AstType.INT, left, op, AstExpr.LITERAL(right))
+
+	@Test fun testCopyInLoop() {
+		val i = local("i")
+		val t = local("t")
+		val loop = AstLabel("label_1")
+		val end = AstLabel("label_2")
+		// i = 0; label_1: if (i >= p0) goto label_2; t = i; i = t + 1; goto label_1; label_2: return i;
+		val result = OptimizeFeature.add(AstBody(AstStm.STMS(
+			AstStm.SET(i, AstExpr.LITERAL(0)),
+			AstStm.STM_LABEL(loop),
+			AstStm.IF_GOTO(AstExpr.BINOP(AstType.BOOL, AstExpr.LOCAL(i), AstBinop.GE, p0), end),
+			AstStm.SET(t, AstExpr.LOCAL(i)),
+			AstStm.SET(i, binop(AstExpr.LOCAL(t), AstBinop.ADD, 1)),
+			AstStm.GOTO(loop),
+			AstStm.STM_LABEL(end),
+			AstStm.RETURN(AstExpr.LOCAL(i))
+		), listOf(i, t), listOf()))
+
+		Assert.assertEquals(listOf(i), result.locals)
+		Assert.assertEquals(AstStm.STMS(
+			AstStm.SET(i, AstExpr.LITERAL(0)),
+			AstStm.STM_LABEL(loop),
+			AstStm.IF_GOTO(AstExpr.BINOP(AstType.BOOL, AstExpr.LOCAL(i), AstBinop.GE, p0), end),
+			AstStm.SET(i, binop(AstExpr.LOCAL(i), AstBinop.ADD, 1)),
+			AstStm.GOTO(loop),
+			AstStm.STM_LABEL(end),
+			AstStm.RETURN(AstExpr.LOCAL(i))
+		), result.stm)
+	}
+
+	@Test fun testLocalsAreCoalesced() {
+		val a = local("a")
+		val b = local("b")
+		val x = local("x")
+		// a = p0 * 2; x = a + 1; b = x * 3; return b;
+		val result = OptimizeFeature.add(AstBody(AstStm.STMS(
+			AstStm.SET(a, binop(p0, AstBinop.MUL, 2)),
+			AstStm.SET(x, binop(AstExpr.LOCAL(a), AstBinop.ADD, 1)),
+			AstStm.SET(b, binop(AstExpr.LOCAL(x), AstBinop.MUL, 3)),
+			AstStm.RETURN(AstExpr.LOCAL(b))
+		), listOf(a, b, x), listOf()))
+
+		Assert.assertEquals(listOf(a), result.locals)
+		Assert.assertEquals(AstStm.STMS(
+			AstStm.SET(a, binop(p0, AstBinop.MUL, 2)),
+			AstStm.SET(a, binop(AstExpr.LOCAL(a), AstBinop.ADD, 1)),
+			AstStm.SET(a, binop(AstExpr.LOCAL(a), AstBinop.MUL, 3)),
+			AstStm.RETURN(AstExpr.LOCAL(a))
+		), result.stm)
+	}
+}
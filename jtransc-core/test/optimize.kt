@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.jtransc.ast.*
+import com.jtransc.ast.feature.OptimizeFeature
+import org.junit.Assert
+import org.junit.Test
+
+class OptimizeFeatureTest {
+	private fun optimize(vararg stms: AstStm, locals: List<AstLocal> = listOf()): AstStm {
+		return OptimizeFeature.add(AstBody(AstStm.STMS(stms.toList()), locals, listOf())).stm
+	}
+
+	private fun fold(expr: AstExpr): AstExpr {
+		return ((optimize(AstStm.RETURN(expr)) as AstStm.STMS).stms.single() as AstStm.RETURN).retval!!
+	}
+
+	private fun binop(type: AstType, left: Any, op: AstBinop, right: Any): AstExpr {
+		return AstExpr.BINOP(type, AstExpr.LITERAL(left), op, AstExpr.LITERAL(right))
+	}
+
+	@Test fun testFoldingUsesJavaSemantics() {
+		Assert.assertEquals(AstExpr.LITERAL(Int.MIN_VALUE), fold(binop(AstType.INT, Int.MAX_VALUE, AstBinop.ADD, 1)))
+		Assert.assertEquals(AstExpr.LITERAL(1 shl 1), fold(binop(AstType.INT, 1, AstBinop.SHL, 33)))
+		Assert.assertEquals(AstExpr.LITERAL(1L shl 40), fold(binop(AstType.LONG, 1L, AstBinop.SHL, 40)))
+		Assert.assertEquals(AstExpr.LITERAL(0.1f * 3f), fold(binop(AstType.FLOAT, 0.1f, AstBinop.MUL, 3f)))
+		Assert.assertEquals(AstExpr.LITERAL(Int.MAX_VALUE), fold(AstExpr.CAST(AstExpr.LITERAL(1e20), AstType.INT)))
+		Assert.assertEquals(AstExpr.LITERAL(1), fold(binop(AstType.INT, Double.NaN, AstBinop.CMPG, 0.0)))
+		Assert.assertEquals(AstExpr.LITERAL(false), fold(binop(AstType.BOOL, Double.NaN, AstBinop.LT, 0.0)))
+		// Division by zero must still throw
+		Assert.assertEquals(binop(AstType.INT, 1, AstBinop.DIV, 0), fold(binop(AstType.INT, 1, AstBinop.DIV, 0)))
+	}
+
+	@Test fun testPropagationAndBranches() {
+		val x = AstLocal(0, "x", AstType.INT)
+		val label = AstLabel("label_1")
+		// x = 2 + 3; if (x > 4) goto label_1; return 0; label_1: return x;
+		val result = optimize(
+			AstStm.SET(x, binop(AstType.INT, 2, AstBinop.ADD, 3)),
+			AstStm.IF_GOTO(AstExpr.BINOP(AstType.BOOL, AstExpr.LOCAL(x), AstBinop.GT, AstExpr.LITERAL(4)), label),
+			AstStm.RETURN(AstExpr.LITERAL(0)),
+			AstStm.STM_LABEL(label),
+			AstStm.RETURN(AstExpr.LOCAL(x)),
+			locals = listOf(x)
+		)
+		Assert.assertEquals(AstStm.STMS(AstStm.RETURN(AstExpr.LITERAL(5))), result)
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.jtransc.ast.*
+import com.jtransc.ast.serialization.AstRead
+import com.jtransc.ast.serialization.AstWriter
+import com.jtransc.error.noImpl
+import com.jtransc.vfs.MemoryVfs
+import org.junit.Assert
+import org.junit.Test
+
+class AstSerializationTest {
+	private val generator = object : AstClassGenerator {
+		override fun generateClass(program: AstProgram, fqname: FqName): AstClass = noImpl
+	}
+
+	private fun createProgram(): AstProgram {
+		val program = AstProgram(FqName("test.Main"), MemoryVfs(), generator)
+		val clazz = AstClass(program, FqName("test.Main"), modifiers = 1, extending = FqName("java.lang.Object"), implementing = listOf(FqName("java.lang.Runnable")))
+		program.add(clazz)
+
+		val a = AstLocal(0, "a", AstType.INT)
+		val text = AstLocal(1, "text", AstType.STRING)
+		val loop = AstLabel("label_1")
+		val end = AstLabel("label_2")
+		val system = AstType.REF("java.lang.System")
+		val body = AstBody(
+			AstStm.STMS(
+				AstStm.SET(a, AstExpr.PARAM(AstArgument(0, AstType.INT))),
+				AstStm.SET(text, AstExpr.LITERAL("héllo")),
+				AstStm.STM_LABEL(loop),
+				AstStm.IF_GOTO(AstExpr.BINOP(AstType.BOOL, AstExpr.LOCAL(a), AstBinop.GT, AstExpr.LITERAL(100000)), end),
+				AstStm.SET(a, AstExpr.BINOP(AstType.INT, AstExpr.LOCAL(a), AstBinop.MUL, AstExpr.LITERAL(-3))),
+				AstStm.SWITCH_GOTO(AstExpr.LOCAL(a), loop, listOf(Pair(-1, end), Pair(70000, loop))),
+				AstStm.STM_LABEL(end),
+				AstStm.SET_FIELD_STATIC(system, AstFieldRef(system.name, "out", AstType.REF("java.io.PrintStream")), AstExpr.LITERAL(null), false),
+				AstStm.STM_EXPR(AstExpr.CALL_STATIC(system, AstMethodRef(system.name, "gc", AstType.METHOD_TYPE(AstType.VOID, listOf<AstType>())), listOf())),
+				AstStm.STM_EXPR(AstExpr.NEW_ARRAY(AstType.ARRAY(AstType.LONG), listOf(AstExpr.LITERAL(2), AstExpr.LITERAL(3)))),
+				AstStm.STM_EXPR(AstExpr.CAST(AstExpr.LITERAL(Long.MIN_VALUE), AstType.DOUBLE)),
+				AstStm.STM_EXPR(AstExpr.UNOP(AstUnop.NEG, AstExpr.LITERAL(1.5))),
+				AstStm.RETURN(AstExpr.CAST(AstExpr.LOCAL(a), AstType.LONG))
+			),
+			listOf(a, text),
+			listOf(AstTrap(loop, end, end, AstType.REF("java.lang.Throwable")))
+		)
+		val type = AstType.METHOD_TYPE(AstType.LONG, listOf<AstType>(AstType.INT))
+		clazz.add(AstMethod(clazz, "compute", type, listOf(), type.mangle(), null, null, modifiers = 9, body = body, isStatic = true))
+		clazz.add(AstField(clazz, "LIMIT", AstType.LONG, 25, "J", listOf(), null, isStatic = true, isFinal = true, constantValue = -5L))
+		return program
+	}
+
+	@Test fun testClassRoundTrip() {
+		val program = createProgram()
+		val clazz = program[FqName("test.Main")]
+		val writer = AstWriter()
+		writer.writeClass(clazz)
+		val read = AstRead(writer.toByteArray()).readClass(program)
+
+		Assert.assertEquals(clazz.fqname, read.fqname)
+		Assert.assertEquals(clazz.extending, read.extending)
+		Assert.assertEquals(clazz.implementing, read.implementing)
+		val method = clazz.methods.first()
+		val readMethod = read.methods.first()
+		Assert.assertEquals(method.desc, readMethod.desc)
+		Assert.assertEquals(method.body, readMethod.body)
+		Assert.assertEquals(-5L, read.fields.first().constantValue)
+	}
+
+	@Test fun testProgramRoundTrip() {
+		val program = createProgram()
+		val writer = AstWriter()
+		writer.writeProgram(program)
+		val read = AstRead(writer.toByteArray()).readProgram(MemoryVfs(), generator)
+		Assert.assertEquals(program.entrypoint, read.entrypoint)
+		Assert.assertEquals(program.classes.map { it.fqname }, read.classes.map { it.fqname })
+	}
+}
@@ -19,6 +19,8 @@ package com.jtransc.gen.haxe
 import com.jtransc.ast.AstFeatures
 import com.jtransc.ast.AstProgram
 import com.jtransc.ast.FqName
+import com.jtransc.ast.feature.BoundsCheckFeature
+import com.jtransc.ast.feature.OptimizeFeature
 import com.jtransc.ast.feature.SwitchesFeature
 import com.jtransc.ast.get
 import com.jtransc.error.InvalidOperationException
@@ -52,7 +54,7 @@ enum class InitMode {
 }
 
 //val HaxeFeatures = setOf(GotosFeature, SwitchesFeature)
-val HaxeFeatures = setOf(SwitchesFeature)
+val HaxeFeatures = setOf(OptimizeFeature, BoundsCheckFeature, SwitchesFeature)
 
 val HaxeKeywords = setOf(
 	"java",
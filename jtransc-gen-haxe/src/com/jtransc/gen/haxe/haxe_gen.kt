@@ -1,6 +1,10 @@
 package com.jtransc.gen.haxe
 
 import com.jtransc.ast.*
+import com.jtransc.ast.eval.AstEval
+import com.jtransc.ast.eval.AstEvalArray
+import com.jtransc.ast.eval.AstStaticInit
+import com.jtransc.ast.transform.InlineTransform
 import com.jtransc.error.InvalidOperationException
 import com.jtransc.error.invalidOp
 import com.jtransc.error.noImpl
@@ -23,13 +27,26 @@ class GenHaxeGen(
 ) {
 	val names = HaxeNames(program, mappings)
 	val refs = References()
+	private val staticInits = hashMapOf<AstClass, AstStaticInit?>()
+
+	// Functional interfaces also get instances of their generated _Lambda classes
+	val hierarchy: AstClassHierarchy by lazy {
+		AstClassHierarchy(program) {
+			it.isNative || it.implCode != null || (it.isInterface && it.implementing.isEmpty() && it.methods.filter { it.body == null }.size == 1)
+		}
+	}
+	val inliner = InlineTransform(hierarchy, { isInlinable(it) }, { needsStaticInit(it) })
 	lateinit var clazz: AstClass
 	lateinit var method: AstMethod
 	lateinit var mutableBody: MutableBody
 	lateinit var stm: AstStm
 
+	init {
+		features.registerFirst(inliner)
+	}
+
 	fun AstStm.gen(): Indenter = gen2(this)
-	fun AstExpr.gen(): String = gen2(this)
+	fun AstExpr.gen(): String = genLongArrayRead(this) ?: gen2(this)
 	fun AstBody.gen(): Indenter = gen2(this)
 	fun AstClass.gen(): ClassResult = gen2(this)
 
@@ -80,8 +97,9 @@ class GenHaxeGen(
 						line(clazz.name.haxeClassFqNameInt + ".__hx_static__init__();")
 					}
 				}
-				else -> {
-
+				InitMode.LAZY -> {
+					// The main class is initialized before calling main, its static methods don't initialize it
+					line("$mainClass.__hx_static__init__();")
 				}
 			}
 		}
@@ -96,7 +114,15 @@ class GenHaxeGen(
 			line("class \$entryPointSimpleName") {
 				line("static public function main()") {
 					line("\$inits")
-					line("\$mainClass.\$mainMethod(HaxeNatives.strArray(HaxeNatives.args()));")
+					// Haxe has no finally, the output is also written when main throws
+					line("try") {
+						line("\$mainClass.\$mainMethod(HaxeNatives.strArray(HaxeNatives.args()));")
+					}
+					line("catch (e:Dynamic)") {
+						line("HaxeConsole.flushAll();")
+						line("throw e;")
+					}
+					line("HaxeConsole.flushAll();")
 				}
 			}
 		}
@@ -142,11 +168,11 @@ class GenHaxeGen(
 						is AstAnnotation -> annotation(it)
 						is Pair<*, *> -> escapeValue(it.second)
 						is AstFieldRef -> it.containingTypeRef.name.haxeClassFqName + "." + it.haxeName
-						is String -> "HaxeNatives.str(${it.quote()})"
-						is Int -> "HaxeNatives.int($it)"
-						is Long -> "HaxeNatives.long($it)"
-						is Float -> "HaxeNatives.float($it)"
-						is Double -> "HaxeNatives.double($it)"
+						is String -> names.constants.str(it)
+						is Int -> names.constants.box(it, "HaxeNatives.int($it)")
+						is Long -> names.constants.box(it, "HaxeNatives.long($it)")
+						is Float -> names.constants.box(it, "HaxeNatives.float($it)")
+						is Double -> names.constants.box(it, "HaxeNatives.double($it)")
 						is List<*> -> "[" + it.map { escapeValue(it) }.joinToString(", ") + "]"
 						else -> throw InvalidOperationException("Can't handle value ${it.javaClass.name} : $it")
 					}
@@ -318,9 +344,102 @@ class GenHaxeGen(
 			line(annotationProxyTypes)
 		}
 
+		// Written last, once every literal used by the classes and the reflection info is known
+		vfs[names.constants.fileName] = names.constants.gen().toString()
+
+		val inlineReport = inliner.report()
+		vfs["jtransc-inline-report.txt"] = inlineReport
+		println(inlineReport.substringBefore("\n"))
+
 		return GenHaxe.ProgramInfo(entryPointClass, entryPointFilePath, vfs)
 	}
 
+	// Static initializers evaluated at compile time are emitted as the values of the fields and aren't run
+	fun getStaticInit(clazz: AstClass): AstStaticInit? = staticInits.getOrPut(clazz) {
+		val clinit = clazz.staticInitMethod
+		if (clinit == null || !hasGeneratedBody(clinit)) {
+			null
+		} else {
+			AstEval(clazz, { hasGeneratedBody(it) }).evalStaticInit()
+		}
+	}
+
+	fun needsStaticInit(clazz: AstClass): Boolean = clazz.hasStaticInit && getStaticInit(clazz) == null
+
+	private fun hasGeneratedBody(method: AstMethod): Boolean {
+		return method.body != null && mappings.getBody(method.ref) == null && method.annotations[HaxeMethodBody::value] == null
+	}
+
+	// Only methods whose generated body is the one in the AST can be inlined into other methods
+	private fun isInlinable(method: AstMethod): Boolean {
+		val clazz = method.containingClass
+		return hasGeneratedBody(method) && mappings.getFunctionInline(method.ref) == null && !clazz.isNative && clazz.implCode == null
+	}
+
+	private fun evaluatedValue(value: Any?, type: AstType): String {
+		if (value !is AstEvalArray) return names.escapeConstant(value, type)
+		val arrayType = value.type
+		val items = value.data.map { evaluatedValue(it, arrayType.element) }.joinToString(", ")
+		refs.add(arrayType)
+		return if (arrayType.element == AstType.LONG) {
+			val longs = value.data.map { it as Long }
+			val high = longs.map { (it ushr 32).toInt() }.joinToString(", ")
+			val low = longs.map { it.toInt() }.joinToString(", ")
+			"${arrayType.haxeTypeNew}.fromHalves([$high], [$low])"
+		} else if (arrayType.element is AstType.Primitive) {
+			"${arrayType.haxeTypeNew}.fromArray([$items])"
+		} else {
+			val desc = arrayType.mangle().replace('/', '.')
+			"HaxeArray.fromArray([$items], \"$desc\")"
+		}
+	}
+
+	// Reads of a long[] that only need one half of the element, or compare it with a literal, don't build the Int64:
+	// (int) a[i], (int) (a[i] >>> 32), a[i] == literal and a[i] != literal
+	private fun genLongArrayRead(e: AstExpr): String? {
+		fun access(expr: AstExpr): AstExpr.ARRAY_ACCESS? {
+			return if (expr is AstExpr.ARRAY_ACCESS && expr.array.type == AstType.ARRAY(AstType.LONG)) expr else null
+		}
+		fun AstExpr.ARRAY_ACCESS.call(name: String, vararg args: Any): String {
+			val unchecked = if (checked) "" else "Unchecked"
+			return "${array.gen()}.$name$unchecked(${(listOf<Any>(index.gen()) + args).joinToString(", ")})"
+		}
+		if (e is AstExpr.CAST && e.from == AstType.LONG && e.to is AstType.Primitive && e.to != AstType.FLOAT && e.to != AstType.DOUBLE && e.to != AstType.BOOL) {
+			val low = access(e.expr)
+			if (low != null) return genCast(low.call("getLow"), AstType.INT, e.to)
+			val shift = e.expr
+			if (shift is AstExpr.BINOP && (shift.op == AstBinop.SHR || shift.op == AstBinop.USHR) && (shift.right as? AstExpr.LITERAL)?.value == 32) {
+				val high = access(shift.left)
+				if (high != null) return genCast(high.call("getHigh"), AstType.INT, e.to)
+			}
+		}
+		if (e is AstExpr.BINOP && (e.op == AstBinop.EQ || e.op == AstBinop.NE)) {
+			val array = access(e.left) ?: access(e.right)
+			val literal = ((if (array == e.left) e.right else e.left) as? AstExpr.LITERAL)?.value
+			if (array != null && literal is Long) {
+				val equals = array.call("equalsHalves", (literal ushr 32).toInt(), literal.toInt())
+				return if (e.op == AstBinop.EQ) equals else "!$equals"
+			}
+		}
+		return null
+	}
+
+	// Interface and virtual calls with a single implementation in the program are called on the implementing class,
+	// avoiding the interface dispatch in targets like cpp. Small implementations are inlined before this by the inliner,
+	// which resolves calls with the same hierarchy. Haxe has no portable non virtual call, so the rest stay class calls.
+	private fun getDevirtualizedTarget(method: AstMethodRef): AstMethod? {
+		val target = hierarchy.getSingleTarget(method) ?: return null
+		if (target.containingClass.name == method.containingClass || target.ref.haxeName != method.haxeName) return null
+		return target
+	}
+
+	private fun genDevirtualizedReceiver(obj: AstExpr, target: AstMethod): String {
+		val targetType = target.containingClass.astType
+		refs.add(targetType)
+		// Unchecked cast: the hierarchy already proved the receiver is a targetType or null
+		return "(cast (${obj.gen()}) : ${targetType.haxeTypeTag})"
+	}
+
 	fun gen2(stm: AstStm): Indenter {
 		this.stm = stm
 		val program = program
@@ -377,7 +496,21 @@ class GenHaxeGen(
 						}
 					}
 				}
-				is AstStm.SET_ARRAY -> line("${stm.local.haxeName}.set(${stm.index.gen()}, ${stm.expr.gen()});")
+				is AstStm.SET_ARRAY -> {
+					val unchecked = if (stm.checked) "" else "Unchecked"
+					val value = stm.expr
+					// HaxeLongArray stores the halves, so long values are not built just to be stored
+					if (stm.local.type == AstType.ARRAY(AstType.LONG) && value is AstExpr.LITERAL && value.value is Long) {
+						val long = value.value as Long
+						val high = (long ushr 32).toInt()
+						val low = long.toInt()
+						line("${stm.local.haxeName}.setHalves$unchecked(${stm.index.gen()}, $high, $low);")
+					} else if (stm.local.type == AstType.ARRAY(AstType.LONG) && value is AstExpr.ARRAY_ACCESS && value.array.type == stm.local.type && value.checked == stm.checked) {
+						line("${stm.local.haxeName}.setFrom$unchecked(${stm.index.gen()}, ${value.array.gen()}, ${value.index.gen()});")
+					} else {
+						line("${stm.local.haxeName}.set$unchecked(${stm.index.gen()}, ${value.gen()});")
+					}
+				}
 				is AstStm.SET_FIELD_STATIC -> {
 					refs.add(stm.clazz)
 					mutableBody.initClassRef(stm.field.classRef)
@@ -431,7 +564,7 @@ class GenHaxeGen(
 
 	fun gen2(body: AstBody): Indenter {
 		val method = method
-		this.mutableBody = MutableBody(method)
+		this.mutableBody = MutableBody(method) { needsStaticInit(it) }
 
 		return Indenter.gen {
 			for (local in body.locals) {
@@ -452,7 +585,7 @@ class GenHaxeGen(
 			val bodyContent = body.stm.gen()
 
 			if (GenHaxe.INIT_MODE == InitMode.LAZY) {
-				for (clazzRef in mutableBody.classes) {
+				for (clazzRef in mutableBody.classesToInit) {
 					line(names.getHaxeClassStaticInit(clazzRef))
 				}
 			}
@@ -503,6 +636,11 @@ class GenHaxeGen(
 
 				val replacement = mappings.getFunctionInline(e.method)
 				val commaArgs = e.args.map { it.gen() }.joinToString(", ")
+				val target = if (e is AstExpr.CALL_INSTANCE && !e.isSpecial && replacement == null && refMethod.getterField == null && refMethod.setterField == null) {
+					getDevirtualizedTarget(method)
+				} else {
+					null
+				}
 
 				// Calling a method on an array!!
 				if (e is AstExpr.CALL_INSTANCE && e.obj.type is AstType.ARRAY) {
@@ -512,7 +650,7 @@ class GenHaxeGen(
 					val base = when (e) {
 						is AstExpr.CALL_STATIC -> "${e.clazz.haxeTypeNew}"
 						is AstExpr.CALL_SUPER -> "super"
-						is AstExpr.CALL_INSTANCE -> "${e.obj.gen()}"
+						is AstExpr.CALL_INSTANCE -> if (target != null) genDevirtualizedReceiver(e.obj, target) else "${e.obj.gen()}"
 						else -> throw InvalidOperationException("Unexpected")
 					}
 
@@ -542,7 +680,7 @@ class GenHaxeGen(
 				"${e.field.haxeStaticText}"
 			}
 			is AstExpr.ARRAY_LENGTH -> "${e.array.gen()}.length"
-			is AstExpr.ARRAY_ACCESS -> "${e.array.gen()}.get(${e.index.gen()})"
+			is AstExpr.ARRAY_ACCESS -> "${e.array.gen()}.${if (e.checked) "get" else "getUnchecked"}(${e.index.gen()})"
 			is AstExpr.CAST -> {
 				refs.add(e.from)
 				refs.add(e.to)
@@ -734,11 +872,13 @@ class GenHaxeGen(
 			val fieldType = field.type
 			refs.add(fieldType)
 			val defaultValue: Any? = if (field.hasConstantValue) field.constantValue else fieldType.haxeDefault
+			val staticInit = if (field.isStatic) getStaticInit(clazz) else null
 			val fieldName = field.haxeName
 			//if (field.name == "this\$0") println("field: $field : fieldRef: ${field.ref} : $fieldName")
 			if (mappings.isFieldAvailable(field.ref) && !field.annotations.contains<HaxeRemoveField>()) {
 				val keep = if (field.annotations.contains<JTranscKeep>()) "@:keep " else ""
-				line("$keep$static$visibility var $fieldName:${fieldType.haxeTypeTag} = ${names.escapeConstant(defaultValue, fieldType)};")
+				val value = if (staticInit != null) evaluatedValue(staticInit.values[field.name], fieldType) else names.escapeConstant(defaultValue, fieldType)
+				line("$keep$static$visibility var $fieldName:${fieldType.haxeTypeTag} = $value;")
 			}
 		}
 
@@ -775,7 +915,7 @@ class GenHaxeGen(
 							when (GenHaxe.INIT_MODE) {
 								InitMode.START_OLD -> line("__hx_static__init__();")
 							}
-							line(features.apply(method.body!!, featureSet).gen())
+							line(features.apply(method.body!!, featureSet, method).gen())
 						}
 					} else {
 						val body2 = body ?: "HaxeNatives.debugger(); throw \"Native or abstract: ${clazz.name}.${method.name} :: ${method.desc}\";"
@@ -804,9 +944,14 @@ class GenHaxeGen(
 							line(clazz.name.haxeClassFqNameInt + ".__hx_static__init__();")
 						}
 					}
+					InitMode.LAZY -> {
+						// Superclasses are initialized first as in Java, so an initialized class implies its ancestors are
+						val parent = MutableBody.getInitParent(clazz)
+						if (parent != null) line(names.getHaxeClassStaticInit(AstClassRef(parent.name)))
+					}
 				}
 
-				if (clazz.hasStaticInit) {
+				if (needsStaticInit(clazz)) {
 					val methodName = clazz.staticInitMethod!!.haxeName
 					line("$methodName();")
 				}
@@ -946,12 +1091,43 @@ class GenHaxeGen(
 	val AstArgument.haxeNameAndType: String get() = this.name + ":" + this.type.haxeTypeTag
 
 	class MutableBody(
-		val method: AstMethod
+		val method: AstMethod,
+		val needsStaticInit: (AstClass) -> Boolean
 	) {
+		companion object {
+			// Class initialized first by the lazy initializer of clazz: its superclass, unless it is native
+			fun getInitParent(clazz: AstClass): AstClass? {
+				val program = clazz.program
+				val extending = clazz.extending
+				val parent = if (!clazz.isInterface && extending != null && extending in program) program[extending] else null
+				return if (parent != null && !parent.isNative) parent else null
+			}
+		}
+
 		val classes = linkedSetOf<AstClassRef>()
 		fun initClassRef(classRef: AstClassRef) {
 			classes.add(classRef)
 		}
+
+		// Classes that could still be uninitialized when the method starts. Initializing a class initializes its
+		// ancestors first, so instance methods (and <clinit>) run with their class and its ancestors initialized.
+		// Static methods can be called from native code without initializing their class, so they keep the check.
+		// Classes without <clinit> in them or their ancestors don't need it, and neither do ancestors of another
+		// class initialized here.
+		val classesToInit: List<AstClassRef> get() {
+			val program = method.containingClass.program
+			val initialized = hashSetOf<FqName>()
+			if (!method.isStatic || method.name == "<clinit>") {
+				initialized += method.containingClass.thisAndAncestors.map { it.name }
+			}
+			val required = classes.filter { it.name !in program || it.name !in initialized }
+			val covered = required.filter { it.name in program }.flatMap { program[it.name].ancestors }.map { it.name }.toSet()
+			return required.filter {
+				if (it.name !in program) return@filter true
+				val clazz = program[it.name]
+				it.name !in covered && (clazz.isNative || clazz.isInterface || clazz.thisAndAncestors.any { needsStaticInit(it) })
+			}
+		}
 	}
 
 	class References {
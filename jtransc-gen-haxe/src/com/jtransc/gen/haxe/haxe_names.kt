@@ -3,10 +3,10 @@ package com.jtransc.gen.haxe
 import com.jtransc.ast.*
 import com.jtransc.error.invalidOp
 import com.jtransc.gen.ClassMappings
-import com.jtransc.text.escape
 
 class HaxeNames(val program: AstProgram, val mappings: ClassMappings) {
 	private val cachedFieldNames = hashMapOf<AstFieldRef, String>()
+	val constants = HaxeConstantPool()
 
 	fun getHaxeMethodName(method: AstMethod): String = getHaxeMethodName(method.ref)
 	fun getHaxeMethodName(method: AstMethodRef): String {
@@ -166,7 +166,7 @@ class HaxeNames(val program: AstProgram, val mappings: ClassMappings) {
 	fun escapeConstant(value: Any?): String = when (value) {
 		null -> "null"
 		is Boolean -> if (value) "true" else "false"
-		is String -> "HaxeNatives.str(\"" + value.escape() + "\")"
+		is String -> constants.str(value)
 		is Short -> "$value"
 		is Char -> "$value"
 		is Int -> "$value"
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jtransc.gen.haxe
+
+import com.jtransc.text.Indenter
+import com.jtransc.text.escape
+import java.util.*
+
+// Constants used by the generated code, written to HaxeConstantPool.hx once all the classes have been generated.
+// Each distinct string literal is wrapped in a java_.lang.String_ the first time it is used and reused after that,
+// so equal literals are the same object (as in the JVM) and keep their cached hash. Boxed constants are pooled the
+// same way. The tables are created lazily, so constants are safe to use from static initializers of any class.
+class HaxeConstantPool {
+	private val strings = LinkedHashMap<String, Int>()
+	private val boxes = LinkedHashMap<Any, Pair<Int, String>>()
+
+	val className = "HaxeConstantPool"
+	val fileName = "$className.hx"
+
+	fun str(value: String): String {
+		val id = strings.getOrPut(value) { strings.size }
+		return "$className.str($id)"
+	}
+
+	// value identifies the constant, expr is the haxe expression creating it
+	fun box(value: Any, expr: String): String {
+		val id = boxes.getOrPut(value) { Pair(boxes.size, expr) }.first
+		return "$className.box($id)"
+	}
+
+	fun gen(): Indenter = Indenter.gen {
+		line("class $className") {
+			line("static private var _strings:haxe.ds.Vector<java_.lang.String_>;")
+			line("static private var _boxes:haxe.ds.Vector<Dynamic>;")
+
+			line("static public inline function str(id:Int):java_.lang.String_") {
+				line("var s = (_strings != null) ? _strings[id] : null;")
+				line("return (s != null) ? s : _str(id);")
+			}
+			line("static private function _str(id:Int):java_.lang.String_") {
+				line("if (_strings == null) _strings = new haxe.ds.Vector<java_.lang.String_>(${strings.size});")
+				line("var s = HaxeNatives.str(_literal(id));")
+				line("_strings[id] = s;")
+				line("return s;")
+			}
+			line("static private function _literal(id:Int):String") {
+				if (strings.isNotEmpty()) {
+					line("switch (id)") {
+						for ((value, id) in strings) line("case $id: return \"${value.escape()}\";")
+					}
+				}
+				line("return null;")
+			}
+
+			line("static public function box(id:Int):Dynamic") {
+				line("if (_boxes == null) _boxes = new haxe.ds.Vector<Dynamic>(${boxes.size});")
+				line("var b = _boxes[id];")
+				line("if (b == null) b = _boxes[id] = _box(id);")
+				line("return b;")
+			}
+			line("static private function _box(id:Int):Dynamic") {
+				if (boxes.isNotEmpty()) {
+					line("switch (id)") {
+						for ((id, expr) in boxes.values) line("case $id: return $expr;")
+					}
+				}
+				line("return null;")
+			}
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.jtransc.gen.haxe.HaxeConstantPool
+import org.junit.Assert
+import org.junit.Test
+
+class HaxeConstantPoolTest {
+	private fun fill(pool: HaxeConstantPool): List<String> = listOf(
+		pool.str("hello"),
+		pool.box(1, "java_.lang.Integer_.valueOf(1)"),
+		pool.str("a\"b\n"),
+		pool.box(1L, "java_.lang.Long_.valueOf(1)"),
+		pool.str("hello"),
+		pool.box(1, "java_.lang.Integer_.valueOf(1)")
+	)
+
+	@Test fun testIdenticalConstantsShareSlot() {
+		val refs = fill(HaxeConstantPool())
+		Assert.assertEquals(listOf(
+			"HaxeConstantPool.str(0)", "HaxeConstantPool.box(0)", "HaxeConstantPool.str(1)",
+			"HaxeConstantPool.box(1)", "HaxeConstantPool.str(0)", "HaxeConstantPool.box(0)"
+		), refs)
+	}
+
+	@Test fun testPoolIsDeterministic() {
+		val pool1 = HaxeConstantPool()
+		val pool2 = HaxeConstantPool()
+		fill(pool1)
+		fill(pool2)
+		val code = pool1.gen().toString()
+		Assert.assertEquals(code, pool2.gen().toString())
+		Assert.assertEquals(code, pool1.gen().toString())
+
+		// Slots are numbered in order of first use, with one case per constant
+		val cases = code.lines().map { it.trim() }.filter { it.startsWith("case ") }
+		Assert.assertEquals(listOf(
+			"case 0: return \"hello\";", "case 1: return \"a\\\"b\\n\";",
+			"case 0: return java_.lang.Integer_.valueOf(1);", "case 1: return java_.lang.Long_.valueOf(1);"
+		), cases)
+		Assert.assertTrue(code.contains("new haxe.ds.Vector<java_.lang.String_>(2)"))
+		Assert.assertTrue(code.contains("new haxe.ds.Vector<Dynamic>(2)"))
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.jtransc.ast.*
+import com.jtransc.error.noImpl
+import com.jtransc.gen.haxe.GenHaxeGen
+import com.jtransc.vfs.MemoryVfs
+import org.junit.Assert
+import org.junit.Test
+
+class HaxeStaticInitTest {
+	private val generator = object : AstClassGenerator {
+		override fun generateClass(program: AstProgram, fqname: FqName): AstClass = noImpl
+	}
+
+	private val voidType = AstType.METHOD_TYPE(AstType.VOID, listOf())
+	private val program = AstProgram(FqName("test.Main"), MemoryVfs(), generator)
+
+	// Native <- A (static init) <- B <- C (static init), and Main without static init
+	private val native = addClass("test.Native", null, false, AstAnnotation(AstType.REF("jtransc.annotation.JTranscNativeClass"), mapOf("value" to "NativeClass"), true))
+	private val a = addClass("test.A", native, true)
+	private val b = addClass("test.B", a, false)
+	private val c = addClass("test.C", b, true)
+	private val main = addClass("test.Main", null, false)
+
+	private fun addClass(name: String, parent: AstClass?, staticInit: Boolean, vararg annotations: AstAnnotation): AstClass {
+		val clazz = AstClass(program, FqName(name), modifiers = 1, extending = parent?.name, annotations = annotations.toList())
+		program.add(clazz)
+		if (staticInit) clazz.add(createMethod(clazz, "<clinit>", true))
+		clazz.add(createMethod(clazz, "run", false))
+		clazz.add(createMethod(clazz, "runStatic", true))
+		return clazz
+	}
+
+	private fun createMethod(clazz: AstClass, name: String, isStatic: Boolean): AstMethod {
+		val body = AstBody(AstStm.STMS(listOf()), listOf(), listOf())
+		return AstMethod(clazz, name, voidType, listOf(), "()V", null, null, modifiers = if (isStatic) 9 else 1, body = body, isStatic = isStatic)
+	}
+
+	private fun classesToInit(method: AstMethod, vararg used: AstClass): List<String> {
+		val body = GenHaxeGen.MutableBody(method, { it.hasStaticInit })
+		for (clazz in used) body.initClassRef(AstClassRef(clazz.name))
+		return body.classesToInit.map { it.name.fqname }
+	}
+
+	@Test fun testLazyInitOrder() {
+		// Each lazy initializer initializes its superclass first, so C runs A, then B, then its own initializer
+		val chain = arrayListOf<String>()
+		var clazz: AstClass? = c
+		while (clazz != null) {
+			chain.add(0, clazz.fqname)
+			clazz = GenHaxeGen.MutableBody.getInitParent(clazz)
+		}
+		Assert.assertEquals(listOf("test.A", "test.B", "test.C"), chain)
+		Assert.assertEquals(null, GenHaxeGen.MutableBody.getInitParent(native))
+		Assert.assertEquals(null, GenHaxeGen.MutableBody.getInitParent(main))
+	}
+
+	@Test fun testSubclassCoversItsAncestors() {
+		val method = main.getMethodSure("runStatic", "()V")
+		Assert.assertEquals(listOf("test.C"), classesToInit(method, a, b, c))
+		Assert.assertEquals(listOf("test.C"), classesToInit(method, c, a))
+		// B has no initializer of its own, but A does
+		Assert.assertEquals(listOf("test.B"), classesToInit(method, b, a))
+		Assert.assertEquals(listOf<String>(), classesToInit(method, main))
+	}
+
+	@Test fun testNativeParentIsCovered() {
+		val method = main.getMethodSure("runStatic", "()V")
+		// The initializer of A skips its native parent, and no initialization is emitted for it either
+		Assert.assertEquals(listOf("test.A"), classesToInit(method, native, a))
+		Assert.assertEquals(listOf("test.Native"), classesToInit(method, native))
+	}
+
+	@Test fun testMethodsOfInitializedClasses() {
+		// Instance methods and <clinit> run with their class and its ancestors initialized, static methods don't
+		Assert.assertEquals(listOf<String>(), classesToInit(c.getMethodSure("run", "()V"), a, b, c))
+		Assert.assertEquals(listOf<String>(), classesToInit(c.getMethodSure("<clinit>", "()V"), a, c))
+		Assert.assertEquals(listOf("test.C"), classesToInit(c.getMethodSure("runStatic", "()V"), a, c))
+		Assert.assertEquals(listOf("test.C"), classesToInit(b.getMethodSure("run", "()V"), a, b, c))
+	}
+}
@@ -48,6 +48,11 @@ object JTranscMain {
 			println("  -target <target> - Language target to do the AOT possible values ($targetNames)")
 			println("  -out    <file>   - Output file that will hold the generated aot result file")
 			println("  -release         - Optimizes and performs compression minimization to the output")
+			println("  -threads <n>     - Number of threads used to generate the AST (defaults to 1)")
+			println("  -cache           - Reuses the classes converted by previous builds from an on-disk cache")
+			println("  -nocache         - Converts all the classes without the on-disk cache (default)")
+			println("  -nodce           - Keeps the methods and fields that are never used")
+			println("  -frontend <name> - Reads the class files with soot (default) or asm")
 			println("")
 			println("  -run             - Runs generated executable")
 			println("")
@@ -103,6 +108,11 @@ object JTranscMain {
 						"-main" -> entryPoint = args.remove()
 						"-target" -> targetName = args.remove()
 						"-release" -> settings.debug = false
+						"-threads" -> settings.threads = args.remove().toInt()
+						"-cache" -> settings.astCache = true
+						"-nocache" -> settings.astCache = false
+						"-nodce" -> settings.dce = false
+						"-frontend" -> settings.frontend = AstBuildSettings.Frontend.fromString(args.remove())
 						"-out" -> out = args.remove()
 						"-run" -> run = true
 						else -> throw Exception("Unknown switch $arg")
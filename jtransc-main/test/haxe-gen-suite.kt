@@ -21,12 +21,15 @@ import com.jtransc.maven.MavenLocalRepository
 import com.jtransc.util.ClassUtils
 import javatest.KotlinCollections
 import javatest.lang.BasicTypesTest
+import javatest.lang.CallsBenchmark
+import javatest.lang.LoopsBenchmark
 import javatest.lang.StringsTest
 import javatest.lang.SystemTest
 import jtransc.JTranscVersion
 import jtransc.annotation.ClassMembersTest
 import jtransc.annotation.MethodBodyTest
 import jtransc.bug.*
+import jtransc.dce.JTranscDceTest
 import jtransc.java8.Java8Test
 import jtransc.rt.test.*
 import org.junit.Assert
@@ -42,11 +45,15 @@ class HaxeGenSuite {
 	//@Test fun langBasicTypesTest() = testClass<BasicTypesTest>()
 	@Test fun langStringsTest() = testClass<StringsTest>()
 
-	@Test fun langSystemTest() = testClass<SystemTest>() { it.replace(
-		"java.runtime.name:Java(TM) SE Runtime Environment", "java.runtime.name:jtransc-haxe"
-	).replace(
-		"path.separator:;", "path.separator::"
-	) }
+	// Also measures the throughput of System.out
+	@Test fun langSystemTest() = Assert.assertEquals(
+		withoutTimings(ClassUtils.callMain(SystemTest::class.java).replace(
+			"java.runtime.name:Java(TM) SE Runtime Environment", "java.runtime.name:jtransc-haxe"
+		).replace(
+			"path.separator:;", "path.separator::"
+		)),
+		withoutTimings(runClass<SystemTest>())
+	)
 
 	//-----------------------------------------------------------------
 	// Java Utils
@@ -58,12 +65,35 @@ class HaxeGenSuite {
 	@Test fun kotlinCollectionsTest() = testClass<KotlinCollections>()
 
 	@Test fun stringsTest() = testClass<JTranscStringTest>()
+	@Test fun regexTest() = testClass<JTranscRegexTest>()
 	@Test fun arrayListTest() = testClass<JTranscCollectionsTest>()
 	@Test fun stringBuilderTest() = testClass<StringBuilderTest>()
 	@Test fun stackTraceTest() = testClass<JTranscStackTraceTest>()
 	@Test fun reflectionTest() = testClass<JTranscReflectionTest>()
 	@Test fun nioTest() = testClass<JTranscNioTest>()
 	@Test fun arithmeticTest() = testClass<JTranscArithmeticTest>()
+	@Test fun longArrayTest() = testClass<JTranscLongArrayTest>()
+
+	// Timings differ between runs and targets, so only sizes and checksums are compared.
+	@Test fun loopsBenchmark() = Assert.assertEquals(
+		withoutTimings(ClassUtils.callMain(LoopsBenchmark::class.java)),
+		withoutTimings(runClass<LoopsBenchmark>())
+	)
+
+	@Test fun callsBenchmark() = Assert.assertEquals(
+		withoutTimings(ClassUtils.callMain(CallsBenchmark::class.java)),
+		withoutTimings(runClass<CallsBenchmark>())
+	)
+
+	@Test fun treeMapBenchmark() = Assert.assertEquals(
+		withoutTimings(ClassUtils.callMain(JTranscTreeMapBenchmark::class.java)),
+		withoutTimings(runClass<JTranscTreeMapBenchmark>())
+	)
+
+	@Test fun sortBenchmark() = Assert.assertEquals(
+		withoutTimings(ClassUtils.callMain(JTranscSortBenchmark::class.java)),
+		withoutTimings(runClass<JTranscSortBenchmark>())
+	)
 
 	@Test fun basicTypesTest() = testClass<BasicTypesTest>()
 
@@ -81,9 +111,12 @@ class HaxeGenSuite {
 	@Test fun regressionTest1() = testClass<JTranscRegression1Test>()
 	@Test fun regressionTest2() = testClass<JTranscRegression2Test>()
 	@Test fun regressionTest3() = testClass<JTranscRegression3Test>()
+	@Test fun regressionTest4() = testClass<JTranscRegression4Test>()
 
 	@Test fun java8Test() = testClass<Java8Test>()
 
+	@Test fun dceTest() = testClass<JTranscDceTest>()
+
 	@Test fun methodBodyTest() = Assert.assertEquals("INT:777", runClass<MethodBodyTest>().trim())
 	@Test fun classMembersTest() = Assert.assertEquals("mult:246", runClass<ClassMembersTest>().trim())
 
@@ -106,6 +139,8 @@ class HaxeGenSuite {
 
 	fun normalize(str:String) = str.replace("\r\n", "\n").replace('\r', '\n')
 
+	fun withoutTimings(str: String) = normalize(str).replace(Regex("\\d+ms"), "?ms")
+
 	inline fun <reified T : Any> runClass(): String {
 		return runClass(T::class.java)
 	}
@@ -119,7 +154,9 @@ class HaxeGenSuite {
 			//output = "program.haxe.cpp", subtarget = "cpp",
 			targetDirectory = System.getProperty("java.io.tmpdir")
 		)
-		return build.buildAndRunCapturingOutput(AstBuildSettings(jtranscVersion = JTranscVersion.getVersion(), debug = false)).output
+		// -Djtransc.frontend=asm runs the suite with AsmToAst to compare it with Soot
+		val frontend = AstBuildSettings.Frontend.fromString(System.getProperty("jtransc.frontend") ?: "soot")
+		return build.buildAndRunCapturingOutput(AstBuildSettings(jtranscVersion = JTranscVersion.getVersion(), debug = false, frontend = frontend)).output
 	}
 
 	val engine = ScriptEngineManager().getEngineByMimeType("text/javascript")
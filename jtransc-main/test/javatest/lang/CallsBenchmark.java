@@ -0,0 +1,79 @@
+package javatest.lang;
+
+// Interface and abstract calls with a single implementation, which the haxe target calls on the implementing class,
+// against calls with several implementations that keep the dynamic dispatch. Checksums must match the JVM; timings
+// are only informative.
+public class CallsBenchmark {
+	static private final int COUNT = 3000000;
+
+	static public void main(String[] args) {
+		bench("interface", interfaceCalls(new Counter()));
+		bench("abstract", abstractCalls(new Doubler()));
+		bench("polymorphic", polymorphicCalls(new Shape[]{new Square(), new Circle()}));
+	}
+
+	static private long start = System.currentTimeMillis();
+
+	static private void bench(String name, long checksum) {
+		long now = System.currentTimeMillis();
+		System.out.println(name + ":" + checksum + ":" + (now - start) + "ms");
+		start = now;
+	}
+
+	interface Step {
+		int step(int value);
+	}
+
+	static private class Counter implements Step {
+		private int total = 0;
+
+		public int step(int value) {
+			total += value & 0xFF;
+			return total;
+		}
+	}
+
+	static private abstract class Scaler {
+		abstract int scale(int value);
+	}
+
+	static private class Doubler extends Scaler {
+		int scale(int value) {
+			return value * 2;
+		}
+	}
+
+	static private abstract class Shape {
+		abstract int area(int size);
+	}
+
+	static private class Square extends Shape {
+		int area(int size) {
+			return size * size;
+		}
+	}
+
+	static private class Circle extends Shape {
+		int area(int size) {
+			return size * size * 3;
+		}
+	}
+
+	static private long interfaceCalls(Step step) {
+		long sum = 0;
+		for (int n = 0; n < COUNT; n++) sum += step.step(n);
+		return sum;
+	}
+
+	static private long abstractCalls(Scaler scaler) {
+		long sum = 0;
+		for (int n = 0; n < COUNT; n++) sum += scaler.scale(n);
+		return sum;
+	}
+
+	static private long polymorphicCalls(Shape[] shapes) {
+		long sum = 0;
+		for (int n = 0; n < COUNT; n++) sum += shapes[n & 1].area(n & 0x3FF);
+		return sum;
+	}
+}
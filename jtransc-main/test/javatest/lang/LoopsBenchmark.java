@@ -0,0 +1,141 @@
+package javatest.lang;
+
+// Loop heavy code covering the shapes the goto removal has to rebuild: nested and labelled loops,
+// switches and try/catch inside loops. Checksums must match the JVM; timings are only informative.
+public class LoopsBenchmark {
+	static public void main(String[] args) {
+		bench("sieve", sieve(200000));
+		bench("matrix", matrix(60));
+		bench("labelled", labelled(300));
+		bench("switch", switchLoop(300000));
+		bench("exceptions", exceptions(20000));
+		bench("doWhile", doWhile(100000));
+		bench("conditions", conditions(300000));
+	}
+
+	static private long start = System.currentTimeMillis();
+
+	static private void bench(String name, long checksum) {
+		long now = System.currentTimeMillis();
+		System.out.println(name + ":" + checksum + ":" + (now - start) + "ms");
+		start = now;
+	}
+
+	static private long sieve(int count) {
+		boolean[] composite = new boolean[count];
+		long sum = 0;
+		for (int n = 2; n < count; n++) {
+			if (composite[n]) continue;
+			sum += n;
+			for (int m = n * 2; m < count; m += n) composite[m] = true;
+		}
+		return sum;
+	}
+
+	static private long matrix(int size) {
+		int[] a = new int[size * size];
+		int[] b = new int[size * size];
+		int[] c = new int[size * size];
+		for (int n = 0; n < size * size; n++) {
+			a[n] = n % 7;
+			b[n] = n % 5;
+		}
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				int sum = 0;
+				for (int k = 0; k < size; k++) sum += a[y * size + k] * b[k * size + x];
+				c[y * size + x] = sum;
+			}
+		}
+		long checksum = 0;
+		for (int n = 0; n < size * size; n++) checksum = checksum * 31 + c[n];
+		return checksum;
+	}
+
+	static private long labelled(int count) {
+		long sum = 0;
+		outer:
+		for (int y = 0; y < count; y++) {
+			inner:
+			for (int x = 0; x < count; x++) {
+				if ((x ^ y) % 11 == 0) continue outer;
+				if (x * y > count * 50) break outer;
+				for (int z = 0; z < 4; z++) {
+					if (z == x % 4) continue inner;
+					sum += x + y + z;
+				}
+			}
+		}
+		return sum;
+	}
+
+	static private long switchLoop(int count) {
+		long sum = 0;
+		int state = 0;
+		for (int n = 0; n < count; n++) {
+			switch (state) {
+				case 0:
+					sum += n;
+					state = 1;
+					break;
+				case 1:
+					sum ^= n;
+					state = (n % 3 == 0) ? 2 : 0;
+					break;
+				case 2:
+					sum -= n >> 1;
+				case 3:
+					state = 0;
+					break;
+				default:
+					state = 0;
+			}
+		}
+		return sum;
+	}
+
+	static private long exceptions(int count) {
+		long sum = 0;
+		int[] array = new int[10];
+		for (int n = 0; n < count; n++) {
+			try {
+				if (n % 1000 == 0) throw new IllegalStateException("n" + n);
+				array[n % 10] += n;
+				sum += array[n % 10];
+			} catch (IllegalStateException e) {
+				sum += e.getMessage().length();
+			} finally {
+				sum++;
+			}
+		}
+		return sum;
+	}
+
+	static private long doWhile(int count) {
+		long sum = 0;
+		int n = 0;
+		do {
+			int m = n;
+			do {
+				sum += m & 7;
+				m >>= 3;
+			} while (m != 0);
+			n++;
+		} while (n < count);
+		return sum;
+	}
+
+	static private long conditions(int count) {
+		long sum = 0;
+		for (int n = 0; n < count; n++) {
+			if ((n % 3 == 0 && n % 5 != 0) || n % 7 == 0) {
+				sum += n;
+			} else if (n % 11 == 0 || (n & 1) == 0 && n % 13 == 0) {
+				sum -= n;
+			} else {
+				sum ^= n;
+			}
+		}
+		return sum;
+	}
+}
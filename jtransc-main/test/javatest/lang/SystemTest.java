@@ -7,13 +7,31 @@ public class SystemTest {
 
     public static void main(String[] args) throws Throwable {
         systemOutTest();
+        systemOutBufferTest();
         systemPropertiesTest();
+        arraycopyTest();
     }
 
     private static void systemOutTest() {
         System.out.print("HELLO");
         System.out.println(" WORLD!");
         System.out.println("HELLO WORLD!");
+        System.out.print('\u00e9');
+        System.out.println('\u20ac');
+    }
+
+    // Enough output to fill the console buffer, with lines split across writes and flushes
+    private static void systemOutBufferTest() {
+        long start = System.currentTimeMillis();
+        for (int n = 0; n < 2000; n++) {
+            System.out.print("line ");
+            System.out.print(n);
+            if (n % 100 == 0) System.out.flush();
+            System.out.println();
+        }
+        System.out.write('A');
+        System.out.write(new byte[] { 'B', 'C', '\n' }, 0, 3);
+        System.out.println("systemOutBufferTest: " + (System.currentTimeMillis() - start) + "ms");
     }
 
     private static void systemPropertiesTest() {
@@ -21,4 +39,20 @@ public class SystemTest {
         System.out.println("path.separator:" + System.getProperty("path.separator"));
     }
 
+    // Messages differ from the JVM, so only the exceptions are printed
+    private static void arraycopyTest() {
+        int[] ints = new int[] { 1, 2, 3, 4 };
+        System.arraycopy(ints, 0, ints, 1, 3);
+        System.out.println("arraycopy:" + ints[0] + ints[1] + ints[2] + ints[3]);
+        Object[][] cases = { { null, ints }, { ints, null }, { null, null }, { ints, new long[4] }, { "a", ints } };
+        for (Object[] c : cases) {
+            try {
+                System.arraycopy(c[0], 0, c[1], 0, 1);
+                System.out.println("arraycopy:ok");
+            } catch (RuntimeException e) {
+                System.out.println("arraycopy:" + e.getClass().getName());
+            }
+        }
+    }
+
 }
\ No newline at end of file
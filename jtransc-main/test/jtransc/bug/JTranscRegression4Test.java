@@ -0,0 +1,27 @@
+package jtransc.bug;
+
+import java.util.ArrayList;
+
+// Conditions with calls of ifs whose branches are the same block were dropped with the asm frontend
+public class JTranscRegression4Test {
+	static private int calls = 0;
+
+	static public void main(String[] args) {
+		ArrayList<String> list = new ArrayList<String>();
+		if (list.add("a")) {
+		}
+		if (list.add("b") == list.isEmpty()) {
+		}
+		System.out.println(list);
+
+		if (count() > 0) {
+		}
+		if (count() > 0 && count() > 1) {
+		}
+		System.out.println(calls);
+	}
+
+	static private int count() {
+		return ++calls;
+	}
+}
@@ -0,0 +1,111 @@
+package jtransc.dce;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Shapes the dead code elimination must not break: dispatch through interfaces to inherited
+// implementations, overrides of otherwise unused methods, enum lookups and reflective field access.
+public class JTranscDceTest {
+	static public void main(String[] args) throws Throwable {
+		List<Shape> shapes = new ArrayList<Shape>();
+		shapes.add(new Square(3));
+		shapes.add(new ColoredSquare(2));
+		shapes.add(new Circle());
+		for (Shape shape : shapes) System.out.println(shape.name() + ":" + shape.area());
+
+		Base base = new Derived();
+		System.out.println(base.describe());
+
+		Op op = new Op() {
+			@Override
+			public int apply(int v) {
+				return v * 3;
+			}
+		};
+		System.out.println(op.apply(7));
+
+		System.out.println(Level.valueOf("HIGH").weight);
+
+		Holder holder = new Holder();
+		Holder.class.getField("onlyReflected").set(holder, 11);
+		System.out.println(Holder.class.getField("onlyReflected").get(holder));
+	}
+
+	interface Shape {
+		String name();
+
+		int area();
+	}
+
+	static class Square implements Shape {
+		private final int side;
+
+		Square(int side) {
+			this.side = side;
+		}
+
+		public String name() {
+			return "square";
+		}
+
+		public int area() {
+			return side * side;
+		}
+	}
+
+	// Gets area() from Square, which is only reachable through the Shape interface.
+	static class ColoredSquare extends Square implements Shape {
+		ColoredSquare(int side) {
+			super(side);
+		}
+
+		public String name() {
+			return "colored";
+		}
+	}
+
+	static class Circle implements Shape {
+		public String name() {
+			return "circle";
+		}
+
+		public int area() {
+			return 3;
+		}
+	}
+
+	static class Base {
+		public String describe() {
+			return "base:" + extra();
+		}
+
+		protected String extra() {
+			return "never";
+		}
+	}
+
+	static class Derived extends Base {
+		@Override
+		protected String extra() {
+			return "derived";
+		}
+	}
+
+	interface Op {
+		int apply(int v);
+	}
+
+	enum Level {
+		LOW(1), HIGH(10);
+
+		final int weight;
+
+		Level(int weight) {
+			this.weight = weight;
+		}
+	}
+
+	static public class Holder {
+		public int onlyReflected;
+	}
+}
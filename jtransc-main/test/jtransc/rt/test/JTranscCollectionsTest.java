@@ -6,6 +6,11 @@ public class JTranscCollectionsTest {
 	static public void main(String[] args) {
 		testArrayList();
 		testHashSet();
+		testHashMap();
+		testLinkedHashMap();
+		testTreeMap();
+		testTreeSet();
+		testSort();
 	}
 
 	static public void testArrayList() {
@@ -23,6 +28,8 @@ public class JTranscCollectionsTest {
 		System.out.println(Arrays.toString(list.toArray(new Integer[0])));
 		System.out.println(Arrays.toString(list.toArray(new Integer[6])));
 		System.out.println(Arrays.toString(list.toArray(new Integer[10])));
+		Integer[] filled = new Integer[]{-1, -1, -1, -1, -1, -1, -1, -1};
+		System.out.println(Arrays.toString(list.toArray(filled)) + ":" + (list.toArray(filled) == filled));
 		System.out.println(list.indexOf(2));
 		System.out.println(list.indexOf(null));
 		System.out.println(list.lastIndexOf(2));
@@ -36,6 +43,74 @@ public class JTranscCollectionsTest {
 		}
 
 		System.out.println(Arrays.toString(list.toArray()));
+
+		ListIterator<Integer> backwards = list.listIterator(list.size());
+		while (backwards.hasPrevious()) {
+			Integer value = backwards.previous();
+			backwards.set(value == null ? -1 : value * 10);
+			System.out.print(backwards.nextIndex() + ",");
+		}
+		System.out.println(list);
+	}
+
+	static public void testSort() {
+		System.out.println("Sort:");
+		ArrayList<String> list = new ArrayList<>();
+		for (int n = 0; n < 300; n++) list.add("" + (char) ('a' + (n * 7) % 26) + n);
+		// Sorted by first letter only, so equal letters keep their order
+		Comparator<String> byLetter = new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				return a.charAt(0) - b.charAt(0);
+			}
+		};
+		Collections.sort(list, byLetter);
+		System.out.println(list.subList(0, 12));
+		System.out.println(list.subList(288, 300));
+		Collections.sort(list);
+		System.out.println(list.subList(0, 12));
+		System.out.println(Collections.binarySearch(list, "b1") + ":" + Collections.binarySearch(list, "b0"));
+		System.out.println(Collections.min(list) + ":" + Collections.max(list) + ":" + Collections.max(list, byLetter));
+
+		LinkedList<Integer> linked = new LinkedList<>(Arrays.asList(5, 3, 9, 1, 7, 3));
+		Collections.sort(linked, Collections.<Integer>reverseOrder());
+		System.out.println(linked);
+		Collections.rotate(linked, -2);
+		System.out.println(linked);
+		Collections.shuffle(linked, new Random(0));
+		Collections.sort(linked);
+		System.out.println(linked + ":" + Collections.frequency(linked, 3));
+		// Sorted through its ListIterator, the list has no RandomAccess
+		final Integer[] backing = new Integer[]{4, 2, 8, 6};
+		List<Integer> fixed = new AbstractList<Integer>() {
+			@Override
+			public Integer get(int index) {
+				return backing[index];
+			}
+
+			@Override
+			public Integer set(int index, Integer element) {
+				Integer old = backing[index];
+				backing[index] = element;
+				return old;
+			}
+
+			@Override
+			public int size() {
+				return backing.length;
+			}
+		};
+		Collections.sort(fixed);
+		System.out.println(fixed + ":" + Arrays.toString(backing));
+		System.out.println(Collections.indexOfSubList(linked, Arrays.asList(3, 5)) + ":" + Collections.lastIndexOfSubList(linked, Arrays.asList(3)));
+		System.out.println(Collections.disjoint(linked, Arrays.asList(2, 4)) + ":" + Collections.disjoint(linked, Arrays.asList(4, 9)));
+
+		Integer[] array = new Integer[]{9, 8, 7, 6, 5, 4, 3, 2, 1, 0};
+		Arrays.sort(array, 2, 8, null);
+		System.out.println(Arrays.toString(array) + ":" + Arrays.binarySearch(array, 2, 8, 6));
+		Integer[] descending = new Integer[]{9, 7, 5, 3, 1};
+		System.out.println(Arrays.binarySearch(descending, 5, Collections.<Integer>reverseOrder()) + ":" + Arrays.binarySearch(descending, 4, Collections.<Integer>reverseOrder()));
+		System.out.println(Arrays.hashCode(new int[]{9, 7, 5, 3, 1}) + ":" + Arrays.hashCode(descending) + ":" + Arrays.hashCode(new int[]{-1, Integer.MIN_VALUE}));
 	}
 
 	static public void testHashSet() {
@@ -56,6 +131,15 @@ public class JTranscCollectionsTest {
 		set.remove(s2);
 		System.out.println(set.size());
 		System.out.println(toSortedList(set));
+
+		LinkedHashSet<Integer> linked = new LinkedHashSet<>();
+		for (int n = 0; n < 200; n++) linked.add((n * 37) % 101);
+		linked.remove(36);
+		linked.add(36);
+		System.out.println(linked.size());
+		Iterator<Integer> it = linked.iterator();
+		for (int n = 0; n < 5; n++) System.out.print(it.next() + ",");
+		System.out.println(linked.contains(100) + "," + linked.contains(101));
 	}
 
 	static public <T extends Comparable<T>> List<T> toSortedList(Collection<T> c) {
@@ -63,4 +147,107 @@ public class JTranscCollectionsTest {
 		Collections.sort(l);
 		return l;
 	}
+
+	static public void testHashMap() {
+		System.out.println("HashMap:");
+		HashMap<Integer, String> map = new HashMap<>();
+		for (int n = 0; n < 1000; n++) map.put(n, "v" + n);
+		map.put(null, "null");
+		System.out.println(map.size());
+		System.out.println(map.get(0) + "," + map.get(999) + "," + map.get(null) + "," + map.get(1000));
+		System.out.println(map.put(10, "ten") + "," + map.get(10));
+		for (int n = 0; n < 1000; n += 2) map.remove(n);
+		System.out.println(map.size());
+		System.out.println(map.containsKey(1) + "," + map.containsKey(2) + "," + map.containsValue("v501") + "," + map.containsValue("v500"));
+
+		Iterator<Map.Entry<Integer, String>> it = map.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Integer, String> e = it.next();
+			if (e.getKey() != null && e.getKey() % 3 == 0) it.remove();
+		}
+		map.keySet().remove(1);
+		map.values().remove("null");
+		System.out.println(map.size());
+		System.out.println(toSortedList(map.keySet()).subList(0, 5));
+		System.out.println(map.equals(map.clone()));
+		map.clear();
+		System.out.println(map.isEmpty() + "," + map.keySet().size());
+	}
+
+	static public void testLinkedHashMap() {
+		System.out.println("LinkedHashMap:");
+		LinkedHashMap<String, Integer> map = new LinkedHashMap<>();
+		map.put("c", 1);
+		map.put("a", 2);
+		map.put("b", 3);
+		map.put("a", 4);
+		System.out.println(map);
+		map.remove("c");
+		map.put("c", 5);
+		System.out.println(map.keySet());
+		System.out.println(map.values());
+
+		LinkedHashMap<String, Integer> lru = new LinkedHashMap<String, Integer>(16, .75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+				return size() > 3;
+			}
+		};
+		lru.put("a", 1);
+		lru.put("b", 2);
+		lru.put("c", 3);
+		lru.get("a");
+		lru.put("d", 4);
+		System.out.println(lru);
+	}
+
+	static public void testTreeMap() {
+		System.out.println("TreeMap:");
+		TreeMap<Integer, String> map = new TreeMap<>();
+		for (int n = 0; n < 100; n++) map.put((n * 37) % 100, "v" + n);
+		System.out.println(map.size() + "," + map.firstKey() + "," + map.lastKey());
+		System.out.println(map.floorEntry(50) + "," + map.ceilingEntry(50) + "," + map.lowerKey(50) + "," + map.higherKey(50));
+		for (int n = 0; n < 100; n += 3) map.remove(n);
+		System.out.println(map.floorKey(51) + "," + map.ceilingKey(51) + "," + map.floorEntry(-1));
+		System.out.println(map.pollFirstEntry() + "," + map.pollLastEntry() + "," + map.size());
+
+		NavigableMap<Integer, String> sub = map.subMap(10, true, 20, false);
+		System.out.println(sub.keySet());
+		System.out.println(sub.descendingMap().keySet());
+		System.out.println(map.headMap(10) + "," + map.tailMap(90, false));
+		sub.remove(11);
+		sub.put(12, "twelve");
+		System.out.println(map.get(11) + "," + map.get(12) + "," + sub.size());
+		try {
+			sub.put(25, "out");
+		} catch (IllegalArgumentException e) {
+			System.out.println("IllegalArgumentException");
+		}
+
+		for (Iterator<Integer> it = map.keySet().iterator(); it.hasNext(); ) {
+			if (it.next() % 2 == 0) it.remove();
+		}
+		System.out.println(map.size() + "," + map.descendingKeySet().first());
+
+		TreeMap<String, Integer> reversed = new TreeMap<>(new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				return b.compareTo(a);
+			}
+		});
+		reversed.put("b", 1);
+		reversed.put("c", 2);
+		reversed.put("a", 3);
+		System.out.println(reversed + "," + reversed.firstKey());
+	}
+
+	static public void testTreeSet() {
+		System.out.println("TreeSet:");
+		TreeSet<String> set = new TreeSet<>(Arrays.asList("pear", "apple", "fig", "kiwi", "apple"));
+		System.out.println(set);
+		System.out.println(set.first() + "," + set.last() + "," + set.ceiling("b") + "," + set.lower("apple"));
+		System.out.println(set.headSet("kiwi") + "," + set.tailSet("kiwi", false) + "," + set.descendingSet());
+		set.pollFirst();
+		System.out.println(set + "," + set.contains("fig") + "," + set.contains("apple"));
+	}
 }
@@ -0,0 +1,80 @@
+package jtransc.rt.test;
+
+import java.util.Arrays;
+
+// long[] is stored as high and low int halves in HaxeLongArray
+public class JTranscLongArrayTest {
+	static private final long[] CONSTANTS = new long[]{0L, 1L, -1L, Long.MIN_VALUE, Long.MAX_VALUE, 0xFFFFFFFFL, 0x80000000L, -0x80000000L, 0x123456789ABCDEFL};
+
+	static public void main(String[] args) {
+		literals();
+		copies();
+		halves();
+		arraycopy();
+	}
+
+	// Stored with setHalves, and CONSTANTS is built with fromHalves
+	static private void literals() {
+		long[] a = new long[9];
+		a[0] = 0L;
+		a[1] = 1L;
+		a[2] = -1L;
+		a[3] = Long.MIN_VALUE;
+		a[4] = Long.MAX_VALUE;
+		a[5] = 0xFFFFFFFFL;
+		a[6] = 0x80000000L;
+		a[7] = -0x80000000L;
+		a[8] = 0x123456789ABCDEFL;
+		System.out.println(Arrays.toString(a));
+		System.out.println(Arrays.toString(CONSTANTS));
+		System.out.println(Arrays.equals(a, CONSTANTS));
+		for (int n = 0; n < a.length; n++) {
+			a[n] = a[n] - 1;
+			a[n] = a[n] * 3;
+		}
+		System.out.println(Arrays.toString(a));
+	}
+
+	// a[i] = b[j] is copied with setFrom, also within the same array
+	static private void copies() {
+		long[] a = CONSTANTS.clone();
+		long[] b = new long[a.length];
+		for (int n = 0; n < a.length; n++) b[a.length - 1 - n] = a[n];
+		System.out.println(Arrays.toString(b));
+		for (int n = 1; n < a.length; n++) a[n - 1] = a[n];
+		System.out.println(Arrays.toString(a));
+		try {
+			b[0] = a[a.length];
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("out of bounds:" + b[0]);
+		}
+	}
+
+	// Reads of one half and comparisons with literals, without building the long
+	static private void halves() {
+		long[] a = CONSTANTS;
+		StringBuilder out = new StringBuilder();
+		for (int n = 0; n < a.length; n++) {
+			out.append((int) a[n]).append(',').append((int) (a[n] >>> 32)).append(',').append((int) (a[n] >> 32)).append(',');
+			out.append((short) a[n]).append(',').append((byte) a[n]).append(',').append((int) (char) a[n]).append(',');
+			out.append(a[n] == 0L).append(',').append(a[n] != -1L).append(',').append(a[n] == Long.MIN_VALUE).append(';');
+		}
+		System.out.println(out);
+		int hash = 0;
+		for (long value : a) hash = 31 * hash + (int) (value ^ (value >>> 32));
+		System.out.println(hash + ":" + Arrays.hashCode(a));
+	}
+
+	// Moved half by half, overlapping ranges of the same array copy as if through a temporary array
+	static private void arraycopy() {
+		long[] a = CONSTANTS.clone();
+		System.arraycopy(a, 0, a, 2, 5);
+		System.out.println(Arrays.toString(a));
+		a = CONSTANTS.clone();
+		System.arraycopy(a, 2, a, 0, 5);
+		System.out.println(Arrays.toString(a));
+		long[] b = new long[4];
+		System.arraycopy(CONSTANTS, 3, b, 1, 3);
+		System.out.println(Arrays.toString(b) + ":" + Arrays.toString(Arrays.copyOf(b, 6)));
+	}
+}
@@ -0,0 +1,176 @@
+package jtransc.rt.test;
+
+import java.util.Arrays;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+public class JTranscRegexTest {
+	static public void main(String[] args) {
+		groups();
+		quantifiers();
+		lookaround();
+		classes();
+		anchors();
+		replace();
+		regions();
+		errors();
+	}
+
+	static private void find(String regex, String text) {
+		find(regex, 0, text);
+	}
+
+	static private void find(String regex, int flags, String text) {
+		Matcher m = Pattern.compile(regex, flags).matcher(text);
+		StringBuilder out = new StringBuilder(regex + ":");
+		while (m.find()) {
+			out.append(" [");
+			for (int g = 0; g <= m.groupCount(); g++) {
+				if (g > 0) out.append(",");
+				out.append(m.start(g)).append("-").append(m.end(g)).append("=").append(m.group(g));
+			}
+			out.append("]");
+		}
+		System.out.println(out.append(" hitEnd=").append(m.hitEnd()));
+	}
+
+	static private void groups() {
+		find("(a|ab)(c|bcd)(d*)", "abcd");
+		find("(a)|b", "ab");
+		find("((a)|b)+", "ab");
+		find("(a*)+", "aab");
+		find("(?:ab)+c?", "ababcab");
+		find("(\\w)\\1", "hello aabb");
+		find("(?i)(a)\\1", "aA");
+		find("(a)\\2|b", "ab");
+
+		Matcher m = Pattern.compile("(?<year>\\d{4})-(?<month>\\d\\d)").matcher("from 2016-05 to 2017-11");
+		while (m.find()) System.out.println(m.group("year") + "/" + m.group("month") + " " + m.start("month") + "," + m.end("month"));
+		System.out.println(m.replaceAll("${month}.${year}"));
+	}
+
+	static private void quantifiers() {
+		find("a{2,3}", "aaaaaaa");
+		find("a{2,}?", "aaaaa");
+		find("<.+>", "<a><b>");
+		find("<.+?>", "<a><b>");
+		find("a*+a", "aaa");
+		find("(?>a|ab)c", "abc ac");
+		find("x*", "axxb");
+		find("(a?)*?b", "aab");
+		find("(c+){2}+c", "cccc");
+		find("(c+){2}+", "ccc");
+		System.out.println(Pattern.matches("(a|b)*c", "abababababababababababababababababababababababc"));
+
+		// Optional zero-width assertions
+		find("^?a", "ba");
+		find("\\b?", "  a");
+		find("(?:^)?a", "ba");
+		find("(?=a)?.", "ba");
+		find("(?:\\b)*a", " a");
+		find("\\b{2}a", " a");
+		find("(?=(a))?a", "ba");
+		System.out.println("ba".matches("^?.a") + " " + Arrays.toString("a b".split("\\b?")));
+	}
+
+	static private void lookaround() {
+		find("\\w+(?=,)", "one,two,three");
+		find("\\w+(?!\\w|,)", "one,two,three");
+		find("(?<=\\$)\\d+", "$10 20 $30");
+		find("(?<!\\$)\\b\\d+", "$10 20 $30");
+		find("(?<=ab|b)c", "abc bc c");
+		find("(?=(\\w))\\w\\w", "abc");
+	}
+
+	static private void classes() {
+		find("[a-z&&[^aeiou]]+", "hello world");
+		find("[\\d.]+", "v1.2.3-rc4");
+		find("\\p{Upper}\\p{Lower}+", "Hello World FOO");
+		find("\\p{Punct}+", "a,b;;c!");
+		find("[^\\s]+", " a\tb\nc ");
+		find("\\W+", "a, b");
+		find("(?i)[a-c]+", "xAbCx");
+		find("\\Qa.b\\E|\\x41\\u0042", "a.b AB axb");
+		find("(?x) \\d+ # digits\n - \\d+", "12-34");
+		find(".", Pattern.DOTALL, "a\nb");
+		find("\\p{IsLatin}+", "ab\u03b1 c1");
+		find("\\p{InBasicLatin}+", "ab\u00e9c");
+		System.out.println("\u03b1\u03c9".matches("\\p{InGreek}+") + " " + "\u03b1".matches("\\p{IsGreek}") + " " + "a".matches("\\p{InGreek}"));
+	}
+
+	static private void anchors() {
+		find("^\\w+", "one two\nthree");
+		find("^\\w+", Pattern.MULTILINE, "one two\nthree\r\nfour");
+		find("\\w+$", Pattern.MULTILINE, "one two\nthree\r\nfour");
+		find("\\w+$", "one\n");
+		find("\\w+\\z", "one\n");
+		find("\\bis\\b", "this is it");
+		find("\\Bis", "this is it");
+		find("\\G\\d", "123a45");
+		find("\\R", "a\r\nb\nc");
+		find("abcd", "xabc");
+	}
+
+	static private void replace() {
+		System.out.println("a1b22c333".replaceAll("\\d+", "<$0>"));
+		System.out.println("John Smith".replaceAll("(\\w+) (\\w+)", "$2, $1"));
+		System.out.println("a.b.c".replaceFirst("\\.(\\w)", "[$1\\$]"));
+		System.out.println(Arrays.toString("a1b22c".split("\\d+")));
+		System.out.println(Arrays.toString("boo:and:foo".split("o", -1)));
+		System.out.println(Arrays.toString("abc".split("")));
+		System.out.println(Matcher.quoteReplacement("$1\\x"));
+		System.out.println("hello".matches("h.*o") + " " + "hello".matches("ell") + " " + "".matches("a*"));
+
+		Matcher m = Pattern.compile("cat").matcher("one cat two cats");
+		StringBuffer sb = new StringBuffer();
+		while (m.find()) m.appendReplacement(sb, "dog");
+		m.appendTail(sb);
+		System.out.println(sb);
+	}
+
+	static private void regions() {
+		Matcher m = Pattern.compile("\\d+").matcher("ab123cd45");
+		System.out.println(m.lookingAt() + " " + m.matches());
+		m.region(2, 5);
+		System.out.println(m.lookingAt() + " " + m.matches() + " " + m.regionStart() + " " + m.regionEnd());
+		System.out.println(m);
+		m.reset();
+		System.out.println(m.find(6) + " " + m.group());
+		MatchResult result = m.toMatchResult();
+		System.out.println(m.find() + " " + result.group() + " " + result.start());
+
+		m = Pattern.compile("^b\\b").matcher("abc");
+		m.region(1, 2);
+		System.out.println(m.find());
+		m.useAnchoringBounds(false);
+		m.useTransparentBounds(true);
+		System.out.println(m.find(1) + " " + m.hasAnchoringBounds() + " " + m.hasTransparentBounds());
+
+		m.usePattern(Pattern.compile("c"));
+		m.reset();
+		System.out.println(m.find() + " " + m.start());
+	}
+
+	static private void errors() {
+		for (String regex : new String[]{"a(", "a)", "*a", "[a", "a{3,2}", "\\", "\\y", "[z-a]", "(?<1a>x)", "\\k<b>", "\\p{IsNoSuch}", "\\p{InLatin1Supplement}"}) {
+			try {
+				Pattern.compile(regex);
+				System.out.println(regex + " compiled");
+			} catch (PatternSyntaxException e) {
+				System.out.println(regex + " " + e.getDescription() + " " + e.getIndex());
+			}
+		}
+		try {
+			Pattern.compile("a").matcher("a").group();
+		} catch (IllegalStateException e) {
+			System.out.println(e.getMessage());
+		}
+		try {
+			"a".replaceAll("(a)", "$2");
+		} catch (IndexOutOfBoundsException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+}
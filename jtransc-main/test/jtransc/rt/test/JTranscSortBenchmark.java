@@ -0,0 +1,108 @@
+package jtransc.rt.test;
+
+import java.util.Arrays;
+
+// Sorts and searches 10^6 elements of each primitive type. Checksums must match the JVM; timings are only informative.
+public class JTranscSortBenchmark {
+	static private final int COUNT = 1000000;
+
+	static private int seed = 1;
+
+	static private int next() {
+		seed = seed * 1103515245 + 12345;
+		return seed >>> 1;
+	}
+
+	static public void main(String[] args) {
+		int[] ints = new int[COUNT];
+		long[] longs = new long[COUNT];
+		short[] shorts = new short[COUNT];
+		char[] chars = new char[COUNT];
+		byte[] bytes = new byte[COUNT];
+		float[] floats = new float[COUNT];
+		double[] doubles = new double[COUNT];
+		for (int n = 0; n < COUNT; n++) {
+			int value = next();
+			ints[n] = value - 0x40000000;
+			longs[n] = ((long) value << 20) - value;
+			shorts[n] = (short) value;
+			chars[n] = (char) value;
+			bytes[n] = (byte) value;
+			floats[n] = (float) (value % 1000) / 7f - 70f;
+			doubles[n] = (double) (value - 0x40000000) / 3.0;
+		}
+		// Special values are ordered as in Float.compare and Double.compare
+		for (int n = 0; n < COUNT; n += 1000) {
+			floats[n] = (n % 3000 == 0) ? Float.NaN : (n % 3000 == 1000) ? -0f : 0f;
+			doubles[n] = (n % 3000 == 0) ? Double.NaN : (n % 3000 == 1000) ? -0.0 : 0.0;
+		}
+
+		long start = System.currentTimeMillis();
+		Arrays.sort(ints);
+		report("int", start, isSorted(ints), Arrays.binarySearch(ints, ints[COUNT / 2]) >= 0, Arrays.binarySearch(ints, Integer.MAX_VALUE));
+
+		start = System.currentTimeMillis();
+		Arrays.sort(longs);
+		report("long", start, isSorted(longs), Arrays.binarySearch(longs, longs[COUNT / 3]) >= 0, Arrays.binarySearch(longs, Long.MIN_VALUE));
+
+		start = System.currentTimeMillis();
+		Arrays.sort(shorts);
+		report("short", start, isSorted(shorts), Arrays.binarySearch(shorts, shorts[COUNT / 4]) >= 0, Arrays.binarySearch(shorts, 0, 10, Short.MAX_VALUE));
+
+		start = System.currentTimeMillis();
+		Arrays.sort(chars);
+		report("char", start, isSorted(chars), Arrays.binarySearch(chars, chars[COUNT / 5]) >= 0, Arrays.binarySearch(chars, 0, 10, (char) 0xFFFF));
+
+		start = System.currentTimeMillis();
+		Arrays.sort(bytes, 10, COUNT - 10);
+		report("byte", start, isSorted(Arrays.copyOfRange(bytes, 10, COUNT - 10)), Arrays.binarySearch(bytes, 10, COUNT - 10, (byte) 7) >= 0, Arrays.binarySearch(bytes, 10, 20, Byte.MAX_VALUE));
+
+		start = System.currentTimeMillis();
+		Arrays.sort(floats);
+		report("float", start, isSorted(floats), Float.isNaN(floats[COUNT - 1]) && 1f / floats[Arrays.binarySearch(floats, -0f)] < 0f, Arrays.binarySearch(floats, 1000f));
+
+		start = System.currentTimeMillis();
+		Arrays.sort(doubles);
+		report("double", start, isSorted(doubles), Double.isNaN(doubles[COUNT - 1]) && 1.0 / doubles[Arrays.binarySearch(doubles, -0.0)] < 0.0, Arrays.binarySearch(doubles, 1e10));
+	}
+
+	static private void report(String name, long start, boolean sorted, boolean found, int missing) {
+		long time = System.currentTimeMillis() - start;
+		System.out.println(name + ":" + sorted + ":" + found + ":" + missing + ":" + time + "ms");
+	}
+
+	static private boolean isSorted(int[] a) {
+		for (int n = 1; n < a.length; n++) if (a[n - 1] > a[n]) return false;
+		return true;
+	}
+
+	static private boolean isSorted(long[] a) {
+		for (int n = 1; n < a.length; n++) if (a[n - 1] > a[n]) return false;
+		return true;
+	}
+
+	static private boolean isSorted(short[] a) {
+		for (int n = 1; n < a.length; n++) if (a[n - 1] > a[n]) return false;
+		return true;
+	}
+
+	static private boolean isSorted(char[] a) {
+		for (int n = 1; n < a.length; n++) if (a[n - 1] > a[n]) return false;
+		return true;
+	}
+
+	static private boolean isSorted(byte[] a) {
+		for (int n = 1; n < a.length; n++) if (a[n - 1] > a[n]) return false;
+		return true;
+	}
+
+	static private boolean isSorted(float[] a) {
+		for (int n = 1; n < a.length; n++) if (Float.compare(a[n - 1], a[n]) > 0) return false;
+		return true;
+	}
+
+	static private boolean isSorted(double[] a) {
+		for (int n = 1; n < a.length; n++) if (Double.compare(a[n - 1], a[n]) > 0) return false;
+		return true;
+	}
+}
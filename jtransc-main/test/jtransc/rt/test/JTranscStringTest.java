@@ -39,6 +39,13 @@ public class JTranscStringTest {
 
 		System.out.println(Arrays.toString("1:2:3:4:5".split(":")));
 		System.out.println(Arrays.toString("1:2:3:4:5".split(":", 2)));
+		System.out.println(Arrays.toString(",a,,b,,".split(",")));
+		System.out.println(Arrays.toString(",a,,b,,".split(",", -1)));
+		System.out.println(Arrays.toString("a.b|c".split("\\.")));
+		System.out.println(Arrays.toString("a::b::".split("::")));
+		System.out.println(Arrays.toString("abc".split(";")));
+		System.out.println("a.b.c".replaceAll("\\.", "/") + ":" + "a.b.c".replaceFirst("\\.", "/") + ":" + "abc".replace("", "-"));
+		System.out.println(java.util.regex.Pattern.compile(",").split("x,y").length);
 
 		//try {
 		//	((Test0<Integer>) null).getTest();
@@ -0,0 +1,39 @@
+package jtransc.rt.test;
+
+import java.util.*;
+
+// Same workload on TreeMap and HashMap. Checksums must match the JVM; timings are only informative.
+public class JTranscTreeMapBenchmark {
+	static private final int COUNT = 20000;
+
+	static public void main(String[] args) {
+		bench("HashMap", new HashMap<Integer, Integer>());
+		bench("TreeMap", new TreeMap<Integer, Integer>());
+		benchNavigation(new TreeMap<Integer, Integer>());
+	}
+
+	static private void bench(String name, Map<Integer, Integer> map) {
+		long start = System.currentTimeMillis();
+		long checksum = 0;
+		for (int n = 0; n < COUNT; n++) map.put((n * 7919) % COUNT, n);
+		for (int n = 0; n < COUNT; n++) checksum += map.get(n);
+		for (int n = 0; n < COUNT; n += 2) map.remove(n);
+		for (int n = 0; n < COUNT; n++) if (map.containsKey(n)) checksum += n;
+		long time = System.currentTimeMillis() - start;
+		System.out.println(name + ":" + map.size() + ":" + checksum + ":" + time + "ms");
+	}
+
+	static private void benchNavigation(TreeMap<Integer, Integer> map) {
+		long start = System.currentTimeMillis();
+		long checksum = 0;
+		for (int n = 0; n < COUNT; n++) map.put(n * 3, n);
+		for (int n = 0; n < COUNT; n++) {
+			checksum += map.floorEntry(n * 2).getValue();
+			checksum += map.ceilingKey(n * 2);
+		}
+		checksum += map.subMap(COUNT, COUNT * 2).size();
+		while (map.size() > COUNT / 2) checksum += map.pollFirstEntry().getKey();
+		long time = System.currentTimeMillis() - start;
+		System.out.println("TreeMap navigation:" + map.size() + ":" + checksum + ":" + time + "ms");
+	}
+}
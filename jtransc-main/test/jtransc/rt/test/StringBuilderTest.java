@@ -41,5 +41,24 @@ public class StringBuilderTest {
 		System.out.println(sb);
 		System.out.println(sb.substring(3));
 		System.out.println(sb.substring(3, 10));
+
+		StringBuilder big = new StringBuilder();
+		for (int n = 0; n < 1000; n++) big.append(n % 10);
+		big.setLength(990);
+		big.deleteCharAt(0);
+		big.insert(500, "[middle]");
+		big.delete(10, 980);
+		big.setLength(big.length() + 2);
+		System.out.println(big.length());
+		System.out.println(big.toString().replace('\0', '_'));
+		big.setLength(0);
+		big.append("again");
+		System.out.println(big);
+
+		StringBuffer buffer = new StringBuffer("buffer");
+		buffer.append(1).append('-').append(sb, 0, 4).insert(0, 7L).reverse();
+		System.out.println(buffer);
+		System.out.println(new StringBuilder("x").append(buffer).append((CharSequence) big));
+		System.out.println(new String(buffer));
 	}
 }
@@ -12,7 +12,7 @@ class HaxeArray extends HaxeBaseArray {
 
     static public function fromArray(items:Array<Dynamic>, desc:String) {
         var out = new HaxeArray(items.length, desc);
-        for (n in 0 ... items.length) out.set(n, items[n]);
+        for (n in 0 ... items.length) out.setUnchecked(n, items[n]);
         return out;
     }
 
@@ -23,13 +23,14 @@ class HaxeArray extends HaxeBaseArray {
     public function get(index:Int):Dynamic { checkBounds(index);return this.data[index]; }
     public function set(index:Int, value:Dynamic):Void { checkBounds(index); this.data[index] = value; }
 
+    inline public function getUnchecked(index:Int):Dynamic { return this.data[index]; }
+    inline public function setUnchecked(index:Int, value:Dynamic):Void { this.data[index] = value; }
+
 	override public function getDynamic(index:Int):Dynamic {
-		checkBounds(index);
 	    return get(index);
 	}
 
 	override public function setDynamic(index:Int, value:Dynamic) {
-		checkBounds(index);
 	    set(index, value);
 	}
 
@@ -37,16 +38,32 @@ class HaxeArray extends HaxeBaseArray {
         var out = '';
         for (n in 0 ... length) {
             if (n != 0) out += separator;
-            out += get(n);
+            out += getUnchecked(n);
         }
         return out;
     }
 
     public override function clone__Ljava_lang_Object_():java_.lang.Object_ {
-        return fromArray(this.data.toArray(), this.desc);
+        var out = new HaxeArray(length, desc);
+        copy(this, out, 0, 0, length);
+        return out;
+    }
+
+    override public function copyTo(srcPos:Int, dest:HaxeBaseArray, destPos:Int, length:Int):Void {
+        copy(this, cast dest, srcPos, destPos, length);
     }
 
     static public function copy(from:HaxeArray, to:HaxeArray, fromPos:Int, toPos:Int, length:Int) {
-        for (n in 0 ... length) to.set(toPos + n, from.get(fromPos + n));
+        // Vector.blit doesn't define the result of overlapping ranges
+        if (from == to && fromPos < toPos && fromPos + length > toPos) {
+            var data = from.data;
+            var n = length - 1;
+            while (n >= 0) {
+                data[toPos + n] = data[fromPos + n];
+                n--;
+            }
+        } else {
+            Vector.blit(from.data, fromPos, to.data, toPos, length);
+        }
     }
 }
\ No newline at end of file
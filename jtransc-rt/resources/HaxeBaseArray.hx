@@ -1,3 +1,5 @@
+import haxe.io.ArrayBufferView;
+
 class HaxeBaseArray extends java_.lang.Object_ {
     public var length:Int = 0;
 	public var desc:String;
@@ -6,18 +8,47 @@ class HaxeBaseArray extends java_.lang.Object_ {
 	    return HaxeNatives.str("HaxeBaseArray");
 	}
 
-	#if debug
-	private function checkBounds(index:Int) {
-		if (index < 0 || index >= length) {
+	// Always checked, the compiler calls getUnchecked/setUnchecked where it proves the index is inside the array
+	inline private function checkBounds(index:Int) {
+		if (index < 0 || index >= length) throwOutOfBounds(index);
+	}
+
+	private function throwOutOfBounds(index:Int) {
+		var e = new java_.lang.ArrayIndexOutOfBoundsException_();
+		e._init__I_V(index);
+		throw e;
+	}
+
+	// System.arraycopy, with the checks of the JVM. The copy itself is done by copyTo of the array type.
+	static public function arraycopy(src:HaxeBaseArray, srcPos:Int, dest:HaxeBaseArray, destPos:Int, length:Int) {
+		if (src == null || dest == null) {
+			var e = new java_.lang.NullPointerException_();
+			e._init__Ljava_lang_String__V(HaxeNatives.str("arraycopy: " + ((src == null) ? "source" : "destination") + " is null"));
+			throw e;
+		}
+		if (Type.getClass(src) != Type.getClass(dest)) {
+			var e = new java_.lang.ArrayStoreException_();
+			e._init__Ljava_lang_String__V(HaxeNatives.str("arraycopy: type mismatch: can not copy " + src.desc + " into " + dest.desc));
+			throw e;
+		}
+		if (srcPos < 0 || destPos < 0 || length < 0 || srcPos > src.length - length || destPos > dest.length - length) {
 			var e = new java_.lang.ArrayIndexOutOfBoundsException_();
-			e._init__I_V(index);
+			e._init__Ljava_lang_String__V(HaxeNatives.str("arraycopy: range [" + srcPos + ", " + length + "] into [" + destPos + ", " + length + "] out of bounds"));
 			throw e;
 		}
+		if (length > 0) src.copyTo(srcPos, dest, destPos, length);
 	}
-	#else
-	inline private function checkBounds(index:Int) {
+
+	// Copies length elements to an array of the same type, the ranges are already checked and can overlap
+	public function copyTo(srcPos:Int, dest:HaxeBaseArray, destPos:Int, length:Int):Void {
+		for (n in 0 ... length) dest.setDynamic(destPos + n, getDynamic(srcPos + n));
+	}
+
+	// Block move between typed arrays (offsets and length in bytes). Overlapping ranges of the same buffer are
+	// copied as if through a temporary buffer.
+	static public function blit(from:ArrayBufferView, fromOffset:Int, to:ArrayBufferView, toOffset:Int, length:Int) {
+		to.buffer.blit(to.byteOffset + toOffset, from.buffer, from.byteOffset + fromOffset, length);
 	}
-	#end
 
 	public function getDynamic(index:Int):Dynamic {
 		checkBounds(index);
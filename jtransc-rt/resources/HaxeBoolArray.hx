@@ -13,30 +13,38 @@ class HaxeBoolArray extends HaxeBaseArray {
 
     static public function fromArray(items:Array<Dynamic>) {
         var out = new HaxeBoolArray (items.length);
-        for (n in 0 ... items.length) out.set(n, items[n]);
+        for (n in 0 ... items.length) out.setUnchecked(n, items[n]);
         return out;
     }
 
     static public function fromUInt8Array(items:UInt8Array) {
         var out = new HaxeBoolArray (items.length);
-        for (n in 0 ... items.length) out.set(n, items[n] != 0);
+        for (n in 0 ... items.length) out.setUnchecked(n, items[n] != 0);
         return out;
     }
 
     static public function fromBytes(bytes:Bytes) {
         var out = new HaxeBoolArray (bytes.length);
         var bytesData = bytes.getData();
-        for (n in 0 ... bytes.length) out.set(n, Bytes.fastGet(bytesData, n) != 0);
+        for (n in 0 ... bytes.length) out.setUnchecked(n, Bytes.fastGet(bytesData, n) != 0);
         return out;
     }
 
     inline public function get(index:Int):Bool {
 		checkBounds(index);
-        return this.data[index] != 0;
+        return getUnchecked(index);
     }
 
     inline public function set(index:Int, value:Bool):Void {
 		checkBounds(index);
+        setUnchecked(index, value);
+    }
+
+    inline public function getUnchecked(index:Int):Bool {
+        return this.data[index] != 0;
+    }
+
+    inline public function setUnchecked(index:Int, value:Bool):Void {
         this.data[index] = value ? 1 : 0;
     }
 
@@ -52,7 +60,7 @@ class HaxeBoolArray extends HaxeBaseArray {
         var out = '';
         for (n in 0 ... length) {
             if (n != 0) out += separator;
-            out += get(n);
+            out += getUnchecked(n);
         }
         return out;
     }
@@ -63,7 +71,11 @@ class HaxeBoolArray extends HaxeBaseArray {
         return out;
     }
 
+    override public function copyTo(srcPos:Int, dest:HaxeBaseArray, destPos:Int, length:Int):Void {
+        copy(this, cast dest, srcPos, destPos, length);
+    }
+
     static public function copy(from:HaxeBoolArray , to:HaxeBoolArray , fromPos:Int, toPos:Int, length:Int) {
-        for (n in 0 ... length) to.set(toPos + n, from.get(fromPos + n));
+        HaxeBaseArray.blit(from.data.view, fromPos, to.data.view, toPos, length);
     }
 }
\ No newline at end of file
@@ -13,30 +13,38 @@ class HaxeByteArray extends HaxeBaseArray {
 
     static public function fromArray(items:Array<Dynamic>) {
         var out = new HaxeByteArray(items.length);
-        for (n in 0 ... items.length) out.set(n, items[n]);
+        for (n in 0 ... items.length) out.setUnchecked(n, items[n]);
         return out;
     }
 
     static public function fromUInt8Array(items:UInt8Array) {
         var out = new HaxeByteArray(items.length);
-        for (n in 0 ... items.length) out.set(n, items[n]);
+        for (n in 0 ... items.length) out.setUnchecked(n, items[n]);
         return out;
     }
 
     static public function fromBytes(bytes:Bytes) {
         var out = new HaxeByteArray(bytes.length);
         var bytesData = bytes.getData();
-        for (n in 0 ... bytes.length) out.set(n, Bytes.fastGet(bytesData, n));
+        for (n in 0 ... bytes.length) out.setUnchecked(n, Bytes.fastGet(bytesData, n));
         return out;
     }
 
     inline public function get(index:Int):Int {
 		checkBounds(index);
-        return (this.data[index] << 24) >> 24;
+        return getUnchecked(index);
     }
 
     inline public function set(index:Int, value:Int):Void {
 		checkBounds(index);
+        setUnchecked(index, value);
+    }
+
+    inline public function getUnchecked(index:Int):Int {
+        return (this.data[index] << 24) >> 24;
+    }
+
+    inline public function setUnchecked(index:Int, value:Int):Void {
         this.data[index] = value;
     }
 
@@ -52,7 +60,7 @@ class HaxeByteArray extends HaxeBaseArray {
         var out = '';
         for (n in 0 ... length) {
             if (n != 0) out += separator;
-            out += get(n);
+            out += getUnchecked(n);
         }
         return out;
     }
@@ -63,7 +71,11 @@ class HaxeByteArray extends HaxeBaseArray {
         return out;
     }
 
+    override public function copyTo(srcPos:Int, dest:HaxeBaseArray, destPos:Int, length:Int):Void {
+        copy(this, cast dest, srcPos, destPos, length);
+    }
+
     static public function copy(from:HaxeByteArray, to:HaxeByteArray, fromPos:Int, toPos:Int, length:Int) {
-        for (n in 0 ... length) to.set(toPos + n, from.get(fromPos + n));
+        HaxeBaseArray.blit(from.data.view, fromPos, to.data.view, toPos, length);
     }
 }
\ No newline at end of file
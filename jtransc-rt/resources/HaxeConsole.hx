@@ -0,0 +1,116 @@
+import haxe.io.Bytes;
+
+// Output of System.out and System.err. Bytes are collected in a native buffer and written at the end of each line,
+// when the buffer is full, on flush and at exit, instead of going to the console one char at a time.
+//
+// Targets with a stream (sys and nodejs) write the bytes as they are. The others (browsers, flash) can only log whole
+// lines, so an incomplete line waits for its end there, unless the buffer is full or the program exits.
+class HaxeConsole {
+	static private inline var BUFFER_SIZE = 8192;
+
+	static public var out = new HaxeConsole(false);
+	static public var err = new HaxeConsole(true);
+
+	#if js
+	static private var hasStream:Bool = untyped __js__("typeof process != 'undefined' && !!process.stdout");
+	#end
+
+	private var error:Bool;
+	private var data:Bytes = Bytes.alloc(BUFFER_SIZE);
+	private var length:Int = 0;
+
+	private function new(error:Bool) {
+		this.error = error;
+	}
+
+	static public function flushAll() {
+		out.flushBuffer(true);
+		err.flushBuffer(true);
+	}
+
+	public function write(value:Int) {
+		data.set(length++, value);
+		if (length == BUFFER_SIZE) {
+			flushFull();
+		} else if (value == 10) {
+			flushBuffer(false);
+		}
+	}
+
+	public function writeBytes(array:HaxeByteArray, offset:Int, count:Int) {
+		var newLine = false;
+		for (n in 0 ... count) {
+			var value = array.get(offset + n);
+			data.set(length++, value);
+			if (value == 10) newLine = true;
+			if (length == BUFFER_SIZE) {
+				flushFull();
+				newLine = false;
+			}
+		}
+		if (newLine) flushBuffer(false);
+	}
+
+	public function flush() {
+		flushBuffer(false);
+	}
+
+	private function flushFull() {
+		flushBuffer(false);
+		if (length == BUFFER_SIZE) flushBuffer(true);
+	}
+
+	// Writes the buffered bytes, an incomplete line is only logged as a line of its own when partial is set
+	private function flushBuffer(partial:Bool) {
+		if (length == 0) return;
+		#if sys
+		var output = error ? Sys.stderr() : Sys.stdout();
+		output.writeBytes(data, 0, length);
+		output.flush();
+		length = 0;
+		#else
+		var end = utf8End();
+		#if js
+		if (hasStream) {
+			var text = data.getString(0, end);
+			if (error) untyped __js__("process.stderr.write(text)") else untyped __js__("process.stdout.write(text)");
+			remove(end);
+			return;
+		}
+		#end
+		if (!partial) {
+			end = 0;
+			for (n in 0 ... length) if (data.get(n) == 10) end = n + 1;
+		}
+		if (end == 0) return;
+		var text = data.getString(0, end);
+		if (StringTools.endsWith(text, "\n")) text = text.substr(0, text.length - 1);
+		for (line in text.split("\n")) log(line);
+		remove(end);
+		#end
+	}
+
+	private function log(line:String) {
+		#if js
+		if (error) untyped __js__("console.error(line)") else untyped __js__("console.log(line)");
+		#else
+		trace(line);
+		#end
+	}
+
+	// Moves the bytes after end to the start of the buffer
+	private function remove(end:Int) {
+		data.blit(0, data, end, length - end);
+		length -= end;
+	}
+
+	// Length of the buffer without an incomplete UTF-8 sequence at its end
+	private function utf8End():Int {
+		var n = length - 1;
+		while (n >= 0 && length - n <= 4 && (data.get(n) & 0xC0) == 0x80) n--;
+		if (n < 0 || length - n > 4) return length;
+		var lead = data.get(n);
+		var size = (lead < 0x80) ? 1 : (lead >= 0xF0) ? 4 : (lead >= 0xE0) ? 3 : 2;
+		return (length - n < size) ? n : length;
+	}
+}
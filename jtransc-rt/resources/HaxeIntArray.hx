@@ -12,17 +12,25 @@ class HaxeIntArray extends HaxeBaseArray {
 
     static public function fromArray(items:Array<Dynamic>) {
         var out = new HaxeIntArray(items.length);
-        for (n in 0 ... items.length) out.set(n, items[n]);
+        for (n in 0 ... items.length) out.setUnchecked(n, items[n]);
         return out;
     }
 
     inline public function get(index:Int):Int {
 		checkBounds(index);
-        return this.data[index];
+        return getUnchecked(index);
     }
 
     inline public function set(index:Int, value:Int):Void {
 		checkBounds(index);
+        setUnchecked(index, value);
+    }
+
+    inline public function getUnchecked(index:Int):Int {
+        return this.data[index];
+    }
+
+    inline public function setUnchecked(index:Int, value:Int):Void {
         this.data[index] = value;
     }
 
@@ -38,7 +46,7 @@ class HaxeIntArray extends HaxeBaseArray {
         var out = '';
         for (n in 0 ... length) {
             if (n != 0) out += separator;
-            out += get(n);
+            out += getUnchecked(n);
         }
         return out;
     }
@@ -49,7 +57,11 @@ class HaxeIntArray extends HaxeBaseArray {
         return out;
     }
 
+    override public function copyTo(srcPos:Int, dest:HaxeBaseArray, destPos:Int, length:Int):Void {
+        copy(this, cast dest, srcPos, destPos, length);
+    }
+
     static public function copy(from:HaxeIntArray, to:HaxeIntArray, fromPos:Int, toPos:Int, length:Int) {
-        for (n in 0 ... length) to.set(toPos + n, from.get(fromPos + n));
+        HaxeBaseArray.blit(from.data.view, fromPos * 4, to.data.view, toPos * 4, length * 4);
     }
 }
\ No newline at end of file
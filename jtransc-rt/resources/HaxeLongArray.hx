@@ -1,30 +1,96 @@
-import haxe.ds.Vector;
+import haxe.io.Int32Array;
 import haxe.Int64;
 
+// The high and low halves of each long are stored in two Int32Array, so elements are not allocated one by one
 class HaxeLongArray extends HaxeBaseArray {
-    public var data:Vector<Int64> = null;
+    public var high:Int32Array = null;
+    public var low:Int32Array = null;
 
     public function new(length:Int) {
         super();
-        this.data = new Vector<Int64>(length);
+        this.high = new Int32Array(length);
+        this.low = new Int32Array(length);
         this.length = length;
         this.desc = "[J";
     }
 
     static public function fromArray(items:Array<Dynamic>) {
         var out = new HaxeLongArray(items.length);
-        for (n in 0 ... items.length) out.set(n, items[n]);
+        for (n in 0 ... items.length) out.setUnchecked(n, items[n]);
+        return out;
+    }
+
+    static public function fromHalves(high:Array<Int>, low:Array<Int>) {
+        var out = new HaxeLongArray(high.length);
+        for (n in 0 ... high.length) out.setHalvesUnchecked(n, high[n], low[n]);
         return out;
     }
 
     inline public function get(index:Int):Int64 {
 		checkBounds(index);
-        return this.data[index];
+        return getUnchecked(index);
     }
 
     inline public function set(index:Int, value:Int64):Void {
 		checkBounds(index);
-        this.data[index] = value;
+        setUnchecked(index, value);
+    }
+
+    inline public function getUnchecked(index:Int):Int64 {
+        return Int64.make(this.high[index], this.low[index]);
+    }
+
+    inline public function setUnchecked(index:Int, value:Int64):Void {
+        setHalvesUnchecked(index, value.high, value.low);
+    }
+
+    // Halves of this[index], for the reads the generator emits without building the Int64
+    inline public function getHigh(index:Int):Int {
+		checkBounds(index);
+        return getHighUnchecked(index);
+    }
+
+    inline public function getHighUnchecked(index:Int):Int {
+        return this.high[index];
+    }
+
+    inline public function getLow(index:Int):Int {
+		checkBounds(index);
+        return getLowUnchecked(index);
+    }
+
+    inline public function getLowUnchecked(index:Int):Int {
+        return this.low[index];
+    }
+
+    inline public function equalsHalves(index:Int, high:Int, low:Int):Bool {
+		checkBounds(index);
+        return equalsHalvesUnchecked(index, high, low);
+    }
+
+    inline public function equalsHalvesUnchecked(index:Int, high:Int, low:Int):Bool {
+        return this.high[index] == high && this.low[index] == low;
+    }
+
+    inline public function setHalves(index:Int, high:Int, low:Int):Void {
+		checkBounds(index);
+        setHalvesUnchecked(index, high, low);
+    }
+
+    inline public function setHalvesUnchecked(index:Int, high:Int, low:Int):Void {
+        this.high[index] = high;
+        this.low[index] = low;
+    }
+
+    // this[index] = from[fromIndex], without building the Int64 in between
+    inline public function setFrom(index:Int, from:HaxeLongArray, fromIndex:Int):Void {
+        from.checkBounds(fromIndex);
+		checkBounds(index);
+        setFromUnchecked(index, from, fromIndex);
+    }
+
+    inline public function setFromUnchecked(index:Int, from:HaxeLongArray, fromIndex:Int):Void {
+        setHalvesUnchecked(index, from.high[fromIndex], from.low[fromIndex]);
     }
 
 	override public function getDynamic(index:Int):Dynamic {
@@ -39,16 +105,23 @@ class HaxeLongArray extends HaxeBaseArray {
         var out = '';
         for (n in 0 ... length) {
             if (n != 0) out += separator;
-            out += get(n);
+            out += getUnchecked(n);
         }
         return out;
     }
 
     public override function clone__Ljava_lang_Object_():java_.lang.Object_ {
-        return fromArray(this.data.toArray());
+        var out = new HaxeLongArray(length);
+        copy(this, out, 0, 0, length);
+        return out;
+    }
+
+    override public function copyTo(srcPos:Int, dest:HaxeBaseArray, destPos:Int, length:Int):Void {
+        copy(this, cast dest, srcPos, destPos, length);
     }
 
     static public function copy(from:HaxeLongArray, to:HaxeLongArray, fromPos:Int, toPos:Int, length:Int) {
-        for (n in 0 ... length) to.set(toPos + n, from.get(fromPos + n));
+        HaxeBaseArray.blit(from.high.view, fromPos * 4, to.high.view, toPos * 4, length * 4);
+        HaxeBaseArray.blit(from.low.view, fromPos * 4, to.low.view, toPos * 4, length * 4);
     }
-}
\ No newline at end of file
+}
@@ -11,36 +11,6 @@ using Lambda;
 typedef Long = Int64;
 
 class HaxeNatives {
-    static var outputBuffer = '';
-    static public function outputChar(char:Int):Void {
-        if (char == 10) {
-        	#if js
-			var _outputBuffer = outputBuffer;
-        	untyped __js__("console.log(_outputBuffer);");
-        	#else
-            trace(outputBuffer);
-            #end
-            outputBuffer = '';
-        } else {
-            outputBuffer += String.fromCharCode(char);
-        }
-    }
-
-	static var errorBuffer = '';
-	static public function outputErrorChar(char:Int):Void {
-		if (char == 10) {
-			#if js
-			var _errorBuffer = errorBuffer;
-			untyped __js__("console.error(_errorBuffer);");
-			#else
-			trace(errorBuffer);
-			#end
-			errorBuffer = '';
-		} else {
-			errorBuffer += String.fromCharCode(char);
-		}
-	}
-
 	static private var M2P32_DBL = Math.pow(2, 32);
     inline static public function intToLong(v:Int):Long {
 		return haxe.Int64.make(((v & 0x80000000) != 0) ? -1 : 0, v);
@@ -86,27 +56,24 @@ class HaxeNatives {
 
     static public function byteArrayToString(chars:HaxeByteArray, start:Int = 0, count:Int = -1, charset:String = "UTF-8"):String {
         if (count < 0) count = chars.length;
-        var out = "";
-        var end = start + count;
-        end = Std.int(Math.min(end, chars.length - start));
-        for (n in start ... end) out += String.fromCharCode(chars.get(n));
-        return out;
+        var out = new StringBuf();
+        var end = Std.int(Math.min(start + count, chars.length));
+        for (n in start ... end) out.addChar(chars.getUnchecked(n));
+        return out.toString();
     }
 
     static public function charArrayToString(chars:HaxeCharArray, start:Int = 0, count:Int = 999999999):String {
-        var out = "";
-        var end = start + count;
-        end = Std.int(Math.min(end, chars.length - start));
-        for (n in start ... end) out += String.fromCharCode(chars.get(n));
-        return out;
+        var out = new StringBuf();
+        var end = Std.int(Math.min(start + count, chars.length));
+        for (n in start ... end) out.addChar(chars.getUnchecked(n));
+        return out.toString();
     }
 
     static public function intArrayToString(chars:HaxeIntArray, start:Int = 0, count:Int = 999999999):String {
-        var out = "";
-        var end = start + count;
-        end = Std.int(Math.min(end, chars.length - start));
-        for (n in start ... end) out += String.fromCharCode(chars.get(n));
-        return out;
+        var out = new StringBuf();
+        var end = Std.int(Math.min(start + count, chars.length));
+        for (n in start ... end) out.addChar(chars.getUnchecked(n));
+        return out.toString();
     }
 
     static public function stringToByteArray(str:String, charset:String = "UTF-8"):HaxeByteArray {
@@ -294,24 +261,13 @@ class HaxeNatives {
     }
 
     static public function arraycopy(src:java_.lang.Object_, srcPos:Int, dest:java_.lang.Object_, destPos:Int, length:Int) {
-        if (Std.is(src, HaxeArray)) {
-            HaxeArray.copy(cast(src, HaxeArray), cast(dest, HaxeArray), srcPos, destPos, length);
-        } else if (Std.is(src, HaxeByteArray)) {
-             HaxeByteArray.copy(cast(src, HaxeByteArray), cast(dest, HaxeByteArray), srcPos, destPos, length);
-         } else if (Std.is(src, HaxeIntArray)) {
-            HaxeIntArray.copy(cast(src, HaxeIntArray), cast(dest, HaxeIntArray), srcPos, destPos, length);
-        } else if (Std.is(src, HaxeLongArray)) {
-            HaxeLongArray.copy(cast(src, HaxeLongArray), cast(dest, HaxeLongArray), srcPos, destPos, length);
-        } else if (Std.is(src, HaxeFloatArray)) {
-            HaxeFloatArray.copy(cast(src, HaxeFloatArray), cast(dest, HaxeFloatArray), srcPos, destPos, length);
-        } else if (Std.is(src, HaxeDoubleArray)) {
-            HaxeDoubleArray.copy(cast(src, HaxeDoubleArray), cast(dest, HaxeDoubleArray), srcPos, destPos, length);
-        } else if (Std.is(src, HaxeShortArray)) {
-             HaxeShortArray.copy(cast(src, HaxeShortArray), cast(dest, HaxeShortArray), srcPos, destPos, length);
-        } else {
-            trace("arraycopy failed unsupported array type!");
-            throw "arraycopy failed unsupported array type!";
+        // A null array is reported by HaxeBaseArray.arraycopy
+        if (src != null && !Std.is(src, HaxeBaseArray)) {
+            var e = new java_.lang.ArrayStoreException_();
+            e._init__Ljava_lang_String__V(HaxeNatives.str("arraycopy: source type is not an array"));
+            throw e;
         }
+        HaxeBaseArray.arraycopy(cast src, srcPos, cast dest, destPos, length);
     }
 
     static public function box(value:Dynamic):java_.lang.Object_ {
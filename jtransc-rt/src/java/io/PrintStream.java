@@ -177,8 +177,9 @@ public class PrintStream extends FilterOutputStream implements Appendable, Close
 		write(b ? "true" : "false");
 	}
 
+	// Encoded with the charset like strings, write(int) would keep only the low byte
 	public void print(char c) {
-		write((int) c);
+		write(String.valueOf(c));
 	}
 
 	public void print(int i) {
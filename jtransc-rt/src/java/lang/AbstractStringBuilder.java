@@ -16,63 +16,149 @@
 
 package java.lang;
 
-import jtransc.annotation.haxe.HaxeAddMembers;
-import jtransc.annotation.haxe.HaxeMethodBody;
+import java.util.Arrays;
 
-@HaxeAddMembers({"public var _str:String = '';"})
+// Growable char buffer, the String is only built in toString. Appends are amortized O(1), insert and delete move the
+// tail of the buffer, and setLength keeps the capacity.
 abstract class AbstractStringBuilder implements Appendable, CharSequence {
+	char[] value;
+	int count;
+
 	AbstractStringBuilder() {
+		this(16);
 	}
 
 	AbstractStringBuilder(int capacity) {
-
+		value = new char[capacity];
 	}
 
 	//@Override
-	@HaxeMethodBody("return this._str.length;")
-	native public int length();
-
-	@HaxeMethodBody("")
-	native public void trimToSize();
-
-	//@Override
-	@HaxeMethodBody("return this._str.charCodeAt(p0);")
-	native public char charAt(int index);
-
-	@HaxeMethodBody("return this._str.indexOf(p0._str);")
-	native public int indexOf(String str);
-
-	@HaxeMethodBody("return this._str.indexOf(p0._str, p1);")
-	native public int indexOf(String str, int fromIndex);
-
-	@HaxeMethodBody("return this._str.lastIndexOf(p0._str);")
-	native public int lastIndexOf(String str);
-
-	@HaxeMethodBody("return this._str.lastIndexOf(p0._str, p1);")
-	native public int lastIndexOf(String str, int fromIndex);
-
-	@HaxeMethodBody("this._str = HaxeNatives.reverseString(this._str); return this;")
-	native public AbstractStringBuilder reverse();
-
-	@HaxeMethodBody("this._str += p0; return this;")
-	native public AbstractStringBuilder append(String str);
-
-	@HaxeMethodBody("this._str = this._str.substr(0, p0) + this._str.substr(p1); return this;")
-	native public AbstractStringBuilder delete(int start, int end);
-
-	@HaxeMethodBody("this._str = this._str.substr(0, p0) + p2._str + this._str.substr(p1); return this;")
-	native public AbstractStringBuilder replace(int start, int end, String str);
+	public int length() {
+		return count;
+	}
 
 	public int capacity() {
-		return length();
+		return value.length;
 	}
 
 	public void ensureCapacity(int minimumCapacity) {
+		if (minimumCapacity > value.length) expandCapacity(minimumCapacity);
+	}
 
+	private void expandCapacity(int minimumCapacity) {
+		int newCapacity = value.length * 2 + 2;
+		if (newCapacity < minimumCapacity) newCapacity = minimumCapacity;
+		value = Arrays.copyOf(value, newCapacity);
+	}
+
+	public void trimToSize() {
+		if (count < value.length) value = Arrays.copyOf(value, count);
 	}
 
 	public void setLength(int newLength) {
-		this.delete(newLength, length());
+		if (newLength < 0) throw new StringIndexOutOfBoundsException(newLength);
+		ensureCapacity(newLength);
+		if (count < newLength) Arrays.fill(value, count, newLength, '\0');
+		count = newLength;
+	}
+
+	//@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= count) throw new StringIndexOutOfBoundsException(index);
+		return value[index];
+	}
+
+	public int indexOf(String str) {
+		return indexOf(str, 0);
+	}
+
+	public int indexOf(String str, int fromIndex) {
+		int length = str.length();
+		if (fromIndex < 0) fromIndex = 0;
+		for (int n = fromIndex; n <= count - length; n++) {
+			if (matches(str, n)) return n;
+		}
+		return -1;
+	}
+
+	public int lastIndexOf(String str) {
+		return lastIndexOf(str, count);
+	}
+
+	public int lastIndexOf(String str, int fromIndex) {
+		int length = str.length();
+		for (int n = Math.min(fromIndex, count - length); n >= 0; n--) {
+			if (matches(str, n)) return n;
+		}
+		return -1;
+	}
+
+	private boolean matches(String str, int offset) {
+		int length = str.length();
+		for (int n = 0; n < length; n++) {
+			if (value[offset + n] != str.charAt(n)) return false;
+		}
+		return true;
+	}
+
+	public AbstractStringBuilder reverse() {
+		boolean surrogates = false;
+		for (int i = 0, j = count - 1; i < j; i++, j--) {
+			char a = value[i];
+			char b = value[j];
+			value[i] = b;
+			value[j] = a;
+			if (isSurrogate(a) || isSurrogate(b)) surrogates = true;
+		}
+		// Surrogate pairs keep their order
+		if (surrogates) {
+			for (int n = 0; n < count - 1; n++) {
+				char low = value[n];
+				char high = value[n + 1];
+				if (low >= '\uDC00' && low <= '\uDFFF' && high >= '\uD800' && high <= '\uDBFF') {
+					value[n] = high;
+					value[n + 1] = low;
+					n++;
+				}
+			}
+		}
+		return this;
+	}
+
+	static private boolean isSurrogate(char c) {
+		return c >= '\uD800' && c <= '\uDFFF';
+	}
+
+	public AbstractStringBuilder append(String str) {
+		if (str == null) str = "null";
+		int length = str.length();
+		ensureCapacity(count + length);
+		str.getChars(0, length, value, count);
+		count += length;
+		return this;
+	}
+
+	public AbstractStringBuilder delete(int start, int end) {
+		if (end > count) end = count;
+		if (start < 0 || start > end) throw new StringIndexOutOfBoundsException(start);
+		int length = end - start;
+		if (length > 0) {
+			System.arraycopy(value, end, value, start, count - end);
+			count -= length;
+		}
+		return this;
+	}
+
+	public AbstractStringBuilder replace(int start, int end, String str) {
+		if (start < 0 || start > count || start > end) throw new StringIndexOutOfBoundsException(start);
+		if (end > count) end = count;
+		int length = str.length();
+		int newCount = count + length - (end - start);
+		ensureCapacity(newCount);
+		System.arraycopy(value, end, value, start + length, count - end);
+		str.getChars(0, length, value, start);
+		count = newCount;
+		return this;
 	}
 
 	public AbstractStringBuilder append(Object obj) {
@@ -80,25 +166,44 @@ abstract class AbstractStringBuilder implements Appendable, CharSequence {
 	}
 
 	public AbstractStringBuilder append(StringBuffer sb) {
-		return this.append(String.valueOf(sb));
+		if (sb == null) return this.append("null");
+		return this.append((AbstractStringBuilder) sb);
+	}
+
+	AbstractStringBuilder append(AbstractStringBuilder sb) {
+		int length = sb.length();
+		ensureCapacity(count + length);
+		System.arraycopy(sb.value, 0, value, count, length);
+		count += length;
+		return this;
 	}
 
 	//@Override
 	public AbstractStringBuilder append(CharSequence s) {
-		return this.append(String.valueOf(s));
+		if (s == null) return this.append("null");
+		if (s instanceof String) return this.append((String) s);
+		if (s instanceof AbstractStringBuilder) return this.append((AbstractStringBuilder) s);
+		return this.append(s, 0, s.length());
 	}
 
 	//@Override
 	public AbstractStringBuilder append(CharSequence s, int start, int end) {
-		return this.append(s.toString().substring(start, end));
+		if (s == null) s = "null";
+		if (start < 0 || start > end || end > s.length()) throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + s.length());
+		ensureCapacity(count + end - start);
+		for (int n = start; n < end; n++) value[count++] = s.charAt(n);
+		return this;
 	}
 
 	public AbstractStringBuilder append(char[] str) {
-		return this.append(new String(str));
+		return this.append(str, 0, str.length);
 	}
 
 	public AbstractStringBuilder append(char str[], int offset, int len) {
-		return this.append(new String(str, offset, len));
+		ensureCapacity(count + len);
+		System.arraycopy(str, offset, value, count, len);
+		count += len;
+		return this;
 	}
 
 	public AbstractStringBuilder append(boolean v) {
@@ -107,7 +212,9 @@ abstract class AbstractStringBuilder implements Appendable, CharSequence {
 
 	//@Override
 	public AbstractStringBuilder append(char v) {
-		return this.append(Character.toString(v));
+		ensureCapacity(count + 1);
+		value[count++] = v;
+		return this;
 	}
 
 	public AbstractStringBuilder append(int v) {
@@ -131,6 +238,7 @@ abstract class AbstractStringBuilder implements Appendable, CharSequence {
 	}
 
 	public AbstractStringBuilder deleteCharAt(int index) {
+		if (index < 0 || index >= count) throw new StringIndexOutOfBoundsException(index);
 		return this.delete(index, index + 1);
 	}
 
@@ -140,7 +248,14 @@ abstract class AbstractStringBuilder implements Appendable, CharSequence {
 	}
 
 	public AbstractStringBuilder insert(int offset, String str) {
-		return this.replace(offset, offset, str);
+		if (offset < 0 || offset > count) throw new StringIndexOutOfBoundsException(offset);
+		if (str == null) str = "null";
+		int length = str.length();
+		ensureCapacity(count + length);
+		System.arraycopy(value, offset, value, offset + length, count - offset);
+		str.getChars(0, length, value, offset);
+		count += length;
+		return this;
 	}
 
 	public AbstractStringBuilder insert(int offset, char[] str, int pos, int len) {
@@ -156,11 +271,12 @@ abstract class AbstractStringBuilder implements Appendable, CharSequence {
 	}
 
 	public AbstractStringBuilder insert(int offset, CharSequence s) {
-		return this.insert(offset, s.toString());
+		return this.insert(offset, String.valueOf(s));
 	}
 
 	public AbstractStringBuilder insert(int offset, CharSequence s, int start, int end) {
-		return this.insert(offset, s.toString().substring(start, end));
+		if (s == null) s = "null";
+		return this.insert(offset, s.subSequence(start, end).toString());
 	}
 
 	public AbstractStringBuilder insert(int offset, boolean v) {
@@ -168,7 +284,12 @@ abstract class AbstractStringBuilder implements Appendable, CharSequence {
 	}
 
 	public AbstractStringBuilder insert(int offset, char v) {
-		return this.insert(offset, String.valueOf(v));
+		if (offset < 0 || offset > count) throw new StringIndexOutOfBoundsException(offset);
+		ensureCapacity(count + 1);
+		System.arraycopy(value, offset, value, offset + 1, count - offset);
+		value[offset] = v;
+		count++;
+		return this;
 	}
 
 	public AbstractStringBuilder insert(int offset, int v) {
@@ -204,21 +325,22 @@ abstract class AbstractStringBuilder implements Appendable, CharSequence {
 	}
 
 	public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
-		String s = this.toString();
-		int len = srcEnd - srcBegin;
-		for (int n = 0; n < len; n++) dst[n] = s.charAt(srcBegin + n);
+		if (srcBegin < 0 || srcBegin > srcEnd || srcEnd > count) throw new StringIndexOutOfBoundsException(srcBegin);
+		System.arraycopy(value, srcBegin, dst, dstBegin, srcEnd - srcBegin);
 	}
 
 	public void setCharAt(int index, char ch) {
-		replace(index, index + 1, String.valueOf(ch));
+		if (index < 0 || index >= count) throw new StringIndexOutOfBoundsException(index);
+		value[index] = ch;
 	}
 
 	public String substring(int start) {
-		return this.toString().substring(start);
+		return this.substring(start, count);
 	}
 
 	public String substring(int start, int end) {
-		return this.toString().substring(start, end);
+		if (start < 0 || end > count || start > end) throw new StringIndexOutOfBoundsException(start);
+		return new String(value, start, end - start);
 	}
 
 	@Override
@@ -30,6 +30,7 @@ import java.io.IOException;
 })
 @HaxeAddFiles({
         "HaxeNatives.hx",
+        "HaxeConsole.hx",
         "HaxeFormat.hx",
         "HaxeNativeWrapper.hx",
         "HaxeBaseArray.hx",
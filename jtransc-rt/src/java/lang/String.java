@@ -92,12 +92,12 @@ public final class String implements java.io.Serializable, Comparable<String>, C
 		this(bytes, 0, bytes.length);
 	}
 
+	@HaxeMethodBody("this._str = p0.toString__Ljava_lang_String_()._str;")
 	public String(StringBuffer buffer) {
 	}
 
-	@HaxeMethodBody("this._str = p0._str;")
+	@HaxeMethodBody("this._str = p0.toString__Ljava_lang_String_()._str;")
 	public String(StringBuilder builder) {
-
 	}
 
 	@HaxeMethodBody("return _str.length;")
@@ -127,6 +127,7 @@ public final class String implements java.io.Serializable, Comparable<String>, C
 
 	//native void getChars(char dst[], int dstBegin);
 
+	@HaxeMethodBody("var str = this._str; for (n in 0 ... p1 - p0) p2.set(p3 + n, str.charCodeAt(p0 + n));")
 	public void getChars(int srcBegin, int srcEnd, char dst[], int dstBegin) {
 		int length = srcEnd - srcBegin;
 		for (int n = 0; n < length; n++) {
@@ -342,26 +343,54 @@ public final class String implements java.io.Serializable, Comparable<String>, C
 
 	// REGULAR EXPRESIONS
 
-	@HaxeMethodBody("return new EReg('^' + p0._str + '$', '').match(this._str);")
-	native public boolean matches(String regex);
+	public boolean matches(String regex) {
+		return Pattern.matches(regex, this);
+	}
+
+	// Regexes without metachars and replacements without group references don't need a regex engine
 
 	public String replaceFirst(String regex, String replacement) {
+		String literal = IntJTranscStrings.literalOrNull(regex);
+		if (literal != null && isPlainReplacement(replacement)) {
+			int index = indexOf(literal);
+			return (index < 0) ? this : substring(0, index) + replacement + substring(index + literal.length());
+		}
 		return Pattern.compile(regex).matcher(this).replaceFirst(replacement);
 	}
 
 	public String replaceAll(String regex, String replacement) {
+		String literal = IntJTranscStrings.literalOrNull(regex);
+		if (literal != null && isPlainReplacement(replacement)) return _replace(literal, replacement);
 		return Pattern.compile(regex).matcher(this).replaceAll(replacement);
 	}
 
-	@HaxeMethodBody("return HaxeNatives.str(StringTools.replace(this._str, '$p0', '$p1'));")
-	native public String replace(CharSequence target, CharSequence replacement);
+	static private boolean isPlainReplacement(String replacement) {
+		return replacement.indexOf('$') < 0 && replacement.indexOf('\\') < 0;
+	}
+
+	public String replace(CharSequence target, CharSequence replacement) {
+		String from = target.toString();
+		String to = replacement.toString();
+		if (from.isEmpty()) {
+			StringBuilder out = new StringBuilder(length() + (length() + 1) * to.length());
+			out.append(to);
+			for (int n = 0; n < length(); n++) out.append(charAt(n)).append(to);
+			return out.toString();
+		}
+		return _replace(from, to);
+	}
+
+	@HaxeMethodBody("return HaxeNatives.str(StringTools.replace(this._str, p0._str, p1._str));")
+	native private String _replace(String target, String replacement);
 
 	public String[] split(String regex, int limit) {
+		String literal = IntJTranscStrings.literalOrNull(regex);
+		if (literal != null) return IntJTranscStrings.split(this, literal, limit);
 		return Pattern.compile(regex).split(this, limit);
 	}
 
 	public String[] split(String regex) {
-		return Pattern.compile(regex).split(this);
+		return split(regex, 0);
 	}
 
 	@HaxeMethodBody("return HaxeNatives.str(p1.toArray().join('$p0'));")
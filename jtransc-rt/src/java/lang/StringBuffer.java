@@ -16,174 +16,302 @@
 
 package java.lang;
 
-//public final class StringBuffer extends AbstractStringBuilder implements java.io.Serializable, CharSequence {
-public final class StringBuffer implements java.io.Serializable, CharSequence {
+public final class StringBuffer extends AbstractStringBuilder implements java.io.Serializable, CharSequence {
 	public StringBuffer() {
-		this(16);
+		super(16);
 	}
 
 	public StringBuffer(int capacity) {
-		//super(capacity);
+		super(capacity);
 	}
 
 	public StringBuffer(String str) {
-		//super(str.length() + 16);
-		this(str.length() + 16);
+		super(str.length() + 16);
 		append(str);
 	}
 
 	public StringBuffer(CharSequence seq) {
-		this(seq.length() + 16);
+		super(seq.length() + 16);
 		append(seq);
 	}
 
-	//@Override
-	native public synchronized int length();
-
-	//@Override
-	native public synchronized int capacity();
+	@Override
+	public synchronized int length() {
+		return super.length();
+	}
 
+	@Override
+	public synchronized int capacity() {
+		return super.capacity();
+	}
 
-	//@Override
-	native public synchronized void ensureCapacity(int minimumCapacity);
+	@Override
+	public synchronized void ensureCapacity(int minimumCapacity) {
+		super.ensureCapacity(minimumCapacity);
+	}
 
-	//@Override
-	native public synchronized void trimToSize();
+	@Override
+	public synchronized void trimToSize() {
+		super.trimToSize();
+	}
 
-	//@Override
-	native public synchronized void setLength(int newLength);
+	@Override
+	public synchronized void setLength(int newLength) {
+		super.setLength(newLength);
+	}
 
-	//@Override
-	native public synchronized char charAt(int index);
+	@Override
+	public synchronized char charAt(int index) {
+		return super.charAt(index);
+	}
 
-	//@Override
-	native public synchronized int codePointAt(int index);
+	@Override
+	public synchronized int codePointAt(int index) {
+		return super.codePointAt(index);
+	}
 
-	//@Override
-	native public synchronized int codePointBefore(int index);
+	@Override
+	public synchronized int codePointBefore(int index) {
+		return super.codePointBefore(index);
+	}
 
-	//@Override
-	native public synchronized int codePointCount(int beginIndex, int endIndex);
+	@Override
+	public synchronized int codePointCount(int beginIndex, int endIndex) {
+		return super.codePointCount(beginIndex, endIndex);
+	}
 
-	//@Override
-	native public synchronized int offsetByCodePoints(int index, int codePointOffset);
+	@Override
+	public synchronized int offsetByCodePoints(int index, int codePointOffset) {
+		return super.offsetByCodePoints(index, codePointOffset);
+	}
 
-	//@Override
-	native public synchronized void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin);
+	@Override
+	public synchronized void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+		super.getChars(srcBegin, srcEnd, dst, dstBegin);
+	}
 
-	//@Override
-	native public synchronized void setCharAt(int index, char ch);
+	@Override
+	public synchronized void setCharAt(int index, char ch) {
+		super.setCharAt(index, ch);
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(Object obj);
+	@Override
+	public synchronized StringBuffer append(Object obj) {
+		super.append(obj);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(String str);
+	@Override
+	public synchronized StringBuffer append(String str) {
+		super.append(str);
+		return this;
+	}
 
-	native public synchronized StringBuffer append(StringBuffer sb);
+	@Override
+	public synchronized StringBuffer append(StringBuffer sb) {
+		super.append(sb);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(CharSequence s);
+	@Override
+	public synchronized StringBuffer append(CharSequence s) {
+		super.append(s);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(CharSequence s, int start, int end);
+	@Override
+	public synchronized StringBuffer append(CharSequence s, int start, int end) {
+		super.append(s, start, end);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(char[] str);
+	@Override
+	public synchronized StringBuffer append(char[] str) {
+		super.append(str);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(char[] str, int offset, int len);
+	@Override
+	public synchronized StringBuffer append(char[] str, int offset, int len) {
+		super.append(str, offset, len);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(boolean b);
+	@Override
+	public synchronized StringBuffer append(boolean b) {
+		super.append(b);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(char c);
+	@Override
+	public synchronized StringBuffer append(char c) {
+		super.append(c);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(int i);
+	@Override
+	public synchronized StringBuffer append(int i) {
+		super.append(i);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer appendCodePoint(int codePoint);
+	@Override
+	public synchronized StringBuffer appendCodePoint(int codePoint) {
+		super.appendCodePoint(codePoint);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(long lng);
+	@Override
+	public synchronized StringBuffer append(long lng) {
+		super.append(lng);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(float f);
+	@Override
+	public synchronized StringBuffer append(float f) {
+		super.append(f);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer append(double d);
+	@Override
+	public synchronized StringBuffer append(double d) {
+		super.append(d);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer delete(int start, int end);
+	@Override
+	public synchronized StringBuffer delete(int start, int end) {
+		super.delete(start, end);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer deleteCharAt(int index);
+	@Override
+	public synchronized StringBuffer deleteCharAt(int index) {
+		super.deleteCharAt(index);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer replace(int start, int end, String str);
+	@Override
+	public synchronized StringBuffer replace(int start, int end, String str) {
+		super.replace(start, end, str);
+		return this;
+	}
 
-	//@Override
-	native public synchronized String substring(int start);
+	@Override
+	public synchronized String substring(int start) {
+		return super.substring(start);
+	}
 
-	//@Override
-	native public synchronized CharSequence subSequence(int start, int end);
+	@Override
+	public synchronized CharSequence subSequence(int start, int end) {
+		return super.subSequence(start, end);
+	}
 
-	//@Override
-	native public synchronized String substring(int start, int end);
+	@Override
+	public synchronized String substring(int start, int end) {
+		return super.substring(start, end);
+	}
 
-	//@Override
-	native public synchronized StringBuffer insert(int index, char[] str, int offset, int len);
+	@Override
+	public synchronized StringBuffer insert(int index, char[] str, int offset, int len) {
+		super.insert(index, str, offset, len);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer insert(int offset, Object obj);
+	@Override
+	public synchronized StringBuffer insert(int offset, Object obj) {
+		super.insert(offset, obj);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer insert(int offset, String str);
+	@Override
+	public synchronized StringBuffer insert(int offset, String str) {
+		super.insert(offset, str);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer insert(int offset, char[] str);
+	@Override
+	public synchronized StringBuffer insert(int offset, char[] str) {
+		super.insert(offset, str);
+		return this;
+	}
 
-	//@Override
-	native public StringBuffer insert(int dstOffset, CharSequence s);
+	@Override
+	public synchronized StringBuffer insert(int dstOffset, CharSequence s) {
+		super.insert(dstOffset, s);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer insert(int dstOffset, CharSequence s, int start, int end);
+	@Override
+	public synchronized StringBuffer insert(int dstOffset, CharSequence s, int start, int end) {
+		super.insert(dstOffset, s, start, end);
+		return this;
+	}
 
-	//@Override
-	native public StringBuffer insert(int offset, boolean b);
+	@Override
+	public synchronized StringBuffer insert(int offset, boolean b) {
+		super.insert(offset, b);
+		return this;
+	}
 
-	//@Override
-	native public synchronized StringBuffer insert(int offset, char c);
+	@Override
+	public synchronized StringBuffer insert(int offset, char c) {
+		super.insert(offset, c);
+		return this;
+	}
 
-	//@Override
-	native public StringBuffer insert(int offset, int i);
+	@Override
+	public synchronized StringBuffer insert(int offset, int i) {
+		super.insert(offset, i);
+		return this;
+	}
 
-	//@Override
-	native public StringBuffer insert(int offset, long l);
+	@Override
+	public synchronized StringBuffer insert(int offset, long l) {
+		super.insert(offset, l);
+		return this;
+	}
 
-	//@Override
-	native public StringBuffer insert(int offset, float f);
+	@Override
+	public synchronized StringBuffer insert(int offset, float f) {
+		super.insert(offset, f);
+		return this;
+	}
 
-	//@Override
-	native public StringBuffer insert(int offset, double d);
+	@Override
+	public synchronized StringBuffer insert(int offset, double d) {
+		super.insert(offset, d);
+		return this;
+	}
 
-	//@Override
-	native public int indexOf(String str);
+	@Override
+	public synchronized int indexOf(String str) {
+		return super.indexOf(str);
+	}
 
-	//@Override
-	native public synchronized int indexOf(String str, int fromIndex);
+	@Override
+	public synchronized int indexOf(String str, int fromIndex) {
+		return super.indexOf(str, fromIndex);
+	}
 
-	//@Override
-	native public int lastIndexOf(String str);
+	@Override
+	public synchronized int lastIndexOf(String str) {
+		return super.lastIndexOf(str);
+	}
 
-	//@Override
-	native public synchronized int lastIndexOf(String str, int fromIndex);
+	@Override
+	public synchronized int lastIndexOf(String str, int fromIndex) {
+		return super.lastIndexOf(str, fromIndex);
+	}
 
-	//@Override
-	native public synchronized StringBuffer reverse();
+	@Override
+	public synchronized StringBuffer reverse() {
+		super.reverse();
+		return this;
+	}
 
 	@Override
-	native public synchronized String toString();
+	public synchronized String toString() {
+		return new String(value, 0, count);
+	}
 }
\ No newline at end of file
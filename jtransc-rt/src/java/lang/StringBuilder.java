@@ -16,8 +16,6 @@
 
 package java.lang;
 
-import jtransc.annotation.haxe.HaxeMethodBody;
-
 public class StringBuilder extends AbstractStringBuilder implements java.io.Serializable, CharSequence {
 	public StringBuilder() {
 		super(16);
@@ -219,6 +217,7 @@ public class StringBuilder extends AbstractStringBuilder implements java.io.Seri
 	}
 
 	@Override
-	@HaxeMethodBody("return HaxeNatives.str(this._str);")
-	native public String toString();
+	public String toString() {
+		return new String(value, 0, count);
+	}
 }
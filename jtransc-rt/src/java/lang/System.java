@@ -31,15 +31,32 @@ public class System {
 			throw new Error("Not implemented!");
 		}
 	};
+	// Buffered in HaxeConsole, and written at the end of each line
 	static public final PrintStream out = new PrintStream(new OutputStream() {
 		@Override
-		@HaxeMethodBody("HaxeNatives.outputChar(p0);")
+		@HaxeMethodBody("HaxeConsole.out.write(p0);")
 		native public void write(int b) throws IOException;
+
+		@Override
+		@HaxeMethodBody("HaxeConsole.out.writeBytes(p0, p1, p2);")
+		native public void write(byte b[], int off, int len) throws IOException;
+
+		@Override
+		@HaxeMethodBody("HaxeConsole.out.flush();")
+		native public void flush() throws IOException;
 	});
 	static public final PrintStream err = new PrintStream(new OutputStream() {
 		@Override
-		@HaxeMethodBody("HaxeNatives.outputErrorChar(p0);")
+		@HaxeMethodBody("HaxeConsole.err.write(p0);")
 		native public void write(int b) throws IOException;
+
+		@Override
+		@HaxeMethodBody("HaxeConsole.err.writeBytes(p0, p1, p2);")
+		native public void write(byte b[], int off, int len) throws IOException;
+
+		@Override
+		@HaxeMethodBody("HaxeConsole.err.flush();")
+		native public void flush() throws IOException;
 	});
 
 	native public static void setIn(InputStream in);
@@ -96,6 +113,14 @@ public class System {
 
 	native public static java.util.Map<String, String> getenv();
 
+	@HaxeMethodBody(
+		"HaxeConsole.flushAll();\n" +
+		"#if sys\n" +
+		"Sys.exit(p0);\n" +
+		"#elseif js\n" +
+		"untyped __js__(\"if (typeof process != 'undefined') process.exit(p0);\");\n" +
+		"#end\n"
+	)
 	native public static void exit(int status);
 
     @HaxeMethodBody("")
@@ -16,60 +16,107 @@
 
 package java.util;
 
-import jtransc.annotation.haxe.HaxeAddMembers;
-import jtransc.annotation.haxe.HaxeMethodBody;
 import jtransc.internal.GenericListIterator;
+import jtransc.internal.JTranscTimSort;
 
-@HaxeAddMembers("var _data:Array<Dynamic> = [];")
+// Elements are kept in an Object[] (a HaxeArray) that grows by half when full, so they can be sorted in place
 public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAccess, Cloneable, java.io.Serializable {
+	private Object[] elementData;
+	private int size;
+
 	public ArrayList(int initialCapacity) {
+		if (initialCapacity < 0) throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+		elementData = new Object[initialCapacity];
 	}
 
 	public ArrayList() {
+		this(10);
 	}
 
 	public ArrayList(Collection<? extends E> c) {
+		this(c.size());
 		addAll(c);
 	}
 
 	public void trimToSize() {
+		modCount++;
+		if (size < elementData.length) elementData = Arrays.copyOf(elementData, size);
 	}
 
 	public void ensureCapacity(int minCapacity) {
+		modCount++;
+		grow(minCapacity);
+	}
+
+	private void grow(int minCapacity) {
+		if (minCapacity > elementData.length) {
+			int newCapacity = elementData.length + (elementData.length >> 1) + 1;
+			elementData = Arrays.copyOf(elementData, Math.max(newCapacity, minCapacity));
+		}
 	}
 
-	@HaxeMethodBody("return _data.length;")
-	native public int size();
+	public int size() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	private E _get(int index) {
+		return (E) elementData[index];
+	}
 
-	@HaxeMethodBody("return _data[p0];")
-	native private E _get(int index);
+	private void _set(int index, E element) {
+		elementData[index] = element;
+	}
 
-	@HaxeMethodBody("_data[p0] = p1;")
-	native private void _set(int index, E element);
+	private void _setLength(int length) {
+		Arrays.fill(elementData, length, size, null);
+		size = length;
+	}
 
-	@HaxeMethodBody("_data = _data.slice(0, p0);")
-	native private void _setLength(int length);
+	private void _add(E element) {
+		grow(size + 1);
+		elementData[size++] = element;
+	}
 
-	@HaxeMethodBody("_data.push(p0);")
-	native private void _add(E element);
+	private void _insert(int index, E element) {
+		grow(size + 1);
+		System.arraycopy(elementData, index, elementData, index + 1, size - index);
+		elementData[index] = element;
+		size++;
+	}
 
-	@HaxeMethodBody("_data.insert(p0, p1);")
-	native private void _insert(int index, E element);
+	private void _insert(int index, Object[] elements) {
+		int count = elements.length;
+		grow(size + count);
+		System.arraycopy(elementData, index, elementData, index + count, size - index);
+		System.arraycopy(elements, 0, elementData, index, count);
+		size += count;
+	}
 
-	@HaxeMethodBody("_data = _data.slice(0, p0).concat(p1.toArray()).concat(_data.slice(p0));")
-	native private void _insert(int index, Object[] elements);
+	private void _remove(int from, int to) {
+		System.arraycopy(elementData, to, elementData, from, size - to);
+		_setLength(size - (to - from));
+	}
 
-	@HaxeMethodBody("_data = _data.slice(0, p0).concat(_data.slice(p0));")
-	native private void _remove(int from, int to);
+	private void _remove(int index) {
+		_remove(index, index + 1);
+	}
 
-	@HaxeMethodBody("_data.splice(p0, 1);")
-	native private void _remove(int index);
+	private void _clear() {
+		_setLength(0);
+	}
 
-	@HaxeMethodBody("_data = [];")
-	native private void _clear();
+	static private void _copy(ArrayList<?> dst, ArrayList<?> src) {
+		dst.elementData = Arrays.copyOf(src.elementData, src.size);
+		dst.size = src.size;
+	}
 
-	@HaxeMethodBody("p0._data = p1._data.slice(0);")
-	native static private void _copy(ArrayList<?> dst, ArrayList<?> src);
+	@SuppressWarnings("unchecked")
+	public void sort(Comparator<? super E> c) {
+		if (c == null) c = ComparableComparator.getInstance();
+		JTranscTimSort.sort((E[]) elementData, 0, size, c);
+		modCount++;
+	}
 
 	public boolean isEmpty() {
 		return size() == 0;
@@ -110,7 +157,8 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
 	public <T> T[] toArray(T[] a) {
 		int len = size();
 		if (a.length < len) a = (T[]) Arrays.copyOf(new Object[0], len, a.getClass());
-		for (int n = 0; n < len; n++) a[n] = (T) _get(n);
+		System.arraycopy(elementData, 0, a, 0, len);
+		if (a.length > len) a[len] = null;
 		return a;
 	}
 
@@ -127,12 +175,14 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
 	}
 
 	public boolean add(E e) {
+		modCount++;
 		_add(e);
 		return true;
 	}
 
 	public void add(int index, E element) {
 		rangeCheckForAdd(index);
+		modCount++;
 		_insert(index, element);
 	}
 
@@ -150,6 +200,7 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
 		int len = size();
 		for (int index = 0; index < len; index++) {
 			if (Objects.equals(o, _get(index))) {
+				modCount++;
 				_remove(index);
 				return true;
 			}
@@ -206,13 +257,14 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
 	private boolean batchRemove(Collection<?> c, boolean complement) {
 		int r = 0, w = 0;
 		for (; r < size(); r++) if (c.contains(_get(r)) == complement) _set(w++, _get(r));
+		if (r != w) modCount++;
 		_setLength(w);
 		return r != w;
 	}
 
 	public ListIterator<E> listIterator(int index) {
 		if (index < 0 || index > size()) throw new IndexOutOfBoundsException("Index: " + index);
-		return new GenericListIterator(this, index);
+		return new GenericListIterator<E>(this, index);
 	}
 
 	public ListIterator<E> listIterator() {
@@ -16,65 +16,211 @@
 
 package java.util;
 
-import jtransc.annotation.JTranscKeep;
-import jtransc.annotation.haxe.HaxeMethodBody;
-import jtransc.internal.JTranscSorter;
+import jtransc.internal.JTranscDualPivotQuicksort;
+import jtransc.internal.JTranscTimSort;
 
 import java.lang.reflect.Array;
 
 public class Arrays {
-	native public static int binarySearch(long[] a, int fromIndex, int toIndex, long key);
+	public static int binarySearch(long[] a, int fromIndex, int toIndex, long key) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long value = a[mid];
+			if (value < key) {
+				low = mid + 1;
+			} else if (value > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
 
 	public static int binarySearch(int[] a, int fromIndex, int toIndex, int key) {
-		return JTranscSorter.binarySearch(new JTranscSorter.IntArrayWrapped(a, key), 0, a.length);
+		rangeCheck(a.length, fromIndex, toIndex);
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int value = a[mid];
+			if (value < key) {
+				low = mid + 1;
+			} else if (value > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	public static int binarySearch(short[] a, int fromIndex, int toIndex, short key) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			short value = a[mid];
+			if (value < key) {
+				low = mid + 1;
+			} else if (value > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	public static int binarySearch(char[] a, int fromIndex, int toIndex, char key) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char value = a[mid];
+			if (value < key) {
+				low = mid + 1;
+			} else if (value > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	public static int binarySearch(byte[] a, int fromIndex, int toIndex, byte key) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			byte value = a[mid];
+			if (value < key) {
+				low = mid + 1;
+			} else if (value > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	public static int binarySearch(double[] a, int fromIndex, int toIndex, double key) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int result = Double.compare(a[mid], key);
+			if (result < 0) {
+				low = mid + 1;
+			} else if (result > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	public static int binarySearch(float[] a, int fromIndex, int toIndex, float key) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int result = Float.compare(a[mid], key);
+			if (result < 0) {
+				low = mid + 1;
+			} else if (result > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	public static int binarySearch(Object[] a, int fromIndex, int toIndex, Object key) {
+		return binarySearch(a, fromIndex, toIndex, key, ComparableComparator.getInstance());
+	}
+
+	public static <T> int binarySearch(T[] a, int fromIndex, int toIndex, T key, Comparator<? super T> c) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		if (c == null) c = ComparableComparator.getInstance();
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int result = c.compare(a[mid], key);
+			if (result < 0) {
+				low = mid + 1;
+			} else if (result > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
 	}
 
-	native public static int binarySearch(short[] a, int fromIndex, int toIndex, short key);
-
-	native public static int binarySearch(char[] a, int fromIndex, int toIndex, char key);
-
-	native public static int binarySearch(byte[] a, int fromIndex, int toIndex, byte key);
-
-	native public static int binarySearch(double[] a, int fromIndex, int toIndex, double key);
-
-	native public static int binarySearch(float[] a, int fromIndex, int toIndex, float key);
-
-	native public static int binarySearch(Object[] a, int fromIndex, int toIndex, Object key);
-
-	native public static <T> int binarySearch(T[] a, int fromIndex, int toIndex, T key, Comparator<? super T> c);
+	public static void sort(int[] a, int fromIndex, int toIndex) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		JTranscDualPivotQuicksort.sort(a, fromIndex, toIndex);
+	}
 
-	native public static void sort(int[] a, int fromIndex, int toIndex);
+	public static void sort(long[] a, int fromIndex, int toIndex) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		JTranscDualPivotQuicksort.sort(a, fromIndex, toIndex);
+	}
 
-	native public static void sort(long[] a, int fromIndex, int toIndex);
+	public static void sort(short[] a, int fromIndex, int toIndex) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		JTranscDualPivotQuicksort.sort(a, fromIndex, toIndex);
+	}
 
-	native public static void sort(short[] a, int fromIndex, int toIndex);
+	public static void sort(char[] a, int fromIndex, int toIndex) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		JTranscDualPivotQuicksort.sort(a, fromIndex, toIndex);
+	}
 
-	native public static void sort(char[] a, int fromIndex, int toIndex);
+	public static void sort(byte[] a, int fromIndex, int toIndex) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		JTranscDualPivotQuicksort.sort(a, fromIndex, toIndex);
+	}
 
-	native public static void sort(byte[] a, int fromIndex, int toIndex);
+	public static void sort(float[] a, int fromIndex, int toIndex) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		JTranscDualPivotQuicksort.sort(a, fromIndex, toIndex);
+	}
 
-	native public static void sort(float[] a, int fromIndex, int toIndex);
+	public static void sort(double[] a, int fromIndex, int toIndex) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		JTranscDualPivotQuicksort.sort(a, fromIndex, toIndex);
+	}
 
-	native public static void sort(double[] a, int fromIndex, int toIndex);
+	static private void rangeCheck(int length, int fromIndex, int toIndex) {
+		if (fromIndex > toIndex) throw new IllegalArgumentException("fromIndex(" + fromIndex + ") > toIndex(" + toIndex + ")");
+		if (fromIndex < 0) throw new ArrayIndexOutOfBoundsException(fromIndex);
+		if (toIndex > length) throw new ArrayIndexOutOfBoundsException(toIndex);
+	}
 
 	public static void sort(Object[] a, int fromIndex, int toIndex) {
-		sort(a, fromIndex, toIndex, (Comparator<? super Object>) ComparableComparator.INSTANCE);
-	}
-
-    @HaxeMethodBody(
-            "var array = cast(p0, HaxeArray);\n" +
-            "var start = p1;\n" +
-            "var end = p2;\n" +
-            "var comparator = p3;\n" +
-            "var slice = array.toArray().slice(start, end);\n" +
-            "haxe.ds.ArraySort.sort(slice, function(a, b) {\n" +
-            "\treturn comparator.compare_Ljava_lang_Object_Ljava_lang_Object__I(cast a, cast b);\n" +
-            "});\n" +
-            "for (n in 0 ... slice.length) {\n" +
-            "\tarray.set(start + n, slice[n]);\n" +
-            "}"
-    )
-	native public static <T> void sort(T[] a, int fromIndex, int toIndex, Comparator<? super T> c);
+		sort(a, fromIndex, toIndex, ComparableComparator.getInstance());
+	}
+
+	public static <T> void sort(T[] a, int fromIndex, int toIndex, Comparator<? super T> c) {
+		rangeCheck(a.length, fromIndex, toIndex);
+		if (c == null) c = ComparableComparator.getInstance();
+		JTranscTimSort.sort(a, fromIndex, toIndex, c);
+	}
 
 	native public static int deepHashCode(Object a[]);
 
@@ -84,16 +230,18 @@ public class Arrays {
 
 	native public static String deepToString(Object[] a);
 
+	@SuppressWarnings("unchecked")
 	public static <T> T[] copyOfRange(T[] original, int from, int to) {
 		return (T[]) copyOfRange(original, from, to, (Class<Object[]>) original.getClass());
 	}
 
+	@SuppressWarnings("unchecked")
 	public static <T, U> T[] copyOfRange(U[] original, int from, int to, Class<Object[]> newType) {
 		int length = to - from;
 		if (length < 0) {
 			throw new IllegalArgumentException(from + " > " + to);
 		} else {
-			Object[] out = (newType == Object[].class) ? (Object[]) (new Object[length]) : (Object[]) ((Object[]) Array.newInstance(newType.getComponentType(), length));
+			Object[] out = (newType == Object[].class) ? new Object[length] : (Object[]) Array.newInstance(newType.getComponentType(), length);
 			System.arraycopy(original, from, out, 0, Math.min(original.length - from, length));
 			return (T[]) out;
 		}
@@ -240,7 +388,7 @@ public class Arrays {
 	}
 
 	public static <T> int binarySearch(T[] a, T key, Comparator<? super T> c) {
-		return binarySearch(a, 0, a.length, c);
+		return binarySearch(a, 0, a.length, key, c);
 	}
 
 	public static boolean equals(long[] a, long[] a2) {
@@ -500,7 +648,7 @@ public class Arrays {
 	public static int hashCode(int a[]) {
 		if (a == null) return 0;
 		int result = 1;
-		for (int e : a) result = 31 * result + (int) (e ^ (e >>> 32));
+		for (int e : a) result = 31 * result + e;
 		return result;
 	}
 
@@ -605,13 +753,3 @@ public class Arrays {
 		return b.append(']').toString();
 	}
 }
-
-class ComparableComparator<T extends Comparable<T>> implements Comparator<T> {
-	static public ComparableComparator<?> INSTANCE = new ComparableComparator();
-
-	@Override
-	@JTranscKeep
-	public int compare(T o1, T o2) {
-		return o1.compareTo(o2);
-	}
-}
@@ -16,45 +16,77 @@
 
 package java.util;
 
-import jtransc.internal.JTranscSorter;
-
 public class Collections {
 	private Collections() {
 	}
 
 	public static <T extends Comparable<? super T>> void sort(List<T> list) {
-		sort(list, JTranscSorter.getComparator(list));
+		sort(list, null);
 	}
 
+	// ArrayList is sorted in place, other lists through an array written back with a ListIterator
+	@SuppressWarnings("unchecked")
 	public static <T> void sort(List<T> list, Comparator<? super T> c) {
-		Object[] array = new Object[list.size()];
-		list.toArray(array);
+		if (list instanceof ArrayList) {
+			((ArrayList<T>) list).sort(c);
+			return;
+		}
+		Object[] array = list.toArray();
 		Arrays.sort((T[]) array, 0, array.length, c);
-		list.clear();
-		for (Object o : array) list.add((T)o);
+		ListIterator<T> it = list.listIterator();
+		for (Object e : array) {
+			it.next();
+			it.set((T) e);
+		}
 	}
 
+	@SuppressWarnings("unchecked")
 	public static <T> int binarySearch(List<? extends Comparable<? super T>> list, T key) {
-		JTranscSorter.ListWrapper listWrapper = new JTranscSorter.ListWrapper(list, JTranscSorter.getComparator(list), key);
-		return JTranscSorter.binarySearch(listWrapper, 0, list.size());
+		return binarySearch((List<T>) list, key, null);
 	}
 
-	native public static <T> int binarySearch(List<? extends T> list, T key, Comparator<? super T> c);
+	public static <T> int binarySearch(List<? extends T> list, T key, Comparator<? super T> c) {
+		if (c == null) c = ComparableComparator.getInstance();
+		int low = 0;
+		int high = list.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int result = c.compare(list.get(mid), key);
+			if (result < 0) {
+				low = mid + 1;
+			} else if (result > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
 
 	public static void reverse(List<?> list) {
-		int size = list.size();
-		for (int i = 0, mid = size >> 1, j = size - 1; i < mid; i++, j--) {
+		reverse(list, 0, list.size());
+	}
+
+	private static void reverse(List<?> list, int from, int to) {
+		for (int i = from, j = to - 1; i < j; i++, j--) {
 			swap(list, i, j);
 		}
 	}
 
-	native public static void shuffle(List<?> list);
+	public static void shuffle(List<?> list) {
+		shuffle(list, new Random());
+	}
 
-	native public static void shuffle(List<?> list, Random rnd);
+	public static void shuffle(List<?> list, Random rnd) {
+		for (int n = list.size(); n > 1; n--) swap(list, n - 1, rnd.nextInt(n));
+	}
 
 	public static void swap(List<?> list, int i, int j) {
-		final List l = list;
-		l.set(i, l.set(j, l.get(i)));
+		_swap(list, i, j);
+	}
+
+	private static <T> void _swap(List<T> list, int i, int j) {
+		list.set(i, list.set(j, list.get(i)));
 	}
 
 	public static <T> void fill(List<? super T> list, T obj) {
@@ -62,21 +94,52 @@ public class Collections {
 		for (int n = 0; n < length; n++) list.set(n, obj);
 	}
 
-	native public static <T> void copy(List<? super T> dest, List<? extends T> src);
+	public static <T> void copy(List<? super T> dest, List<? extends T> src) {
+		int length = src.size();
+		if (length > dest.size()) throw new IndexOutOfBoundsException("Source does not fit in dest");
+		for (int n = 0; n < length; n++) dest.set(n, src.get(n));
+	}
 
-	native public static <T extends Object & Comparable<? super T>> T min(Collection<? extends T> coll);
+	public static <T extends Object & Comparable<? super T>> T min(Collection<? extends T> coll) {
+		return min(coll, null);
+	}
 
-	native public static <T> T min(Collection<? extends T> coll, Comparator<? super T> comp);
+	public static <T> T min(Collection<? extends T> coll, Comparator<? super T> comp) {
+		if (comp == null) comp = ComparableComparator.getInstance();
+		Iterator<? extends T> it = coll.iterator();
+		T out = it.next();
+		while (it.hasNext()) {
+			T item = it.next();
+			if (comp.compare(item, out) < 0) out = item;
+		}
+		return out;
+	}
 
-	native public static <T extends Object & Comparable<? super T>> T max(Collection<? extends T> coll);
+	public static <T extends Object & Comparable<? super T>> T max(Collection<? extends T> coll) {
+		return max(coll, null);
+	}
 
-	native public static <T> T max(Collection<? extends T> coll, Comparator<? super T> comp);
+	public static <T> T max(Collection<? extends T> coll, Comparator<? super T> comp) {
+		if (comp == null) comp = ComparableComparator.getInstance();
+		Iterator<? extends T> it = coll.iterator();
+		T out = it.next();
+		while (it.hasNext()) {
+			T item = it.next();
+			if (comp.compare(item, out) > 0) out = item;
+		}
+		return out;
+	}
 
+	// Rotating is reversing both parts and then the whole list
 	public static void rotate(List<?> list, int distance) {
 		int length = list.size();
-		for (int n = 0; n < length; n++) {
-			swap(list, n, (n + distance) % length);
-		}
+		if (length == 0) return;
+		distance %= length;
+		if (distance < 0) distance += length;
+		if (distance == 0) return;
+		reverse(list, 0, length - distance);
+		reverse(list, length - distance, length);
+		reverse(list, 0, length);
 	}
 
 	public static <T> boolean replaceAll(List<T> list, T oldVal, T newVal) {
@@ -91,9 +154,29 @@ public class Collections {
 		return count > 0;
 	}
 
-	native public static int indexOfSubList(List<?> source, List<?> target);
+	public static int indexOfSubList(List<?> source, List<?> target) {
+		int length = target.size();
+		for (int n = 0; n <= source.size() - length; n++) {
+			if (isSubList(source, target, n)) return n;
+		}
+		return -1;
+	}
 
-	native public static int lastIndexOfSubList(List<?> source, List<?> target);
+	public static int lastIndexOfSubList(List<?> source, List<?> target) {
+		int length = target.size();
+		for (int n = source.size() - length; n >= 0; n--) {
+			if (isSubList(source, target, n)) return n;
+		}
+		return -1;
+	}
+
+	private static boolean isSubList(List<?> source, List<?> target, int offset) {
+		int length = target.size();
+		for (int n = 0; n < length; n++) {
+			if (!eq(target.get(n), source.get(offset + n))) return false;
+		}
+		return true;
+	}
 
 	public static <T> Collection<T> unmodifiableCollection(Collection<? extends T> c) {
 		return (Collection<T>) c;
@@ -190,9 +273,12 @@ public class Collections {
 	native public static <T> Enumeration<T> emptyEnumeration();
 
 	// @TODO: Make those immutable
-	public static final Set EMPTY_SET = new HashSet();
-	public static final List EMPTY_LIST = new ArrayList();
-	public static final Map EMPTY_MAP = new HashMap();
+	@SuppressWarnings("rawtypes")
+	public static final Set EMPTY_SET = new HashSet<Object>();
+	@SuppressWarnings("rawtypes")
+	public static final List EMPTY_LIST = new ArrayList<Object>();
+	@SuppressWarnings("rawtypes")
+	public static final Map EMPTY_MAP = new HashMap<Object, Object>();
 
 	native public static final <T> Set<T> emptySet();
 
@@ -230,19 +316,38 @@ public class Collections {
 		return ts;
 	}
 
-	native public static <T> Comparator<T> reverseOrder();
+	public static <T> Comparator<T> reverseOrder() {
+		return reverseOrder(null);
+	}
 
-	native public static <T> Comparator<T> reverseOrder(Comparator<T> cmp);
+	public static <T> Comparator<T> reverseOrder(Comparator<T> cmp) {
+		final Comparator<T> comparator = (cmp != null) ? cmp : ComparableComparator.<T>getInstance();
+		return new Comparator<T>() {
+			@Override
+			public int compare(T o1, T o2) {
+				return comparator.compare(o2, o1);
+			}
+		};
+	}
 
 	native public static <T> Enumeration<T> enumeration(final Collection<T> c);
 
 	native public static <T> ArrayList<T> list(Enumeration<T> e);
 
-	native static boolean eq(Object o1, Object o2);
+	static boolean eq(Object o1, Object o2) {
+		return (o1 == null) ? (o2 == null) : o1.equals(o2);
+	}
 
-	native public static int frequency(Collection<?> c, Object o);
+	public static int frequency(Collection<?> c, Object o) {
+		int count = 0;
+		for (Object item : c) if (eq(o, item)) count++;
+		return count;
+	}
 
-	native public static boolean disjoint(Collection<?> c1, Collection<?> c2);
+	public static boolean disjoint(Collection<?> c1, Collection<?> c2) {
+		for (Object item : c1) if (c2.contains(item)) return false;
+		return true;
+	}
 
 	public static <T> boolean addAll(Collection<? super T> c, T... elements) {
 		boolean out = false;
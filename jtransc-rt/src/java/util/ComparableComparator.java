@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package java.util;
+
+import jtransc.annotation.JTranscKeep;
+
+// Natural ordering, used where a null comparator is passed
+class ComparableComparator<T extends Comparable<T>> implements Comparator<T> {
+	@SuppressWarnings("rawtypes")
+	static public final ComparableComparator<?> INSTANCE = new ComparableComparator();
+
+	// Typed for the caller, elements must be Comparable
+	@SuppressWarnings("unchecked")
+	static public <T> Comparator<T> getInstance() {
+		return (Comparator<T>) INSTANCE;
+	}
+
+	@Override
+	@JTranscKeep
+	public int compare(T o1, T o2) {
+		return o1.compareTo(o2);
+	}
+}
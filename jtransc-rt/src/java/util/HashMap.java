@@ -16,92 +16,416 @@
 
 package java.util;
 
-import jtransc.internal.GenericMapEntry;
-
 import java.io.Serializable;
 
-// @TODO: Very slow HashMap
+// Power of two table with chained buckets. Entries are reused by views and iterators, so they never copy.
 public class HashMap<K, V> extends AbstractMap<K, V> implements Map<K, V>, Cloneable, Serializable {
-	private ArrayList<K> keys = new ArrayList<K>();
-	private ArrayList<V> values = new ArrayList<V>();
+	static final int MINIMUM_CAPACITY = 4;
+	static final int MAXIMUM_CAPACITY = 1 << 30;
+	static final int DEFAULT_CAPACITY = 16;
+	static final float DEFAULT_LOAD_FACTOR = .75f;
+
+	static final int ITERATE_KEYS = 0;
+	static final int ITERATE_VALUES = 1;
+	static final int ITERATE_ENTRIES = 2;
+
+	transient HashMapEntry<K, V>[] table;
+	transient int size;
+	transient int modCount;
+	final float loadFactor;
+	private transient int threshold;
+	private transient Set<Entry<K, V>> entrySet;
 
 	public HashMap(int initialCapacity, float loadFactor) {
+		if (initialCapacity < 0) throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		if (!(loadFactor > 0)) throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+		this.loadFactor = loadFactor;
+		makeTable(roundUpToPowerOfTwo(initialCapacity));
+		init();
 	}
 
 	public HashMap(int initialCapacity) {
-
+		this(initialCapacity, DEFAULT_LOAD_FACTOR);
 	}
 
 	public HashMap() {
-
+		this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
 	}
 
 	public HashMap(Map<? extends K, ? extends V> m) {
+		this(capacityForSize(m.size()), DEFAULT_LOAD_FACTOR);
 		putAll(m);
 	}
 
+	// Hook for subclasses, called once the table exists and before any entry is added.
+	void init() {
+	}
+
+	static int capacityForSize(int size) {
+		return Math.max((int) (size / DEFAULT_LOAD_FACTOR) + 1, DEFAULT_CAPACITY);
+	}
+
+	static int roundUpToPowerOfTwo(int capacity) {
+		if (capacity >= MAXIMUM_CAPACITY) return MAXIMUM_CAPACITY;
+		int n = MINIMUM_CAPACITY;
+		while (n < capacity) n <<= 1;
+		return n;
+	}
+
+	// Spreads the higher bits so tables indexed with a mask don't degrade with poor hashCodes.
+	static int secondaryHash(Object key) {
+		int h = (key != null) ? key.hashCode() : 0;
+		h ^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+
+	@SuppressWarnings("unchecked")
+	private HashMapEntry<K, V>[] makeTable(int capacity) {
+		HashMapEntry<K, V>[] newTable = (HashMapEntry<K, V>[]) new HashMapEntry<?, ?>[capacity];
+		table = newTable;
+		threshold = (capacity >= MAXIMUM_CAPACITY) ? Integer.MAX_VALUE : (int) (capacity * loadFactor);
+		return newTable;
+	}
+
+	private void resize(int newCapacity) {
+		HashMapEntry<K, V>[] oldTable = table;
+		if (oldTable.length >= MAXIMUM_CAPACITY) return;
+		HashMapEntry<K, V>[] newTable = makeTable(newCapacity);
+		int mask = newCapacity - 1;
+		for (int n = 0; n < oldTable.length; n++) {
+			HashMapEntry<K, V> e = oldTable[n];
+			while (e != null) {
+				HashMapEntry<K, V> next = e.next;
+				int index = e.hash & mask;
+				e.next = newTable[index];
+				newTable[index] = e;
+				e = next;
+			}
+		}
+	}
+
 	public int size() {
-		return keys.size();
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	final HashMapEntry<K, V> getEntry(Object key) {
+		int hash = secondaryHash(key);
+		HashMapEntry<K, V>[] tab = table;
+		for (HashMapEntry<K, V> e = tab[hash & (tab.length - 1)]; e != null; e = e.next) {
+			if (e.hash == hash && Objects.equals(key, e.key)) return e;
+		}
+		return null;
 	}
 
 	public V get(Object key) {
-		int index = keys.indexOf(key);
-		return (index >= 0) ? values.get(index) : null;
+		HashMapEntry<K, V> e = getEntry(key);
+		return (e != null) ? e.value : null;
 	}
 
 	public boolean containsKey(Object key) {
-		return keys.contains(key);
+		return getEntry(key) != null;
 	}
 
 	public V put(K key, V value) {
-		int index = keys.indexOf(key);
-		V old = null;
-		if (index < 0) {
-			keys.add(key);
-			values.add(value);
-		} else {
-			old = values.get(index);
-			keys.set(index, key);
-			values.set(index, value);
+		int hash = secondaryHash(key);
+		HashMapEntry<K, V>[] tab = table;
+		int index = hash & (tab.length - 1);
+		for (HashMapEntry<K, V> e = tab[index]; e != null; e = e.next) {
+			if (e.hash == hash && Objects.equals(key, e.key)) {
+				V oldValue = e.value;
+				e.value = value;
+				entryAccessed(e);
+				return oldValue;
+			}
 		}
-		return old;
+		modCount++;
+		tab[index] = newEntry(key, value, hash, tab[index]);
+		if (++size > threshold) resize(tab.length * 2);
+		entryAdded();
+		return null;
+	}
+
+	public void putAll(Map<? extends K, ? extends V> m) {
+		int newSize = size + m.size();
+		if (newSize > threshold) resize(roundUpToPowerOfTwo(capacityForSize(newSize)));
+		for (Entry<? extends K, ? extends V> e : m.entrySet()) put(e.getKey(), e.getValue());
+	}
+
+	HashMapEntry<K, V> newEntry(K key, V value, int hash, HashMapEntry<K, V> next) {
+		return new HashMapEntry<K, V>(key, value, hash, next);
+	}
+
+	// Hooks for LinkedHashMap to keep its ordering list in sync with the table.
+	void entryAccessed(HashMapEntry<K, V> e) {
+	}
+
+	void entryAdded() {
+	}
+
+	void entryRemoved(HashMapEntry<K, V> e) {
+	}
+
+	void entriesCleared() {
 	}
 
 	public V remove(Object key) {
-		int index = keys.indexOf(key);
-		if (index >= 0) {
-			V old = values.get(index);
-			keys.remove(index);
-			values.remove(index);
-			return old;
+		HashMapEntry<K, V> e = removeEntry(key);
+		return (e != null) ? e.value : null;
+	}
+
+	final HashMapEntry<K, V> removeEntry(Object key) {
+		int hash = secondaryHash(key);
+		HashMapEntry<K, V>[] tab = table;
+		int index = hash & (tab.length - 1);
+		for (HashMapEntry<K, V> e = tab[index], prev = null; e != null; prev = e, e = e.next) {
+			if (e.hash == hash && Objects.equals(key, e.key)) {
+				if (prev == null) {
+					tab[index] = e.next;
+				} else {
+					prev.next = e.next;
+				}
+				modCount++;
+				size--;
+				entryRemoved(e);
+				return e;
+			}
 		}
 		return null;
 	}
 
+	final boolean removeMapping(Object key, Object value) {
+		HashMapEntry<K, V> e = getEntry(key);
+		if (e == null || !Objects.equals(value, e.value)) return false;
+		removeEntry(key);
+		return true;
+	}
+
 	public void clear() {
-		this.keys.clear();
-		this.values.clear();
+		if (size != 0) {
+			HashMapEntry<K, V>[] tab = table;
+			for (int n = 0; n < tab.length; n++) tab[n] = null;
+			modCount++;
+			size = 0;
+			entriesCleared();
+		}
 	}
 
 	public boolean containsValue(Object value) {
-		return values.indexOf(value) >= 0;
+		HashMapEntry<K, V>[] tab = table;
+		for (int n = 0; n < tab.length; n++) {
+			for (HashMapEntry<K, V> e = tab[n]; e != null; e = e.next) {
+				if (Objects.equals(value, e.value)) return true;
+			}
+		}
+		return false;
 	}
 
 	public Set<K> keySet() {
-		return new HashSet(keys);
+		Set<K> ks = keySet;
+		return (ks != null) ? ks : (keySet = new KeySet());
 	}
 
 	public Collection<V> values() {
-		return this.values;
+		Collection<V> vs = values;
+		return (vs != null) ? vs : (values = new Values());
 	}
 
 	public Set<Entry<K, V>> entrySet() {
-		HashSet<Entry<K, V>> out = new HashSet<Entry<K, V>>();
-		for (K key : keys) out.add(new GenericMapEntry<K, V>(this, key));
-		return out;
+		Set<Entry<K, V>> es = entrySet;
+		return (es != null) ? es : (entrySet = new EntrySet());
 	}
 
-	@Override
-	native public Object clone();
-}
+	Iterator<K> newKeyIterator() {
+		return new HashIterator<K>(ITERATE_KEYS);
+	}
+
+	Iterator<V> newValueIterator() {
+		return new HashIterator<V>(ITERATE_VALUES);
+	}
+
+	Iterator<Entry<K, V>> newEntryIterator() {
+		return new HashIterator<Entry<K, V>>(ITERATE_ENTRIES);
+	}
+
+	// Object.clone is not available in the runtime, so we rebuild the table like IdentityHashMap does.
+	public Object clone() {
+		return new HashMap<K, V>(this);
+	}
+
+	static class HashMapEntry<K, V> implements Entry<K, V> {
+		final K key;
+		V value;
+		final int hash;
+		HashMapEntry<K, V> next;
+
+		HashMapEntry(K key, V value, int hash, HashMapEntry<K, V> next) {
+			this.key = key;
+			this.value = value;
+			this.hash = hash;
+			this.next = next;
+		}
+
+		public final K getKey() {
+			return key;
+		}
+
+		public final V getValue() {
+			return value;
+		}
+
+		public final V setValue(V value) {
+			V oldValue = this.value;
+			this.value = value;
+			return oldValue;
+		}
 
+		public final boolean equals(Object o) {
+			if (!(o instanceof Entry)) return false;
+			Entry<?, ?> e = (Entry<?, ?>) o;
+			return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+		}
+
+		public final int hashCode() {
+			return Objects.hashCode(key) ^ Objects.hashCode(value);
+		}
+
+		public final String toString() {
+			return key + "=" + value;
+		}
+	}
+
+	private final class HashIterator<E> implements Iterator<E> {
+		private final int kind;
+		private int nextIndex;
+		private HashMapEntry<K, V> nextEntry;
+		private HashMapEntry<K, V> lastEntryReturned;
+		private int expectedModCount = modCount;
+
+		HashIterator(int kind) {
+			this.kind = kind;
+			this.nextEntry = advance(null);
+		}
+
+		private HashMapEntry<K, V> advance(HashMapEntry<K, V> next) {
+			HashMapEntry<K, V>[] tab = table;
+			while (next == null && nextIndex < tab.length) next = tab[nextIndex++];
+			return next;
+		}
+
+		public boolean hasNext() {
+			return nextEntry != null;
+		}
+
+		@SuppressWarnings("unchecked")
+		public E next() {
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			HashMapEntry<K, V> e = nextEntry;
+			if (e == null) throw new NoSuchElementException();
+			nextEntry = advance(e.next);
+			lastEntryReturned = e;
+			return (E) select(e, kind);
+		}
+
+		public void remove() {
+			if (lastEntryReturned == null) throw new IllegalStateException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			removeEntry(lastEntryReturned.key);
+			lastEntryReturned = null;
+			expectedModCount = modCount;
+		}
+	}
+
+	static Object select(HashMapEntry<?, ?> e, int kind) {
+		switch (kind) {
+			case ITERATE_KEYS:
+				return e.key;
+			case ITERATE_VALUES:
+				return e.value;
+			default:
+				return e;
+		}
+	}
+
+	private final class KeySet extends AbstractSet<K> {
+		public Iterator<K> iterator() {
+			return newKeyIterator();
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		public boolean contains(Object o) {
+			return containsKey(o);
+		}
+
+		public boolean remove(Object o) {
+			return removeEntry(o) != null;
+		}
+
+		public void clear() {
+			HashMap.this.clear();
+		}
+	}
+
+	private final class Values extends AbstractCollection<V> {
+		public Iterator<V> iterator() {
+			return newValueIterator();
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		public boolean contains(Object o) {
+			return containsValue(o);
+		}
+
+		public void clear() {
+			HashMap.this.clear();
+		}
+	}
+
+	private final class EntrySet extends AbstractSet<Entry<K, V>> {
+		public Iterator<Entry<K, V>> iterator() {
+			return newEntryIterator();
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		public boolean contains(Object o) {
+			if (!(o instanceof Entry)) return false;
+			Entry<?, ?> e = (Entry<?, ?>) o;
+			HashMapEntry<K, V> mine = getEntry(e.getKey());
+			return mine != null && Objects.equals(mine.value, e.getValue());
+		}
+
+		public boolean remove(Object o) {
+			if (!(o instanceof Entry)) return false;
+			Entry<?, ?> e = (Entry<?, ?>) o;
+			return removeMapping(e.getKey(), e.getValue());
+		}
+
+		public void clear() {
+			HashMap.this.clear();
+		}
+	}
+}
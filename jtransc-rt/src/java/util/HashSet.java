@@ -16,60 +16,62 @@
 
 package java.util;
 
-// @TODO: Very slow implementation!
+// Backed by the keys of a HashMap, so membership is a hashed lookup and iteration walks the table directly.
 public class HashSet<E> extends AbstractSet<E> implements Set<E>, Cloneable, java.io.Serializable {
-	private ArrayList<E> items = new ArrayList<E>();
+	private static final Object PRESENT = new Object();
+
+	private transient HashMap<E, Object> map;
 
 	public HashSet() {
+		map = new HashMap<E, Object>();
 	}
 
 	public HashSet(Collection<? extends E> c) {
-		//this();
+		map = new HashMap<E, Object>(HashMap.capacityForSize(c.size()));
 		addAll(c);
 	}
 
 	public HashSet(int initialCapacity, float loadFactor) {
-		//this();
+		map = new HashMap<E, Object>(initialCapacity, loadFactor);
 	}
 
 	public HashSet(int initialCapacity) {
-		//this();
+		map = new HashMap<E, Object>(initialCapacity);
 	}
 
 	HashSet(int initialCapacity, float loadFactor, boolean dummy) {
-		//this();
+		map = new LinkedHashMap<E, Object>(initialCapacity, loadFactor);
 	}
 
 	public Iterator<E> iterator() {
-		return items.iterator();
+		return map.keySet().iterator();
 	}
 
 	public int size() {
-		return items.size();
+		return map.size();
+	}
+
+	public boolean isEmpty() {
+		return map.isEmpty();
 	}
 
 	public boolean contains(Object o) {
-		return items.contains(o);
+		return map.containsKey(o);
 	}
 
 	public boolean add(E e) {
-		if (!contains(e)) {
-			items.add(e);
-			return true;
-		} else {
-			return false;
-		}
+		return map.put(e, PRESENT) == null;
 	}
 
 	public boolean remove(Object o) {
-		return items.remove(o);
+		return map.remove(o) == PRESENT;
 	}
 
 	public void clear() {
-		this.items.clear();
+		map.clear();
 	}
 
 	public Object clone() {
-		return new HashSet<E>(items);
+		return new HashSet<E>(this);
 	}
-}
\ No newline at end of file
+}
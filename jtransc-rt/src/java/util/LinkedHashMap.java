@@ -17,23 +17,171 @@
 package java.util;
 
 public class LinkedHashMap<K, V> extends HashMap<K, V> implements Map<K, V> {
+	// Circular doubly linked list sentinel: header.nxt is the eldest entry, header.prv the youngest.
+	private transient LinkedEntry<K, V> header;
+	private final boolean accessOrder;
+
 	public LinkedHashMap(int initialCapacity, float loadFactor) {
-		super(initialCapacity, loadFactor);
+		this(initialCapacity, loadFactor, false);
 	}
 
 	public LinkedHashMap(int initialCapacity) {
-		super(initialCapacity);
+		this(initialCapacity, DEFAULT_LOAD_FACTOR, false);
 	}
 
 	public LinkedHashMap() {
-		super();
+		this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, false);
 	}
 
 	public LinkedHashMap(Map<? extends K, ? extends V> m) {
-		super(m);
+		this(capacityForSize(m.size()), DEFAULT_LOAD_FACTOR, false);
+		putAll(m);
 	}
 
 	public LinkedHashMap(int initialCapacity, float loadFactor, boolean accessOrder) {
 		super(initialCapacity, loadFactor);
+		this.accessOrder = accessOrder;
+	}
+
+	@Override
+	void init() {
+		header = new LinkedEntry<K, V>();
+	}
+
+	@Override
+	HashMapEntry<K, V> newEntry(K key, V value, int hash, HashMapEntry<K, V> next) {
+		LinkedEntry<K, V> e = new LinkedEntry<K, V>(key, value, hash, next);
+		linkLast(e);
+		return e;
+	}
+
+	private void linkLast(LinkedEntry<K, V> e) {
+		LinkedEntry<K, V> tail = header.prv;
+		e.nxt = header;
+		e.prv = tail;
+		tail.nxt = e;
+		header.prv = e;
+	}
+
+	private static <K, V> void unlink(LinkedEntry<K, V> e) {
+		e.prv.nxt = e.nxt;
+		e.nxt.prv = e.prv;
+		e.nxt = null;
+		e.prv = null;
+	}
+
+	@Override
+	void entryAccessed(HashMapEntry<K, V> e) {
+		if (accessOrder) {
+			LinkedEntry<K, V> le = (LinkedEntry<K, V>) e;
+			if (header.prv != le) {
+				unlink(le);
+				linkLast(le);
+				modCount++;
+			}
+		}
+	}
+
+	@Override
+	void entryAdded() {
+		LinkedEntry<K, V> eldest = header.nxt;
+		if (eldest != header && removeEldestEntry(eldest)) removeEntry(eldest.key);
+	}
+
+	@Override
+	void entryRemoved(HashMapEntry<K, V> e) {
+		unlink((LinkedEntry<K, V>) e);
+	}
+
+	@Override
+	void entriesCleared() {
+		header.nxt = header;
+		header.prv = header;
+	}
+
+	protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+		return false;
+	}
+
+	public V get(Object key) {
+		HashMapEntry<K, V> e = getEntry(key);
+		if (e == null) return null;
+		entryAccessed(e);
+		return e.value;
+	}
+
+	public boolean containsValue(Object value) {
+		for (LinkedEntry<K, V> e = header.nxt; e != header; e = e.nxt) {
+			if (Objects.equals(value, e.value)) return true;
+		}
+		return false;
+	}
+
+	@Override
+	Iterator<K> newKeyIterator() {
+		return new LinkedHashIterator<K>(ITERATE_KEYS);
+	}
+
+	@Override
+	Iterator<V> newValueIterator() {
+		return new LinkedHashIterator<V>(ITERATE_VALUES);
+	}
+
+	@Override
+	Iterator<Entry<K, V>> newEntryIterator() {
+		return new LinkedHashIterator<Entry<K, V>>(ITERATE_ENTRIES);
+	}
+
+	public Object clone() {
+		LinkedHashMap<K, V> out = new LinkedHashMap<K, V>(capacityForSize(size()), loadFactor, accessOrder);
+		out.putAll(this);
+		return out;
+	}
+
+	static final class LinkedEntry<K, V> extends HashMapEntry<K, V> {
+		LinkedEntry<K, V> nxt;
+		LinkedEntry<K, V> prv;
+
+		LinkedEntry() {
+			super(null, null, 0, null);
+			nxt = prv = this;
+		}
+
+		LinkedEntry(K key, V value, int hash, HashMapEntry<K, V> next) {
+			super(key, value, hash, next);
+		}
+	}
+
+	private final class LinkedHashIterator<E> implements Iterator<E> {
+		private final int kind;
+		private LinkedEntry<K, V> nextEntry = header.nxt;
+		private LinkedEntry<K, V> lastEntryReturned;
+		private int expectedModCount = modCount;
+
+		LinkedHashIterator(int kind) {
+			this.kind = kind;
+		}
+
+		public boolean hasNext() {
+			return nextEntry != header;
+		}
+
+		@SuppressWarnings("unchecked")
+		public E next() {
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			LinkedEntry<K, V> e = nextEntry;
+			if (e == header) throw new NoSuchElementException();
+			nextEntry = e.nxt;
+			lastEntryReturned = e;
+			return (E) select(e, kind);
+		}
+
+		public void remove() {
+			if (lastEntryReturned == null) throw new IllegalStateException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			removeEntry(lastEntryReturned.key);
+			lastEntryReturned = null;
+			expectedModCount = modCount;
+		}
 	}
 }
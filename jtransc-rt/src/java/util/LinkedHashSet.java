@@ -33,4 +33,8 @@ public class LinkedHashSet<E> extends HashSet<E> implements Set<E>, Cloneable, j
 		super(Math.max(2 * c.size(), 11), .75f, true);
 		addAll(c);
 	}
+
+	public Object clone() {
+		return new LinkedHashSet<E>(this);
+	}
 }
@@ -16,95 +16,1075 @@
 
 package java.util;
 
+// Red-black tree. Key sets, values, entry sets, descending maps and sub maps are all views
+// over the same nodes that only remember their bounds, so none of them copy.
 public class TreeMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V>, Cloneable, java.io.Serializable {
-	public TreeMap() {
+	private static final boolean RED = false;
+	private static final boolean BLACK = true;
+
+	private static final int ITERATE_KEYS = 0;
+	private static final int ITERATE_VALUES = 1;
+	private static final int ITERATE_ENTRIES = 2;
+
+	private static final Object UNBOUNDED = new Object();
+
+	private final Comparator<? super K> comparator;
+	private transient Node<K, V> root;
+	private transient int size;
+	private transient int modCount;
+	private transient SubMap ascendingView;
+	private transient SubMap descendingView;
 
+	public TreeMap() {
+		this.comparator = null;
 	}
 
 	public TreeMap(Comparator<? super K> comparator) {
-
+		this.comparator = comparator;
 	}
 
 	public TreeMap(Map<? extends K, ? extends V> m) {
+		this.comparator = null;
 		putAll(m);
 	}
 
 	public TreeMap(SortedMap<K, ? extends V> m) {
+		this.comparator = m.comparator();
+		putAll(m);
+	}
+
+	@SuppressWarnings("unchecked")
+	final int compare(Object a, Object b) {
+		return (comparator == null) ? ((Comparable<Object>) a).compareTo(b) : ((Comparator<Object>) comparator).compare(a, b);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean containsKey(Object key) {
+		return getNode(key) != null;
+	}
+
+	public boolean containsValue(Object value) {
+		for (Node<K, V> e = firstNode(); e != null; e = successor(e)) {
+			if (Objects.equals(value, e.value)) return true;
+		}
+		return false;
+	}
+
+	public V get(Object key) {
+		Node<K, V> e = getNode(key);
+		return (e != null) ? e.value : null;
+	}
+
+	public Comparator<? super K> comparator() {
+		return comparator;
+	}
+
+	public K firstKey() {
+		return key(firstNode());
+	}
+
+	public K lastKey() {
+		return key(lastNode());
+	}
+
+	public void putAll(Map<? extends K, ? extends V> map) {
+		for (Map.Entry<? extends K, ? extends V> e : map.entrySet()) put(e.getKey(), e.getValue());
+	}
+
+	public V put(K key, V value) {
+		Node<K, V> t = root;
+		if (t == null) {
+			compare(key, key); // type (and null) check
+			root = new Node<K, V>(key, value, null);
+			size = 1;
+			modCount++;
+			return null;
+		}
+		Node<K, V> parent;
+		int c;
+		do {
+			parent = t;
+			c = compare(key, t.key);
+			if (c < 0) {
+				t = t.left;
+			} else if (c > 0) {
+				t = t.right;
+			} else {
+				return t.setValue(value);
+			}
+		} while (t != null);
+		Node<K, V> e = new Node<K, V>(key, value, parent);
+		if (c < 0) {
+			parent.left = e;
+		} else {
+			parent.right = e;
+		}
+		fixAfterInsertion(e);
+		size++;
+		modCount++;
+		return null;
+	}
+
+	public V remove(Object key) {
+		Node<K, V> e = getNode(key);
+		if (e == null) return null;
+		V oldValue = e.value;
+		deleteNode(e);
+		return oldValue;
+	}
+
+	public void clear() {
+		modCount++;
+		size = 0;
+		root = null;
+	}
+
+	public Object clone() {
+		TreeMap<K, V> out = new TreeMap<K, V>(comparator);
+		out.putAll(this);
+		return out;
+	}
+
+	public Entry<K, V> firstEntry() {
+		return exportEntry(firstNode());
+	}
+
+	public Entry<K, V> lastEntry() {
+		return exportEntry(lastNode());
+	}
+
+	public Entry<K, V> pollFirstEntry() {
+		return pollNode(firstNode());
+	}
+
+	public Entry<K, V> pollLastEntry() {
+		return pollNode(lastNode());
+	}
+
+	public Entry<K, V> lowerEntry(K key) {
+		return exportEntry(getNearestNode(key, false, false));
+	}
+
+	public K lowerKey(K key) {
+		return keyOrNull(getNearestNode(key, false, false));
+	}
+
+	public Entry<K, V> floorEntry(K key) {
+		return exportEntry(getNearestNode(key, false, true));
+	}
+
+	public K floorKey(K key) {
+		return keyOrNull(getNearestNode(key, false, true));
+	}
+
+	public Entry<K, V> ceilingEntry(K key) {
+		return exportEntry(getNearestNode(key, true, true));
 	}
 
-	native public int size();
+	public K ceilingKey(K key) {
+		return keyOrNull(getNearestNode(key, true, true));
+	}
 
-	native public boolean containsKey(Object key);
+	public Entry<K, V> higherEntry(K key) {
+		return exportEntry(getNearestNode(key, true, false));
+	}
 
-	native public boolean containsValue(Object value);
+	public K higherKey(K key) {
+		return keyOrNull(getNearestNode(key, true, false));
+	}
 
-	native public V get(Object key);
+	public Set<K> keySet() {
+		return navigableKeySet();
+	}
 
-	native public Comparator<? super K> comparator();
+	public NavigableSet<K> navigableKeySet() {
+		return ascendingView().navigableKeySet();
+	}
 
-	native public K firstKey();
+	public NavigableSet<K> descendingKeySet() {
+		return descendingMap().navigableKeySet();
+	}
 
-	native public K lastKey();
+	public Collection<V> values() {
+		return ascendingView().values();
+	}
 
-	native public void putAll(Map<? extends K, ? extends V> map);
+	public Set<Entry<K, V>> entrySet() {
+		return ascendingView().entrySet();
+	}
 
-	native public V put(K key, V value);
+	public NavigableMap<K, V> descendingMap() {
+		if (descendingView == null) descendingView = new SubMap(true, null, false, true, null, false, true);
+		return descendingView;
+	}
 
-	native public V remove(Object key);
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+		return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+	}
 
-	native public void clear();
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+		return new SubMap(true, null, false, false, toKey, inclusive, false);
+	}
 
-	native public Object clone();
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+		return new SubMap(false, fromKey, inclusive, true, null, false, false);
+	}
 
-	native public Entry<K, V> firstEntry();
+	public SortedMap<K, V> subMap(K fromKey, K toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
 
-	native public Entry<K, V> lastEntry();
+	public SortedMap<K, V> headMap(K toKey) {
+		return headMap(toKey, false);
+	}
 
-	native public Entry<K, V> pollFirstEntry();
+	public SortedMap<K, V> tailMap(K fromKey) {
+		return tailMap(fromKey, true);
+	}
 
-	native public Entry<K, V> pollLastEntry();
+	public boolean replace(K key, V oldValue, V newValue) {
+		Node<K, V> e = getNode(key);
+		if (e == null || !Objects.equals(e.value, oldValue)) return false;
+		e.value = newValue;
+		return true;
+	}
 
-	native public Entry<K, V> lowerEntry(K key);
+	public V replace(K key, V value) {
+		Node<K, V> e = getNode(key);
+		return (e != null) ? e.setValue(value) : null;
+	}
 
-	native public K lowerKey(K key);
+	private SubMap ascendingView() {
+		if (ascendingView == null) ascendingView = new SubMap(true, null, false, true, null, false, false);
+		return ascendingView;
+	}
 
-	native public Entry<K, V> floorEntry(K key);
+	private Entry<K, V> pollNode(Node<K, V> e) {
+		if (e == null) return null;
+		Entry<K, V> out = exportEntry(e);
+		deleteNode(e);
+		return out;
+	}
 
-	native public K floorKey(K key);
+	// Tree navigation
 
-	native public Entry<K, V> ceilingEntry(K key);
+	final Node<K, V> getNode(Object key) {
+		Node<K, V> p = root;
+		while (p != null) {
+			int c = compare(key, p.key);
+			if (c < 0) {
+				p = p.left;
+			} else if (c > 0) {
+				p = p.right;
+			} else {
+				return p;
+			}
+		}
+		return null;
+	}
 
-	native public K ceilingKey(K key);
+	// Closest node above (ceiling/higher) or below (floor/lower) key. An exact match only counts when inclusive.
+	final Node<K, V> getNearestNode(Object key, boolean above, boolean inclusive) {
+		Node<K, V> p = root;
+		Node<K, V> best = null;
+		while (p != null) {
+			int c = compare(key, p.key);
+			if (c == 0 && inclusive) return p;
+			if (above ? c < 0 : c > 0) {
+				best = p;
+				p = above ? p.left : p.right;
+			} else {
+				p = above ? p.right : p.left;
+			}
+		}
+		return best;
+	}
 
-	native public Entry<K, V> higherEntry(K key);
+	final Node<K, V> firstNode() {
+		Node<K, V> p = root;
+		if (p != null) while (p.left != null) p = p.left;
+		return p;
+	}
 
-	native public K higherKey(K key);
+	final Node<K, V> lastNode() {
+		Node<K, V> p = root;
+		if (p != null) while (p.right != null) p = p.right;
+		return p;
+	}
 
-	native public Set<K> keySet();
+	static <K, V> Node<K, V> successor(Node<K, V> t) {
+		if (t.right != null) {
+			Node<K, V> p = t.right;
+			while (p.left != null) p = p.left;
+			return p;
+		}
+		Node<K, V> ch = t;
+		Node<K, V> p = t.parent;
+		while (p != null && ch == p.right) {
+			ch = p;
+			p = p.parent;
+		}
+		return p;
+	}
 
-	native public NavigableSet<K> navigableKeySet();
+	static <K, V> Node<K, V> predecessor(Node<K, V> t) {
+		if (t.left != null) {
+			Node<K, V> p = t.left;
+			while (p.right != null) p = p.right;
+			return p;
+		}
+		Node<K, V> ch = t;
+		Node<K, V> p = t.parent;
+		while (p != null && ch == p.left) {
+			ch = p;
+			p = p.parent;
+		}
+		return p;
+	}
 
-	native public NavigableSet<K> descendingKeySet();
+	static <K> K key(Node<K, ?> e) {
+		if (e == null) throw new NoSuchElementException();
+		return e.key;
+	}
 
-	native public Collection<V> values();
+	static <K> K keyOrNull(Node<K, ?> e) {
+		return (e != null) ? e.key : null;
+	}
+
+	static <K, V> Entry<K, V> exportEntry(Node<K, V> e) {
+		return (e != null) ? new ImmutableEntry<K, V>(e.key, e.value) : null;
+	}
 
-	native public Set<Entry<K, V>> entrySet();
+	static Object select(Node<?, ?> e, int kind) {
+		switch (kind) {
+			case ITERATE_KEYS: return e.key;
+			case ITERATE_VALUES: return e.value;
+			default: return e;
+		}
+	}
 
-	native public NavigableMap<K, V> descendingMap();
+	// Red-black balancing
 
-	native public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive);
+	private static boolean colorOf(Node<?, ?> p) {
+		return (p == null) ? BLACK : p.color;
+	}
+
+	private static <K, V> Node<K, V> parentOf(Node<K, V> p) {
+		return (p == null) ? null : p.parent;
+	}
+
+	private static <K, V> Node<K, V> leftOf(Node<K, V> p) {
+		return (p == null) ? null : p.left;
+	}
+
+	private static <K, V> Node<K, V> rightOf(Node<K, V> p) {
+		return (p == null) ? null : p.right;
+	}
+
+	private static void setColor(Node<?, ?> p, boolean color) {
+		if (p != null) p.color = color;
+	}
+
+	private void rotateLeft(Node<K, V> p) {
+		if (p == null) return;
+		Node<K, V> r = p.right;
+		p.right = r.left;
+		if (r.left != null) r.left.parent = p;
+		r.parent = p.parent;
+		if (p.parent == null) {
+			root = r;
+		} else if (p.parent.left == p) {
+			p.parent.left = r;
+		} else {
+			p.parent.right = r;
+		}
+		r.left = p;
+		p.parent = r;
+	}
+
+	private void rotateRight(Node<K, V> p) {
+		if (p == null) return;
+		Node<K, V> l = p.left;
+		p.left = l.right;
+		if (l.right != null) l.right.parent = p;
+		l.parent = p.parent;
+		if (p.parent == null) {
+			root = l;
+		} else if (p.parent.right == p) {
+			p.parent.right = l;
+		} else {
+			p.parent.left = l;
+		}
+		l.right = p;
+		p.parent = l;
+	}
+
+	private void fixAfterInsertion(Node<K, V> x) {
+		x.color = RED;
+		while (x != null && x != root && x.parent.color == RED) {
+			Node<K, V> grandParent = parentOf(parentOf(x));
+			if (parentOf(x) == leftOf(grandParent)) {
+				Node<K, V> uncle = rightOf(grandParent);
+				if (colorOf(uncle) == RED) {
+					setColor(parentOf(x), BLACK);
+					setColor(uncle, BLACK);
+					setColor(grandParent, RED);
+					x = grandParent;
+				} else {
+					if (x == rightOf(parentOf(x))) {
+						x = parentOf(x);
+						rotateLeft(x);
+					}
+					setColor(parentOf(x), BLACK);
+					setColor(parentOf(parentOf(x)), RED);
+					rotateRight(parentOf(parentOf(x)));
+				}
+			} else {
+				Node<K, V> uncle = leftOf(grandParent);
+				if (colorOf(uncle) == RED) {
+					setColor(parentOf(x), BLACK);
+					setColor(uncle, BLACK);
+					setColor(grandParent, RED);
+					x = grandParent;
+				} else {
+					if (x == leftOf(parentOf(x))) {
+						x = parentOf(x);
+						rotateRight(x);
+					}
+					setColor(parentOf(x), BLACK);
+					setColor(parentOf(parentOf(x)), RED);
+					rotateLeft(parentOf(parentOf(x)));
+				}
+			}
+		}
+		root.color = BLACK;
+	}
+
+	final void deleteNode(Node<K, V> p) {
+		modCount++;
+		size--;
+
+		// A node with two children takes over its successor's contents and the successor (which has
+		// at most one child) is unlinked instead. Iterators rely on this, see NodeIterator.remove.
+		if (p.left != null && p.right != null) {
+			Node<K, V> s = successor(p);
+			p.key = s.key;
+			p.value = s.value;
+			p = s;
+		}
+
+		Node<K, V> replacement = (p.left != null) ? p.left : p.right;
+		if (replacement != null) {
+			replacement.parent = p.parent;
+			if (p.parent == null) {
+				root = replacement;
+			} else if (p == p.parent.left) {
+				p.parent.left = replacement;
+			} else {
+				p.parent.right = replacement;
+			}
+			p.left = p.right = p.parent = null;
+			if (p.color == BLACK) fixAfterDeletion(replacement);
+		} else if (p.parent == null) {
+			root = null;
+		} else {
+			// No children: use the node itself as phantom replacement while rebalancing, then unlink it.
+			if (p.color == BLACK) fixAfterDeletion(p);
+			if (p.parent != null) {
+				if (p == p.parent.left) {
+					p.parent.left = null;
+				} else if (p == p.parent.right) {
+					p.parent.right = null;
+				}
+				p.parent = null;
+			}
+		}
+	}
+
+	private void fixAfterDeletion(Node<K, V> x) {
+		while (x != root && colorOf(x) == BLACK) {
+			if (x == leftOf(parentOf(x))) {
+				Node<K, V> sib = rightOf(parentOf(x));
+				if (colorOf(sib) == RED) {
+					setColor(sib, BLACK);
+					setColor(parentOf(x), RED);
+					rotateLeft(parentOf(x));
+					sib = rightOf(parentOf(x));
+				}
+				if (colorOf(leftOf(sib)) == BLACK && colorOf(rightOf(sib)) == BLACK) {
+					setColor(sib, RED);
+					x = parentOf(x);
+				} else {
+					if (colorOf(rightOf(sib)) == BLACK) {
+						setColor(leftOf(sib), BLACK);
+						setColor(sib, RED);
+						rotateRight(sib);
+						sib = rightOf(parentOf(x));
+					}
+					setColor(sib, colorOf(parentOf(x)));
+					setColor(parentOf(x), BLACK);
+					setColor(rightOf(sib), BLACK);
+					rotateLeft(parentOf(x));
+					x = root;
+				}
+			} else {
+				Node<K, V> sib = leftOf(parentOf(x));
+				if (colorOf(sib) == RED) {
+					setColor(sib, BLACK);
+					setColor(parentOf(x), RED);
+					rotateRight(parentOf(x));
+					sib = leftOf(parentOf(x));
+				}
+				if (colorOf(rightOf(sib)) == BLACK && colorOf(leftOf(sib)) == BLACK) {
+					setColor(sib, RED);
+					x = parentOf(x);
+				} else {
+					if (colorOf(leftOf(sib)) == BLACK) {
+						setColor(rightOf(sib), BLACK);
+						setColor(sib, RED);
+						rotateLeft(sib);
+						sib = leftOf(parentOf(x));
+					}
+					setColor(sib, colorOf(parentOf(x)));
+					setColor(parentOf(x), BLACK);
+					setColor(leftOf(sib), BLACK);
+					rotateRight(parentOf(x));
+					x = root;
+				}
+			}
+		}
+		setColor(x, BLACK);
+	}
 
-	native public NavigableMap<K, V> headMap(K toKey, boolean inclusive);
+	static final class Node<K, V> implements Map.Entry<K, V> {
+		K key;
+		V value;
+		Node<K, V> left;
+		Node<K, V> right;
+		Node<K, V> parent;
+		boolean color = BLACK;
 
-	native public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive);
+		Node(K key, V value, Node<K, V> parent) {
+			this.key = key;
+			this.value = value;
+			this.parent = parent;
+		}
 
-	native public SortedMap<K, V> subMap(K fromKey, K toKey);
+		public K getKey() {
+			return key;
+		}
 
-	native public SortedMap<K, V> headMap(K toKey);
+		public V getValue() {
+			return value;
+		}
 
-	native public SortedMap<K, V> tailMap(K fromKey);
+		public V setValue(V value) {
+			V oldValue = this.value;
+			this.value = value;
+			return oldValue;
+		}
 
-	native public boolean replace(K key, V oldValue, V newValue);
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+		}
 
-	native public V replace(K key, V value);
+		public int hashCode() {
+			return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+
+	static final class ImmutableEntry<K, V> extends SimpleEntry<K, V> {
+		ImmutableEntry(K key, V value) {
+			super(key, value);
+		}
+
+		public V setValue(V value) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	static final class ReverseComparator<T> implements Comparator<T>, java.io.Serializable {
+		private final Comparator<T> cmp;
+
+		ReverseComparator(Comparator<T> cmp) {
+			this.cmp = cmp;
+		}
+
+		@SuppressWarnings("unchecked")
+		public int compare(T a, T b) {
+			return (cmp == null) ? ((Comparable<T>) b).compareTo(a) : cmp.compare(b, a);
+		}
+	}
+
+	final class NodeIterator<E> implements Iterator<E> {
+		private final int kind;
+		private final boolean descending;
+		// Compared by identity: deleteNode may move a key to another node, but never changes which key ends the range.
+		private final Object fenceKey;
+		private Node<K, V> next;
+		private Node<K, V> lastReturned;
+		private int expectedModCount = modCount;
+
+		NodeIterator(int kind, Node<K, V> first, Node<K, V> fence, boolean descending) {
+			this.kind = kind;
+			this.next = first;
+			this.fenceKey = (fence != null) ? fence.key : UNBOUNDED;
+			this.descending = descending;
+		}
+
+		public boolean hasNext() {
+			return next != null && next.key != fenceKey;
+		}
+
+		@SuppressWarnings("unchecked")
+		public E next() {
+			Node<K, V> e = next;
+			if (e == null || e.key == fenceKey) throw new NoSuchElementException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			next = descending ? predecessor(e) : successor(e);
+			lastReturned = e;
+			return (E) select(e, kind);
+		}
+
+		public void remove() {
+			if (lastReturned == null) throw new IllegalStateException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			// The successor's contents are moved into lastReturned, so that is where ascending iteration resumes.
+			if (!descending && lastReturned.left != null && lastReturned.right != null) next = lastReturned;
+			deleteNode(lastReturned);
+			expectedModCount = modCount;
+			lastReturned = null;
+		}
+	}
+
+	// A range [lo, hi] of the tree, optionally walked backwards. Bounds are absolute (in comparator order)
+	// regardless of descending. The whole map is the view with neither bound.
+	final class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V>, java.io.Serializable {
+		private final boolean fromStart;
+		private final K lo;
+		private final boolean loInclusive;
+		private final boolean toEnd;
+		private final K hi;
+		private final boolean hiInclusive;
+		private final boolean descending;
+		private transient KeySet keySetView;
+		private transient Values valuesView;
+		private transient EntrySet entrySetView;
+		private transient SubMap descendingMapView;
+
+		SubMap(boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi, boolean hiInclusive, boolean descending) {
+			if (!fromStart && !toEnd) {
+				if (compare(lo, hi) > 0) throw new IllegalArgumentException("fromKey > toKey");
+			} else {
+				if (!fromStart) compare(lo, lo); // type check
+				if (!toEnd) compare(hi, hi);
+			}
+			this.fromStart = fromStart;
+			this.lo = lo;
+			this.loInclusive = loInclusive;
+			this.toEnd = toEnd;
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			this.descending = descending;
+		}
+
+		boolean tooLow(Object key) {
+			if (fromStart) return false;
+			int c = compare(key, lo);
+			return c < 0 || (c == 0 && !loInclusive);
+		}
+
+		boolean tooHigh(Object key) {
+			if (toEnd) return false;
+			int c = compare(key, hi);
+			return c > 0 || (c == 0 && !hiInclusive);
+		}
+
+		boolean inRange(Object key) {
+			return !tooLow(key) && !tooHigh(key);
+		}
+
+		// Bounds of a nested view may touch an exclusive bound of this one when they are exclusive too.
+		boolean inRange(Object key, boolean inclusive) {
+			if (inclusive) return inRange(key);
+			return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(hi, key) >= 0);
+		}
+
+		Node<K, V> absLowest() {
+			Node<K, V> e = fromStart ? firstNode() : getNearestNode(lo, true, loInclusive);
+			return (e == null || tooHigh(e.key)) ? null : e;
+		}
+
+		Node<K, V> absHighest() {
+			Node<K, V> e = toEnd ? lastNode() : getNearestNode(hi, false, hiInclusive);
+			return (e == null || tooLow(e.key)) ? null : e;
+		}
+
+		Node<K, V> absNearest(Object key, boolean above, boolean inclusive) {
+			if (above ? tooLow(key) : tooHigh(key)) return above ? absLowest() : absHighest();
+			Node<K, V> e = getNearestNode(key, above, inclusive);
+			return (e == null || !inRange(e.key)) ? null : e;
+		}
+
+		// First nodes outside the range, where iteration stops.
+		Node<K, V> absLowFence() {
+			return fromStart ? null : getNearestNode(lo, false, !loInclusive);
+		}
+
+		Node<K, V> absHighFence() {
+			return toEnd ? null : getNearestNode(hi, true, !hiInclusive);
+		}
+
+		Node<K, V> lowest() {
+			return descending ? absHighest() : absLowest();
+		}
+
+		Node<K, V> highest() {
+			return descending ? absLowest() : absHighest();
+		}
+
+		Node<K, V> nearest(Object key, boolean above, boolean inclusive) {
+			return absNearest(key, above != descending, inclusive);
+		}
+
+		<E> Iterator<E> iterator(int kind, boolean reverse) {
+			if (descending != reverse) return new NodeIterator<E>(kind, absHighest(), absLowFence(), true);
+			return new NodeIterator<E>(kind, absLowest(), absHighFence(), false);
+		}
+
+		public int size() {
+			if (fromStart && toEnd) return TreeMap.this.size;
+			int count = 0;
+			for (Iterator<K> it = iterator(ITERATE_KEYS, false); it.hasNext(); it.next()) count++;
+			return count;
+		}
+
+		public boolean isEmpty() {
+			return (fromStart && toEnd) ? TreeMap.this.size == 0 : absLowest() == null;
+		}
+
+		public boolean containsKey(Object key) {
+			return inRange(key) && getNode(key) != null;
+		}
+
+		public boolean containsValue(Object value) {
+			for (Iterator<V> it = iterator(ITERATE_VALUES, false); it.hasNext(); ) {
+				if (Objects.equals(value, it.next())) return true;
+			}
+			return false;
+		}
+
+		public V get(Object key) {
+			return inRange(key) ? TreeMap.this.get(key) : null;
+		}
+
+		public V put(K key, V value) {
+			if (!inRange(key)) throw new IllegalArgumentException("key out of range");
+			return TreeMap.this.put(key, value);
+		}
+
+		public V remove(Object key) {
+			return inRange(key) ? TreeMap.this.remove(key) : null;
+		}
+
+		public void clear() {
+			if (fromStart && toEnd) {
+				TreeMap.this.clear();
+				return;
+			}
+			for (Iterator<K> it = iterator(ITERATE_KEYS, false); it.hasNext(); ) {
+				it.next();
+				it.remove();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		public Comparator<? super K> comparator() {
+			return descending ? new ReverseComparator<K>((Comparator<K>) comparator) : comparator;
+		}
+
+		public K firstKey() {
+			return key(lowest());
+		}
+
+		public K lastKey() {
+			return key(highest());
+		}
+
+		public Entry<K, V> firstEntry() {
+			return exportEntry(lowest());
+		}
+
+		public Entry<K, V> lastEntry() {
+			return exportEntry(highest());
+		}
+
+		public Entry<K, V> pollFirstEntry() {
+			return pollNode(lowest());
+		}
+
+		public Entry<K, V> pollLastEntry() {
+			return pollNode(highest());
+		}
+
+		public Entry<K, V> lowerEntry(K key) {
+			return exportEntry(nearest(key, false, false));
+		}
+
+		public K lowerKey(K key) {
+			return keyOrNull(nearest(key, false, false));
+		}
+
+		public Entry<K, V> floorEntry(K key) {
+			return exportEntry(nearest(key, false, true));
+		}
+
+		public K floorKey(K key) {
+			return keyOrNull(nearest(key, false, true));
+		}
+
+		public Entry<K, V> ceilingEntry(K key) {
+			return exportEntry(nearest(key, true, true));
+		}
+
+		public K ceilingKey(K key) {
+			return keyOrNull(nearest(key, true, true));
+		}
+
+		public Entry<K, V> higherEntry(K key) {
+			return exportEntry(nearest(key, true, false));
+		}
+
+		public K higherKey(K key) {
+			return keyOrNull(nearest(key, true, false));
+		}
+
+		public Set<K> keySet() {
+			return navigableKeySet();
+		}
+
+		public NavigableSet<K> navigableKeySet() {
+			if (keySetView == null) keySetView = new KeySet();
+			return keySetView;
+		}
+
+		public NavigableSet<K> descendingKeySet() {
+			return descendingMap().navigableKeySet();
+		}
+
+		public Collection<V> values() {
+			if (valuesView == null) valuesView = new Values();
+			return valuesView;
+		}
+
+		public Set<Entry<K, V>> entrySet() {
+			if (entrySetView == null) entrySetView = new EntrySet();
+			return entrySetView;
+		}
+
+		public NavigableMap<K, V> descendingMap() {
+			if (descendingMapView == null) descendingMapView = new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+			return descendingMapView;
+		}
+
+		public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+			if (!inRange(fromKey, fromInclusive)) throw new IllegalArgumentException("fromKey out of range");
+			if (!inRange(toKey, toInclusive)) throw new IllegalArgumentException("toKey out of range");
+			if (descending) return new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true);
+			return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+		}
+
+		public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+			if (!inRange(toKey, inclusive)) throw new IllegalArgumentException("toKey out of range");
+			if (descending) return new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, true);
+			return new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+		}
+
+		public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+			if (!inRange(fromKey, inclusive)) throw new IllegalArgumentException("fromKey out of range");
+			if (descending) return new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, true);
+			return new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+		}
+
+		public SortedMap<K, V> subMap(K fromKey, K toKey) {
+			return subMap(fromKey, true, toKey, false);
+		}
+
+		public SortedMap<K, V> headMap(K toKey) {
+			return headMap(toKey, false);
+		}
+
+		public SortedMap<K, V> tailMap(K fromKey) {
+			return tailMap(fromKey, true);
+		}
+
+		final class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+			public Iterator<K> iterator() {
+				return SubMap.this.iterator(ITERATE_KEYS, false);
+			}
+
+			public Iterator<K> descendingIterator() {
+				return SubMap.this.iterator(ITERATE_KEYS, true);
+			}
+
+			public int size() {
+				return SubMap.this.size();
+			}
+
+			public boolean isEmpty() {
+				return SubMap.this.isEmpty();
+			}
+
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+
+			public boolean remove(Object o) {
+				if (!inRange(o)) return false;
+				Node<K, V> e = getNode(o);
+				if (e == null) return false;
+				deleteNode(e);
+				return true;
+			}
+
+			public void clear() {
+				SubMap.this.clear();
+			}
+
+			public Comparator<? super K> comparator() {
+				return SubMap.this.comparator();
+			}
+
+			public K first() {
+				return firstKey();
+			}
+
+			public K last() {
+				return lastKey();
+			}
+
+			public K lower(K e) {
+				return lowerKey(e);
+			}
+
+			public K floor(K e) {
+				return floorKey(e);
+			}
+
+			public K ceiling(K e) {
+				return ceilingKey(e);
+			}
+
+			public K higher(K e) {
+				return higherKey(e);
+			}
+
+			public K pollFirst() {
+				Entry<K, V> e = pollFirstEntry();
+				return (e != null) ? e.getKey() : null;
+			}
+
+			public K pollLast() {
+				Entry<K, V> e = pollLastEntry();
+				return (e != null) ? e.getKey() : null;
+			}
+
+			public NavigableSet<K> descendingSet() {
+				return descendingMap().navigableKeySet();
+			}
+
+			public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+				return subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+			}
+
+			public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+				return headMap(toElement, inclusive).navigableKeySet();
+			}
+
+			public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+				return tailMap(fromElement, inclusive).navigableKeySet();
+			}
+
+			public SortedSet<K> subSet(K fromElement, K toElement) {
+				return subSet(fromElement, true, toElement, false);
+			}
+
+			public SortedSet<K> headSet(K toElement) {
+				return headSet(toElement, false);
+			}
+
+			public SortedSet<K> tailSet(K fromElement) {
+				return tailSet(fromElement, true);
+			}
+		}
+
+		final class Values extends AbstractCollection<V> {
+			public Iterator<V> iterator() {
+				return SubMap.this.iterator(ITERATE_VALUES, false);
+			}
+
+			public int size() {
+				return SubMap.this.size();
+			}
+
+			public boolean isEmpty() {
+				return SubMap.this.isEmpty();
+			}
+
+			public boolean contains(Object o) {
+				return containsValue(o);
+			}
+
+			public void clear() {
+				SubMap.this.clear();
+			}
+		}
+
+		final class EntrySet extends AbstractSet<Entry<K, V>> {
+			public Iterator<Entry<K, V>> iterator() {
+				return SubMap.this.iterator(ITERATE_ENTRIES, false);
+			}
+
+			public int size() {
+				return SubMap.this.size();
+			}
+
+			public boolean isEmpty() {
+				return SubMap.this.isEmpty();
+			}
+
+			public boolean contains(Object o) {
+				return findNode(o) != null;
+			}
+
+			public boolean remove(Object o) {
+				Node<K, V> e = findNode(o);
+				if (e == null) return false;
+				deleteNode(e);
+				return true;
+			}
+
+			public void clear() {
+				SubMap.this.clear();
+			}
+
+			private Node<K, V> findNode(Object o) {
+				if (!(o instanceof Map.Entry)) return null;
+				Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+				Object key = entry.getKey();
+				if (!inRange(key)) return null;
+				Node<K, V> e = getNode(key);
+				return (e != null && Objects.equals(e.value, entry.getValue())) ? e : null;
+			}
+		}
+	}
 }
@@ -16,88 +16,133 @@
 
 package java.util;
 
+// Backed by the keys of a TreeMap (or one of its sub map views for subSet/headSet/tailSet/descendingSet).
 public class TreeSet<E> extends AbstractSet<E> implements NavigableSet<E>, Cloneable, java.io.Serializable {
-	ArrayList<E> items = new ArrayList<E>();
+	private static final Object PRESENT = new Object();
+
+	private transient NavigableMap<E, Object> m;
 
 	TreeSet(NavigableMap<E, Object> m) {
+		this.m = m;
 	}
 
 	public TreeSet() {
+		this(new TreeMap<E, Object>());
 	}
 
 	public TreeSet(Comparator<? super E> comparator) {
+		this(new TreeMap<E, Object>(comparator));
 	}
 
 	public TreeSet(Collection<? extends E> c) {
+		this();
+		addAll(c);
 	}
 
 	public TreeSet(SortedSet<E> s) {
+		this(s.comparator());
+		addAll(s);
 	}
 
-	native public Iterator<E> iterator();
+	public Iterator<E> iterator() {
+		return m.navigableKeySet().iterator();
+	}
 
-	native public Iterator<E> descendingIterator();
+	public Iterator<E> descendingIterator() {
+		return m.descendingKeySet().iterator();
+	}
 
-	native public NavigableSet<E> descendingSet();
+	public NavigableSet<E> descendingSet() {
+		return new TreeSet<E>(m.descendingMap());
+	}
 
 	public int size() {
-		return items.size();
+		return m.size();
+	}
+
+	public boolean isEmpty() {
+		return m.isEmpty();
 	}
 
 	public boolean contains(Object o) {
-		return items.contains(o);
+		return m.containsKey(o);
 	}
 
 	public boolean add(E e) {
-		if (!contains(e)) {
-			items.add(e);
-			return true;
-		} else{
-			return false;
-		}
+		return m.put(e, PRESENT) == null;
 	}
 
 	public boolean remove(Object o) {
-		return items.remove(o);
+		return m.remove(o) == PRESENT;
 	}
 
 	public void clear() {
-		items.clear();
+		m.clear();
 	}
 
-	native public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive);
+	public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+		return new TreeSet<E>(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+	}
 
-	native public NavigableSet<E> headSet(E toElement, boolean inclusive);
+	public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+		return new TreeSet<E>(m.headMap(toElement, inclusive));
+	}
 
-	native public NavigableSet<E> tailSet(E fromElement, boolean inclusive);
+	public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+		return new TreeSet<E>(m.tailMap(fromElement, inclusive));
+	}
 
-	native public SortedSet<E> subSet(E fromElement, E toElement);
+	public SortedSet<E> subSet(E fromElement, E toElement) {
+		return subSet(fromElement, true, toElement, false);
+	}
 
-	native public SortedSet<E> headSet(E toElement);
+	public SortedSet<E> headSet(E toElement) {
+		return headSet(toElement, false);
+	}
 
-	native public SortedSet<E> tailSet(E fromElement);
+	public SortedSet<E> tailSet(E fromElement) {
+		return tailSet(fromElement, true);
+	}
 
-	native public Comparator<? super E> comparator();
+	public Comparator<? super E> comparator() {
+		return m.comparator();
+	}
 
 	public E first() {
-		return isEmpty() ? null : items.get(0);
+		return m.firstKey();
 	}
 
 	public E last() {
-		return isEmpty() ? null : items.get(size() - 1);
+		return m.lastKey();
 	}
 
-	native public E lower(E e);
+	public E lower(E e) {
+		return m.lowerKey(e);
+	}
 
-	native public E floor(E e);
+	public E floor(E e) {
+		return m.floorKey(e);
+	}
 
-	native public E ceiling(E e);
+	public E ceiling(E e) {
+		return m.ceilingKey(e);
+	}
 
-	native public E higher(E e);
+	public E higher(E e) {
+		return m.higherKey(e);
+	}
 
-	native public E pollFirst();
+	public E pollFirst() {
+		Map.Entry<E, ?> e = m.pollFirstEntry();
+		return (e != null) ? e.getKey() : null;
+	}
 
-	native public E pollLast();
+	public E pollLast() {
+		Map.Entry<E, ?> e = m.pollLastEntry();
+		return (e != null) ? e.getKey() : null;
+	}
 
-	native public Object clone();
+	public Object clone() {
+		return new TreeSet<E>(new TreeMap<E, Object>(m));
+	}
 }
@@ -16,67 +16,34 @@
 
 package java.util.regex;
 
-import jtransc.annotation.haxe.HaxeAddMembers;
-import jtransc.annotation.haxe.HaxeMethodBody;
-
-@HaxeAddMembers({
-        "public var _ereg:EReg;",
-        "public var _matches:Bool;",
-        "public var _offset:Int = 0;",
-        "public var _matchPos:Int = 0;",
-        "public var _matchLen:Int = 0;",
-        "public function _find() {\n" +
-                "\tvar r = this._ereg;\n" +
-                "\tthis._matches = r.matchSub(this.text._str, this._offset);\n" +
-                "\tif (this._matches) {\n" +
-                "\t\tvar rpos = r.matchedPos();\n" +
-                "\t\tthis._matchPos = rpos.pos;\n" +
-                "\t\tthis._matchLen = rpos.len;\n" +
-                "\t\tthis._offset = rpos.pos + rpos.len;\n" +
-                "\t} else {\n" +
-                "\t\tthis._matchPos = 0;\n" +
-                "\t\tthis._matchLen = 0;\n" +
-                "\t}\n" +
-                "\treturn this._matches;\n" +
-                "}"
-        //public static final int UNIX_LINES = 0x01;
-        //public static final int CASE_INSENSITIVE = 0x02;
-        //public static final int COMMENTS = 0x04;
-        //public static final int MULTILINE = 0x08;
-        //public static final int LITERAL = 0x10;
-        //public static final int DOTALL = 0x20;
-        //public static final int UNICODE_CASE = 0x40;
-        //public static final int CANON_EQ = 0x80;
-        //public static final int UNICODE_CHARACTER_CLASS = 0x100;
-        //i case insensitive matching
-        //g global replace or split, see below
-        //m multiline matching, ^ and $ represent the beginning and end of a line
-        //s the dot . will also match newlines (Neko, C++, PHP, Flash and Java targets only)
-        //u use UTF-8 matching (Neko and C++ targets only)
-        })
+import java.util.Arrays;
+
 public final class Matcher implements MatchResult {
 	private Pattern parent;
-	private String pattern;
-	private int flags;
 	private String text;
+	private RegexVm vm;
+
+	// Start and end of each group of the last match, -1 for groups that didn't participate
+	private int[] groups;
+	// Start of the last match (-1 when there is no match) and its end
+	private int first = -1;
+	private int last = 0;
+	private int oldLast = -1;
+	private int lastAppendPosition = 0;
+
+	private int from;
+	private int to;
+	private boolean transparentBounds = false;
+	private boolean anchoringBounds = true;
+	private boolean hitEnd;
+	private boolean requireEnd;
 
 	Matcher(Pattern parent, CharSequence text) {
 		this.parent = parent;
-		this.pattern = parent.pattern();
-		this.flags = parent.flags();
 		this.text = text.toString();
-		_init();
-	}
-
-    @HaxeMethodBody(
-            "var opts = '';\n" +
-            "if ((this.flags & 0x02) != 0) opts += 'i';\n" +
-            "if ((this.flags & 0x08) != 0) opts += 'm';\n" +
-            //"if ((this.flags & 0x20) != 0) opts += 's';\n" + // dotall default on javascript
-            "this._ereg = new EReg(this.pattern._str, opts);\n" +
-            "this._matches = this._ereg.match(this.text._str);"
-    )
-	private void _init() {
+		this.vm = new RegexVm(parent.program, this.text);
+		this.groups = new int[(parent.program.groupCount + 1) * 2];
+		reset();
 	}
 
 	public Pattern pattern() {
@@ -84,87 +51,363 @@ public final class Matcher implements MatchResult {
 	}
 
 	public MatchResult toMatchResult() {
-		return this;
+		return new Result(text, (first >= 0) ? Arrays.copyOf(groups, groups.length) : null);
 	}
 
-	native public Matcher usePattern(Pattern newPattern);
+	public Matcher usePattern(Pattern newPattern) {
+		if (newPattern == null) throw new IllegalArgumentException("Pattern cannot be null");
+		this.parent = newPattern;
+		this.vm = new RegexVm(newPattern.program, text);
+		this.groups = new int[(newPattern.program.groupCount + 1) * 2];
+		Arrays.fill(groups, -1);
+		return this;
+	}
 
-	native public Matcher reset();
+	public Matcher reset() {
+		first = -1;
+		last = 0;
+		oldLast = -1;
+		Arrays.fill(groups, -1);
+		lastAppendPosition = 0;
+		from = 0;
+		to = text.length();
+		return this;
+	}
 
 	public Matcher reset(CharSequence input) {
 		this.text = input.toString();
-		this.reset();
-		return this;
+		this.vm = new RegexVm(parent.program, this.text);
+		return reset();
 	}
 
-    @HaxeMethodBody("return this._matchPos;")
-	native public int start();
+	public int start() {
+		if (first < 0) throw new IllegalStateException("No match available");
+		return first;
+	}
 
 	public int start(int group) {
-		if (group == 0) return start();
-		throw new Error("No implemented Matcher.start(int group) with group != 0");
+		if (first < 0) throw new IllegalStateException("No match available");
+		if (group < 0 || group > groupCount()) throw new IndexOutOfBoundsException("No group " + group);
+		return groups[group * 2];
 	}
 
-	native public int start(String name);
+	public int start(String name) {
+		return groups[groupIndex(name) * 2];
+	}
 
-    @HaxeMethodBody("return this._matchPos + this._matchLen;")
-	native public int end();
+	public int end() {
+		if (first < 0) throw new IllegalStateException("No match available");
+		return last;
+	}
 
 	public int end(int group) {
-		if (group == 0) return end();
-		throw new Error("No implemented Matcher.end(int group) with group != 0");
+		if (first < 0) throw new IllegalStateException("No match available");
+		if (group < 0 || group > groupCount()) throw new IndexOutOfBoundsException("No group " + group);
+		return groups[group * 2 + 1];
+	}
+
+	public int end(String name) {
+		return groups[groupIndex(name) * 2 + 1];
+	}
+
+	public String group() {
+		return group(0);
+	}
+
+	public String group(int group) {
+		if (first < 0) throw new IllegalStateException("No match found");
+		if (group < 0 || group > groupCount()) throw new IndexOutOfBoundsException("No group " + group);
+		if (groups[group * 2] == -1 || groups[group * 2 + 1] == -1) return null;
+		return text.substring(groups[group * 2], groups[group * 2 + 1]);
+	}
+
+	public String group(String name) {
+		int group = groupIndex(name);
+		if (groups[group * 2] == -1 || groups[group * 2 + 1] == -1) return null;
+		return text.substring(groups[group * 2], groups[group * 2 + 1]);
+	}
+
+	private int groupIndex(String name) {
+		if (name == null) throw new NullPointerException("Group name");
+		if (first < 0) throw new IllegalStateException("No match found");
+		Integer group = parent.program.groupNames.get(name);
+		if (group == null) throw new IllegalArgumentException("No group with name <" + name + ">");
+		return group;
+	}
+
+	public int groupCount() {
+		return parent.program.groupCount;
+	}
+
+	public boolean matches() {
+		return match(from, true);
+	}
+
+	public boolean find() {
+		int nextSearchIndex = last;
+		// An empty match is followed by a search one char later
+		if (nextSearchIndex == first) nextSearchIndex++;
+		if (nextSearchIndex < from) nextSearchIndex = from;
+		if (nextSearchIndex > to) {
+			Arrays.fill(groups, -1);
+			return false;
+		}
+		return search(nextSearchIndex);
 	}
 
-	native public int end(String name);
+	public boolean find(int start) {
+		if (start < 0 || start > text.length()) throw new IndexOutOfBoundsException("Illegal start index");
+		reset();
+		return search(start);
+	}
 
-    @HaxeMethodBody("return HaxeNatives.str(this._ereg.matched(0));")
-	native public String group();
+	public boolean lookingAt() {
+		return match(from, false);
+	}
 
-    @HaxeMethodBody("return HaxeNatives.str(this._ereg.matched(p0));")
-	native public String group(int group);
+	private RegexVm prepare() {
+		RegexVm vm = this.vm;
+		vm.from = from;
+		vm.to = to;
+		vm.anchorFrom = anchoringBounds ? from : 0;
+		vm.anchorTo = anchoringBounds ? to : text.length();
+		vm.lookFrom = transparentBounds ? 0 : from;
+		vm.lookTo = transparentBounds ? text.length() : to;
+		vm.hitEnd = false;
+		vm.requireEnd = false;
+		return vm;
+	}
 
-	native public String group(String name);
+	private boolean search(int start) {
+		RegexVm vm = prepare();
+		if (start < 0) start = 0;
+		if (oldLast < 0) oldLast = start;
+		vm.lastMatch = oldLast;
+		boolean result = vm.search(start);
+		return done(vm, result);
+	}
 
-	native public int groupCount();
+	private boolean match(int start, boolean whole) {
+		RegexVm vm = prepare();
+		if (oldLast < 0) oldLast = start;
+		vm.lastMatch = oldLast;
+		boolean result = vm.match(start, whole ? to : -1);
+		return done(vm, result);
+	}
 
-    @HaxeMethodBody("return this._matches;")
-	native public boolean matches();
+	private boolean done(RegexVm vm, boolean result) {
+		hitEnd = vm.hitEnd;
+		requireEnd = vm.requireEnd;
+		if (result) {
+			System.arraycopy(vm.registers, 0, groups, 0, groups.length);
+			first = groups[0];
+			last = groups[1];
+		} else {
+			Arrays.fill(groups, -1);
+			first = -1;
+		}
+		oldLast = last;
+		return result;
+	}
 
-    @HaxeMethodBody("return _find();")
-	native public boolean find();
+	public static String quoteReplacement(String s) {
+		if (s.indexOf('\\') == -1 && s.indexOf('$') == -1) return s;
+		StringBuilder sb = new StringBuilder();
+		for (int n = 0; n < s.length(); n++) {
+			char c = s.charAt(n);
+			if (c == '\\' || c == '$') sb.append('\\');
+			sb.append(c);
+		}
+		return sb.toString();
+	}
 
-    @HaxeMethodBody("this._offset = p0; return _find();")
-	native public boolean find(int start);
+	public Matcher appendReplacement(StringBuffer sb, String replacement) {
+		StringBuilder out = new StringBuilder();
+		appendReplacement(out, replacement);
+		sb.append(out);
+		return this;
+	}
 
-	native public boolean lookingAt();
+	private void appendReplacement(StringBuilder sb, String replacement) {
+		if (first < 0) throw new IllegalStateException("No match available");
+		int start = sb.length();
+		sb.append(text, lastAppendPosition, first);
+		try {
+			appendExpandedReplacement(sb, replacement);
+		} catch (RuntimeException e) {
+			sb.setLength(start);
+			throw e;
+		}
+		lastAppendPosition = last;
+	}
 
-	native public static String quoteReplacement(String s);
+	// Appends the replacement with $n and ${name} replaced by the groups, and \ escaping the next char
+	private void appendExpandedReplacement(StringBuilder result, String replacement) {
+		int cursor = 0;
+		while (cursor < replacement.length()) {
+			char nextChar = replacement.charAt(cursor);
+			if (nextChar == '\\') {
+				cursor++;
+				if (cursor == replacement.length()) throw new IllegalArgumentException("character to be escaped is missing");
+				result.append(replacement.charAt(cursor++));
+			} else if (nextChar == '$') {
+				cursor++;
+				if (cursor == replacement.length()) throw new IllegalArgumentException("Illegal group reference: group index is missing");
+				nextChar = replacement.charAt(cursor);
+				int refNum;
+				if (nextChar == '{') {
+					cursor++;
+					int nameStart = cursor;
+					while (cursor < replacement.length() && ASCII.isAlnum(replacement.charAt(cursor))) cursor++;
+					String name = replacement.substring(nameStart, cursor);
+					if (name.isEmpty()) throw new IllegalArgumentException("named capturing group has 0 length name");
+					if (cursor == replacement.length() || replacement.charAt(cursor) != '}') throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+					if (ASCII.isDigit(name.charAt(0))) throw new IllegalArgumentException("capturing group name {" + name + "} starts with digit character");
+					Integer group = parent.program.groupNames.get(name);
+					if (group == null) throw new IllegalArgumentException("No group with name {" + name + "}");
+					refNum = group;
+					cursor++;
+				} else {
+					refNum = nextChar - '0';
+					if (refNum < 0 || refNum > 9) throw new IllegalArgumentException("Illegal group reference");
+					cursor++;
+					// More digits only while the group exists
+					while (cursor < replacement.length()) {
+						int nextDigit = replacement.charAt(cursor) - '0';
+						if (nextDigit < 0 || nextDigit > 9) break;
+						int newRefNum = refNum * 10 + nextDigit;
+						if (groupCount() < newRefNum) break;
+						refNum = newRefNum;
+						cursor++;
+					}
+				}
+				if (start(refNum) != -1 && end(refNum) != -1) result.append(text, start(refNum), end(refNum));
+			} else {
+				result.append(nextChar);
+				cursor++;
+			}
+		}
+	}
 
-	native public Matcher appendReplacement(StringBuffer sb, String replacement);
+	public StringBuffer appendTail(StringBuffer sb) {
+		sb.append(text, lastAppendPosition, text.length());
+		return sb;
+	}
 
-	native public StringBuffer appendTail(StringBuffer sb);
+	public String replaceAll(String replacement) {
+		reset();
+		if (!find()) return text;
+		StringBuilder sb = new StringBuilder();
+		do {
+			appendReplacement(sb, replacement);
+		} while (find());
+		sb.append(text, lastAppendPosition, text.length());
+		return sb.toString();
+	}
 
-	native public String replaceAll(String replacement);
+	public String replaceFirst(String replacement) {
+		if (replacement == null) throw new NullPointerException("replacement");
+		reset();
+		if (!find()) return text;
+		StringBuilder sb = new StringBuilder();
+		appendReplacement(sb, replacement);
+		sb.append(text, lastAppendPosition, text.length());
+		return sb.toString();
+	}
 
-	native public String replaceFirst(String replacement);
+	public Matcher region(int start, int end) {
+		if (start < 0 || start > text.length()) throw new IndexOutOfBoundsException("start");
+		if (end < 0 || end > text.length()) throw new IndexOutOfBoundsException("end");
+		if (start > end) throw new IndexOutOfBoundsException("start > end");
+		reset();
+		from = start;
+		to = end;
+		return this;
+	}
 
-	native public Matcher region(int start, int end);
+	public int regionStart() {
+		return from;
+	}
 
-	native public int regionStart();
+	public int regionEnd() {
+		return to;
+	}
 
-	native public int regionEnd();
+	public boolean hasTransparentBounds() {
+		return transparentBounds;
+	}
 
-	native public boolean hasTransparentBounds();
+	public Matcher useTransparentBounds(boolean b) {
+		transparentBounds = b;
+		return this;
+	}
 
-	native public Matcher useTransparentBounds(boolean b);
+	public boolean hasAnchoringBounds() {
+		return anchoringBounds;
+	}
 
-	native public boolean hasAnchoringBounds();
+	public Matcher useAnchoringBounds(boolean b) {
+		anchoringBounds = b;
+		return this;
+	}
 
-	native public Matcher useAnchoringBounds(boolean b);
+	public String toString() {
+		return "java.util.regex.Matcher[pattern=" + pattern() + " region=" + regionStart() + "," + regionEnd() + " lastmatch=" + ((first >= 0 && group() != null) ? group() : "") + "]";
+	}
 
-	native public String toString();
+	public boolean hitEnd() {
+		return hitEnd;
+	}
 
-	native public boolean hitEnd();
+	public boolean requireEnd() {
+		return requireEnd;
+	}
 
-	native public boolean requireEnd();
+	// Snapshot of a match, unaffected by later operations on the matcher
+	static private final class Result implements MatchResult {
+		private final String text;
+		private final int[] groups;
+
+		Result(String text, int[] groups) {
+			this.text = text;
+			this.groups = groups;
+		}
+
+		private void check(int group) {
+			if (groups == null) throw new IllegalStateException("No match found");
+			if (group < 0 || group > groupCount()) throw new IndexOutOfBoundsException("No group " + group);
+		}
+
+		public int start() {
+			return start(0);
+		}
+
+		public int start(int group) {
+			check(group);
+			return groups[group * 2];
+		}
+
+		public int end() {
+			return end(0);
+		}
+
+		public int end(int group) {
+			check(group);
+			return groups[group * 2 + 1];
+		}
+
+		public String group() {
+			return group(0);
+		}
+
+		public String group(int group) {
+			check(group);
+			if (groups[group * 2] == -1 || groups[group * 2 + 1] == -1) return null;
+			return text.substring(groups[group * 2], groups[group * 2 + 1]);
+		}
+
+		public int groupCount() {
+			return (groups == null) ? 0 : groups.length / 2 - 1;
+		}
+	}
 }
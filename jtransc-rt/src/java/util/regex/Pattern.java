@@ -16,7 +16,11 @@
 
 package java.util.regex;
 
+import jtransc.internal.IntJTranscStrings;
+
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public final class Pattern implements java.io.Serializable {
 	public static final int UNIX_LINES = 0x01;
@@ -29,20 +33,46 @@ public final class Pattern implements java.io.Serializable {
 	public static final int CANON_EQ = 0x80;
 	public static final int UNICODE_CHARACTER_CLASS = 0x100;
 
+	private static final int CACHE_SIZE = 64;
+
+	// Recently compiled patterns, least recently used first. Keys are the flags (as a char) followed by the regex.
+	private static final LinkedHashMap<String, Pattern> cache = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
 	public static Pattern compile(String regex) {
-		return new Pattern(regex, 0);
+		return compile(regex, 0);
 	}
 
 	public static Pattern compile(String regex, int flags) {
-		return new Pattern(regex, flags);
+		String key = (char) flags + regex;
+		synchronized (cache) {
+			Pattern out = cache.get(key);
+			if (out == null) {
+				out = new Pattern(regex, flags);
+				cache.put(key, out);
+			}
+			return out;
+		}
 	}
 
 	private String pattern;
 	private int flags;
+	// Compiled again when deserialized
+	transient RegexProgram program;
 
 	private Pattern(String pattern, int flags) {
 		this.pattern = pattern;
 		this.flags = flags;
+		this.program = RegexCompiler.compile(pattern, flags);
+	}
+
+	private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.program = RegexCompiler.compile(pattern, flags);
 	}
 
 	public String pattern() {
@@ -66,6 +96,9 @@ public final class Pattern implements java.io.Serializable {
 	}
 
 	public String[] split(CharSequence input, int limit) {
+		String literal = (flags == LITERAL) ? pattern : (flags == 0) ? IntJTranscStrings.literalOrNull(pattern) : null;
+		if (literal != null && !literal.isEmpty()) return IntJTranscStrings.split(input.toString(), literal, limit);
+
 		int index = 0;
 		boolean matchLimited = limit > 0;
 		ArrayList<String> matchList = new ArrayList<String>();
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package java.util.regex;
+
+import java.util.Arrays;
+
+// Set of code points matched by a character class ([a-z], \d, \p{Alpha}, ...)
+abstract class RegexCharClass {
+	abstract boolean is(int ch);
+
+	RegexCharClass union(final RegexCharClass other) {
+		final RegexCharClass self = this;
+		return new RegexCharClass() {
+			@Override
+			boolean is(int ch) {
+				return self.is(ch) || other.is(ch);
+			}
+		};
+	}
+
+	RegexCharClass intersection(final RegexCharClass other) {
+		final RegexCharClass self = this;
+		return new RegexCharClass() {
+			@Override
+			boolean is(int ch) {
+				return self.is(ch) && other.is(ch);
+			}
+		};
+	}
+
+	RegexCharClass negate() {
+		final RegexCharClass self = this;
+		return new RegexCharClass() {
+			@Override
+			boolean is(int ch) {
+				return !self.is(ch);
+			}
+		};
+	}
+
+	// Also matches the other cases of each code point, only for ASCII unless unicode is set
+	RegexCharClass caseInsensitive(final boolean unicode) {
+		final RegexCharClass self = this;
+		return new RegexCharClass() {
+			@Override
+			boolean is(int ch) {
+				if (self.is(ch)) return true;
+				if (unicode) return self.is(Character.toLowerCase(ch)) || self.is(Character.toUpperCase(ch));
+				return ch < 0x80 && (self.is(ASCII.toLower(ch)) || self.is(ASCII.toUpper(ch)));
+			}
+		};
+	}
+
+	static RegexCharClass ascii(final int type) {
+		return new RegexCharClass() {
+			@Override
+			boolean is(int ch) {
+				return ASCII.isType(ch, type);
+			}
+		};
+	}
+
+	static RegexCharClass property(final UnicodeProp prop) {
+		return new RegexCharClass() {
+			@Override
+			boolean is(int ch) {
+				return prop.is(ch);
+			}
+		};
+	}
+
+	// Union of the general categories in the mask (bits are Character.getType values)
+	static RegexCharClass category(final int mask) {
+		return new RegexCharClass() {
+			@Override
+			boolean is(int ch) {
+				return ((mask >> Character.getType(ch)) & 1) != 0;
+			}
+		};
+	}
+
+	static RegexCharClass range(int from, int to) {
+		Ranges out = new Ranges();
+		out.add(from, to);
+		return out;
+	}
+
+	static RegexCharClass single(int ch) {
+		return range(ch, ch);
+	}
+
+	// \s, \h and \v
+	static final RegexCharClass SPACE = ascii(ASCII.SPACE);
+	static final RegexCharClass HORIZONTAL_SPACE = new RegexCharClass() {
+		@Override
+		boolean is(int ch) {
+			return ch == ' ' || ch == '\t' || ch == 0xA0 || ch == 0x1680 || ch == 0x180E || (ch >= 0x2000 && ch <= 0x200A) || ch == 0x202F || ch == 0x205F || ch == 0x3000;
+		}
+	};
+	static final RegexCharClass VERTICAL_SPACE = new RegexCharClass() {
+		@Override
+		boolean is(int ch) {
+			return (ch >= 0x0A && ch <= 0x0D) || ch == 0x85 || ch == 0x2028 || ch == 0x2029;
+		}
+	};
+
+	// Sorted, non overlapping ranges of code points, with a bitmap for ASCII
+	static final class Ranges extends RegexCharClass {
+		private long low;
+		private long high;
+		private int[] ranges = new int[8];
+		private int size;
+
+		void add(int from, int to) {
+			for (int ch = from; ch <= to && ch < 0x80; ch++) {
+				if (ch < 64) low |= 1L << ch; else high |= 1L << (ch - 64);
+			}
+			if (size == ranges.length) ranges = Arrays.copyOf(ranges, size * 2);
+			int index = size;
+			while (index > 0 && ranges[index - 2] > from) index -= 2;
+			System.arraycopy(ranges, index, ranges, index + 2, size - index);
+			ranges[index] = from;
+			ranges[index + 1] = to;
+			size += 2;
+		}
+
+		@Override
+		boolean is(int ch) {
+			if (ch < 64) return ((low >>> ch) & 1) != 0;
+			if (ch < 0x80) return ((high >>> (ch - 64)) & 1) != 0;
+			for (int n = 0; n < size && ranges[n] <= ch; n += 2) {
+				if (ch <= ranges[n + 1]) return true;
+			}
+			return false;
+		}
+	}
+}
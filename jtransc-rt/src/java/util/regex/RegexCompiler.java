@@ -0,0 +1,1257 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package java.util.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Parses a regex with the syntax of java.util.regex.Pattern into a tree, and compiles the tree into a RegexProgram
+final class RegexCompiler {
+	static private final int MAX_CODE_SIZE = 1 << 20;
+
+	private final String regex;
+	private int flags;
+	private int index = 0;
+	private int groupCount = 0;
+	private final HashMap<String, Integer> groupNames = new HashMap<String, Integer>();
+
+	private int[] code = new int[64];
+	private int size = 0;
+	private final ArrayList<RegexCharClass> classes = new ArrayList<RegexCharClass>();
+	private int registerCount;
+
+	private RegexCompiler(String regex, int flags) {
+		this.regex = regex;
+		this.flags = flags;
+	}
+
+	static RegexProgram compile(String regex, int flags) {
+		return new RegexCompiler(regex, flags).compile();
+	}
+
+	private RegexProgram compile() {
+		Node root;
+		if ((flags & Pattern.LITERAL) != 0) {
+			Seq seq = new Seq();
+			for (int n = 0; n < regex.length(); ) {
+				int ch = RegexProgram.codePointAt(regex, n, regex.length());
+				seq.add(literal(ch));
+				n += RegexProgram.charCount(ch);
+			}
+			root = seq;
+		} else {
+			root = parseAlternation();
+			if (index < regex.length()) {
+				index--;
+				throw error("Unmatched closing ')'");
+			}
+		}
+
+		registerCount = 2 * (groupCount + 1);
+		root.emit(this);
+		emit(RegexProgram.MATCH);
+
+		// Case insensitive chars are never literals
+		String literal = (groupCount == 0) ? root.literal() : null;
+		RegexCharClass first = (root.minLength() > 0) ? root.first() : null;
+		return new RegexProgram(Arrays.copyOf(code, size), classes.toArray(new RegexCharClass[classes.size()]), groupCount, registerCount, groupNames, literal, first, root.anchored());
+	}
+
+	private PatternSyntaxException error(String description) {
+		return new PatternSyntaxException(description, regex, index);
+	}
+
+	private boolean has(int flag) {
+		return (flags & flag) != 0;
+	}
+
+	//-----------------------------------------------------------------
+	// Parser
+
+	private boolean more() {
+		skipComments();
+		return index < regex.length();
+	}
+
+	private int peek() {
+		skipComments();
+		return (index < regex.length()) ? regex.charAt(index) : -1;
+	}
+
+	private boolean accept(char ch) {
+		if (peek() == ch) {
+			index++;
+			return true;
+		}
+		return false;
+	}
+
+	// With the COMMENTS flag, whitespace and comments from # to the end of the line are ignored
+	private void skipComments() {
+		if (!has(Pattern.COMMENTS)) return;
+		while (index < regex.length()) {
+			char ch = regex.charAt(index);
+			if (ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r' || ch == '\f' || ch == 0x0B) {
+				index++;
+			} else if (ch == '#') {
+				while (index < regex.length() && !RegexProgram.isLineTerminator(regex.charAt(index), has(Pattern.UNIX_LINES))) index++;
+			} else {
+				break;
+			}
+		}
+	}
+
+	private int nextCodePoint() {
+		if (index >= regex.length()) throw error("Unexpected end of pattern");
+		int ch = RegexProgram.codePointAt(regex, index, regex.length());
+		index += RegexProgram.charCount(ch);
+		return ch;
+	}
+
+	private Node parseAlternation() {
+		Node first = parseSequence();
+		if (peek() != '|') return first;
+		Alt alt = new Alt();
+		alt.add(first);
+		while (accept('|')) alt.add(parseSequence());
+		return alt;
+	}
+
+	private Node parseSequence() {
+		Seq seq = new Seq();
+		while (more()) {
+			int ch = peek();
+			if (ch == '|' || ch == ')') break;
+			Node atom = parseAtom();
+			if (atom != null) seq.add(parseQuantifier(atom));
+		}
+		return (seq.nodes.size() == 1) ? seq.nodes.get(0) : seq;
+	}
+
+	private Node parseQuantifier(Node atom) {
+		int min;
+		int max;
+		int ch = peek();
+		if (ch == '*') {
+			index++;
+			min = 0;
+			max = -1;
+		} else if (ch == '+') {
+			index++;
+			min = 1;
+			max = -1;
+		} else if (ch == '?') {
+			index++;
+			min = 0;
+			max = 1;
+		} else if (ch == '{') {
+			index++;
+			min = parseNumber();
+			max = min;
+			if (accept(',')) max = (peek() == '}') ? -1 : parseNumber();
+			if (!accept('}')) throw error("Unclosed counted closure");
+			if (max >= 0 && max < min) {
+				index--;
+				throw error("Illegal repetition range");
+			}
+		} else {
+			return atom;
+		}
+		int mode = Repeat.GREEDY;
+		if (index < regex.length() && regex.charAt(index) == '?') {
+			index++;
+			mode = Repeat.LAZY;
+		} else if (index < regex.length() && regex.charAt(index) == '+') {
+			index++;
+			mode = Repeat.POSSESSIVE;
+		}
+		// Repeating a zero-width assertion is the same as trying it once, mandatory or optional
+		if (atom.isAssertion()) return new Repeat(atom, Math.min(min, 1), (max == 0) ? 0 : 1, mode);
+		return new Repeat(atom, min, max, mode);
+	}
+
+	private int parseNumber() {
+		int start = index;
+		long value = 0;
+		while (index < regex.length() && ASCII.isDigit(regex.charAt(index))) {
+			value = value * 10 + (regex.charAt(index++) - '0');
+			if (value > Integer.MAX_VALUE) throw error("Illegal repetition range");
+		}
+		if (index == start) throw error("Illegal repetition");
+		return (int) value;
+	}
+
+	private Node parseAtom() {
+		int ch = peek();
+		switch (ch) {
+			case '(':
+				index++;
+				return parseGroup();
+			case '[':
+				index++;
+				return new Set(parseClass());
+			case '.':
+				index++;
+				return new Any(has(Pattern.DOTALL) ? RegexProgram.ANY_ALL : has(Pattern.UNIX_LINES) ? RegexProgram.ANY_UNIX : RegexProgram.ANY);
+			case '^':
+				index++;
+				return new Assert(has(Pattern.MULTILINE) ? RegexProgram.BEGIN_LINE : RegexProgram.BEGIN_INPUT, has(Pattern.UNIX_LINES));
+			case '$':
+				index++;
+				return new Assert(has(Pattern.MULTILINE) ? RegexProgram.END_LINE : RegexProgram.END_INPUT_FINAL, has(Pattern.UNIX_LINES));
+			case '\\':
+				index++;
+				return parseEscape();
+			case '*':
+			case '+':
+			case '?':
+				throw error("Dangling meta character '" + (char) ch + "'");
+			case '{':
+				throw error("Illegal repetition");
+			default:
+				return literal(nextCodePoint());
+		}
+	}
+
+	private Node literal(int ch) {
+		return new Char(ch, has(Pattern.CASE_INSENSITIVE) ? (has(Pattern.UNICODE_CASE) ? RegexProgram.CHAR_U : RegexProgram.CHAR_I) : RegexProgram.CHAR);
+	}
+
+	// After the opening parenthesis
+	private Node parseGroup() {
+		int savedFlags = flags;
+		Node out;
+		if (index < regex.length() && regex.charAt(index) == '?') {
+			index++;
+			int kind = (index < regex.length()) ? regex.charAt(index) : -1;
+			if (kind == ':') {
+				index++;
+				out = parseAlternation();
+			} else if (kind == '=' || kind == '!') {
+				index++;
+				out = new Look(parseAlternation(), true, kind == '!');
+			} else if (kind == '>') {
+				index++;
+				out = new Atomic(parseAlternation());
+			} else if (kind == '<' && index + 1 < regex.length() && (regex.charAt(index + 1) == '=' || regex.charAt(index + 1) == '!')) {
+				boolean negative = regex.charAt(index + 1) == '!';
+				index += 2;
+				Node body = parseAlternation();
+				out = new Look(body, false, negative);
+			} else if (kind == '<') {
+				index++;
+				int start = index;
+				while (index < regex.length() && ASCII.isAlnum(regex.charAt(index))) index++;
+				String name = regex.substring(start, index);
+				if (name.isEmpty() || !ASCII.isAlpha(name.charAt(0))) {
+					index = start;
+					throw error("capturing group name does not start with a Latin letter");
+				}
+				if (index >= regex.length() || regex.charAt(index) != '>') throw error("named capturing group is missing trailing '>'");
+				index++;
+				if (groupNames.containsKey(name)) throw error("Named capturing group <" + name + "> is already defined");
+				int group = ++groupCount;
+				groupNames.put(name, group);
+				out = new Group(group, parseAlternation());
+			} else {
+				// Inline flags: (?idmsux-idmsux) applies to the rest of the enclosing group, (?idmsux-idmsux:X) to X only
+				boolean on = true;
+				while (true) {
+					if (index >= regex.length()) throw error("Unknown inline modifier");
+					char flag = regex.charAt(index++);
+					if (flag == '-') {
+						on = false;
+						continue;
+					}
+					if (flag == ')') return null;
+					if (flag == ':') break;
+					int mask = inlineFlag(flag);
+					flags = on ? (flags | mask) : (flags & ~mask);
+				}
+				out = parseAlternation();
+			}
+		} else {
+			int group = ++groupCount;
+			out = new Group(group, parseAlternation());
+		}
+		if (!accept(')')) throw error("Unclosed group");
+		flags = savedFlags;
+		return out;
+	}
+
+	private int inlineFlag(char flag) {
+		switch (flag) {
+			case 'i':
+				return Pattern.CASE_INSENSITIVE;
+			case 'd':
+				return Pattern.UNIX_LINES;
+			case 'm':
+				return Pattern.MULTILINE;
+			case 's':
+				return Pattern.DOTALL;
+			case 'u':
+				return Pattern.UNICODE_CASE;
+			case 'x':
+				return Pattern.COMMENTS;
+			case 'U':
+				return Pattern.UNICODE_CHARACTER_CLASS;
+			default:
+				index--;
+				throw error("Unknown inline modifier");
+		}
+	}
+
+	// After the backslash
+	private Node parseEscape() {
+		if (index >= regex.length()) throw error("Unexpected internal error");
+		char ch = regex.charAt(index);
+		switch (ch) {
+			case 'b':
+				index++;
+				return new Assert(RegexProgram.WORD_BOUNDARY, false);
+			case 'B':
+				index++;
+				return new Assert(RegexProgram.NOT_WORD_BOUNDARY, false);
+			case 'A':
+				index++;
+				return new Assert(RegexProgram.BEGIN_INPUT, false);
+			case 'G':
+				index++;
+				return new Assert(RegexProgram.LAST_MATCH, false);
+			case 'Z':
+				index++;
+				return new Assert(RegexProgram.END_INPUT_FINAL, has(Pattern.UNIX_LINES));
+			case 'z':
+				index++;
+				return new Assert(RegexProgram.END_INPUT, false);
+			case 'R':
+				index++;
+				return new Linebreak();
+			case 'Q': {
+				index++;
+				int end = regex.indexOf("\\E", index);
+				if (end < 0) end = regex.length();
+				Seq seq = new Seq();
+				while (index < end) seq.add(literal(nextCodePoint()));
+				index = Math.min(end + 2, regex.length());
+				return seq.nodes.isEmpty() ? null : seq;
+			}
+			case 'k': {
+				index++;
+				if (index >= regex.length() || regex.charAt(index) != '<') throw error("\\k is not followed by '<' for named capturing group");
+				int end = regex.indexOf('>', index);
+				if (end < 0) throw error("named capturing group is missing trailing '>'");
+				String name = regex.substring(index + 1, end);
+				Integer group = groupNames.get(name);
+				index = end;
+				if (group == null) throw error("named capturing group <" + name + "> does not exist");
+				index++;
+				return new BackRef(group, backrefOp());
+			}
+		}
+		if (ch >= '1' && ch <= '9') {
+			index++;
+			int group = ch - '0';
+			// More digits only while the group exists
+			while (index < regex.length() && ASCII.isDigit(regex.charAt(index))) {
+				int next = group * 10 + (regex.charAt(index) - '0');
+				if (next > groupCount) break;
+				group = next;
+				index++;
+			}
+			return new BackRef(group, backrefOp());
+		}
+		RegexCharClass set = parseClassEscape();
+		if (set != null) return new Set(set);
+		return literal(parseCharEscape());
+	}
+
+	private int backrefOp() {
+		if (!has(Pattern.CASE_INSENSITIVE)) return RegexProgram.BACKREF;
+		return has(Pattern.UNICODE_CASE) ? RegexProgram.BACKREF_U : RegexProgram.BACKREF_I;
+	}
+
+	// \d \D \w \W \s \S \h \H \v \V \p{..} \P{..}, or null for other escapes (the index is not moved then)
+	private RegexCharClass parseClassEscape() {
+		char ch = regex.charAt(index);
+		boolean unicode = has(Pattern.UNICODE_CHARACTER_CLASS);
+		RegexCharClass out;
+		switch (Character.toLowerCase(ch)) {
+			case 'd':
+				out = unicode ? RegexCharClass.property(UnicodeProp.DIGIT) : RegexCharClass.ascii(ASCII.DIGIT);
+				break;
+			case 'w':
+				out = unicode ? RegexCharClass.property(UnicodeProp.WORD) : RegexCharClass.ascii(ASCII.WORD);
+				break;
+			case 's':
+				out = unicode ? RegexCharClass.property(UnicodeProp.WHITE_SPACE) : RegexCharClass.SPACE;
+				break;
+			case 'h':
+				out = RegexCharClass.HORIZONTAL_SPACE;
+				break;
+			case 'v':
+				out = RegexCharClass.VERTICAL_SPACE;
+				break;
+			case 'p':
+				index++;
+				out = parseProperty();
+				return (ch == 'P') ? out.negate() : out;
+			default:
+				return null;
+		}
+		index++;
+		return ASCII.isUpper(ch) ? out.negate() : out;
+	}
+
+	// After \p or \P
+	private RegexCharClass parseProperty() {
+		String name;
+		if (index < regex.length() && regex.charAt(index) == '{') {
+			int end = regex.indexOf('}', index);
+			if (end < 0) throw error("Unclosed character family");
+			name = regex.substring(index + 1, end);
+			index = end + 1;
+		} else {
+			if (index >= regex.length()) throw error("Illegal character family");
+			name = regex.substring(index, index + 1);
+			index++;
+		}
+		RegexCharClass out = property(name);
+		// Reported at the last character of the name, like the JDK
+		if (out == null) throw new PatternSyntaxException("Unknown character property name {" + name + "}", regex, index - 1);
+		return out;
+	}
+
+	private RegexCharClass property(String name) {
+		if (name.startsWith("In")) return UnicodeRanges.block(name.substring(2));
+		if (name.startsWith("Is")) {
+			String rest = name.substring(2);
+			UnicodeProp prop = UnicodeProp.forName(rest);
+			if (prop != null) return cased(prop);
+			RegexCharClass out = category(rest);
+			return (out != null) ? out : UnicodeRanges.script(rest);
+		}
+		if (name.startsWith("general_category=")) return category(name.substring(17));
+		if (name.startsWith("gc=")) return category(name.substring(3));
+		if (name.startsWith("script=")) return UnicodeRanges.script(name.substring(7));
+		if (name.startsWith("sc=")) return UnicodeRanges.script(name.substring(3));
+		if (name.startsWith("block=")) return UnicodeRanges.block(name.substring(6));
+		if (name.startsWith("blk=")) return UnicodeRanges.block(name.substring(4));
+		if (has(Pattern.UNICODE_CHARACTER_CLASS)) {
+			UnicodeProp prop = UnicodeProp.forPOSIXName(name);
+			if (prop != null) return cased(prop);
+		}
+		if (name.equals("javaLowerCase")) return cased(UnicodeProp.LOWERCASE);
+		if (name.equals("javaUpperCase")) return cased(UnicodeProp.UPPERCASE);
+		if (name.equals("javaWhitespace")) return RegexCharClass.property(UnicodeProp.WHITE_SPACE);
+		switch (name) {
+			case "ASCII":
+				return RegexCharClass.range(0, 0x7F);
+			case "Lower":
+				return has(Pattern.CASE_INSENSITIVE) ? RegexCharClass.ascii(ASCII.ALPHA) : RegexCharClass.ascii(ASCII.LOWER);
+			case "Upper":
+				return has(Pattern.CASE_INSENSITIVE) ? RegexCharClass.ascii(ASCII.ALPHA) : RegexCharClass.ascii(ASCII.UPPER);
+			case "Alpha":
+				return RegexCharClass.ascii(ASCII.ALPHA);
+			case "Digit":
+				return RegexCharClass.ascii(ASCII.DIGIT);
+			case "Alnum":
+				return RegexCharClass.ascii(ASCII.ALNUM);
+			case "Punct":
+				return RegexCharClass.ascii(ASCII.PUNCT);
+			case "Graph":
+				return RegexCharClass.ascii(ASCII.GRAPH);
+			case "Print":
+				return RegexCharClass.range(0x20, 0x7E);
+			case "Blank":
+				return RegexCharClass.ascii(ASCII.BLANK);
+			case "Cntrl":
+				return RegexCharClass.ascii(ASCII.CNTRL);
+			case "XDigit":
+				return RegexCharClass.ascii(ASCII.HEX);
+			case "Space":
+				return RegexCharClass.SPACE;
+		}
+		return category(name);
+	}
+
+	// Case insensitive lowercase and uppercase properties match any cased letter
+	private RegexCharClass cased(UnicodeProp prop) {
+		if (has(Pattern.CASE_INSENSITIVE) && (prop == UnicodeProp.LOWERCASE || prop == UnicodeProp.UPPERCASE || prop == UnicodeProp.TITLECASE)) {
+			return RegexCharClass.property(UnicodeProp.LOWERCASE).union(RegexCharClass.property(UnicodeProp.UPPERCASE)).union(RegexCharClass.property(UnicodeProp.TITLECASE));
+		}
+		return RegexCharClass.property(prop);
+	}
+
+	// General categories, by their one or two letter names
+	private RegexCharClass category(String name) {
+		if (has(Pattern.CASE_INSENSITIVE) && (name.equals("Lu") || name.equals("Ll") || name.equals("Lt"))) name = "LC";
+		String all = "Cn Lu Ll Lt Lm Lo Mn Me Mc Nd Nl No Zs Zl Zp Cc Cf -- Co Cs Pd Ps Pe Pc Po Sm Sc Sk So Pi Pf";
+		int letters = (1 << Character.UPPERCASE_LETTER) | (1 << Character.LOWERCASE_LETTER) | (1 << Character.TITLECASE_LETTER);
+		int mask = 0;
+		if (name.equals("LC")) {
+			mask = letters;
+		} else if (name.equals("LD")) {
+			mask = letters | (1 << Character.MODIFIER_LETTER) | (1 << Character.OTHER_LETTER) | (1 << Character.DECIMAL_DIGIT_NUMBER);
+		} else if (name.length() == 1) {
+			for (int type = 0; type < 31; type++) {
+				if (all.charAt(type * 3) == name.charAt(0)) mask |= 1 << type;
+			}
+		} else if (name.length() == 2) {
+			int type = all.indexOf(name);
+			if (type >= 0 && type % 3 == 0) mask = 1 << (type / 3);
+		}
+		return (mask != 0) ? RegexCharClass.category(mask) : null;
+	}
+
+	// A char escape after the backslash: \t \n \x41 A \0101 \cA, or an escaped char that isn't a letter
+	private int parseCharEscape() {
+		int ch = nextCodePoint();
+		switch (ch) {
+			case 't':
+				return '\t';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 'f':
+				return '\f';
+			case 'a':
+				return 0x07;
+			case 'e':
+				return 0x1B;
+			case '0': {
+				int value = 0;
+				int digits = 0;
+				while (index < regex.length() && ASCII.isOctDigit(regex.charAt(index)) && digits < 3) {
+					int next = value * 8 + (regex.charAt(index) - '0');
+					if (next > 0xFF) break;
+					value = next;
+					index++;
+					digits++;
+				}
+				if (digits == 0) throw error("Illegal octal escape sequence");
+				return value;
+			}
+			case 'x': {
+				if (index < regex.length() && regex.charAt(index) == '{') {
+					int end = regex.indexOf('}', index);
+					if (end < 0) throw error("Unclosed hexadecimal escape sequence");
+					int value = parseHex(index + 1, end);
+					index = end + 1;
+					if (value > Character.MAX_CODE_POINT) throw error("Hexadecimal codepoint is too big");
+					return value;
+				}
+				int value = parseHex(index, index + 2);
+				index += 2;
+				return value;
+			}
+			case 'u': {
+				int value = parseHex(index, index + 4);
+				index += 4;
+				return value;
+			}
+			case 'c':
+				return nextCodePoint() ^ 64;
+		}
+		if (ch < 0x80 && ASCII.isAlnum(ch)) {
+			index--;
+			throw error("Illegal/unsupported escape sequence");
+		}
+		return ch;
+	}
+
+	private int parseHex(int from, int to) {
+		if (from >= to || to > regex.length()) throw error("Illegal hexadecimal escape sequence");
+		int value = 0;
+		for (int n = from; n < to; n++) {
+			char ch = regex.charAt(n);
+			if (!ASCII.isHexDigit(ch)) throw error("Illegal hexadecimal escape sequence");
+			value = value * 16 + Character.digit(ch, 16);
+		}
+		return value;
+	}
+
+	// After the opening bracket: [abc] [^a-z] [a-z&&[^aeiou]] [\w.] [a[bc]]
+	private RegexCharClass parseClass() {
+		boolean negated = false;
+		if (index < regex.length() && regex.charAt(index) == '^') {
+			index++;
+			negated = true;
+		}
+		RegexCharClass.Ranges ranges = new RegexCharClass.Ranges();
+		RegexCharClass out = null;
+		RegexCharClass intersect = null;
+		boolean empty = true;
+		boolean first = true;
+		while (true) {
+			skipComments();
+			if (index >= regex.length()) {
+				index = regex.length() - 1;
+				throw error("Unclosed character class");
+			}
+			char ch = regex.charAt(index);
+			if (ch == ']' && !first) {
+				index++;
+				break;
+			}
+			first = false;
+			if (ch == '[') {
+				index++;
+				out = union(out, parseClass());
+				empty = false;
+			} else if (ch == '&' && index + 1 < regex.length() && regex.charAt(index + 1) == '&') {
+				index += 2;
+				// Everything so far is intersected with the rest of the class
+				RegexCharClass left = union(out, empty ? null : ranges);
+				if (left == null) left = new RegexCharClass.Ranges();
+				intersect = (intersect == null) ? left : intersect.intersection(left);
+				ranges = new RegexCharClass.Ranges();
+				out = null;
+				empty = true;
+			} else {
+				int from;
+				if (ch == '\\') {
+					index++;
+					if (index >= regex.length()) throw error("Unclosed character class");
+					char escaped = regex.charAt(index);
+					if (escaped == 'Q') {
+						index++;
+						int end = regex.indexOf("\\E", index);
+						if (end < 0) end = regex.length();
+						while (index < end) {
+							int literal = nextCodePoint();
+							ranges.add(literal, literal);
+						}
+						index = Math.min(end + 2, regex.length());
+						empty = false;
+						continue;
+					}
+					RegexCharClass set = parseClassEscape();
+					if (set != null) {
+						out = union(out, set);
+						empty = false;
+						continue;
+					}
+					from = parseCharEscape();
+				} else {
+					from = nextCodePoint();
+				}
+				int to = from;
+				if (index + 1 < regex.length() && regex.charAt(index) == '-' && regex.charAt(index + 1) != ']') {
+					index++;
+					if (regex.charAt(index) == '[') throw error("Illegal character range");
+					if (regex.charAt(index) == '\\') {
+						index++;
+						if (index >= regex.length()) throw error("Illegal character range");
+						to = parseCharEscape();
+					} else {
+						to = nextCodePoint();
+					}
+					if (to < from) {
+						index--;
+						throw error("Illegal character range");
+					}
+				}
+				ranges.add(from, to);
+				empty = false;
+			}
+		}
+		RegexCharClass set = union(out, empty ? null : ranges);
+		if (intersect != null) set = intersect.intersection((set != null) ? set : new RegexCharClass.Ranges());
+		if (set == null) set = new RegexCharClass.Ranges();
+		if (has(Pattern.CASE_INSENSITIVE)) set = set.caseInsensitive(has(Pattern.UNICODE_CASE));
+		return negated ? set.negate() : set;
+	}
+
+	static private RegexCharClass union(RegexCharClass a, RegexCharClass b) {
+		if (a == null) return b;
+		if (b == null) return a;
+		return a.union(b);
+	}
+
+	//-----------------------------------------------------------------
+	// Code generation
+
+	private int emit(int value) {
+		if (size == code.length) {
+			if (size >= MAX_CODE_SIZE) throw new PatternSyntaxException("Pattern too large", regex, -1);
+			code = Arrays.copyOf(code, size * 2);
+		}
+		code[size] = value;
+		return size++;
+	}
+
+	private int emit(int op, int a) {
+		int at = emit(op);
+		emit(a);
+		return at;
+	}
+
+	private int emit(int op, int a, int b) {
+		int at = emit(op);
+		emit(a);
+		emit(b);
+		return at;
+	}
+
+	//-----------------------------------------------------------------
+	// Tree
+
+	static private abstract class Node {
+		abstract void emit(RegexCompiler c);
+
+		abstract int minLength();
+
+		// -1 when unbounded
+		abstract int maxLength();
+
+		// Code points a match can start with (empty for zero-width nodes), null when it can be anything
+		abstract RegexCharClass first();
+
+		boolean isAssertion() {
+			return false;
+		}
+
+		boolean anchored() {
+			return false;
+		}
+
+		// The string matched, for plain literals
+		String literal() {
+			return null;
+		}
+	}
+
+	static private final RegexCharClass NOTHING = new RegexCharClass.Ranges();
+
+	static private final class Char extends Node {
+		final int ch;
+		final int op;
+
+		Char(int ch, int op) {
+			// Only chars with cases need folding
+			if (op == RegexProgram.CHAR_I && RegexProgram.foldAscii(ch) == ch && ASCII.toUpper(ch) == ch) op = RegexProgram.CHAR;
+			if (op == RegexProgram.CHAR_U && Character.toLowerCase(ch) == ch && Character.toUpperCase(ch) == ch) op = RegexProgram.CHAR;
+			this.ch = ch;
+			this.op = op;
+		}
+
+		@Override
+		void emit(RegexCompiler c) {
+			if (ch >= 0x10000 && op == RegexProgram.CHAR) {
+				c.emit(RegexProgram.CHAR, 0xD800 + ((ch - 0x10000) >>> 10));
+				c.emit(RegexProgram.CHAR, 0xDC00 + ((ch - 0x10000) & 0x3FF));
+			} else if (op == RegexProgram.CHAR) {
+				c.emit(RegexProgram.CHAR, ch);
+			} else {
+				c.emit(op, (op == RegexProgram.CHAR_I) ? RegexProgram.foldAscii(ch) : RegexProgram.foldUnicode(ch));
+			}
+		}
+
+		@Override
+		int minLength() {
+			return RegexProgram.charCount(ch);
+		}
+
+		@Override
+		int maxLength() {
+			return RegexProgram.charCount(ch);
+		}
+
+		@Override
+		RegexCharClass first() {
+			RegexCharClass out = RegexCharClass.single(ch);
+			return (op == RegexProgram.CHAR) ? out : out.caseInsensitive(op == RegexProgram.CHAR_U);
+		}
+
+		@Override
+		String literal() {
+			if (op != RegexProgram.CHAR) return null;
+			if (ch < 0x10000) return String.valueOf((char) ch);
+			return new String(new char[]{(char) (0xD800 + ((ch - 0x10000) >>> 10)), (char) (0xDC00 + ((ch - 0x10000) & 0x3FF))});
+		}
+	}
+
+	static private final class Set extends Node {
+		final RegexCharClass set;
+
+		Set(RegexCharClass set) {
+			this.set = set;
+		}
+
+		@Override
+		void emit(RegexCompiler c) {
+			c.emit(RegexProgram.CLASS, c.classes.size());
+			c.classes.add(set);
+		}
+
+		@Override
+		int minLength() {
+			return 1;
+		}
+
+		@Override
+		int maxLength() {
+			return 2;
+		}
+
+		@Override
+		RegexCharClass first() {
+			return set;
+		}
+	}
+
+	static private final class Any extends Node {
+		final int op;
+
+		Any(int op) {
+			this.op = op;
+		}
+
+		@Override
+		void emit(RegexCompiler c) {
+			c.emit(op);
+		}
+
+		@Override
+		int minLength() {
+			return 1;
+		}
+
+		@Override
+		int maxLength() {
+			return 2;
+		}
+
+		@Override
+		RegexCharClass first() {
+			return null;
+		}
+	}
+
+	static private final class Linebreak extends Node {
+		@Override
+		void emit(RegexCompiler c) {
+			c.emit(RegexProgram.LINEBREAK);
+		}
+
+		@Override
+		int minLength() {
+			return 1;
+		}
+
+		@Override
+		int maxLength() {
+			return 2;
+		}
+
+		@Override
+		RegexCharClass first() {
+			return RegexCharClass.VERTICAL_SPACE;
+		}
+	}
+
+	static private final class Seq extends Node {
+		final ArrayList<Node> nodes = new ArrayList<Node>();
+
+		void add(Node node) {
+			if (node instanceof Seq) {
+				nodes.addAll(((Seq) node).nodes);
+			} else if (node != null) {
+				nodes.add(node);
+			}
+		}
+
+		@Override
+		void emit(RegexCompiler c) {
+			for (Node node : nodes) node.emit(c);
+		}
+
+		@Override
+		int minLength() {
+			int out = 0;
+			for (Node node : nodes) out += node.minLength();
+			return out;
+		}
+
+		@Override
+		int maxLength() {
+			int out = 0;
+			for (Node node : nodes) {
+				int length = node.maxLength();
+				if (length < 0) return -1;
+				out += length;
+			}
+			return out;
+		}
+
+		@Override
+		RegexCharClass first() {
+			RegexCharClass out = NOTHING;
+			for (Node node : nodes) {
+				RegexCharClass first = node.first();
+				if (first == null) return null;
+				if (first != NOTHING) out = (out == NOTHING) ? first : out.union(first);
+				if (node.minLength() > 0) return out;
+			}
+			return out;
+		}
+
+		@Override
+		boolean anchored() {
+			return !nodes.isEmpty() && nodes.get(0).anchored();
+		}
+
+		@Override
+		String literal() {
+			String out = "";
+			for (Node node : nodes) {
+				String literal = node.literal();
+				if (literal == null) return null;
+				out += literal;
+			}
+			return out.isEmpty() ? null : out;
+		}
+	}
+
+	static private final class Alt extends Node {
+		final ArrayList<Node> nodes = new ArrayList<Node>();
+
+		void add(Node node) {
+			nodes.add((node != null) ? node : new Seq());
+		}
+
+		@Override
+		void emit(RegexCompiler c) {
+			int[] jumps = new int[nodes.size() - 1];
+			for (int n = 0; n < nodes.size(); n++) {
+				if (n < nodes.size() - 1) {
+					int split = c.emit(RegexProgram.SPLIT, c.size + 3, 0);
+					nodes.get(n).emit(c);
+					jumps[n] = c.emit(RegexProgram.JMP, 0);
+					c.code[split + 2] = c.size;
+				} else {
+					nodes.get(n).emit(c);
+				}
+			}
+			for (int jump : jumps) c.code[jump + 1] = c.size;
+		}
+
+		@Override
+		int minLength() {
+			int out = Integer.MAX_VALUE;
+			for (Node node : nodes) out = Math.min(out, node.minLength());
+			return out;
+		}
+
+		@Override
+		int maxLength() {
+			int out = 0;
+			for (Node node : nodes) {
+				int length = node.maxLength();
+				if (length < 0) return -1;
+				out = Math.max(out, length);
+			}
+			return out;
+		}
+
+		@Override
+		RegexCharClass first() {
+			RegexCharClass out = NOTHING;
+			for (Node node : nodes) {
+				RegexCharClass first = node.first();
+				if (first == null) return null;
+				if (first != NOTHING) out = (out == NOTHING) ? first : out.union(first);
+			}
+			return out;
+		}
+	}
+
+	static private final class Group extends Node {
+		final int group;
+		final Node body;
+
+		Group(int group, Node body) {
+			this.group = group;
+			this.body = (body != null) ? body : new Seq();
+		}
+
+		@Override
+		void emit(RegexCompiler c) {
+			c.emit(RegexProgram.SAVE, group * 2);
+			body.emit(c);
+			c.emit(RegexProgram.SAVE, group * 2 + 1);
+		}
+
+		@Override
+		int minLength() {
+			return body.minLength();
+		}
+
+		@Override
+		int maxLength() {
+			return body.maxLength();
+		}
+
+		@Override
+		RegexCharClass first() {
+			return body.first();
+		}
+
+		@Override
+		boolean anchored() {
+			return body.anchored();
+		}
+	}
+
+	static private final class Repeat extends Node {
+		static final int GREEDY = 0;
+		static final int LAZY = 1;
+		static final int POSSESSIVE = 2;
+
+		final Node body;
+		final int min;
+		final int max;
+		final int mode;
+
+		Repeat(Node body, int min, int max, int mode) {
+			this.body = body;
+			this.min = min;
+			this.max = max;
+			this.mode = mode;
+		}
+
+		@Override
+		void emit(RegexCompiler c) {
+			if (mode == POSSESSIVE) {
+				// Like the JDK, every iteration keeps the first way it matches, x{2}+ is (?>(?>x)(?>x))
+				int atomic = c.emit(RegexProgram.ATOMIC, 0);
+				boolean single = body instanceof Char || body instanceof Set || body instanceof Any;
+				emitLoop(c, true, single ? body : new Atomic(body));
+				c.emit(RegexProgram.MATCH);
+				c.code[atomic + 1] = c.size;
+			} else {
+				emitLoop(c, mode == GREEDY, body);
+			}
+		}
+
+		private void emitLoop(RegexCompiler c, boolean greedy, Node body) {
+			for (int n = 0; n < min; n++) body.emit(c);
+			if (max < 0) {
+				// An iteration matching nothing ends the loop
+				boolean check = body.minLength() == 0;
+				int register = check ? c.registerCount++ : -1;
+				int loop = c.emit(RegexProgram.SPLIT, 0, 0);
+				int start = c.size;
+				if (check) c.emit(RegexProgram.SAVE, register);
+				body.emit(c);
+				int progress = check ? c.emit(RegexProgram.NO_PROGRESS, register, 0) : -1;
+				c.emit(RegexProgram.JMP, loop);
+				patchSplit(c, loop, start, c.size, greedy);
+				if (check) c.code[progress + 2] = c.size;
+			} else {
+				// x{2,4} is xx(x(x)?)?
+				int[] splits = new int[max - min];
+				for (int n = 0; n < splits.length; n++) {
+					splits[n] = c.emit(RegexProgram.SPLIT, 0, 0);
+					body.emit(c);
+				}
+				for (int split : splits) patchSplit(c, split, split + 3, c.size, greedy);
+			}
+		}
+
+		static private void patchSplit(RegexCompiler c, int split, int body, int end, boolean greedy) {
+			c.code[split + 1] = greedy ? body : end;
+			c.code[split + 2] = greedy ? end : body;
+		}
+
+		@Override
+		int minLength() {
+			long out = (long) body.minLength() * min;
+			return (int) Math.min(out, Integer.MAX_VALUE);
+		}
+
+		@Override
+		int maxLength() {
+			int length = body.maxLength();
+			if (max < 0 || length < 0) return (length == 0) ? 0 : -1;
+			long out = (long) length * max;
+			return (out > Integer.MAX_VALUE) ? -1 : (int) out;
+		}
+
+		@Override
+		RegexCharClass first() {
+			return body.first();
+		}
+	}
+
+	static private final class Atomic extends Node {
+		final Node body;
+
+		Atomic(Node body) {
+			this.body = (body != null) ? body : new Seq();
+		}
+
+		@Override
+		void emit(RegexCompiler c) {
+			int atomic = c.emit(RegexProgram.ATOMIC, 0);
+			body.emit(c);
+			c.emit(RegexProgram.MATCH);
+			c.code[atomic + 1] = c.size;
+		}
+
+		@Override
+		int minLength() {
+			return body.minLength();
+		}
+
+		@Override
+		int maxLength() {
+			return body.maxLength();
+		}
+
+		@Override
+		RegexCharClass first() {
+			return body.first();
+		}
+
+		@Override
+		boolean anchored() {
+			return body.anchored();
+		}
+	}
+
+	static private final class Look extends Node {
+		final Node body;
+		final boolean ahead;
+		final boolean negative;
+
+		Look(Node body, boolean ahead, boolean negative) {
+			this.body = (body != null) ? body : new Seq();
+			this.ahead = ahead;
+			this.negative = negative;
+		}
+
+		@Override
+		void emit(RegexCompiler c) {
+			int look;
+			if (ahead) {
+				look = c.emit(negative ? RegexProgram.NEG_LOOKAHEAD : RegexProgram.LOOKAHEAD, 0);
+			} else {
+				// Unbounded lookbehinds try every start down to the beginning of the input
+				int max = body.maxLength();
+				look = c.emit(negative ? RegexProgram.NEG_LOOKBEHIND : RegexProgram.LOOKBEHIND, body.minLength(), (max < 0) ? Integer.MAX_VALUE : max);
+				c.emit(0);
+			}
+			body.emit(c);
+			c.emit(RegexProgram.MATCH);
+			c.code[look + (ahead ? 1 : 3)] = c.size;
+		}
+
+		@Override
+		boolean isAssertion() {
+			return true;
+		}
+
+		@Override
+		int minLength() {
+			return 0;
+		}
+
+		@Override
+		int maxLength() {
+			return 0;
+		}
+
+		@Override
+		RegexCharClass first() {
+			return NOTHING;
+		}
+	}
+
+	static private final class Assert extends Node {
+		final int kind;
+		final boolean unixLines;
+
+		Assert(int kind, boolean unixLines) {
+			this.kind = kind;
+			this.unixLines = unixLines;
+		}
+
+		@Override
+		void emit(RegexCompiler c) {
+			c.emit(RegexProgram.ASSERT, kind, unixLines ? 1 : 0);
+		}
+
+		@Override
+		boolean isAssertion() {
+			return true;
+		}
+
+		@Override
+		int minLength() {
+			return 0;
+		}
+
+		@Override
+		int maxLength() {
+			return 0;
+		}
+
+		@Override
+		RegexCharClass first() {
+			return NOTHING;
+		}
+
+		@Override
+		boolean anchored() {
+			return kind == RegexProgram.BEGIN_INPUT;
+		}
+	}
+
+	static private final class BackRef extends Node {
+		final int group;
+		final int op;
+
+		BackRef(int group, int op) {
+			this.group = group;
+			this.op = op;
+		}
+
+		@Override
+		void emit(RegexCompiler c) {
+			c.emit(op, group);
+		}
+
+		@Override
+		int minLength() {
+			return 0;
+		}
+
+		@Override
+		int maxLength() {
+			return -1;
+		}
+
+		@Override
+		RegexCharClass first() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package java.util.regex;
+
+import java.util.Map;
+
+// Compiled regex: a flat int[] of instructions run by RegexVm. Operands follow their opcode, jump targets are absolute.
+final class RegexProgram {
+	// Ends a program or a sub program (lookaround, atomic group)
+	static final int MATCH = 0;
+	// CHAR c, CHAR_I c (ASCII case folded), CHAR_U c (Unicode case folded)
+	static final int CHAR = 1;
+	static final int CHAR_I = 2;
+	static final int CHAR_U = 3;
+	// Any code point but line terminators / but \n / any code point
+	static final int ANY = 4;
+	static final int ANY_UNIX = 5;
+	static final int ANY_ALL = 6;
+	// CLASS index in classes
+	static final int CLASS = 7;
+	// SPLIT preferred alternative
+	static final int SPLIT = 8;
+	// JMP target
+	static final int JMP = 9;
+	// SAVE register: stores the position (captures are registers 2 * group and 2 * group + 1)
+	static final int SAVE = 10;
+	// NO_PROGRESS register target: jumps when a loop iteration matched nothing since SAVE register
+	static final int NO_PROGRESS = 11;
+	// ASSERT kind unixLines
+	static final int ASSERT = 12;
+	// LOOKAHEAD end, NEG_LOOKAHEAD end, ATOMIC end: the sub program follows and ends with MATCH
+	static final int LOOKAHEAD = 13;
+	static final int NEG_LOOKAHEAD = 14;
+	static final int ATOMIC = 15;
+	// LOOKBEHIND minLength maxLength end, NEG_LOOKBEHIND minLength maxLength end
+	static final int LOOKBEHIND = 16;
+	static final int NEG_LOOKBEHIND = 17;
+	// BACKREF group, BACKREF_I group, BACKREF_U group
+	static final int BACKREF = 18;
+	static final int BACKREF_I = 19;
+	static final int BACKREF_U = 20;
+	// \R
+	static final int LINEBREAK = 21;
+
+	// Kinds of ASSERT
+	static final int BEGIN_INPUT = 0;
+	static final int BEGIN_LINE = 1;
+	static final int END_INPUT = 2;
+	static final int END_INPUT_FINAL = 3;
+	static final int END_LINE = 4;
+	static final int WORD_BOUNDARY = 5;
+	static final int NOT_WORD_BOUNDARY = 6;
+	static final int LAST_MATCH = 7;
+
+	final int[] code;
+	final RegexCharClass[] classes;
+	final int groupCount;
+	// Registers for captures and loops
+	final int registerCount;
+	final Map<String, Integer> groupNames;
+
+	// Whole pattern when it is a plain string without groups, matched with indexOf
+	final String literal;
+	// Code points a match can start with, null when anything can start a match
+	final RegexCharClass first;
+	// Matches can only start at the beginning of the input
+	final boolean anchored;
+
+	RegexProgram(int[] code, RegexCharClass[] classes, int groupCount, int registerCount, Map<String, Integer> groupNames, String literal, RegexCharClass first, boolean anchored) {
+		this.code = code;
+		this.classes = classes;
+		this.groupCount = groupCount;
+		this.registerCount = registerCount;
+		this.groupNames = groupNames;
+		this.literal = literal;
+		this.first = first;
+		this.anchored = anchored;
+	}
+
+	static boolean isLineTerminator(int ch, boolean unixLines) {
+		if (unixLines) return ch == '\n';
+		return ch == '\n' || ch == '\r' || ch == 0x85 || (ch | 1) == 0x2029;
+	}
+
+	// ASCII words, and other code points having cases (Character.isLetter is not available in every runtime)
+	static boolean isWord(int ch) {
+		if (ch < 0x80) return ASCII.isWord(ch);
+		return Character.toLowerCase(ch) != Character.toUpperCase(ch);
+	}
+
+	// Surrogate pairs are combined here, the runtime String and Character only handle the BMP
+	static int codePointAt(String text, int index, int limit) {
+		char ch = text.charAt(index);
+		if (ch >= '\uD800' && ch <= '\uDBFF' && index + 1 < limit) {
+			char low = text.charAt(index + 1);
+			if (low >= '\uDC00' && low <= '\uDFFF') return ((ch - 0xD800) << 10) + (low - 0xDC00) + 0x10000;
+		}
+		return ch;
+	}
+
+	static int codePointBefore(String text, int index, int start) {
+		char ch = text.charAt(index - 1);
+		if (ch >= '\uDC00' && ch <= '\uDFFF' && index - 2 >= start) {
+			char high = text.charAt(index - 2);
+			if (high >= '\uD800' && high <= '\uDBFF') return ((high - 0xD800) << 10) + (ch - 0xDC00) + 0x10000;
+		}
+		return ch;
+	}
+
+	static int charCount(int ch) {
+		return (ch >= 0x10000) ? 2 : 1;
+	}
+
+	static int foldAscii(int ch) {
+		return (ch < 0x80) ? ASCII.toLower(ch) : ch;
+	}
+
+	static int foldUnicode(int ch) {
+		return Character.toLowerCase(Character.toUpperCase(ch));
+	}
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package java.util.regex;
+
+import java.util.Arrays;
+
+// Backtracking interpreter for a RegexProgram. Alternatives and register changes are pushed on an explicit stack
+// (no recursion per char), lookarounds and atomic groups run as sub programs on top of the same stack.
+final class RegexVm {
+	// Kinds of stack entries: kind a b
+	static private final int BRANCH = 0;
+	static private final int RESTORE = 1;
+	static private final int BARRIER = 2;
+
+	private final RegexProgram program;
+	private final int[] code;
+	private final String text;
+	final int[] registers;
+	private int[] stack = new int[96];
+	private int sp = 0;
+
+	// Region, bounds for anchors (^ $ \A \z) and bounds for lookarounds and \b
+	int from;
+	int to;
+	int anchorFrom;
+	int anchorTo;
+	int lookFrom;
+	int lookTo;
+	// Chars at or after limit can't be read
+	private int limit;
+	// \G
+	int lastMatch;
+
+	boolean hitEnd;
+	boolean requireEnd;
+
+	RegexVm(RegexProgram program, String text) {
+		this.program = program;
+		this.code = program.code;
+		this.text = text;
+		this.registers = new int[program.registerCount];
+	}
+
+	// Finds the first match starting at start or later, the match is in registers 0 and 1
+	boolean search(int start) {
+		RegexProgram program = this.program;
+		if (program.literal != null) {
+			int index = text.indexOf(program.literal, start);
+			if (index < 0 || index + program.literal.length() > to) {
+				hitEnd = true;
+				return false;
+			}
+			registers[0] = index;
+			registers[1] = index + program.literal.length();
+			return true;
+		}
+		// Only one start to try
+		if (program.anchored) return start <= anchorFrom && match(anchorFrom, -1);
+		RegexCharClass first = program.first;
+		limit = to;
+		for (int pos = start; pos <= to; pos++) {
+			if (first != null) {
+				while (pos < to && !first.is(codePointAt(pos))) pos++;
+				if (pos >= to) break;
+			}
+			if (match(pos, -1)) return true;
+		}
+		// Every start up to the end was tried
+		hitEnd = true;
+		return false;
+	}
+
+	// Tries a match starting at start, ending at end unless end is -1
+	boolean match(int start, int end) {
+		Arrays.fill(registers, -1);
+		limit = to;
+		sp = 0;
+		int out = run(0, start, end);
+		if (out < 0) return false;
+		registers[0] = start;
+		registers[1] = out;
+		return true;
+	}
+
+	private int codePointAt(int pos) {
+		return RegexProgram.codePointAt(text, pos, limit);
+	}
+
+	private void push(int kind, int a, int b) {
+		if (sp + 3 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+		stack[sp++] = kind;
+		stack[sp++] = a;
+		stack[sp++] = b;
+	}
+
+	private void save(int register, int value) {
+		push(RESTORE, register, registers[register]);
+		registers[register] = value;
+	}
+
+	// Undoes register changes down to mark
+	private void undo(int mark) {
+		while (sp > mark) {
+			sp -= 3;
+			if (stack[sp] == RESTORE) registers[stack[sp + 1]] = stack[sp + 2];
+		}
+	}
+
+	// Drops the alternatives of a sub program that matched, keeping its register changes undoable
+	private void commit(int barrier) {
+		int out = barrier;
+		for (int n = barrier + 3; n < sp; n += 3) {
+			if (stack[n] == RESTORE) {
+				stack[out] = RESTORE;
+				stack[out + 1] = stack[n + 1];
+				stack[out + 2] = stack[n + 2];
+				out += 3;
+			}
+		}
+		sp = out;
+	}
+
+	// Runs the program at pc until its MATCH. Returns the end of the match, or -1 without changing the registers.
+	private int run(int pc, int pos, int requiredEnd) {
+		final int[] code = this.code;
+		final String text = this.text;
+		final int barrier = sp;
+		push(BARRIER, 0, 0);
+		while (true) {
+			boolean fail = false;
+			switch (code[pc]) {
+				case RegexProgram.MATCH:
+					if (requiredEnd < 0 || pos == requiredEnd) {
+						commit(barrier);
+						return pos;
+					}
+					fail = true;
+					break;
+				case RegexProgram.CHAR:
+					if (pos >= limit) {
+						hitEnd = true;
+						fail = true;
+					} else if (text.charAt(pos) == code[pc + 1]) {
+						pos++;
+						pc += 2;
+					} else {
+						fail = true;
+					}
+					break;
+				case RegexProgram.CHAR_I:
+					if (pos >= limit) {
+						hitEnd = true;
+						fail = true;
+					} else if (RegexProgram.foldAscii(text.charAt(pos)) == code[pc + 1]) {
+						pos++;
+						pc += 2;
+					} else {
+						fail = true;
+					}
+					break;
+				case RegexProgram.CHAR_U:
+					if (pos >= limit) {
+						hitEnd = true;
+						fail = true;
+					} else {
+						int ch = codePointAt(pos);
+						if (ch == code[pc + 1] || RegexProgram.foldUnicode(ch) == code[pc + 1]) {
+							pos += RegexProgram.charCount(ch);
+							pc += 2;
+						} else {
+							fail = true;
+						}
+					}
+					break;
+				case RegexProgram.ANY:
+				case RegexProgram.ANY_UNIX:
+				case RegexProgram.ANY_ALL:
+					if (pos >= limit) {
+						hitEnd = true;
+						fail = true;
+					} else {
+						int ch = codePointAt(pos);
+						if (code[pc] != RegexProgram.ANY_ALL && RegexProgram.isLineTerminator(ch, code[pc] == RegexProgram.ANY_UNIX)) {
+							fail = true;
+						} else {
+							pos += RegexProgram.charCount(ch);
+							pc++;
+						}
+					}
+					break;
+				case RegexProgram.CLASS:
+					if (pos >= limit) {
+						hitEnd = true;
+						fail = true;
+					} else {
+						int ch = codePointAt(pos);
+						if (program.classes[code[pc + 1]].is(ch)) {
+							pos += RegexProgram.charCount(ch);
+							pc += 2;
+						} else {
+							fail = true;
+						}
+					}
+					break;
+				case RegexProgram.LINEBREAK:
+					if (pos >= limit) {
+						hitEnd = true;
+						fail = true;
+					} else {
+						char ch = text.charAt(pos);
+						if (ch == '\r' && pos + 1 < limit && text.charAt(pos + 1) == '\n') {
+							push(BRANCH, pc + 1, pos + 1);
+							pos += 2;
+							pc++;
+						} else if ((ch >= 0x0A && ch <= 0x0D) || ch == 0x85 || (ch | 1) == 0x2029) {
+							if (ch == '\r' && pos + 1 >= limit) hitEnd = true;
+							pos++;
+							pc++;
+						} else {
+							fail = true;
+						}
+					}
+					break;
+				case RegexProgram.SPLIT:
+					push(BRANCH, code[pc + 2], pos);
+					pc = code[pc + 1];
+					break;
+				case RegexProgram.JMP:
+					pc = code[pc + 1];
+					break;
+				case RegexProgram.SAVE:
+					save(code[pc + 1], pos);
+					pc += 2;
+					break;
+				case RegexProgram.NO_PROGRESS:
+					pc = (registers[code[pc + 1]] == pos) ? code[pc + 2] : pc + 3;
+					break;
+				case RegexProgram.ASSERT:
+					if (test(code[pc + 1], code[pc + 2] != 0, pos)) {
+						pc += 3;
+					} else {
+						fail = true;
+					}
+					break;
+				case RegexProgram.LOOKAHEAD:
+				case RegexProgram.NEG_LOOKAHEAD: {
+					int mark = sp;
+					int oldLimit = limit;
+					limit = lookTo;
+					boolean matched = run(pc + 2, pos, -1) >= 0;
+					limit = oldLimit;
+					if (code[pc] == RegexProgram.NEG_LOOKAHEAD) {
+						undo(mark);
+						matched = !matched;
+					}
+					if (matched) {
+						pc = code[pc + 1];
+					} else {
+						fail = true;
+					}
+					break;
+				}
+				case RegexProgram.LOOKBEHIND:
+				case RegexProgram.NEG_LOOKBEHIND: {
+					int mark = sp;
+					int oldLimit = limit;
+					boolean oldHitEnd = hitEnd;
+					boolean matched = false;
+					limit = pos;
+					int min = Math.max(pos - code[pc + 2], lookFrom);
+					for (int start = pos - code[pc + 1]; !matched && start >= min; start--) {
+						matched = run(pc + 4, start, pos) >= 0;
+					}
+					limit = oldLimit;
+					hitEnd = oldHitEnd;
+					if (code[pc] == RegexProgram.NEG_LOOKBEHIND) {
+						undo(mark);
+						matched = !matched;
+					}
+					if (matched) {
+						pc = code[pc + 3];
+					} else {
+						fail = true;
+					}
+					break;
+				}
+				case RegexProgram.ATOMIC: {
+					int end = run(pc + 2, pos, -1);
+					if (end >= 0) {
+						pos = end;
+						pc = code[pc + 1];
+					} else {
+						fail = true;
+					}
+					break;
+				}
+				case RegexProgram.BACKREF:
+				case RegexProgram.BACKREF_I:
+				case RegexProgram.BACKREF_U: {
+					int group = code[pc + 1];
+					// Groups that the pattern doesn't define never match
+					int start = (group <= program.groupCount) ? registers[group * 2] : -1;
+					int end = (group <= program.groupCount) ? registers[group * 2 + 1] : -1;
+					if (start < 0 || end < 0) {
+						fail = true;
+					} else if (pos + (end - start) > limit) {
+						hitEnd = true;
+						fail = true;
+					} else if (regionMatches(code[pc], pos, start, end - start)) {
+						pos += end - start;
+						pc += 2;
+					} else {
+						fail = true;
+					}
+					break;
+				}
+				default:
+					throw new IllegalStateException("Invalid regex opcode " + code[pc]);
+			}
+			if (fail) {
+				// Backtracks to the last alternative
+				while (true) {
+					sp -= 3;
+					int kind = stack[sp];
+					if (kind == BRANCH) {
+						pc = stack[sp + 1];
+						pos = stack[sp + 2];
+						break;
+					} else if (kind == RESTORE) {
+						registers[stack[sp + 1]] = stack[sp + 2];
+					} else {
+						return -1;
+					}
+				}
+			}
+		}
+	}
+
+	private boolean regionMatches(int op, int pos, int start, int length) {
+		for (int n = 0; n < length; n++) {
+			int a = text.charAt(pos + n);
+			int b = text.charAt(start + n);
+			if (a == b) continue;
+			if (op == RegexProgram.BACKREF_I && RegexProgram.foldAscii(a) == RegexProgram.foldAscii(b)) continue;
+			if (op == RegexProgram.BACKREF_U && RegexProgram.foldUnicode(a) == RegexProgram.foldUnicode(b)) continue;
+			return false;
+		}
+		return true;
+	}
+
+	private boolean test(int kind, boolean unixLines, int pos) {
+		switch (kind) {
+			case RegexProgram.BEGIN_INPUT:
+				return pos == anchorFrom;
+			case RegexProgram.BEGIN_LINE:
+				if (pos == anchorTo) {
+					hitEnd = true;
+					return false;
+				}
+				if (pos > anchorFrom) {
+					char ch = text.charAt(pos - 1);
+					if (!RegexProgram.isLineTerminator(ch, unixLines)) return false;
+					// \r\n is a single line terminator
+					if (ch == '\r' && !unixLines && text.charAt(pos) == '\n') return false;
+				}
+				return true;
+			case RegexProgram.END_INPUT:
+				if (pos != anchorTo) return false;
+				hitEnd = true;
+				requireEnd = true;
+				return true;
+			case RegexProgram.END_INPUT_FINAL:
+			case RegexProgram.END_LINE: {
+				boolean multiline = kind == RegexProgram.END_LINE;
+				if (pos < anchorTo) {
+					char ch = text.charAt(pos);
+					if (unixLines) {
+						if (ch != '\n' || (!multiline && pos != anchorTo - 1)) return false;
+						if (multiline) return true;
+					} else {
+						if (!multiline && pos < anchorTo - 2) return false;
+						if (!multiline && pos == anchorTo - 2) {
+							if (ch != '\r' || text.charAt(pos + 1) != '\n') return false;
+							hitEnd = true;
+							requireEnd = true;
+							return true;
+						}
+						if (!RegexProgram.isLineTerminator(ch, false)) return false;
+						// Not between \r and \n
+						if (ch == '\n' && pos > 0 && text.charAt(pos - 1) == '\r') return false;
+						if (multiline) return true;
+					}
+				}
+				hitEnd = true;
+				requireEnd = true;
+				return true;
+			}
+			case RegexProgram.WORD_BOUNDARY:
+			case RegexProgram.NOT_WORD_BOUNDARY: {
+				boolean left = pos > lookFrom && RegexProgram.isWord(RegexProgram.codePointBefore(text, pos, lookFrom));
+				boolean right = false;
+				if (pos < lookTo) {
+					right = RegexProgram.isWord(RegexProgram.codePointAt(text, pos, lookTo));
+				} else {
+					hitEnd = true;
+					requireEnd = true;
+				}
+				return (left != right) == (kind == RegexProgram.WORD_BOUNDARY);
+			}
+			case RegexProgram.LAST_MATCH:
+				return pos == lastMatch;
+			default:
+				throw new IllegalStateException("Invalid regex assertion " + kind);
+		}
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package java.util.regex;
+
+// Unicode blocks (\p{InGreek}, \p{blk=Greek}) and scripts (\p{IsLatin}, \p{sc=Latn}) as ranges of code points.
+// The runtime's Character has no UnicodeBlock or UnicodeScript, so the tables are kept here. Each one is a list of
+// "length,index," runs in base 36 covering every code point in order; an empty index is a run outside any block.
+final class UnicodeRanges {
+	// By the names Character.UnicodeBlock.forName takes, in any case: BASIC_LATIN, Basic Latin, BasicLatin. Each entry
+	// lists the Unicode names of a block, the first one with its spaces and hyphens as underscores is the constant name.
+	static RegexCharClass block(String name) {
+		if (name.isEmpty() || name.indexOf('|') >= 0) return null;
+		String key = toUpper(name);
+		for (int n = 0; n < BLOCK_NAMES.length; n++) {
+			String names = BLOCK_NAMES[n] + "|";
+			if (names.substring(0, names.indexOf('|')).replace(' ', '_').replace('-', '_').equals(key)) return ranges(BLOCKS, n);
+			for (int start = 0, end; (end = names.indexOf('|', start)) >= 0; start = end + 1) {
+				String alias = names.substring(start, end);
+				if (alias.equals(key) || alias.replace(" ", "").equals(key)) return ranges(BLOCKS, n);
+			}
+		}
+		return null;
+	}
+
+	// By name or four letter code, in any case: Latin, OLD_ITALIC, Latn
+	static RegexCharClass script(String name) {
+		if (name.isEmpty() || name.indexOf(' ') >= 0) return null;
+		String key = " " + toUpper(name) + " ";
+		for (int n = 0; n < SCRIPT_NAMES.length; n++) {
+			if ((" " + SCRIPT_NAMES[n] + " ").indexOf(key) >= 0) return ranges(SCRIPTS, n);
+		}
+		return null;
+	}
+
+	static private String toUpper(String name) {
+		StringBuilder out = new StringBuilder(name.length());
+		for (int n = 0; n < name.length(); n++) out.append((char) ASCII.toUpper(name.charAt(n)));
+		return out.toString();
+	}
+
+	static private RegexCharClass ranges(String table, int index) {
+		RegexCharClass.Ranges out = new RegexCharClass.Ranges();
+		int start = 0;
+		int pos = 0;
+		while (pos < table.length()) {
+			int length = 0;
+			char ch;
+			while ((ch = table.charAt(pos++)) != ',') length = length * 36 + Character.digit(ch, 36);
+			int value = -1;
+			while ((ch = table.charAt(pos++)) != ',') value = Math.max(value, 0) * 36 + Character.digit(ch, 36);
+			if (value == index) out.add(start, start + length - 1);
+			start += length;
+		}
+		return out;
+	}
+
+	// Generated from Character.UnicodeBlock and Character.UnicodeScript of Java 17 (Unicode 13)
+	static private final String[] BLOCK_NAMES = {
+		"BASIC LATIN", "LATIN-1 SUPPLEMENT", "LATIN EXTENDED-A", "LATIN EXTENDED-B", "IPA EXTENSIONS",
+		"SPACING MODIFIER LETTERS", "COMBINING DIACRITICAL MARKS", "GREEK|GREEK AND COPTIC", "CYRILLIC",
+		"CYRILLIC SUPPLEMENTARY|CYRILLIC SUPPLEMENT", "ARMENIAN", "HEBREW", "ARABIC", "SYRIAC", "ARABIC SUPPLEMENT",
+		"THAANA", "NKO", "SAMARITAN", "MANDAIC", "SYRIAC SUPPLEMENT", "ARABIC EXTENDED-A", "DEVANAGARI", "BENGALI",
+		"GURMUKHI", "GUJARATI", "ORIYA", "TAMIL", "TELUGU", "KANNADA", "MALAYALAM", "SINHALA", "THAI", "LAO",
+		"TIBETAN", "MYANMAR", "GEORGIAN", "HANGUL JAMO", "ETHIOPIC", "ETHIOPIC SUPPLEMENT", "CHEROKEE",
+		"UNIFIED CANADIAN ABORIGINAL SYLLABICS", "OGHAM", "RUNIC", "TAGALOG", "HANUNOO", "BUHID", "TAGBANWA",
+		"KHMER", "MONGOLIAN", "UNIFIED CANADIAN ABORIGINAL SYLLABICS EXTENDED", "LIMBU", "TAI LE", "NEW TAI LUE",
+		"KHMER SYMBOLS", "BUGINESE", "TAI THAM", "COMBINING DIACRITICAL MARKS EXTENDED", "BALINESE", "SUNDANESE",
+		"BATAK", "LEPCHA", "OL CHIKI", "CYRILLIC EXTENDED-C", "GEORGIAN EXTENDED", "SUNDANESE SUPPLEMENT",
+		"VEDIC EXTENSIONS", "PHONETIC EXTENSIONS", "PHONETIC EXTENSIONS SUPPLEMENT",
+		"COMBINING DIACRITICAL MARKS SUPPLEMENT", "LATIN EXTENDED ADDITIONAL", "GREEK EXTENDED",
+		"GENERAL PUNCTUATION", "SUPERSCRIPTS AND SUBSCRIPTS", "CURRENCY SYMBOLS",
+		"COMBINING MARKS FOR SYMBOLS|COMBINING DIACRITICAL MARKS FOR SYMBOLS", "LETTERLIKE SYMBOLS", "NUMBER FORMS",
+		"ARROWS", "MATHEMATICAL OPERATORS", "MISCELLANEOUS TECHNICAL", "CONTROL PICTURES",
+		"OPTICAL CHARACTER RECOGNITION", "ENCLOSED ALPHANUMERICS", "BOX DRAWING", "BLOCK ELEMENTS",
+		"GEOMETRIC SHAPES", "MISCELLANEOUS SYMBOLS", "DINGBATS", "MISCELLANEOUS MATHEMATICAL SYMBOLS-A",
+		"SUPPLEMENTAL ARROWS-A", "BRAILLE PATTERNS", "SUPPLEMENTAL ARROWS-B", "MISCELLANEOUS MATHEMATICAL SYMBOLS-B",
+		"SUPPLEMENTAL MATHEMATICAL OPERATORS", "MISCELLANEOUS SYMBOLS AND ARROWS", "GLAGOLITIC", "LATIN EXTENDED-C",
+		"COPTIC", "GEORGIAN SUPPLEMENT", "TIFINAGH", "ETHIOPIC EXTENDED", "CYRILLIC EXTENDED-A",
+		"SUPPLEMENTAL PUNCTUATION", "CJK RADICALS SUPPLEMENT", "KANGXI RADICALS",
+		"IDEOGRAPHIC DESCRIPTION CHARACTERS", "CJK SYMBOLS AND PUNCTUATION", "HIRAGANA", "KATAKANA", "BOPOMOFO",
+		"HANGUL COMPATIBILITY JAMO", "KANBUN", "BOPOMOFO EXTENDED", "CJK STROKES", "KATAKANA PHONETIC EXTENSIONS",
+		"ENCLOSED CJK LETTERS AND MONTHS", "CJK COMPATIBILITY", "CJK UNIFIED IDEOGRAPHS EXTENSION A",
+		"YIJING HEXAGRAM SYMBOLS", "CJK UNIFIED IDEOGRAPHS", "YI SYLLABLES", "YI RADICALS", "LISU", "VAI",
+		"CYRILLIC EXTENDED-B", "BAMUM", "MODIFIER TONE LETTERS", "LATIN EXTENDED-D", "SYLOTI NAGRI",
+		"COMMON INDIC NUMBER FORMS", "PHAGS-PA", "SAURASHTRA", "DEVANAGARI EXTENDED", "KAYAH LI", "REJANG",
+		"HANGUL JAMO EXTENDED-A", "JAVANESE", "MYANMAR EXTENDED-B", "CHAM", "MYANMAR EXTENDED-A", "TAI VIET",
+		"MEETEI MAYEK EXTENSIONS", "ETHIOPIC EXTENDED-A", "LATIN EXTENDED-E", "CHEROKEE SUPPLEMENT", "MEETEI MAYEK",
+		"HANGUL SYLLABLES", "HANGUL JAMO EXTENDED-B", "HIGH SURROGATES", "HIGH PRIVATE USE SURROGATES",
+		"LOW SURROGATES", "PRIVATE USE AREA", "CJK COMPATIBILITY IDEOGRAPHS", "ALPHABETIC PRESENTATION FORMS",
+		"ARABIC PRESENTATION FORMS-A", "VARIATION SELECTORS", "VERTICAL FORMS", "COMBINING HALF MARKS",
+		"CJK COMPATIBILITY FORMS", "SMALL FORM VARIANTS", "ARABIC PRESENTATION FORMS-B",
+		"HALFWIDTH AND FULLWIDTH FORMS", "SPECIALS", "LINEAR B SYLLABARY", "LINEAR B IDEOGRAMS", "AEGEAN NUMBERS",
+		"ANCIENT GREEK NUMBERS", "ANCIENT SYMBOLS", "PHAISTOS DISC", "LYCIAN", "CARIAN", "COPTIC EPACT NUMBERS",
+		"OLD ITALIC", "GOTHIC", "OLD PERMIC", "UGARITIC", "OLD PERSIAN", "DESERET", "SHAVIAN", "OSMANYA", "OSAGE",
+		"ELBASAN", "CAUCASIAN ALBANIAN", "LINEAR A", "CYPRIOT SYLLABARY", "IMPERIAL ARAMAIC", "PALMYRENE",
+		"NABATAEAN", "HATRAN", "PHOENICIAN", "LYDIAN", "MEROITIC HIEROGLYPHS", "MEROITIC CURSIVE", "KHAROSHTHI",
+		"OLD SOUTH ARABIAN", "OLD NORTH ARABIAN", "MANICHAEAN", "AVESTAN", "INSCRIPTIONAL PARTHIAN",
+		"INSCRIPTIONAL PAHLAVI", "PSALTER PAHLAVI", "OLD TURKIC", "OLD HUNGARIAN", "HANIFI ROHINGYA",
+		"RUMI NUMERAL SYMBOLS", "YEZIDI", "OLD SOGDIAN", "SOGDIAN", "CHORASMIAN", "ELYMAIC", "BRAHMI", "KAITHI",
+		"SORA SOMPENG", "CHAKMA", "MAHAJANI", "SHARADA", "SINHALA ARCHAIC NUMBERS", "KHOJKI", "MULTANI", "KHUDAWADI",
+		"GRANTHA", "NEWA", "TIRHUTA", "SIDDHAM", "MODI", "MONGOLIAN SUPPLEMENT", "TAKRI", "AHOM", "DOGRA",
+		"WARANG CITI", "DIVES AKURU", "NANDINAGARI", "ZANABAZAR SQUARE", "SOYOMBO", "PAU CIN HAU", "BHAIKSUKI",
+		"MARCHEN", "MASARAM GONDI", "GUNJALA GONDI", "MAKASAR", "LISU SUPPLEMENT", "TAMIL SUPPLEMENT", "CUNEIFORM",
+		"CUNEIFORM NUMBERS AND PUNCTUATION", "EARLY DYNASTIC CUNEIFORM", "EGYPTIAN HIEROGLYPHS",
+		"EGYPTIAN HIEROGLYPH FORMAT CONTROLS", "ANATOLIAN HIEROGLYPHS", "BAMUM SUPPLEMENT", "MRO", "BASSA VAH",
+		"PAHAWH HMONG", "MEDEFAIDRIN", "MIAO", "IDEOGRAPHIC SYMBOLS AND PUNCTUATION", "TANGUT", "TANGUT COMPONENTS",
+		"KHITAN SMALL SCRIPT", "TANGUT SUPPLEMENT", "KANA SUPPLEMENT", "KANA EXTENDED-A", "SMALL KANA EXTENSION",
+		"NUSHU", "DUPLOYAN", "SHORTHAND FORMAT CONTROLS", "BYZANTINE MUSICAL SYMBOLS", "MUSICAL SYMBOLS",
+		"ANCIENT GREEK MUSICAL NOTATION", "MAYAN NUMERALS", "TAI XUAN JING SYMBOLS", "COUNTING ROD NUMERALS",
+		"MATHEMATICAL ALPHANUMERIC SYMBOLS", "SUTTON SIGNWRITING", "GLAGOLITIC SUPPLEMENT", "NYIAKENG PUACHUE HMONG",
+		"WANCHO", "MENDE KIKAKUI", "ADLAM", "INDIC SIYAQ NUMBERS", "OTTOMAN SIYAQ NUMBERS",
+		"ARABIC MATHEMATICAL ALPHABETIC SYMBOLS", "MAHJONG TILES", "DOMINO TILES", "PLAYING CARDS",
+		"ENCLOSED ALPHANUMERIC SUPPLEMENT", "ENCLOSED IDEOGRAPHIC SUPPLEMENT",
+		"MISCELLANEOUS SYMBOLS AND PICTOGRAPHS", "EMOTICONS", "ORNAMENTAL DINGBATS", "TRANSPORT AND MAP SYMBOLS",
+		"ALCHEMICAL SYMBOLS", "GEOMETRIC SHAPES EXTENDED", "SUPPLEMENTAL ARROWS-C",
+		"SUPPLEMENTAL SYMBOLS AND PICTOGRAPHS", "CHESS SYMBOLS", "SYMBOLS AND PICTOGRAPHS EXTENDED-A",
+		"SYMBOLS FOR LEGACY COMPUTING", "CJK UNIFIED IDEOGRAPHS EXTENSION B", "CJK UNIFIED IDEOGRAPHS EXTENSION C",
+		"CJK UNIFIED IDEOGRAPHS EXTENSION D", "CJK UNIFIED IDEOGRAPHS EXTENSION E",
+		"CJK UNIFIED IDEOGRAPHS EXTENSION F", "CJK COMPATIBILITY IDEOGRAPHS SUPPLEMENT",
+		"CJK UNIFIED IDEOGRAPHS EXTENSION G", "TAGS", "VARIATION SELECTORS SUPPLEMENT",
+		"SUPPLEMENTARY PRIVATE USE AREA-A", "SUPPLEMENTARY PRIVATE USE AREA-B", "SURROGATES_AREA"
+	};
+
+	static private final String BLOCKS =
+		"3k,0,3k,1,3k,2,5s,3,2o,4,28,5,34,6,40,7,74,8,1c,9,2o,a,34,b,74,c,28,d,1c,e,1s,f,1s,g,1s,h,w,i,g,j,1c,,2o,k,3k,"
+		+ "l,3k,m,3k,n,3k,o,3k,p,3k,q,3k,r,3k,s,3k,t,3k,u,3k,v,3k,w,74,x,4g,y,2o,z,74,10,ao,11,w,12,2o,13,hs,14,w,15,2o,1"
+		+ "6,w,17,w,18,w,19,w,1a,3k,1b,4w,1c,28,1d,28,1e,1c,1f,2o,1g,w,1h,w,1i,40,1j,28,1k,3k,1l,1s,1m,1s,1n,28,1o,1c,1p,"
+		+ "g,1q,1c,1r,g,1s,1c,1t,3k,1u,1s,1v,1s,1w,74,1x,74,1y,34,1z,1c,20,1c,21,1c,22,28,23,1s,24,34,25,74,26,74,27,1s,2"
+		+ "8,w,29,4g,2a,3k,2b,w,2c,2o,2d,74,2e,5c,2f,1c,2g,g,2h,74,2i,3k,2j,3k,2k,74,2l,74,2m,2o,2n,w,2o,3k,2p,1c,2q,28,2"
+		+ "r,2o,2s,w,2t,3k,2u,3k,2v,68,2w,g,,g,2x,1s,2y,2o,2z,2o,30,1c,31,2o,32,g,33,w,34,1c,35,g,36,74,37,74,38,534,39,1"
+		+ "s,3a,g74,3b,wg,3c,1s,3d,1c,3e,8w,3f,2o,3g,2o,3h,w,3i,68,3j,1c,3k,g,3l,1s,3m,2o,3n,w,3o,1c,3p,1c,3q,w,3r,2o,3s,"
+		+ "w,3t,2o,3u,w,3v,2o,3w,w,3x,1c,3y,1s,3z,28,40,1s,41,8mo,42,28,43,ow,44,3k,45,sg,46,4xs,47,e8,48,28,49,j4,4a,g,4"
+		+ "b,g,4c,g,4d,w,4e,w,4f,40,4g,6o,4h,g,4i,3k,4j,3k,4k,1s,4l,28,4m,1s,4n,1c,4o,3k,,w,4p,1s,4q,w,4r,1c,4s,w,4t,1c,4"
+		+ "u,w,4v,1s,4w,w,,28,4x,1c,4y,1c,4z,28,50,1c,51,1s,52,40,,ao,53,3k,,1s,54,w,55,w,56,1c,57,1c,,w,58,w,59,w,5a,1s,"
+		+ ",w,5b,2o,5c,2o,5d,w,5e,w,5f,w,,1s,5g,1s,5h,w,5i,w,5j,1c,5k,28,,28,5l,1c,,3k,5m,1s,5n,80,,w,5o,1s,5p,1s,,1c,5q,"
+		+ "1s,5r,1s,,1c,5s,w,5t,3k,5u,28,5v,1c,5w,28,5x,1c,5y,2o,5z,w,60,28,61,1c,,1c,62,28,63,3k,64,3k,,3k,65,2o,66,4g,,"
+		+ "3k,67,2o,68,w,69,28,6a,1c,,1s,6b,5c,,28,6c,28,,2o,6d,2o,6e,1s,,2o,6f,28,6g,2o,6h,g,,1s,6i,74,,34,6j,28,6k,1s,,"
+		+ "2o,6l,28,6m,8g,,w,6n,4w,,g,6o,1s,6p,sg,6q,3k,6r,5s,6s,240,,ts,6t,g,6u,340,,hs,6v,6m8,,g0,6w,1c,6x,2o,,1c,6y,40"
+		+ ",6z,j4,,2o,70,2o,,4g,71,1s,,w,72,4qo,73,lc,74,e8,75,40,76,6sw,,74,77,1c,78,1s,79,b4,7a,1s0,,4g,7b,g,7c,3tc,,74"
+		+ ",7d,74,7e,28,7f,40,,w,7g,2o,7h,w,7i,3k,,sg,7j,j4,7k,11s,,1c,7l,5s,,28,7m,a8,,1s,7n,zk,,68,7o,w,,2o,7p,ls,,28,7"
+		+ "q,1s,,28,7r,4w,,74,7s,74,,1c,7t,34,7u,2o,7v,74,7w,74,7x,lc,7y,28,7z,1c,80,3k,81,3k,82,3k,83,74,84,74,85,34,86,"
+		+ "40,87,74,88,sg,,wyo,89,w,,37k,8a,68,8b,4gg,8c,5s0,8d,2ds,,f4,8e,15s,,3tc,8f,fcfk,,3k,8g,3k,,6o,8h,1e6o,,1ekg,8"
+		+ "i,1ekg,8j,";
+
+	static private final String[] SCRIPT_NAMES = {
+		"COMMON ZYYY", "LATIN LATN", "GREEK GREK", "CYRILLIC CYRL", "ARMENIAN ARMN", "HEBREW HEBR", "ARABIC ARAB",
+		"SYRIAC SYRC", "THAANA THAA", "DEVANAGARI DEVA", "BENGALI BENG", "GURMUKHI GURU", "GUJARATI GUJR",
+		"ORIYA ORYA", "TAMIL TAML", "TELUGU TELU", "KANNADA KNDA", "MALAYALAM MLYM", "SINHALA SINH", "THAI",
+		"LAO LAOO", "TIBETAN TIBT", "MYANMAR MYMR", "GEORGIAN GEOR", "HANGUL HANG", "ETHIOPIC ETHI", "CHEROKEE CHER",
+		"CANADIAN_ABORIGINAL CANS", "OGHAM OGAM", "RUNIC RUNR", "KHMER KHMR", "MONGOLIAN MONG", "HIRAGANA HIRA",
+		"KATAKANA KANA", "BOPOMOFO BOPO", "HAN HANI", "YI YIII", "OLD_ITALIC ITAL", "GOTHIC GOTH", "DESERET DSRT",
+		"INHERITED ZINH", "TAGALOG TGLG", "HANUNOO HANO", "BUHID BUHD", "TAGBANWA TAGB", "LIMBU LIMB", "TAI_LE TALE",
+		"LINEAR_B LINB", "UGARITIC UGAR", "SHAVIAN SHAW", "OSMANYA OSMA", "CYPRIOT CPRT", "BRAILLE BRAI",
+		"BUGINESE BUGI", "COPTIC COPT", "NEW_TAI_LUE TALU", "GLAGOLITIC GLAG", "TIFINAGH TFNG", "SYLOTI_NAGRI SYLO",
+		"OLD_PERSIAN XPEO", "KHAROSHTHI KHAR", "BALINESE BALI", "CUNEIFORM XSUX", "PHOENICIAN PHNX", "PHAGS_PA PHAG",
+		"NKO NKOO", "SUNDANESE SUND", "BATAK BATK", "LEPCHA LEPC", "OL_CHIKI OLCK", "VAI VAII", "SAURASHTRA SAUR",
+		"KAYAH_LI KALI", "REJANG RJNG", "LYCIAN LYCI", "CARIAN CARI", "LYDIAN LYDI", "CHAM", "TAI_THAM LANA",
+		"TAI_VIET TAVT", "AVESTAN AVST", "EGYPTIAN_HIEROGLYPHS EGYP", "SAMARITAN SAMR", "MANDAIC MAND", "LISU",
+		"BAMUM BAMU", "JAVANESE JAVA", "MEETEI_MAYEK MTEI", "IMPERIAL_ARAMAIC ARMI", "OLD_SOUTH_ARABIAN SARB",
+		"INSCRIPTIONAL_PARTHIAN PRTI", "INSCRIPTIONAL_PAHLAVI PHLI", "OLD_TURKIC ORKH", "BRAHMI BRAH", "KAITHI KTHI",
+		"MEROITIC_HIEROGLYPHS MERO", "MEROITIC_CURSIVE MERC", "SORA_SOMPENG SORA", "CHAKMA CAKM", "SHARADA SHRD",
+		"TAKRI TAKR", "MIAO PLRD", "CAUCASIAN_ALBANIAN AGHB", "BASSA_VAH BASS", "DUPLOYAN DUPL", "ELBASAN ELBA",
+		"GRANTHA GRAN", "PAHAWH_HMONG HMNG", "KHOJKI KHOJ", "LINEAR_A LINA", "MAHAJANI MAHJ", "MANICHAEAN MANI",
+		"MENDE_KIKAKUI MEND", "MODI", "MRO MROO", "OLD_NORTH_ARABIAN NARB", "NABATAEAN NBAT", "PALMYRENE PALM",
+		"PAU_CIN_HAU PAUC", "OLD_PERMIC PERM", "PSALTER_PAHLAVI PHLP", "SIDDHAM SIDD", "KHUDAWADI SIND",
+		"TIRHUTA TIRH", "WARANG_CITI WARA", "AHOM", "ANATOLIAN_HIEROGLYPHS HLUW", "HATRAN HATR", "MULTANI MULT",
+		"OLD_HUNGARIAN HUNG", "SIGNWRITING SGNW", "ADLAM ADLM", "BHAIKSUKI BHKS", "MARCHEN MARC", "NEWA",
+		"OSAGE OSGE", "TANGUT TANG", "MASARAM_GONDI GONM", "NUSHU NSHU", "SOYOMBO SOYO", "ZANABAZAR_SQUARE ZANB",
+		"HANIFI_ROHINGYA ROHG", "OLD_SOGDIAN SOGO", "SOGDIAN SOGD", "DOGRA DOGR", "GUNJALA_GONDI GONG",
+		"MAKASAR MAKA", "MEDEFAIDRIN MEDF", "ELYMAIC ELYM", "NANDINAGARI NAND", "NYIAKENG_PUACHUE_HMONG HMNP",
+		"WANCHO WCHO", "YEZIDI YEZI", "CHORASMIAN CHRS", "DIVES_AKURU DIAK", "KHITAN_SMALL_SCRIPT KITS",
+		"UNKNOWN ZZZZ"
+	};
+
+	static private final String SCRIPTS =
+		"1t,0,q,1,6,0,q,1,1b,0,1,1,f,0,1,1,5,0,n,1,1,0,v,1,1,0,ch,1,13,0,5,1,5,0,2,y,k,0,34,14,4,2,1,0,3,2,2,4c,4,2,1,0"
+		+ ",1,2,4,4c,1,2,1,0,1,2,1,0,3,2,1,4c,1,2,1,4c,k,2,1,4c,1r,2,e,1i,g,2,3p,3,2,14,4p,3,1,4c,12,4,2,4c,1e,4,2,4c,3,4"
+		+ ",1,4c,1j,5,8,4c,r,5,4,4c,6,5,b,4c,5,6,1,0,6,6,1,0,e,6,1,0,1,6,1,4c,1,6,1,0,w,6,1,0,a,6,b,14,q,6,1,14,30,6,1,0,"
+		+ "y,6,e,7,1,4c,1o,7,2,4c,3,7,1c,6,1e,8,e,4c,1n,1t,2,4c,3,1t,1a,2a,2,4c,f,2a,1,4c,s,2b,2,4c,1,2b,1,4c,b,7,1h,4c,l"
+		+ ",6,1,4c,i,6,b,4c,f,6,1,0,t,6,29,9,4,14,f,9,2,0,q,9,4,a,1,4c,8,a,2,4c,2,a,2,4c,m,a,1,4c,7,a,1,4c,1,a,3,4c,4,a,2"
+		+ ",4c,9,a,2,4c,2,a,2,4c,4,a,8,4c,1,a,4,4c,2,a,1,4c,5,a,2,4c,p,a,2,4c,3,b,1,4c,6,b,4,4c,2,b,2,4c,m,b,1,4c,7,b,1,4"
+		+ "c,2,b,1,4c,2,b,1,4c,2,b,2,4c,1,b,1,4c,5,b,4,4c,2,b,2,4c,3,b,3,4c,1,b,7,4c,4,b,1,4c,1,b,7,4c,h,b,a,4c,3,c,1,4c,"
+		+ "9,c,1,4c,3,c,1,4c,m,c,1,4c,7,c,1,4c,2,c,1,4c,5,c,2,4c,a,c,1,4c,3,c,1,4c,3,c,2,4c,1,c,f,4c,4,c,2,4c,c,c,7,4c,7,"
+		+ "c,1,4c,3,d,1,4c,8,d,2,4c,2,d,2,4c,m,d,1,4c,7,d,1,4c,2,d,1,4c,5,d,2,4c,9,d,2,4c,2,d,2,4c,3,d,7,4c,3,d,4,4c,2,d,"
+		+ "1,4c,5,d,2,4c,i,d,a,4c,2,e,1,4c,6,e,3,4c,3,e,1,4c,4,e,3,4c,2,e,1,4c,1,e,1,4c,2,e,3,4c,2,e,3,4c,3,e,3,4c,c,e,4,"
+		+ "4c,5,e,3,4c,3,e,1,4c,4,e,2,4c,1,e,6,4c,1,e,e,4c,l,e,5,4c,d,f,1,4c,3,f,1,4c,n,f,1,4c,g,f,3,4c,8,f,1,4c,3,f,1,4c"
+		+ ",4,f,7,4c,2,f,1,4c,3,f,5,4c,4,f,2,4c,a,f,7,4c,9,f,d,g,1,4c,3,g,1,4c,n,g,1,4c,a,g,1,4c,5,g,2,4c,9,g,1,4c,3,g,1,"
+		+ "4c,4,g,7,4c,2,g,7,4c,1,g,1,4c,4,g,2,4c,a,g,1,4c,2,g,d,4c,d,h,1,4c,3,h,1,4c,1f,h,1,4c,3,h,1,4c,6,h,4,4c,g,h,2,4"
+		+ "c,q,h,1,4c,3,i,1,4c,i,i,3,4c,o,i,1,4c,9,i,1,4c,1,i,2,4c,7,i,3,4c,1,i,4,4c,6,i,1,4c,1,i,1,4c,8,i,6,4c,a,i,2,4c,"
+		+ "3,i,c,4c,1m,j,4,4c,1,0,s,j,11,4c,2,k,1,4c,1,k,1,4c,5,k,1,4c,o,k,1,4c,1,k,1,4c,n,k,2,4c,5,k,1,4c,1,k,1,4c,6,k,2"
+		+ ",4c,a,k,2,4c,4,k,w,4c,20,l,1,4c,10,l,4,4c,13,l,1,4c,10,l,1,4c,f,l,1,4c,7,l,4,0,2,l,11,4c,4g,m,12,n,1,4c,1,n,5,"
+		+ "4c,1,n,2,4c,17,n,1,0,4,n,74,o,21,p,1,4c,4,p,2,4c,7,p,1,4c,1,p,1,4c,4,p,2,4c,15,p,1,4c,4,p,2,4c,x,p,1,4c,4,p,2,"
+		+ "4c,7,p,1,4c,1,p,1,4c,4,p,2,4c,f,p,1,4c,1l,p,1,4c,4,p,2,4c,1v,p,2,4c,w,p,3,4c,q,p,6,4c,2e,q,2,4c,6,q,2,4c,hs,r,"
+		+ "t,s,3,4c,23,t,3,0,b,t,7,4c,d,15,1,4c,7,15,b,4c,l,16,2,0,9,4c,k,17,c,4c,d,18,1,4c,3,18,1,4c,2,18,c,4c,2m,u,2,4c"
+		+ ",a,u,6,4c,a,u,6,4c,2,v,2,0,1,v,1,0,9,v,1,4c,a,v,6,4c,2h,v,7,4c,17,v,5,4c,1y,r,a,4c,v,19,1,4c,c,19,4,4c,c,19,4,"
+		+ "4c,1,19,3,4c,c,19,u,1a,2,4c,5,1a,b,4c,18,1j,4,4c,q,1j,6,4c,b,1j,3,4c,2,1j,w,u,s,1h,2,4c,2,1h,1r,26,1,4c,t,26,2"
+		+ ",4c,b,26,6,4c,a,26,6,4c,e,26,2,4c,h,14,1r,4c,24,1p,4,4c,19,1p,3,4c,1s,1u,1g,1v,8,4c,4,1v,1k,1w,3,4c,f,1w,3,4c,"
+		+ "3,1w,1c,1x,9,3,7,4c,17,n,2,4c,3,n,8,1u,8,4c,3,14,1,0,d,14,1,0,7,14,4,0,1,14,6,0,1,14,3,0,2,14,1,0,5,4c,12,1,5,"
+		+ "2,1,3,1d,1,5,2,4,1,5,2,d,1,1,3,1y,1,1,2,1m,14,1,4c,5,14,74,1,m,2,2,4c,6,2,2,4c,12,2,2,4c,6,2,2,4c,8,2,1,4c,1,2"
+		+ ",1,4c,1,2,1,4c,1,2,1,4c,v,2,2,4c,1h,2,1,4c,f,2,1,4c,e,2,2,4c,6,2,1,4c,j,2,2,4c,3,2,1,4c,9,2,1,4c,c,0,2,14,2f,0"
+		+ ",1,4c,b,0,1,1,2,4c,b,0,1,1,f,0,1,4c,d,1,3,4c,w,0,g,4c,x,14,f,4c,12,0,1,2,3,0,2,1,6,0,1,1,r,0,1,1,h,0,15,1,3,0,"
+		+ "4,4c,if,0,p,4c,b,0,l,4c,ps,0,74,1g,hg,0,2,4c,w,0,1,4c,2x,0,1b,1k,1,4c,1b,1k,1,4c,w,1,38,1i,5,4c,7,1i,12,n,1,4c"
+		+ ",1,n,5,4c,1,n,2,4c,1k,1l,7,4c,2,1l,e,4c,1,1l,n,p,9,4c,7,p,1,4c,7,p,1,4c,7,p,1,4c,7,p,1,4c,7,p,1,4c,7,p,1,4c,7,"
+		+ "p,1,4c,7,p,1,4c,w,3,2b,0,19,4c,q,z,1,4c,2h,z,c,4c,5y,z,q,4c,c,0,4,4c,5,0,1,z,1,0,1,z,p,0,9,z,4,14,2,o,8,0,4,z,"
+		+ "4,0,1,4c,2e,w,2,4c,2,14,2,0,3,w,1,0,2i,x,2,0,3,x,5,4c,17,y,1,4c,2m,o,1,4c,g,0,w,y,10,0,c,4c,g,x,v,o,1,4c,1s,0,"
+		+ "v,o,29,0,1b,x,1,0,2g,x,4o,0,534,z,1s,0,g71,z,3,4c,wd,10,3,4c,1j,10,9,4c,1c,2c,8c,1y,k,4c,2o,3,2g,2d,8,4c,y,0,2"
+		+ "u,1,3,0,1h,1,2,4c,9,1,16,4c,b,1,19,1m,3,4c,a,0,6,4c,1k,1s,8,4c,1y,1z,8,4c,c,1z,6,4c,w,9,1a,20,1,0,1,20,10,21,b"
+		+ ",4c,1,21,t,o,3,4c,26,2e,1,4c,1,0,a,2e,4,4c,2,2e,v,m,1,4c,1j,25,9,4c,e,25,2,4c,a,25,2,4c,4,25,w,m,1v,27,o,4c,5,"
+		+ "27,n,2f,a,4c,6,p,2,4c,6,p,2,4c,6,p,9,4c,7,p,1,4c,7,p,1,4c,17,1,1,0,9,1,1,2,4,1,2,0,4,4c,28,q,1a,2f,2,4c,a,2f,6"
+		+ ",4c,8mc,o,c,4c,n,o,4,4c,1d,o,6is,4c,a6,z,2,4c,2y,z,12,4c,7,1,c,4c,5,4,5,4c,q,5,1,4c,5,5,1,4c,1,5,1,4c,2,5,1,4c"
+		+ ",2,5,1,4c,a,5,36,6,h,4c,a3,6,2,0,g,4c,1s,6,2,4c,1i,6,14,4c,e,6,2,4c,g,14,a,0,6,4c,e,14,2,3,z,0,1,4c,j,0,1,4c,4"
+		+ ",0,4,4c,5,6,1,4c,3r,6,2,4c,1,0,1,4c,w,0,q,1,6,0,q,1,b,0,a,x,1,0,19,x,2,0,v,o,3,4c,6,o,2,4c,6,o,2,4c,6,o,2,4c,3"
+		+ ",o,3,4c,7,0,1,4c,7,0,a,4c,5,0,2,4c,c,1b,1,4c,q,1b,1,4c,j,1b,1,4c,2,1b,1,4c,f,1b,2,4c,e,1b,y,4c,3f,1b,5,4c,3,0,"
+		+ "4,4c,19,0,3,4c,9,0,27,2,1,4c,d,0,3,4c,1,2,1b,4c,19,0,1,14,3m,4c,t,22,3,4c,1d,23,f,4c,1,14,r,0,4,4c,10,11,9,4c,"
+		+ "3,11,r,12,5,4c,17,3b,5,4c,u,1c,1,4c,1,1c,10,1n,4,4c,e,1n,16,4c,28,13,1c,1d,u,1e,2,4c,a,1e,6,4c,10,3r,4,4c,10,3"
+		+ "r,4,4c,14,2x,8,4c,1g,2u,b,4c,1,2u,40,4c,8n,31,9,4c,m,31,a,4c,8,31,48,4c,6,1f,2,4c,1,1f,1,4c,18,1f,1,4c,2,1f,3,"
+		+ "4c,1,1f,2,4c,1,1f,m,2g,1,4c,9,2g,w,39,v,38,8,4c,9,38,1c,4c,j,3j,1,4c,2,3j,5,4c,5,3j,s,1r,3,4c,1,1r,q,24,5,4c,1"
+		+ ",24,1s,4c,w,2n,o,2o,4,4c,k,2o,2,4c,1a,2o,4,1o,1,4c,2,1o,5,4c,8,1o,1,4c,3,1o,1,4c,t,1o,2,4c,3,1o,4,4c,a,1o,7,4c"
+		+ ",9,1o,7,4c,w,2h,w,37,w,4c,13,33,4,4c,c,33,9,4c,1i,28,3,4c,7,28,m,2i,2,4c,8,2i,j,2j,5,4c,8,2j,i,3c,7,4c,4,3c,c,"
+		+ "4c,7,3c,28,4c,21,2k,1j,4c,1f,3l,d,4c,1f,3l,7,4c,6,3l,14,3x,8,4c,a,3x,86,4c,v,6,1,4c,16,48,1,4c,3,48,2,4c,2,48,"
+		+ "26,4c,14,3y,8,4c,16,3z,2e,4c,s,49,k,4c,n,44,9,4c,26,2l,4,4c,u,2l,f,4c,1,2l,1u,2m,b,4c,1,2m,2,4c,p,2p,7,4c,a,2p"
+		+ ",6,4c,1h,2q,1,4c,i,2q,8,4c,13,32,9,4c,2o,2r,1,4c,k,i,b,4c,i,30,1,4c,18,30,1t,4c,7,3k,1,4c,1,3k,1,4c,4,3k,1,4c,"
+		+ "f,3k,1,4c,b,3k,6,4c,1n,3e,5,4c,a,3e,6,4c,4,2y,1,4c,8,2y,2,4c,2,2y,2,4c,m,2y,1,4c,7,2y,1,4c,2,2y,1,4c,5,2y,1,4c"
+		+ ",1,14,9,2y,2,4c,2,2y,2,4c,3,2y,2,4c,1,2y,6,4c,1,2y,5,4c,7,2y,2,4c,7,2y,3,4c,5,2y,3v,4c,2k,3q,1,4c,5,3q,u,4c,20"
+		+ ",3f,8,4c,a,3f,4m,4c,1i,3d,2,4c,12,3d,y,4c,1x,35,b,4c,a,35,6,4c,d,v,j,4c,1l,2s,7,4c,a,2s,1i,4c,r,3h,2,4c,f,3h,4"
+		+ ",4c,g,3h,5c,4c,1o,40,2s,4c,2b,3g,c,4c,1,3g,7,4a,2,4c,1,4a,2,4c,8,4a,1,4c,2,4a,1,4c,u,4a,1,4c,2,4a,2,4c,c,4a,9,"
+		+ "4c,a,4a,1y,4c,8,45,2,4c,1a,45,2,4c,b,45,r,4c,20,3w,8,4c,2b,3v,t,4c,1l,3a,7b,4c,9,3o,1,4c,19,3o,1,4c,e,3o,a,4c,"
+		+ "t,3o,3,4c,w,3p,2,4c,m,3p,1,4c,e,3p,21,4c,7,3t,1,4c,2,3t,1,4c,18,3t,3,4c,1,3t,1,4c,2,3t,1,4c,9,3t,8,4c,a,3t,6,4"
+		+ "c,6,41,1,4c,2,41,1,4c,11,41,1,4c,2,41,1,4c,6,41,7,4c,a,41,8m,4c,p,42,53,4c,1,2c,f,4c,1e,e,d,4c,1,e,pm,1q,2u,4c"
+		+ ",33,1q,1,4c,5,1q,b,4c,5g,1q,24c,4c,tr,29,1,4c,9,29,347,4c,g7,3i,6nt,4c,ft,2d,7,4c,v,36,1,4c,a,36,4,4c,2,36,2o,"
+		+ "4c,u,2v,2,4c,6,2v,a,4c,1y,2z,a,4c,a,2z,1,4c,7,2z,1,4c,l,2z,5,4c,j,2z,j4,4c,2j,43,2t,4c,23,2t,4,4c,1l,2t,7,4c,h"
+		+ ",2t,1s,4c,1,3s,1,3u,2,0,1,4b,b,4c,2,z,e,4c,4qg,3s,8,4c,lc,3s,d2,4b,16,4c,9,3s,6wn,4c,1,x,7y,w,1d,4c,3,w,h,4c,4"
+		+ ",x,8,4c,b0,3u,1s4,4c,2z,2w,5,4c,d,2w,3,4c,9,2w,7,4c,a,2w,2,4c,4,2w,4,0,3to,4c,6u,0,a,4c,13,0,2,4c,1q,0,3,14,h,"
+		+ "0,8,14,2,0,7,14,u,0,4,14,1n,0,n,4c,1y,2,4a,4c,k,0,c,4c,2f,0,9,4c,p,0,3r,4c,2d,0,1,4c,1z,0,1,4c,2,0,2,4c,1,0,2,"
+		+ "4c,2,0,2,4c,4,0,1,4c,c,0,1,4c,1,0,1,4c,7,0,1,4c,1t,0,1,4c,4,0,2,4c,8,0,1,4c,7,0,1,4c,s,0,1,4c,4,0,1,4c,5,0,1,4"
+		+ "c,1,0,3,4c,7,0,1,4c,9g,0,2,4c,84,0,2,4c,1e,0,i4,3m,f,4c,5,3m,1,4c,f,3m,11s,4c,7,1k,1,4c,h,1k,2,4c,7,1k,1,4c,2,"
+		+ "1k,1,4c,5,1k,5x,4c,19,46,3,4c,e,46,2,4c,a,46,4,4c,2,46,a8,4c,1m,47,5,4c,1,47,zk,4c,5h,34,2,4c,g,34,15,4c,24,3n"
+		+ ",4,4c,a,3n,4,4c,2,3n,lt,4c,1w,0,24,4c,1p,0,5e,4c,4,6,1,4c,r,6,1,4c,2,6,1,4c,1,6,2,4c,1,6,1,4c,a,6,1,4c,4,6,1,4"
+		+ "c,1,6,1,4c,1,6,6,4c,1,6,4,4c,1,6,1,4c,1,6,1,4c,1,6,1,4c,3,6,1,4c,2,6,1,4c,1,6,2,4c,1,6,1,4c,1,6,1,4c,1,6,1,4c,"
+		+ "1,6,1,4c,1,6,1,4c,2,6,1,4c,1,6,2,4c,4,6,1,4c,7,6,1,4c,4,6,1,4c,4,6,1,4c,1,6,1,4c,a,6,1,4c,h,6,5,4c,3,6,1,4c,5,"
+		+ "6,1,4c,h,6,1g,4c,2,6,7i,4c,18,0,4,4c,2s,0,c,4c,f,0,2,4c,f,0,1,4c,f,0,1,4c,11,0,a,4c,4u,0,1k,4c,q,0,1,w,2,0,d,4"
+		+ "c,18,0,4,4c,9,0,7,4c,2,0,e,4c,6,0,4a,4c,rc,0,8,4c,d,0,3,4c,d,0,3,4c,38,0,c,4c,2h,0,7,4c,c,0,k,4c,c,0,4,4c,1k,0"
+		+ ",8,4c,a,0,6,4c,14,0,8,4c,u,0,2,4c,2,0,26,4c,3d,0,1,4c,2a,0,1,4c,3r,0,c,4c,e,0,2,4c,5,0,3,4c,3,0,5,4c,7,0,9,4c,"
+		+ "p,0,7,4c,7,0,9,4c,3,0,d,4c,7,0,15,4c,43,0,1,4c,1j,0,11,4c,a,0,sm,4c,wym,z,y,4c,379,z,b,4c,66,z,2,4c,4g2,z,e,4c"
+		+ ",5rl,z,2e7,4c,f2,z,15u,4c,3t7,z,fcfq,4c,1,0,u,4c,2o,0,3k,4c,6o,14,47bk,4c,";
+}
@@ -18,10 +18,12 @@ package jtransc.internal;
 
 import java.util.List;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
 
 public class GenericListIterator<T> implements ListIterator<T> {
 	private List<T> list;
 	private int index = 0;
+	private int lastIndex = -1;
 
 	public GenericListIterator(List<T> list, int index) {
 		this.list = list;
@@ -33,7 +35,9 @@ public class GenericListIterator<T> implements ListIterator<T> {
 	}
 
 	public T next() {
-		return list.get(index++);
+		if (!hasNext()) throw new NoSuchElementException();
+		lastIndex = index++;
+		return list.get(lastIndex);
 	}
 
 	@Override
@@ -43,12 +47,14 @@ public class GenericListIterator<T> implements ListIterator<T> {
 
 	@Override
 	public T previous() {
-		return list.get(index - 1);
+		if (!hasPrevious()) throw new NoSuchElementException();
+		lastIndex = --index;
+		return list.get(lastIndex);
 	}
 
 	@Override
 	public int nextIndex() {
-		return index + 1;
+		return index;
 	}
 
 	@Override
@@ -57,16 +63,21 @@ public class GenericListIterator<T> implements ListIterator<T> {
 	}
 
 	public void remove() {
-		this.list.remove(--index);
+		if (lastIndex < 0) throw new IllegalStateException();
+		this.list.remove(lastIndex);
+		if (lastIndex < index) index--;
+		lastIndex = -1;
 	}
 
 	@Override
 	public void set(T t) {
-		this.list.set(index, t);
+		if (lastIndex < 0) throw new IllegalStateException();
+		this.list.set(lastIndex, t);
 	}
 
 	@Override
 	public void add(T t) {
-		this.list.add(index, t);
+		this.list.add(index++, t);
+		lastIndex = -1;
 	}
 }
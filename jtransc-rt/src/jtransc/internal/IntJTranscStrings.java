@@ -19,6 +19,7 @@ package jtransc.internal;
 import jtransc.annotation.JTranscInvisible;
 import jtransc.annotation.haxe.HaxeMethodBody;
 
+import java.util.ArrayList;
 import java.util.Locale;
 
 @JTranscInvisible
@@ -32,6 +33,50 @@ public class IntJTranscStrings {
 		return out;
 	}
 
+	// The text a regex matches when it has no metachars (a backslash before a char that isn't a letter or a digit
+	// makes it plain), or null when the regex needs a real regex engine
+	static public String literalOrNull(String regex) {
+		int length = regex.length();
+		if (length == 0) return null;
+		if (length == 1) return (".$|()[{^?*+\\".indexOf(regex.charAt(0)) < 0) ? regex : null;
+		StringBuilder out = null;
+		for (int n = 0; n < length; n++) {
+			char c = regex.charAt(n);
+			if (c == '\\') {
+				if (n + 1 >= length) return null;
+				char escaped = regex.charAt(n + 1);
+				if (escaped >= 0x80 || (escaped >= '0' && escaped <= '9') || (escaped >= 'a' && escaped <= 'z') || (escaped >= 'A' && escaped <= 'Z')) return null;
+				if (out == null) out = new StringBuilder(length).append(regex, 0, n);
+				out.append(escaped);
+				n++;
+			} else if (".$|()[{^?*+".indexOf(c) >= 0) {
+				return null;
+			} else if (out != null) {
+				out.append(c);
+			}
+		}
+		return (out != null) ? out.toString() : regex;
+	}
+
+	// String.split for a separator without metachars, scanning with indexOf
+	static public String[] split(String str, String separator, int limit) {
+		ArrayList<String> parts = new ArrayList<String>();
+		int length = separator.length();
+		int start = 0;
+		int end;
+		while ((limit <= 0 || parts.size() < limit - 1) && (end = str.indexOf(separator, start)) >= 0) {
+			parts.add(str.substring(start, end));
+			start = end + length;
+		}
+		if (start == 0) return new String[]{str};
+		parts.add(str.substring(start));
+		int size = parts.size();
+		if (limit == 0) while (size > 0 && parts.get(size - 1).isEmpty()) size--;
+		String[] out = new String[size];
+		for (int n = 0; n < size; n++) out[n] = parts.get(n);
+		return out;
+	}
+
 
 	/*
 	public static String format(Locale l, String format, Object... args) {
@@ -0,0 +1,602 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jtransc.internal;
+
+// In-place sorts for primitive arrays: Yaroslavskiy's dual-pivot quicksort, with insertion sort for small ranges.
+// Nothing is allocated, so the typed arrays backing primitive arrays are sorted directly.
+public class JTranscDualPivotQuicksort {
+	static private final int INSERTION_SORT_THRESHOLD = 27;
+	static private final int DIST_THRESHOLD = 13;
+
+	private JTranscDualPivotQuicksort() {
+	}
+
+	static public void sort(int[] a, int fromIndex, int toIndex) {
+		sort(a, fromIndex, toIndex - 1, 3);
+	}
+
+	static private void sort(int[] a, int left, int right, int div) {
+		int length = right - left;
+		if (length < INSERTION_SORT_THRESHOLD) {
+			insertionSort(a, left, right);
+			return;
+		}
+		int third = length / div;
+		int m1 = left + third;
+		int m2 = right - third;
+		if (m1 <= left) m1 = left + 1;
+		if (m2 >= right) m2 = right - 1;
+		if (a[m1] < a[m2]) {
+			swap(a, m1, left);
+			swap(a, m2, right);
+		} else {
+			swap(a, m1, right);
+			swap(a, m2, left);
+		}
+		int pivot1 = a[left];
+		int pivot2 = a[right];
+		int less = left + 1;
+		int great = right - 1;
+		for (int k = less; k <= great; k++) {
+			int value = a[k];
+			if (value < pivot1) {
+				swap(a, k, less++);
+			} else if (value > pivot2) {
+				while (k < great && a[great] > pivot2) great--;
+				swap(a, k, great--);
+				if (a[k] < pivot1) swap(a, k, less++);
+			}
+		}
+		int dist = great - less;
+		if (dist < DIST_THRESHOLD) div++;
+		swap(a, less - 1, left);
+		swap(a, great + 1, right);
+		sort(a, left, less - 2, div);
+		sort(a, great + 2, right, div);
+		// Too many elements equal to the pivots in the middle part: move them out of it
+		if (dist > length - DIST_THRESHOLD && pivot1 != pivot2) {
+			for (int k = less; k <= great; k++) {
+				int value = a[k];
+				if (value == pivot1) {
+					swap(a, k, less++);
+				} else if (value == pivot2) {
+					swap(a, k, great--);
+					if (a[k] == pivot1) swap(a, k, less++);
+				}
+			}
+		}
+		if (pivot1 < pivot2) sort(a, less, great, div);
+	}
+
+	static private void insertionSort(int[] a, int left, int right) {
+		for (int i = left + 1; i <= right; i++) {
+			int value = a[i];
+			int j = i - 1;
+			while (j >= left && a[j] > value) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = value;
+		}
+	}
+
+	static private void swap(int[] a, int i, int j) {
+		int temp = a[i];
+		a[i] = a[j];
+		a[j] = temp;
+	}
+
+	static public void sort(long[] a, int fromIndex, int toIndex) {
+		sort(a, fromIndex, toIndex - 1, 3);
+	}
+
+	static private void sort(long[] a, int left, int right, int div) {
+		int length = right - left;
+		if (length < INSERTION_SORT_THRESHOLD) {
+			insertionSort(a, left, right);
+			return;
+		}
+		int third = length / div;
+		int m1 = left + third;
+		int m2 = right - third;
+		if (m1 <= left) m1 = left + 1;
+		if (m2 >= right) m2 = right - 1;
+		if (a[m1] < a[m2]) {
+			swap(a, m1, left);
+			swap(a, m2, right);
+		} else {
+			swap(a, m1, right);
+			swap(a, m2, left);
+		}
+		long pivot1 = a[left];
+		long pivot2 = a[right];
+		int less = left + 1;
+		int great = right - 1;
+		for (int k = less; k <= great; k++) {
+			long value = a[k];
+			if (value < pivot1) {
+				swap(a, k, less++);
+			} else if (value > pivot2) {
+				while (k < great && a[great] > pivot2) great--;
+				swap(a, k, great--);
+				if (a[k] < pivot1) swap(a, k, less++);
+			}
+		}
+		int dist = great - less;
+		if (dist < DIST_THRESHOLD) div++;
+		swap(a, less - 1, left);
+		swap(a, great + 1, right);
+		sort(a, left, less - 2, div);
+		sort(a, great + 2, right, div);
+		// Too many elements equal to the pivots in the middle part: move them out of it
+		if (dist > length - DIST_THRESHOLD && pivot1 != pivot2) {
+			for (int k = less; k <= great; k++) {
+				long value = a[k];
+				if (value == pivot1) {
+					swap(a, k, less++);
+				} else if (value == pivot2) {
+					swap(a, k, great--);
+					if (a[k] == pivot1) swap(a, k, less++);
+				}
+			}
+		}
+		if (pivot1 < pivot2) sort(a, less, great, div);
+	}
+
+	static private void insertionSort(long[] a, int left, int right) {
+		for (int i = left + 1; i <= right; i++) {
+			long value = a[i];
+			int j = i - 1;
+			while (j >= left && a[j] > value) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = value;
+		}
+	}
+
+	static private void swap(long[] a, int i, int j) {
+		long temp = a[i];
+		a[i] = a[j];
+		a[j] = temp;
+	}
+
+	static public void sort(short[] a, int fromIndex, int toIndex) {
+		sort(a, fromIndex, toIndex - 1, 3);
+	}
+
+	static private void sort(short[] a, int left, int right, int div) {
+		int length = right - left;
+		if (length < INSERTION_SORT_THRESHOLD) {
+			insertionSort(a, left, right);
+			return;
+		}
+		int third = length / div;
+		int m1 = left + third;
+		int m2 = right - third;
+		if (m1 <= left) m1 = left + 1;
+		if (m2 >= right) m2 = right - 1;
+		if (a[m1] < a[m2]) {
+			swap(a, m1, left);
+			swap(a, m2, right);
+		} else {
+			swap(a, m1, right);
+			swap(a, m2, left);
+		}
+		short pivot1 = a[left];
+		short pivot2 = a[right];
+		int less = left + 1;
+		int great = right - 1;
+		for (int k = less; k <= great; k++) {
+			short value = a[k];
+			if (value < pivot1) {
+				swap(a, k, less++);
+			} else if (value > pivot2) {
+				while (k < great && a[great] > pivot2) great--;
+				swap(a, k, great--);
+				if (a[k] < pivot1) swap(a, k, less++);
+			}
+		}
+		int dist = great - less;
+		if (dist < DIST_THRESHOLD) div++;
+		swap(a, less - 1, left);
+		swap(a, great + 1, right);
+		sort(a, left, less - 2, div);
+		sort(a, great + 2, right, div);
+		// Too many elements equal to the pivots in the middle part: move them out of it
+		if (dist > length - DIST_THRESHOLD && pivot1 != pivot2) {
+			for (int k = less; k <= great; k++) {
+				short value = a[k];
+				if (value == pivot1) {
+					swap(a, k, less++);
+				} else if (value == pivot2) {
+					swap(a, k, great--);
+					if (a[k] == pivot1) swap(a, k, less++);
+				}
+			}
+		}
+		if (pivot1 < pivot2) sort(a, less, great, div);
+	}
+
+	static private void insertionSort(short[] a, int left, int right) {
+		for (int i = left + 1; i <= right; i++) {
+			short value = a[i];
+			int j = i - 1;
+			while (j >= left && a[j] > value) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = value;
+		}
+	}
+
+	static private void swap(short[] a, int i, int j) {
+		short temp = a[i];
+		a[i] = a[j];
+		a[j] = temp;
+	}
+
+	static public void sort(char[] a, int fromIndex, int toIndex) {
+		sort(a, fromIndex, toIndex - 1, 3);
+	}
+
+	static private void sort(char[] a, int left, int right, int div) {
+		int length = right - left;
+		if (length < INSERTION_SORT_THRESHOLD) {
+			insertionSort(a, left, right);
+			return;
+		}
+		int third = length / div;
+		int m1 = left + third;
+		int m2 = right - third;
+		if (m1 <= left) m1 = left + 1;
+		if (m2 >= right) m2 = right - 1;
+		if (a[m1] < a[m2]) {
+			swap(a, m1, left);
+			swap(a, m2, right);
+		} else {
+			swap(a, m1, right);
+			swap(a, m2, left);
+		}
+		char pivot1 = a[left];
+		char pivot2 = a[right];
+		int less = left + 1;
+		int great = right - 1;
+		for (int k = less; k <= great; k++) {
+			char value = a[k];
+			if (value < pivot1) {
+				swap(a, k, less++);
+			} else if (value > pivot2) {
+				while (k < great && a[great] > pivot2) great--;
+				swap(a, k, great--);
+				if (a[k] < pivot1) swap(a, k, less++);
+			}
+		}
+		int dist = great - less;
+		if (dist < DIST_THRESHOLD) div++;
+		swap(a, less - 1, left);
+		swap(a, great + 1, right);
+		sort(a, left, less - 2, div);
+		sort(a, great + 2, right, div);
+		// Too many elements equal to the pivots in the middle part: move them out of it
+		if (dist > length - DIST_THRESHOLD && pivot1 != pivot2) {
+			for (int k = less; k <= great; k++) {
+				char value = a[k];
+				if (value == pivot1) {
+					swap(a, k, less++);
+				} else if (value == pivot2) {
+					swap(a, k, great--);
+					if (a[k] == pivot1) swap(a, k, less++);
+				}
+			}
+		}
+		if (pivot1 < pivot2) sort(a, less, great, div);
+	}
+
+	static private void insertionSort(char[] a, int left, int right) {
+		for (int i = left + 1; i <= right; i++) {
+			char value = a[i];
+			int j = i - 1;
+			while (j >= left && a[j] > value) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = value;
+		}
+	}
+
+	static private void swap(char[] a, int i, int j) {
+		char temp = a[i];
+		a[i] = a[j];
+		a[j] = temp;
+	}
+
+	static public void sort(byte[] a, int fromIndex, int toIndex) {
+		sort(a, fromIndex, toIndex - 1, 3);
+	}
+
+	static private void sort(byte[] a, int left, int right, int div) {
+		int length = right - left;
+		if (length < INSERTION_SORT_THRESHOLD) {
+			insertionSort(a, left, right);
+			return;
+		}
+		int third = length / div;
+		int m1 = left + third;
+		int m2 = right - third;
+		if (m1 <= left) m1 = left + 1;
+		if (m2 >= right) m2 = right - 1;
+		if (a[m1] < a[m2]) {
+			swap(a, m1, left);
+			swap(a, m2, right);
+		} else {
+			swap(a, m1, right);
+			swap(a, m2, left);
+		}
+		byte pivot1 = a[left];
+		byte pivot2 = a[right];
+		int less = left + 1;
+		int great = right - 1;
+		for (int k = less; k <= great; k++) {
+			byte value = a[k];
+			if (value < pivot1) {
+				swap(a, k, less++);
+			} else if (value > pivot2) {
+				while (k < great && a[great] > pivot2) great--;
+				swap(a, k, great--);
+				if (a[k] < pivot1) swap(a, k, less++);
+			}
+		}
+		int dist = great - less;
+		if (dist < DIST_THRESHOLD) div++;
+		swap(a, less - 1, left);
+		swap(a, great + 1, right);
+		sort(a, left, less - 2, div);
+		sort(a, great + 2, right, div);
+		// Too many elements equal to the pivots in the middle part: move them out of it
+		if (dist > length - DIST_THRESHOLD && pivot1 != pivot2) {
+			for (int k = less; k <= great; k++) {
+				byte value = a[k];
+				if (value == pivot1) {
+					swap(a, k, less++);
+				} else if (value == pivot2) {
+					swap(a, k, great--);
+					if (a[k] == pivot1) swap(a, k, less++);
+				}
+			}
+		}
+		if (pivot1 < pivot2) sort(a, less, great, div);
+	}
+
+	static private void insertionSort(byte[] a, int left, int right) {
+		for (int i = left + 1; i <= right; i++) {
+			byte value = a[i];
+			int j = i - 1;
+			while (j >= left && a[j] > value) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = value;
+		}
+	}
+
+	static private void swap(byte[] a, int i, int j) {
+		byte temp = a[i];
+		a[i] = a[j];
+		a[j] = temp;
+	}
+
+	// NaNs go to the end and -0.0 before 0.0, as in Float.compare
+	static public void sort(float[] a, int fromIndex, int toIndex) {
+		int end = toIndex;
+		int negativeZeros = 0;
+		for (int n = fromIndex; n < end; ) {
+			float value = a[n];
+			if (Float.isNaN(value)) {
+				a[n] = a[--end];
+				a[end] = value;
+			} else {
+				if (value == 0 && 1 / value < 0) {
+					a[n] = 0;
+					negativeZeros++;
+				}
+				n++;
+			}
+		}
+		sort(a, fromIndex, end - 1, 3);
+		if (negativeZeros > 0) {
+			int low = fromIndex;
+			int high = end;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (a[mid] < 0) low = mid + 1; else high = mid;
+			}
+			for (int n = low; n < low + negativeZeros; n++) a[n] = -a[n];
+		}
+	}
+
+	static private void sort(float[] a, int left, int right, int div) {
+		int length = right - left;
+		if (length < INSERTION_SORT_THRESHOLD) {
+			insertionSort(a, left, right);
+			return;
+		}
+		int third = length / div;
+		int m1 = left + third;
+		int m2 = right - third;
+		if (m1 <= left) m1 = left + 1;
+		if (m2 >= right) m2 = right - 1;
+		if (a[m1] < a[m2]) {
+			swap(a, m1, left);
+			swap(a, m2, right);
+		} else {
+			swap(a, m1, right);
+			swap(a, m2, left);
+		}
+		float pivot1 = a[left];
+		float pivot2 = a[right];
+		int less = left + 1;
+		int great = right - 1;
+		for (int k = less; k <= great; k++) {
+			float value = a[k];
+			if (value < pivot1) {
+				swap(a, k, less++);
+			} else if (value > pivot2) {
+				while (k < great && a[great] > pivot2) great--;
+				swap(a, k, great--);
+				if (a[k] < pivot1) swap(a, k, less++);
+			}
+		}
+		int dist = great - less;
+		if (dist < DIST_THRESHOLD) div++;
+		swap(a, less - 1, left);
+		swap(a, great + 1, right);
+		sort(a, left, less - 2, div);
+		sort(a, great + 2, right, div);
+		// Too many elements equal to the pivots in the middle part: move them out of it
+		if (dist > length - DIST_THRESHOLD && pivot1 != pivot2) {
+			for (int k = less; k <= great; k++) {
+				float value = a[k];
+				if (value == pivot1) {
+					swap(a, k, less++);
+				} else if (value == pivot2) {
+					swap(a, k, great--);
+					if (a[k] == pivot1) swap(a, k, less++);
+				}
+			}
+		}
+		if (pivot1 < pivot2) sort(a, less, great, div);
+	}
+
+	static private void insertionSort(float[] a, int left, int right) {
+		for (int i = left + 1; i <= right; i++) {
+			float value = a[i];
+			int j = i - 1;
+			while (j >= left && a[j] > value) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = value;
+		}
+	}
+
+	static private void swap(float[] a, int i, int j) {
+		float temp = a[i];
+		a[i] = a[j];
+		a[j] = temp;
+	}
+
+	// NaNs go to the end and -0.0 before 0.0, as in Double.compare
+	static public void sort(double[] a, int fromIndex, int toIndex) {
+		int end = toIndex;
+		int negativeZeros = 0;
+		for (int n = fromIndex; n < end; ) {
+			double value = a[n];
+			if (Double.isNaN(value)) {
+				a[n] = a[--end];
+				a[end] = value;
+			} else {
+				if (value == 0 && 1 / value < 0) {
+					a[n] = 0;
+					negativeZeros++;
+				}
+				n++;
+			}
+		}
+		sort(a, fromIndex, end - 1, 3);
+		if (negativeZeros > 0) {
+			int low = fromIndex;
+			int high = end;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (a[mid] < 0) low = mid + 1; else high = mid;
+			}
+			for (int n = low; n < low + negativeZeros; n++) a[n] = -a[n];
+		}
+	}
+
+	static private void sort(double[] a, int left, int right, int div) {
+		int length = right - left;
+		if (length < INSERTION_SORT_THRESHOLD) {
+			insertionSort(a, left, right);
+			return;
+		}
+		int third = length / div;
+		int m1 = left + third;
+		int m2 = right - third;
+		if (m1 <= left) m1 = left + 1;
+		if (m2 >= right) m2 = right - 1;
+		if (a[m1] < a[m2]) {
+			swap(a, m1, left);
+			swap(a, m2, right);
+		} else {
+			swap(a, m1, right);
+			swap(a, m2, left);
+		}
+		double pivot1 = a[left];
+		double pivot2 = a[right];
+		int less = left + 1;
+		int great = right - 1;
+		for (int k = less; k <= great; k++) {
+			double value = a[k];
+			if (value < pivot1) {
+				swap(a, k, less++);
+			} else if (value > pivot2) {
+				while (k < great && a[great] > pivot2) great--;
+				swap(a, k, great--);
+				if (a[k] < pivot1) swap(a, k, less++);
+			}
+		}
+		int dist = great - less;
+		if (dist < DIST_THRESHOLD) div++;
+		swap(a, less - 1, left);
+		swap(a, great + 1, right);
+		sort(a, left, less - 2, div);
+		sort(a, great + 2, right, div);
+		// Too many elements equal to the pivots in the middle part: move them out of it
+		if (dist > length - DIST_THRESHOLD && pivot1 != pivot2) {
+			for (int k = less; k <= great; k++) {
+				double value = a[k];
+				if (value == pivot1) {
+					swap(a, k, less++);
+				} else if (value == pivot2) {
+					swap(a, k, great--);
+					if (a[k] == pivot1) swap(a, k, less++);
+				}
+			}
+		}
+		if (pivot1 < pivot2) sort(a, less, great, div);
+	}
+
+	static private void insertionSort(double[] a, int left, int right) {
+		for (int i = left + 1; i <= right; i++) {
+			double value = a[i];
+			int j = i - 1;
+			while (j >= left && a[j] > value) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = value;
+		}
+	}
+
+	static private void swap(double[] a, int i, int j) {
+		double temp = a[i];
+		a[i] = a[j];
+		a[j] = temp;
+	}
+}
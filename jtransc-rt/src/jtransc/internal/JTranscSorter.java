@@ -4,6 +4,8 @@ import java.util.Comparator;
 import java.util.List;
 
 public class JTranscSorter {
+	static private final int INSERTION_SORT_THRESHOLD = 16;
+
 	public interface ComparableArrayLike {
 		void swap(int index1, int index2);
 		int compare(int index1, int index2);
@@ -21,6 +23,7 @@ public class JTranscSorter {
 	static public <T> Comparator<T> getComparator(List<? extends Comparable<? super T>> list) {
 		return new Comparator<T>() {
 			@Override
+			@SuppressWarnings("unchecked")
 			public int compare(T o1, T o2) {
 				return ((Comparable<T>)o1).compareTo(o2);
 			}
@@ -29,24 +32,56 @@ public class JTranscSorter {
 
 
 	static public void sort(ComparableArrayLike a) {
+		sort(a, 0, a.length() - 1);
+	}
+
+	// Quicksort with a median of three pivot, recursing on the smaller part only
+	static private void sort(ComparableArrayLike a, int left, int right) {
+		while (right - left >= INSERTION_SORT_THRESHOLD) {
+			int mid = (left + right) >>> 1;
+			if (a.compare(mid, left) < 0) a.swap(mid, left);
+			if (a.compare(right, left) < 0) a.swap(right, left);
+			if (a.compare(right, mid) < 0) a.swap(right, mid);
+			int pivot = right - 1;
+			a.swap(mid, pivot);
+			int i = left;
+			int j = pivot;
+			while (true) {
+				while (a.compare(++i, pivot) < 0) ;
+				while (a.compare(--j, pivot) > 0) ;
+				if (i >= j) break;
+				a.swap(i, j);
+			}
+			a.swap(i, pivot);
+			if (i - left < right - i) {
+				sort(a, left, i - 1);
+				left = i + 1;
+			} else {
+				sort(a, i + 1, right);
+				right = i - 1;
+			}
+		}
+		for (int i = left + 1; i <= right; i++) {
+			for (int j = i; j > left && a.compare(j - 1, j) > 0; j--) a.swap(j - 1, j);
+		}
 	}
 
+	// Index of the element, or -(insertion point) - 1 when it is not found
 	static public int binarySearch(BinarySearchArrayLike bs, int fromIndex, int toIndex) {
-		int min = fromIndex;
-		int max = toIndex;
-		int current = max / 2;
-		while (min != max) {
-			int result = bs.compare(current);
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int result = bs.compare(mid);
 			if (result < 0) {
-				max = current;
-			} else if (result < 0) {
-				min = current;
+				low = mid + 1;
+			} else if (result > 0) {
+				high = mid - 1;
 			} else {
-				return current;
+				return mid;
 			}
-			current = (max + min) / 2;
 		}
-		return -1;
+		return -(low + 1);
 	}
 
 	static public class IntArrayWrapped implements ArrayLikeWrapper {
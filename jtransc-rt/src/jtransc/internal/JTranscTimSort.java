@@ -0,0 +1,374 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jtransc.internal;
+
+import java.util.Comparator;
+
+// Stable merge sort that reuses the runs already present in the array (TimSort). Short runs are extended with binary
+// insertion sort, and each merge only copies the smaller of its two runs, so at most n / 2 extra slots are used.
+public class JTranscTimSort<T> {
+	static private final int MIN_MERGE = 32;
+	static private final int MIN_GALLOP = 7;
+	static private final int MAX_RUNS = 49;
+
+	private final T[] a;
+	private final Comparator<? super T> c;
+	private T[] tmp;
+	private int minGallop = MIN_GALLOP;
+	private final int[] runBase = new int[MAX_RUNS];
+	private final int[] runLength = new int[MAX_RUNS];
+	private int stackSize = 0;
+
+	@SuppressWarnings("unchecked")
+	private JTranscTimSort(T[] a, Comparator<? super T> c) {
+		this.a = a;
+		this.c = c;
+		this.tmp = (T[]) new Object[0];
+	}
+
+	static public <T> void sort(T[] a, int fromIndex, int toIndex, Comparator<? super T> c) {
+		int remaining = toIndex - fromIndex;
+		if (remaining < 2) return;
+		if (remaining < MIN_MERGE) {
+			int run = countRunAndMakeAscending(a, fromIndex, toIndex, c);
+			binarySort(a, fromIndex, toIndex, fromIndex + run, c);
+			return;
+		}
+		JTranscTimSort<T> sorter = new JTranscTimSort<T>(a, c);
+		int minRun = minRunLength(remaining);
+		int low = fromIndex;
+		do {
+			int run = countRunAndMakeAscending(a, low, toIndex, c);
+			if (run < minRun) {
+				int force = Math.min(remaining, minRun);
+				binarySort(a, low, low + force, low + run, c);
+				run = force;
+			}
+			sorter.pushRun(low, run);
+			sorter.mergeCollapse();
+			low += run;
+			remaining -= run;
+		} while (remaining != 0);
+		sorter.mergeForceCollapse();
+	}
+
+	static private int minRunLength(int n) {
+		int r = 0;
+		while (n >= MIN_MERGE) {
+			r |= (n & 1);
+			n >>= 1;
+		}
+		return n + r;
+	}
+
+	// Length of the run starting at low, descending runs are reversed so they can be merged
+	static private <T> int countRunAndMakeAscending(T[] a, int low, int high, Comparator<? super T> c) {
+		int end = low + 1;
+		if (end == high) return 1;
+		if (c.compare(a[end++], a[low]) < 0) {
+			while (end < high && c.compare(a[end], a[end - 1]) < 0) end++;
+			for (int i = low, j = end - 1; i < j; i++, j--) {
+				T temp = a[i];
+				a[i] = a[j];
+				a[j] = temp;
+			}
+		} else {
+			while (end < high && c.compare(a[end], a[end - 1]) >= 0) end++;
+		}
+		return end - low;
+	}
+
+	// Sorts [low, high) when [low, start) is already sorted
+	static private <T> void binarySort(T[] a, int low, int high, int start, Comparator<? super T> c) {
+		if (start == low) start++;
+		for (; start < high; start++) {
+			T pivot = a[start];
+			int left = low;
+			int right = start;
+			while (left < right) {
+				int mid = (left + right) >>> 1;
+				if (c.compare(pivot, a[mid]) < 0) {
+					right = mid;
+				} else {
+					left = mid + 1;
+				}
+			}
+			System.arraycopy(a, left, a, left + 1, start - left);
+			a[left] = pivot;
+		}
+	}
+
+	private void pushRun(int base, int length) {
+		runBase[stackSize] = base;
+		runLength[stackSize] = length;
+		stackSize++;
+	}
+
+	// Merges until the lengths of the last runs on the stack shrink faster than the Fibonacci numbers
+	private void mergeCollapse() {
+		while (stackSize > 1) {
+			int n = stackSize - 2;
+			if (n > 0 && runLength[n - 1] <= runLength[n] + runLength[n + 1] || n > 1 && runLength[n - 2] <= runLength[n - 1] + runLength[n]) {
+				if (runLength[n - 1] < runLength[n + 1]) n--;
+			} else if (runLength[n] > runLength[n + 1]) {
+				break;
+			}
+			mergeAt(n);
+		}
+	}
+
+	private void mergeForceCollapse() {
+		while (stackSize > 1) {
+			int n = stackSize - 2;
+			if (n > 0 && runLength[n - 1] < runLength[n + 1]) n--;
+			mergeAt(n);
+		}
+	}
+
+	// Merges the runs at i and i + 1
+	private void mergeAt(int i) {
+		int base1 = runBase[i];
+		int length1 = runLength[i];
+		int base2 = runBase[i + 1];
+		int length2 = runLength[i + 1];
+		runLength[i] = length1 + length2;
+		if (i == stackSize - 3) {
+			runBase[i + 1] = runBase[i + 2];
+			runLength[i + 1] = runLength[i + 2];
+		}
+		stackSize--;
+
+		// Elements of run 1 before the first element of run 2, and elements of run 2 after the last element of run 1,
+		// are already in place
+		int k = gallopRight(a[base2], a, base1, length1, 0, c);
+		base1 += k;
+		length1 -= k;
+		if (length1 == 0) return;
+		length2 = gallopLeft(a[base1 + length1 - 1], a, base2, length2, length2 - 1, c);
+		if (length2 == 0) return;
+
+		if (length1 <= length2) {
+			mergeLow(base1, length1, base2, length2);
+		} else {
+			mergeHigh(base1, length1, base2, length2);
+		}
+	}
+
+	// Position of key in a[base, base + length): after the elements lower than key, starting the search at hint
+	static private <T> int gallopLeft(T key, T[] a, int base, int length, int hint, Comparator<? super T> c) {
+		int lastOffset = 0;
+		int offset = 1;
+		if (c.compare(key, a[base + hint]) > 0) {
+			int maxOffset = length - hint;
+			while (offset < maxOffset && c.compare(key, a[base + hint + offset]) > 0) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1;
+				if (offset <= 0) offset = maxOffset;
+			}
+			if (offset > maxOffset) offset = maxOffset;
+			lastOffset += hint;
+			offset += hint;
+		} else {
+			int maxOffset = hint + 1;
+			while (offset < maxOffset && c.compare(key, a[base + hint - offset]) <= 0) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1;
+				if (offset <= 0) offset = maxOffset;
+			}
+			if (offset > maxOffset) offset = maxOffset;
+			int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		}
+		// a[base + lastOffset] < key <= a[base + offset]
+		lastOffset++;
+		while (lastOffset < offset) {
+			int mid = lastOffset + ((offset - lastOffset) >>> 1);
+			if (c.compare(key, a[base + mid]) > 0) {
+				lastOffset = mid + 1;
+			} else {
+				offset = mid;
+			}
+		}
+		return offset;
+	}
+
+	// Position of key in a[base, base + length): after the elements lower or equal to key, starting the search at hint
+	static private <T> int gallopRight(T key, T[] a, int base, int length, int hint, Comparator<? super T> c) {
+		int lastOffset = 0;
+		int offset = 1;
+		if (c.compare(key, a[base + hint]) < 0) {
+			int maxOffset = hint + 1;
+			while (offset < maxOffset && c.compare(key, a[base + hint - offset]) < 0) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1;
+				if (offset <= 0) offset = maxOffset;
+			}
+			if (offset > maxOffset) offset = maxOffset;
+			int temp = lastOffset;
+			lastOffset = hint - offset;
+			offset = hint - temp;
+		} else {
+			int maxOffset = length - hint;
+			while (offset < maxOffset && c.compare(key, a[base + hint + offset]) >= 0) {
+				lastOffset = offset;
+				offset = (offset << 1) + 1;
+				if (offset <= 0) offset = maxOffset;
+			}
+			if (offset > maxOffset) offset = maxOffset;
+			lastOffset += hint;
+			offset += hint;
+		}
+		// a[base + lastOffset] <= key < a[base + offset]
+		lastOffset++;
+		while (lastOffset < offset) {
+			int mid = lastOffset + ((offset - lastOffset) >>> 1);
+			if (c.compare(key, a[base + mid]) < 0) {
+				offset = mid;
+			} else {
+				lastOffset = mid + 1;
+			}
+		}
+		return offset;
+	}
+
+	// Merges from the start, with run 1 (the shorter one) moved to tmp
+	private void mergeLow(int base1, int length1, int base2, int length2) {
+		T[] a = this.a;
+		T[] tmp = ensureCapacity(length1);
+		System.arraycopy(a, base1, tmp, 0, length1);
+		int cursor1 = 0;
+		int cursor2 = base2;
+		int end1 = length1;
+		int end2 = base2 + length2;
+		int dest = base1;
+		int minGallop = this.minGallop;
+		outer:
+		while (true) {
+			int count1 = 0;
+			int count2 = 0;
+			// One element at a time, until a run wins minGallop times in a row
+			do {
+				if (c.compare(a[cursor2], tmp[cursor1]) < 0) {
+					a[dest++] = a[cursor2++];
+					count2++;
+					count1 = 0;
+					if (cursor2 == end2) break outer;
+				} else {
+					a[dest++] = tmp[cursor1++];
+					count1++;
+					count2 = 0;
+					if (cursor1 == end1) break outer;
+				}
+			} while ((count1 | count2) < minGallop);
+
+			// Whole blocks while galloping pays off
+			do {
+				count1 = gallopRight(a[cursor2], tmp, cursor1, end1 - cursor1, 0, c);
+				if (count1 != 0) {
+					System.arraycopy(tmp, cursor1, a, dest, count1);
+					dest += count1;
+					cursor1 += count1;
+					if (cursor1 == end1) break outer;
+				}
+				a[dest++] = a[cursor2++];
+				if (cursor2 == end2) break outer;
+
+				count2 = gallopLeft(tmp[cursor1], a, cursor2, end2 - cursor2, 0, c);
+				if (count2 != 0) {
+					System.arraycopy(a, cursor2, a, dest, count2);
+					dest += count2;
+					cursor2 += count2;
+					if (cursor2 == end2) break outer;
+				}
+				a[dest++] = tmp[cursor1++];
+				if (cursor1 == end1) break outer;
+				minGallop--;
+			} while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP);
+			if (minGallop < 0) minGallop = 0;
+			minGallop += 2;
+		}
+		// What is left of run 2 is already in place
+		if (cursor1 < end1) System.arraycopy(tmp, cursor1, a, dest, end1 - cursor1);
+		this.minGallop = (minGallop < 1) ? 1 : minGallop;
+	}
+
+	// Merges from the end, with run 2 (the shorter one) moved to tmp
+	private void mergeHigh(int base1, int length1, int base2, int length2) {
+		T[] a = this.a;
+		T[] tmp = ensureCapacity(length2);
+		System.arraycopy(a, base2, tmp, 0, length2);
+		int cursor1 = base1 + length1 - 1;
+		int cursor2 = length2 - 1;
+		int dest = base2 + length2 - 1;
+		int minGallop = this.minGallop;
+		outer:
+		while (true) {
+			int count1 = 0;
+			int count2 = 0;
+			do {
+				if (c.compare(tmp[cursor2], a[cursor1]) < 0) {
+					a[dest--] = a[cursor1--];
+					count1++;
+					count2 = 0;
+					if (cursor1 < base1) break outer;
+				} else {
+					a[dest--] = tmp[cursor2--];
+					count2++;
+					count1 = 0;
+					if (cursor2 < 0) break outer;
+				}
+			} while ((count1 | count2) < minGallop);
+
+			do {
+				count1 = cursor1 - base1 + 1 - gallopRight(tmp[cursor2], a, base1, cursor1 - base1 + 1, cursor1 - base1, c);
+				if (count1 != 0) {
+					dest -= count1;
+					cursor1 -= count1;
+					System.arraycopy(a, cursor1 + 1, a, dest + 1, count1);
+					if (cursor1 < base1) break outer;
+				}
+				a[dest--] = tmp[cursor2--];
+				if (cursor2 < 0) break outer;
+
+				count2 = cursor2 + 1 - gallopLeft(a[cursor1], tmp, 0, cursor2 + 1, cursor2, c);
+				if (count2 != 0) {
+					dest -= count2;
+					cursor2 -= count2;
+					System.arraycopy(tmp, cursor2 + 1, a, dest + 1, count2);
+					if (cursor2 < 0) break outer;
+				}
+				a[dest--] = a[cursor1--];
+				if (cursor1 < base1) break outer;
+				minGallop--;
+			} while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP);
+			if (minGallop < 0) minGallop = 0;
+			minGallop += 2;
+		}
+		// What is left of run 1 is already in place
+		if (cursor2 >= 0) System.arraycopy(tmp, 0, a, dest - cursor2, cursor2 + 1);
+		this.minGallop = (minGallop < 1) ? 1 : minGallop;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T[] ensureCapacity(int minCapacity) {
+		if (tmp.length < minCapacity) {
+			tmp = (T[]) new Object[Math.max(minCapacity, Math.min(tmp.length * 2, a.length >>> 1))];
+		}
+		return tmp;
+	}
+}
@@ -1,5 +1,6 @@
 package com.jtransc.io
 
+import java.io.EOFException
 import java.io.InputStream
 import java.io.OutputStream
 
@@ -33,4 +34,56 @@ fun InputStream.i32(value:Int):Int {
 	val h = i16()
 	val l = i16()
 	return ((h shl 16) or (l shl 0)).toInt().toInt()
-}
\ No newline at end of file
+}
+
+// Unsigned LEB128
+fun OutputStream.uvarint(value: Int) {
+	var v = value
+	while ((v and 0x7F.inv()) != 0) {
+		this.write((v and 0x7F) or 0x80)
+		v = v ushr 7
+	}
+	this.write(v)
+}
+
+// Zigzag encoded so small negative values are small too
+fun OutputStream.svarint(value: Int) = uvarint((value shl 1) xor (value shr 31))
+
+fun OutputStream.svarlong(value: Long) {
+	var v = (value shl 1) xor (value shr 63)
+	while ((v and 0x7FL.inv()) != 0L) {
+		this.write(((v and 0x7F) or 0x80).toInt())
+		v = v ushr 7
+	}
+	this.write(v.toInt())
+}
+
+fun InputStream.uvarint(): Int {
+	var out = 0
+	var shift = 0
+	while (true) {
+		val b = this.read()
+		if (b < 0) throw EOFException()
+		out = out or ((b and 0x7F) shl shift)
+		if ((b and 0x80) == 0) return out
+		shift += 7
+	}
+}
+
+fun InputStream.svarint(): Int {
+	val v = uvarint()
+	return (v ushr 1) xor -(v and 1)
+}
+
+fun InputStream.svarlong(): Long {
+	var v = 0L
+	var shift = 0
+	while (true) {
+		val b = this.read()
+		if (b < 0) throw EOFException()
+		v = v or ((b and 0x7F).toLong() shl shift)
+		if ((b and 0x80) == 0) break
+		shift += 7
+	}
+	return (v ushr 1) xor -(v and 1)
+}
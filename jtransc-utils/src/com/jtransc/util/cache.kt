@@ -19,26 +19,66 @@ package com.jtransc.util
 import com.jtransc.vfs.LocalVfs
 import com.jtransc.vfs.SyncVfs
 import com.jtransc.vfs.SyncVfsFile
+import com.jtransc.vfs.SyncVfsStat
 import java.io.File
+import java.util.*
+
+// Stores each value as a file in folder. When the files grow over maxSize, the least recently used ones are removed
+// until they are back under 3/4 of maxSize. Reading an entry updates its modification time to mark it as used.
+class PersistentBinaryCache(val folder: SyncVfsFile = LocalVfs(tempFolder), val maxSize: Long = Long.MAX_VALUE) {
+	companion object {
+		val tempFolder by lazy { System.getProperty("java.io.tmpdir") }
+	}
+
+	private var size = -1L
 
-object PersistentBinaryCache {
-	val tempFolder by lazy { System.getProperty("java.io.tmpdir") }
-	private val tempVfs by lazy { LocalVfs(tempFolder) }
 	private fun file(key:String):SyncVfsFile {
 		val basename = File(key).name
-		return tempVfs["$basename.cache"]
+		return folder["$basename.cache"]
 	}
 
-	operator fun contains(key: String) = file(key).exists
-	operator fun set(key: String, value: ByteArray) = file(key).write(value)
-	operator fun get(key: String): ByteArray? = file(key).readOrNull()?.array()
-}
+	private fun entries(): List<SyncVfsStat> {
+		if (!folder.exists) return listOf()
+		return folder.listdir().filter { !it.isDirectory && it.file.path.endsWith(".cache") }
+	}
+
+	@Synchronized operator fun contains(key: String) = file(key).exists
+
+	@Synchronized operator fun set(key: String, value: ByteArray) {
+		if (size < 0) {
+			folder.ensuredir()
+			size = entries().fold(0L) { total, it -> total + it.size }
+		}
+		val file = file(key)
+		if (file.exists) size -= file.stat().size
+		file.write(value)
+		size += value.size
+		if (size > maxSize) evict(maxSize / 4 * 3)
+	}
+
+	@Synchronized operator fun get(key: String): ByteArray? {
+		val file = file(key)
+		val data = file.readOrNull()?.array() ?: return null
+		file.setMtime(Date())
+		return data
+	}
 
-class PersistentCache<V> {
-	val pbc = PersistentBinaryCache
+	@Synchronized fun evict(targetSize: Long) {
+		var total = 0L
+		val entries = entries()
+		for (entry in entries) total += entry.size
+		for (entry in entries.sortedBy { it.mtime }) {
+			if (total <= targetSize) break
+			entry.file.remove()
+			total -= entry.size
+		}
+		size = total
+	}
+}
 
+class PersistentCache<V>(val pbc: PersistentBinaryCache = PersistentBinaryCache()) {
 	init {
-		println("PersistentCache: ${pbc.tempFolder}")
+		println("PersistentCache: ${pbc.folder}")
 	}
 
 	operator fun contains(key: String) = key in pbc
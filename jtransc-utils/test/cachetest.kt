@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Carlos Ballesteros Velasco
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.jtransc.util.PersistentBinaryCache
+import com.jtransc.vfs.LocalVfs
+import org.junit.Assert
+import org.junit.Test
+import java.nio.file.Files
+import java.util.*
+
+class PersistentBinaryCacheTest {
+	@Test fun testGetSet() {
+		val cache = PersistentBinaryCache(LocalVfs(Files.createTempDirectory("cache").toFile())["entries"])
+		Assert.assertNull(cache["a"])
+		cache["a"] = byteArrayOf(1, 2, 3)
+		Assert.assertTrue("a" in cache)
+		Assert.assertEquals("[1, 2, 3]", cache["a"]!!.toList().toString())
+	}
+
+	@Test fun testEvictsLeastRecentlyUsed() {
+		val folder = LocalVfs(Files.createTempDirectory("cache").toFile())["entries"]
+		val cache = PersistentBinaryCache(folder, maxSize = 100)
+		cache["a"] = ByteArray(30)
+		cache["b"] = ByteArray(30)
+		cache["c"] = ByteArray(30)
+		folder["a.cache"].setMtime(Date(1000L))
+		folder["b.cache"].setMtime(Date(2000L))
+		folder["c.cache"].setMtime(Date(3000L))
+
+		// Reading marks a as recently used, so b and c go when d doesn't fit
+		cache["a"]
+		cache["d"] = ByteArray(30)
+
+		Assert.assertEquals(listOf(true, false, false, true), listOf("a", "b", "c", "d").map { it in cache })
+	}
+}